@@ -0,0 +1,63 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.qpid.jms.spring.boot.autoconfigure;
+
+import javax.jms.ConnectionFactory;
+
+import org.apache.qpid.jms.JmsConnectionFactory;
+import org.springframework.boot.actuate.autoconfigure.ConditionalOnEnabledHealthIndicator;
+import org.springframework.boot.actuate.autoconfigure.HealthIndicatorAutoConfiguration;
+import org.springframework.boot.actuate.condition.ConditionalOnEnabledEndpoint;
+import org.springframework.boot.actuate.health.HealthIndicator;
+import org.springframework.boot.autoconfigure.AutoConfigureAfter;
+import org.springframework.boot.autoconfigure.AutoConfigureBefore;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnClass;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnMissingBean;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnSingleCandidate;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+
+/**
+ * Auto Configuration class that adds the Qpid JMS health indicator and the
+ * qpidjms diagnostics endpoint when Spring Boot Actuator is present.
+ * <p>
+ * The health indicator is registered as the jms health indicator, taking the
+ * place of the Actuator's own, which opens a new connection for every check.
+ */
+@Configuration
+@AutoConfigureAfter(QpidJMSAutoConfiguration.class)
+@AutoConfigureBefore(HealthIndicatorAutoConfiguration.class)
+@ConditionalOnClass({ HealthIndicator.class, JmsConnectionFactory.class })
+@ConditionalOnSingleCandidate(ConnectionFactory.class)
+public class QpidJMSActuatorAutoConfiguration {
+
+    public static final String HEALTH_INDICATOR_BEAN_NAME = "jmsHealthIndicator";
+
+    @Bean(name = HEALTH_INDICATOR_BEAN_NAME)
+    @ConditionalOnEnabledHealthIndicator("jms")
+    @ConditionalOnMissingBean(name = HEALTH_INDICATOR_BEAN_NAME)
+    public QpidJMSHealthIndicator jmsHealthIndicator(ConnectionFactory connectionFactory) {
+        return new QpidJMSHealthIndicator(connectionFactory);
+    }
+
+    @Bean
+    @ConditionalOnEnabledEndpoint(QpidJMSEndpoint.ENDPOINT_ID)
+    @ConditionalOnMissingBean
+    public QpidJMSEndpoint qpidJMSEndpoint(ConnectionFactory connectionFactory) {
+        return new QpidJMSEndpoint(connectionFactory);
+    }
+}
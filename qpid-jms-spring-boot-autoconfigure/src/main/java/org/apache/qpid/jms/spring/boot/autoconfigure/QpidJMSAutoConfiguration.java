@@ -38,6 +38,9 @@ import org.springframework.context.annotation.Import;
 @ConditionalOnClass({ConnectionFactory.class, JmsConnectionFactory.class})
 @ConditionalOnMissingBean(ConnectionFactory.class)
 @EnableConfigurationProperties(QpidJMSProperties.class)
-@Import({QpidJMSConnectionFactoryConfiguration.class})
+@Import({QpidJMSConnectionFactoryConfiguration.class, QpidJMSMessageConverterConfiguration.class,
+         QpidJMSBatchTemplateConfiguration.class,
+         QpidJMSRequestReplyTemplateConfiguration.class, QpidJMSListenerContainerConfiguration.class,
+         QpidJMSWarmupConfiguration.class})
 public class QpidJMSAutoConfiguration {
 }
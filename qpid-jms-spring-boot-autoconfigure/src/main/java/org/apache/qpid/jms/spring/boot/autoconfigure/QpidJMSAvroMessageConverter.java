@@ -0,0 +1,102 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.qpid.jms.spring.boot.autoconfigure;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+import org.apache.avro.Schema;
+import org.apache.avro.io.BinaryDecoder;
+import org.apache.avro.io.BinaryEncoder;
+import org.apache.avro.io.DatumReader;
+import org.apache.avro.io.DatumWriter;
+import org.apache.avro.io.DecoderFactory;
+import org.apache.avro.io.EncoderFactory;
+import org.apache.avro.specific.SpecificData;
+import org.apache.avro.specific.SpecificDatumReader;
+import org.apache.avro.specific.SpecificDatumWriter;
+import org.apache.avro.specific.SpecificRecord;
+import org.springframework.jms.support.converter.MessageConversionException;
+
+/**
+ * Converter that encodes Avro {@link SpecificRecord} payloads in the Avro binary
+ * encoding.
+ * <p>
+ * The schema of each record type and the datum writer and reader built from it
+ * are looked up once and reused, as are the encoder and decoder of each thread.
+ * Both sides must have the record class, the message carries no schema and the
+ * record is read with the schema of its class.  Payloads that are not specific
+ * records are converted by the delegate.
+ */
+public class QpidJMSAvroMessageConverter extends QpidJMSPayloadMessageConverter {
+
+    public static final String CONTENT_TYPE = "application/avro";
+
+    private static final ThreadLocal<BinaryEncoder> ENCODERS = new ThreadLocal<>();
+    private static final ThreadLocal<BinaryDecoder> DECODERS = new ThreadLocal<>();
+
+    private final ConcurrentMap<Class<?>, DatumWriter<Object>> writers = new ConcurrentHashMap<>();
+    private final ConcurrentMap<Class<?>, DatumReader<Object>> readers = new ConcurrentHashMap<>();
+
+    public QpidJMSAvroMessageConverter() {
+        super(CONTENT_TYPE);
+    }
+
+    @Override
+    protected boolean supports(Object payload) {
+        return payload instanceof SpecificRecord;
+    }
+
+    @Override
+    protected void encode(Object payload, OutputStream out) throws IOException {
+        DatumWriter<Object> writer = writers.get(payload.getClass());
+        if (writer == null) {
+            writer = writers.computeIfAbsent(payload.getClass(), type -> new SpecificDatumWriter<>(getSchema(type)));
+        }
+
+        BinaryEncoder encoder = EncoderFactory.get().directBinaryEncoder(out, ENCODERS.get());
+        ENCODERS.set(encoder);
+
+        writer.write(payload, encoder);
+        encoder.flush();
+    }
+
+    @Override
+    protected Object decode(byte[] array, int offset, int length, Class<?> type) throws IOException {
+        DatumReader<Object> reader = readers.get(type);
+        if (reader == null) {
+            reader = readers.computeIfAbsent(type, key -> {
+                if (!SpecificRecord.class.isAssignableFrom(key)) {
+                    throw new MessageConversionException(key.getName() + " is not an Avro specific record");
+                }
+
+                return new SpecificDatumReader<>(getSchema(key));
+            });
+        }
+
+        BinaryDecoder decoder = DecoderFactory.get().binaryDecoder(array, offset, length, DECODERS.get());
+        DECODERS.set(decoder);
+
+        return reader.read(null, decoder);
+    }
+
+    private static Schema getSchema(Class<?> type) {
+        return SpecificData.get().getSchema(type);
+    }
+}
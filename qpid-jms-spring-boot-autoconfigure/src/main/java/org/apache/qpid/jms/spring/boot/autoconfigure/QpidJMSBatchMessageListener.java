@@ -0,0 +1,48 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.qpid.jms.spring.boot.autoconfigure;
+
+import java.util.List;
+
+import javax.jms.JMSException;
+import javax.jms.Message;
+import javax.jms.Session;
+
+/**
+ * Listener that a {@link QpidJMSMessageListenerContainer} hands each batch of
+ * messages to at once.
+ * <p>
+ * The container collects up to its batch size of messages, or those that arrived
+ * within the batch timeout, and commits the session once the listener returns.
+ * An exception thrown by the listener rolls back the session and with it every
+ * message of the batch.
+ */
+public interface QpidJMSBatchMessageListener {
+
+    /**
+     * Handles a batch of messages received by the given session.
+     *
+     * @param messages
+     *      The messages of the batch in the order they were received, never empty.
+     * @param session
+     *      The session that received the messages, used to send as part of its transaction.
+     *
+     * @throws JMSException if the batch could not be handled.
+     */
+    void onMessages(List<Message> messages, Session session) throws JMSException;
+
+}
@@ -0,0 +1,97 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.qpid.jms.spring.boot.autoconfigure;
+
+import java.lang.reflect.Field;
+import java.util.List;
+
+import javax.jms.JMSException;
+import javax.jms.Message;
+import javax.jms.Session;
+
+import org.springframework.core.MethodParameter;
+import org.springframework.jms.listener.adapter.ListenerExecutionFailedException;
+import org.springframework.jms.listener.adapter.MessagingMessageListenerAdapter;
+import org.springframework.messaging.handler.invocation.InvocableHandlerMethod;
+import org.springframework.messaging.support.MessageBuilder;
+import org.springframework.util.ReflectionUtils;
+
+/**
+ * Batch listener that invokes an annotated listener method taking a List of
+ * messages, the batch and the session are passed to the method's parameters of
+ * those types.
+ */
+final class QpidJMSBatchMessageListenerAdapter implements QpidJMSBatchMessageListener {
+
+    private static final Field HANDLER_METHOD_FIELD;
+
+    static {
+        Field handlerMethod = ReflectionUtils.findField(
+            MessagingMessageListenerAdapter.class, "handlerMethod", InvocableHandlerMethod.class);
+        if (handlerMethod != null) {
+            ReflectionUtils.makeAccessible(handlerMethod);
+        }
+
+        HANDLER_METHOD_FIELD = handlerMethod;
+    }
+
+    private final InvocableHandlerMethod handlerMethod;
+
+    private QpidJMSBatchMessageListenerAdapter(InvocableHandlerMethod handlerMethod) {
+        this.handlerMethod = handlerMethod;
+    }
+
+    /**
+     * Returns a batch listener for the method of the given annotated listener
+     * endpoint if the method takes a List of messages.
+     *
+     * @param adapter
+     *      The listener created for an annotated listener method.
+     *
+     * @return the batch listener, or null if the method handles single messages.
+     */
+    static QpidJMSBatchMessageListener forBatchMethod(MessagingMessageListenerAdapter adapter) {
+        if (HANDLER_METHOD_FIELD == null) {
+            return null;
+        }
+
+        InvocableHandlerMethod handlerMethod = (InvocableHandlerMethod) ReflectionUtils.getField(HANDLER_METHOD_FIELD, adapter);
+        if (handlerMethod == null) {
+            return null;
+        }
+
+        for (MethodParameter parameter : handlerMethod.getMethodParameters()) {
+            if (List.class.isAssignableFrom(parameter.getParameterType())) {
+                return new QpidJMSBatchMessageListenerAdapter(handlerMethod);
+            }
+        }
+
+        return null;
+    }
+
+    @Override
+    public void onMessages(List<Message> messages, Session session) throws JMSException {
+        try {
+            handlerMethod.invoke(MessageBuilder.withPayload(messages).build(), messages, session);
+        } catch (JMSException | RuntimeException ex) {
+            throw ex;
+        } catch (Exception ex) {
+            throw new ListenerExecutionFailedException("Listener method '" +
+                handlerMethod.getMethod().toGenericString() + "' threw exception", ex);
+        }
+    }
+}
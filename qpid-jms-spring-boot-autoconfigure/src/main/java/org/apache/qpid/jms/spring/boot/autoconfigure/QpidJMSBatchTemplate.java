@@ -0,0 +1,431 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.qpid.jms.spring.boot.autoconfigure;
+
+import java.util.Iterator;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.stream.Stream;
+
+import javax.jms.CompletionListener;
+import javax.jms.Connection;
+import javax.jms.ConnectionFactory;
+import javax.jms.Destination;
+import javax.jms.ExceptionListener;
+import javax.jms.JMSException;
+import javax.jms.Message;
+import javax.jms.MessageProducer;
+import javax.jms.Session;
+
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.jms.support.JmsUtils;
+import org.springframework.jms.support.converter.MessageConverter;
+import org.springframework.jms.support.converter.SimpleMessageConverter;
+import org.springframework.jms.support.destination.JmsDestinationAccessor;
+import org.springframework.util.Assert;
+
+/**
+ * Template that sends a batch of payloads as pipelined asynchronous sends.
+ * <p>
+ * Each batch is sent on a single session and anonymous producer using JMS 2.0
+ * {@link CompletionListener} sends, so the caller does not wait for each
+ * disposition in turn.  The number of unsettled sends per batch is bounded by
+ * the configured maximum in-flight value, the sending thread blocks once that
+ * limit is reached until earlier sends are settled.  Sessions are cached and
+ * reused by later batches once every send of the batch that used them is
+ * settled, all sessions share one connection created on first use.
+ */
+public class QpidJMSBatchTemplate extends JmsDestinationAccessor implements DisposableBean {
+
+    public static final int DEFAULT_MAX_IN_FLIGHT = 1000;
+
+    private final BlockingQueue<BatchSession> idleSessions = new LinkedBlockingQueue<>();
+    private final Object connectionLock = new Object();
+
+    private MessageConverter messageConverter = new SimpleMessageConverter();
+    private int maxInFlight = DEFAULT_MAX_IN_FLIGHT;
+    private QpidJMSSendMetrics sendMetrics;
+
+    private Connection connection;
+    private volatile boolean closed;
+
+    /**
+     * Creates a new QpidJMSBatchTemplate for bean style configuration.
+     */
+    public QpidJMSBatchTemplate() {
+    }
+
+    /**
+     * Creates a new QpidJMSBatchTemplate that uses the given ConnectionFactory.
+     *
+     * @param connectionFactory
+     *      The ConnectionFactory used to create the shared connection.
+     */
+    public QpidJMSBatchTemplate(ConnectionFactory connectionFactory) {
+        setConnectionFactory(connectionFactory);
+        afterPropertiesSet();
+    }
+
+    public MessageConverter getMessageConverter() {
+        return messageConverter;
+    }
+
+    public void setMessageConverter(MessageConverter messageConverter) {
+        Assert.notNull(messageConverter, "MessageConverter must not be null");
+        this.messageConverter = messageConverter;
+    }
+
+    public int getMaxInFlight() {
+        return maxInFlight;
+    }
+
+    public void setMaxInFlight(int maxInFlight) {
+        Assert.isTrue(maxInFlight > 0, "Max in-flight sends must be greater than zero");
+        this.maxInFlight = maxInFlight;
+    }
+
+    public QpidJMSSendMetrics getSendMetrics() {
+        return sendMetrics;
+    }
+
+    /**
+     * Sets the metrics that record the time taken by each send, when not set the
+     * sends are not timed at all.
+     *
+     * @param sendMetrics
+     *      The send metrics to record to, or null to disable timing.
+     */
+    public void setSendMetrics(QpidJMSSendMetrics sendMetrics) {
+        this.sendMetrics = sendMetrics;
+    }
+
+    /**
+     * Sends each payload to the named destination.
+     *
+     * @param destinationName
+     *      The name of the destination, resolved using the configured DestinationResolver.
+     * @param payloads
+     *      The payloads to convert and send, in order.
+     *
+     * @return a future that completes once every send has been settled.
+     */
+    public CompletableFuture<Void> send(String destinationName, Iterable<?> payloads) {
+        Assert.notNull(destinationName, "Destination name must not be null");
+        Assert.notNull(payloads, "Payloads must not be null");
+        return doSend(null, destinationName, payloads.iterator());
+    }
+
+    /**
+     * Sends each payload of the stream to the named destination.
+     *
+     * @param destinationName
+     *      The name of the destination, resolved using the configured DestinationResolver.
+     * @param payloads
+     *      The payloads to convert and send, in encounter order.
+     *
+     * @return a future that completes once every send has been settled.
+     */
+    public CompletableFuture<Void> send(String destinationName, Stream<?> payloads) {
+        Assert.notNull(destinationName, "Destination name must not be null");
+        Assert.notNull(payloads, "Payloads must not be null");
+        return doSend(null, destinationName, payloads.iterator());
+    }
+
+    /**
+     * Sends each payload to the given destination.
+     *
+     * @param destination
+     *      The destination to send to.
+     * @param payloads
+     *      The payloads to convert and send, in order.
+     *
+     * @return a future that completes once every send has been settled.
+     */
+    public CompletableFuture<Void> send(Destination destination, Iterable<?> payloads) {
+        Assert.notNull(destination, "Destination must not be null");
+        Assert.notNull(payloads, "Payloads must not be null");
+        return doSend(destination, null, payloads.iterator());
+    }
+
+    /**
+     * Sends each payload of the stream to the given destination.
+     *
+     * @param destination
+     *      The destination to send to.
+     * @param payloads
+     *      The payloads to convert and send, in encounter order.
+     *
+     * @return a future that completes once every send has been settled.
+     */
+    public CompletableFuture<Void> send(Destination destination, Stream<?> payloads) {
+        Assert.notNull(destination, "Destination must not be null");
+        Assert.notNull(payloads, "Payloads must not be null");
+        return doSend(destination, null, payloads.iterator());
+    }
+
+    @Override
+    public void destroy() {
+        closed = true;
+
+        BatchSession batchSession;
+        while ((batchSession = idleSessions.poll()) != null) {
+            batchSession.close();
+        }
+
+        synchronized (connectionLock) {
+            JmsUtils.closeConnection(connection);
+            connection = null;
+        }
+    }
+
+    private CompletableFuture<Void> doSend(Destination destination, String destinationName, Iterator<?> payloads) {
+        final BatchSession batchSession;
+
+        try {
+            batchSession = acquireSession();
+        } catch (JMSException ex) {
+            CompletableFuture<Void> failed = new CompletableFuture<>();
+            failed.completeExceptionally(convertJmsAccessException(ex));
+            return failed;
+        }
+
+        final Batch batch = new Batch(batchSession, maxInFlight);
+        final QpidJMSSendMetrics metrics = sendMetrics;
+
+        try {
+            final Session session = batchSession.session;
+            final Destination target = destination != null ? destination : resolveDestinationName(session, destinationName);
+
+            while (payloads.hasNext() && !batch.isFailed()) {
+                Message message = messageConverter.toMessage(payloads.next(), session);
+                batch.beforeSend();
+                try {
+                    if (metrics == null) {
+                        batchSession.producer.send(target, message, batch);
+                    } else {
+                        final long start = System.nanoTime();
+                        batchSession.producer.send(target, message, new TimedCompletion(batch, metrics, target, start));
+                        metrics.sendCompleted(target, System.nanoTime() - start);
+                    }
+                } catch (JMSException | RuntimeException ex) {
+                    batch.sendFailed(ex);
+                }
+            }
+        } catch (JMSException ex) {
+            batch.failed(convertJmsAccessException(ex));
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+            batch.failed(ex);
+        } catch (RuntimeException ex) {
+            batch.failed(ex);
+        }
+
+        batch.allSubmitted();
+
+        return batch.future;
+    }
+
+    private BatchSession acquireSession() throws JMSException {
+        Assert.state(!closed, "The batch template has been closed");
+
+        BatchSession batchSession;
+        while ((batchSession = idleSessions.poll()) != null) {
+            if (!batchSession.broken) {
+                return batchSession;
+            }
+
+            // Sessions are never closed from a completion callback, those that
+            // failed are closed here on the next sending thread instead.
+            batchSession.close();
+        }
+
+        Session session = getSharedConnection().createSession(false, Session.AUTO_ACKNOWLEDGE);
+        try {
+            return new BatchSession(session, session.createProducer(null));
+        } catch (JMSException ex) {
+            JmsUtils.closeSession(session);
+            throw ex;
+        }
+    }
+
+    private void releaseSession(BatchSession batchSession) {
+        idleSessions.offer(batchSession);
+
+        if (closed && idleSessions.remove(batchSession)) {
+            batchSession.close();
+        }
+    }
+
+    private Connection getSharedConnection() throws JMSException {
+        synchronized (connectionLock) {
+            if (connection == null) {
+                final Connection created = createConnection();
+                created.setExceptionListener(new ExceptionListener() {
+
+                    @Override
+                    public void onException(JMSException exception) {
+                        resetConnection(created);
+                    }
+                });
+
+                connection = created;
+            }
+
+            return connection;
+        }
+    }
+
+    private void resetConnection(Connection failed) {
+        synchronized (connectionLock) {
+            if (connection != failed) {
+                return;
+            }
+
+            connection = null;
+        }
+
+        for (BatchSession batchSession : idleSessions) {
+            batchSession.broken = true;
+        }
+
+        JmsUtils.closeConnection(failed);
+    }
+
+    private static final class BatchSession {
+
+        private final Session session;
+        private final MessageProducer producer;
+
+        private volatile boolean broken;
+
+        BatchSession(Session session, MessageProducer producer) {
+            this.session = session;
+            this.producer = producer;
+        }
+
+        void close() {
+            JmsUtils.closeMessageProducer(producer);
+            JmsUtils.closeSession(session);
+        }
+    }
+
+    private static final class TimedCompletion implements CompletionListener {
+
+        private final CompletionListener delegate;
+        private final QpidJMSSendMetrics metrics;
+        private final Destination destination;
+        private final long start;
+
+        TimedCompletion(CompletionListener delegate, QpidJMSSendMetrics metrics, Destination destination, long start) {
+            this.delegate = delegate;
+            this.metrics = metrics;
+            this.destination = destination;
+            this.start = start;
+        }
+
+        @Override
+        public void onCompletion(Message message) {
+            metrics.sendSettled(destination, System.nanoTime() - start, false);
+            delegate.onCompletion(message);
+        }
+
+        @Override
+        public void onException(Message message, Exception exception) {
+            metrics.sendSettled(destination, System.nanoTime() - start, true);
+            delegate.onException(message, exception);
+        }
+    }
+
+    private final class Batch implements CompletionListener {
+
+        private final CompletableFuture<Void> future = new CompletableFuture<>();
+        private final AtomicReference<Throwable> failure = new AtomicReference<>();
+
+        // Starts at one on behalf of the sending thread so that the batch cannot
+        // complete until every payload has been submitted.
+        private final AtomicInteger outstanding = new AtomicInteger(1);
+
+        private final BatchSession batchSession;
+        private final Semaphore credit;
+
+        Batch(BatchSession batchSession, int maxInFlight) {
+            this.batchSession = batchSession;
+            this.credit = new Semaphore(maxInFlight);
+        }
+
+        boolean isFailed() {
+            return failure.get() != null;
+        }
+
+        void beforeSend() throws InterruptedException {
+            credit.acquire();
+            outstanding.incrementAndGet();
+        }
+
+        void sendFailed(Exception ex) {
+            failed(ex instanceof JMSException ? convertJmsAccessException((JMSException) ex) : ex);
+            settled();
+        }
+
+        void failed(Throwable ex) {
+            failure.compareAndSet(null, ex);
+        }
+
+        void allSubmitted() {
+            if (outstanding.decrementAndGet() == 0) {
+                complete();
+            }
+        }
+
+        @Override
+        public void onCompletion(Message message) {
+            settled();
+        }
+
+        @Override
+        public void onException(Message message, Exception exception) {
+            sendFailed(exception);
+        }
+
+        private void settled() {
+            credit.release();
+            if (outstanding.decrementAndGet() == 0) {
+                complete();
+            }
+        }
+
+        private void complete() {
+            Throwable error = failure.get();
+
+            if (error != null) {
+                batchSession.broken = true;
+            }
+
+            releaseSession(batchSession);
+
+            if (error != null) {
+                future.completeExceptionally(error);
+            } else {
+                future.complete(null);
+            }
+        }
+    }
+}
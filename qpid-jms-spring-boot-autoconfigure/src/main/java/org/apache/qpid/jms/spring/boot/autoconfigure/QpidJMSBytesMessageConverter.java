@@ -0,0 +1,187 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.qpid.jms.spring.boot.autoconfigure;
+
+import java.lang.reflect.Method;
+import java.nio.ByteBuffer;
+
+import javax.jms.BytesMessage;
+import javax.jms.JMSException;
+import javax.jms.Message;
+import javax.jms.Session;
+
+import org.apache.qpid.jms.message.JmsMessage;
+import org.apache.qpid.jms.provider.amqp.message.AmqpJmsBytesMessageFacade;
+import org.apache.qpid.jms.provider.amqp.message.AmqpJmsMessageFacade;
+import org.apache.qpid.proton.amqp.Binary;
+import org.apache.qpid.proton.amqp.messaging.AmqpValue;
+import org.apache.qpid.proton.amqp.messaging.Data;
+import org.apache.qpid.proton.amqp.messaging.Section;
+import org.springframework.jms.support.converter.MessageConversionException;
+import org.springframework.jms.support.converter.MessageConverter;
+import org.springframework.jms.support.converter.SimpleMessageConverter;
+import org.springframework.util.Assert;
+import org.springframework.util.ReflectionUtils;
+
+/**
+ * MessageConverter that moves binary payloads in and out of BytesMessages without
+ * copying them.
+ * <p>
+ * A received BytesMessage is converted to a {@link QpidJMSBytesPayload} that views
+ * the bytes the client decoded the body into, listener methods can declare that
+ * type as their payload argument.  A {@code ByteBuffer} or {@code byte[]} sent by
+ * a template becomes the body of the BytesMessage as it is, the client encodes it
+ * straight from the given array when the message is sent, so the array must not
+ * be modified until the send has completed.  Buffers without an accessible array,
+ * such as direct or read-only buffers, are copied once.  Any other object and any
+ * other message type is converted by the delegate converter, a
+ * {@link SimpleMessageConverter} by default.
+ * <p>
+ * The Qpid JMS client does not expose the body of its AMQP messages publicly, when
+ * the body cannot be reached, or the message was not created by the Qpid JMS
+ * client, the converter falls back to copying the body.
+ */
+public class QpidJMSBytesMessageConverter implements MessageConverter {
+
+    private static final Method GET_BODY_METHOD;
+    private static final Method SET_BODY_METHOD;
+
+    static {
+        Method getBody = ReflectionUtils.findMethod(AmqpJmsMessageFacade.class, "getBody");
+        Method setBody = ReflectionUtils.findMethod(AmqpJmsMessageFacade.class, "setBody", Section.class);
+        if (getBody != null && setBody != null) {
+            ReflectionUtils.makeAccessible(getBody);
+            ReflectionUtils.makeAccessible(setBody);
+        } else {
+            getBody = null;
+            setBody = null;
+        }
+
+        GET_BODY_METHOD = getBody;
+        SET_BODY_METHOD = setBody;
+    }
+
+    private MessageConverter delegate = new SimpleMessageConverter();
+
+    public MessageConverter getDelegate() {
+        return delegate;
+    }
+
+    /**
+     * Sets the converter used for payloads and messages that are not binary.
+     *
+     * @param delegate
+     *      The converter to delegate to.
+     */
+    public void setDelegate(MessageConverter delegate) {
+        Assert.notNull(delegate, "Delegate MessageConverter must not be null");
+        this.delegate = delegate;
+    }
+
+    @Override
+    public Message toMessage(Object object, Session session) throws JMSException, MessageConversionException {
+        if (object instanceof QpidJMSBytesPayload) {
+            QpidJMSBytesPayload payload = (QpidJMSBytesPayload) object;
+            return createBytesMessage(session, payload.getArray(), payload.getOffset(), payload.length());
+        } else if (object instanceof byte[]) {
+            byte[] bytes = (byte[]) object;
+            return createBytesMessage(session, bytes, 0, bytes.length);
+        } else if (object instanceof ByteBuffer) {
+            ByteBuffer buffer = (ByteBuffer) object;
+            if (buffer.hasArray()) {
+                return createBytesMessage(session, buffer.array(), buffer.arrayOffset() + buffer.position(), buffer.remaining());
+            }
+
+            byte[] bytes = new byte[buffer.remaining()];
+            buffer.duplicate().get(bytes);
+            return createBytesMessage(session, bytes, 0, bytes.length);
+        }
+
+        return delegate.toMessage(object, session);
+    }
+
+    @Override
+    public Object fromMessage(Message message) throws JMSException, MessageConversionException {
+        if (message instanceof BytesMessage) {
+            return readPayload((BytesMessage) message);
+        }
+
+        return delegate.fromMessage(message);
+    }
+
+    //----- Internal implementation ------------------------------------------//
+
+    private BytesMessage createBytesMessage(Session session, byte[] array, int offset, int length) throws JMSException {
+        BytesMessage message = session.createBytesMessage();
+        writeBody(message, array, offset, length);
+        return message;
+    }
+
+    /**
+     * Sets the body of a new BytesMessage to the given bytes, without copying them
+     * when the message was created by the Qpid JMS client.
+     */
+    static void writeBody(BytesMessage message, byte[] array, int offset, int length) throws JMSException {
+        AmqpJmsMessageFacade facade = getFacade(message);
+        if (facade != null) {
+            ReflectionUtils.invokeMethod(SET_BODY_METHOD, facade, new Data(new Binary(array, offset, length)));
+        } else {
+            message.writeBytes(array, offset, length);
+        }
+    }
+
+    /**
+     * Returns a payload viewing the body of a BytesMessage, copying the body only
+     * when the message was not created by the Qpid JMS client.
+     */
+    static QpidJMSBytesPayload readPayload(BytesMessage message) throws JMSException {
+        AmqpJmsMessageFacade facade = getFacade(message);
+        if (facade != null) {
+            Binary binary = null;
+
+            Section body = (Section) ReflectionUtils.invokeMethod(GET_BODY_METHOD, facade);
+            if (body instanceof Data) {
+                binary = ((Data) body).getValue();
+            } else if (body instanceof AmqpValue && ((AmqpValue) body).getValue() instanceof Binary) {
+                binary = (Binary) ((AmqpValue) body).getValue();
+            } else if (body == null) {
+                binary = new Binary(new byte[0]);
+            }
+
+            if (binary != null) {
+                return new QpidJMSBytesPayload(message, binary.getArray(), binary.getArrayOffset(), binary.getLength());
+            }
+        }
+
+        byte[] bytes = new byte[(int) message.getBodyLength()];
+        message.reset();
+        message.readBytes(bytes);
+
+        return new QpidJMSBytesPayload(message, bytes, 0, bytes.length);
+    }
+
+    private static AmqpJmsMessageFacade getFacade(BytesMessage message) {
+        if (SET_BODY_METHOD != null && message instanceof JmsMessage) {
+            Object facade = ((JmsMessage) message).getFacade();
+            if (facade instanceof AmqpJmsBytesMessageFacade) {
+                return (AmqpJmsMessageFacade) facade;
+            }
+        }
+
+        return null;
+    }
+}
@@ -0,0 +1,229 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.qpid.jms.spring.boot.autoconfigure;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+
+import javax.jms.BytesMessage;
+import javax.jms.JMSException;
+
+/**
+ * Read-only view of the body of a received {@link BytesMessage}.
+ * <p>
+ * Created by the {@link QpidJMSBytesMessageConverter}, the payload refers to the
+ * bytes the client decoded the message body into rather than a copy of them.
+ * The buffers and streams it returns are views of those same bytes, so a multi
+ * megabyte body is never copied on its way to the application.  Once the body
+ * is no longer needed the payload should be released, or closed when used in a
+ * try-with-resources block.  Releasing clears the body of the message so that
+ * the bytes can be collected once the message is acknowledged, even when the
+ * message itself is still referenced.  Streams fail once the payload has been
+ * released, buffers obtained earlier must not be used after that point.
+ * <p>
+ * A payload is not thread safe and is intended to be consumed by the listener
+ * it was delivered to.
+ */
+public final class QpidJMSBytesPayload implements AutoCloseable {
+
+    private final BytesMessage message;
+    private final int offset;
+    private final int length;
+
+    private byte[] array;
+
+    QpidJMSBytesPayload(BytesMessage message, byte[] array, int offset, int length) {
+        this.message = message;
+        this.array = array;
+        this.offset = offset;
+        this.length = length;
+    }
+
+    /**
+     * @return the number of bytes in the payload.
+     */
+    public int length() {
+        return length;
+    }
+
+    /**
+     * Returns a read-only buffer positioned at the start of the payload and limited
+     * to its length.  Each call returns a new buffer over the same bytes.
+     *
+     * @return a read-only view of the payload.
+     *
+     * @throws IllegalStateException if the payload has been released.
+     */
+    public ByteBuffer asByteBuffer() {
+        return ByteBuffer.wrap(checkNotReleased(), offset, length).slice().asReadOnlyBuffer();
+    }
+
+    /**
+     * Returns a stream that reads the payload from its start.  Each call returns a
+     * new stream over the same bytes.
+     *
+     * @return a stream over the payload that fails once the payload is released.
+     *
+     * @throws IllegalStateException if the payload has been released.
+     */
+    public InputStream getInputStream() {
+        checkNotReleased();
+        return new PayloadInputStream();
+    }
+
+    /**
+     * @return a copy of the payload.
+     *
+     * @throws IllegalStateException if the payload has been released.
+     */
+    public byte[] toByteArray() {
+        return Arrays.copyOfRange(checkNotReleased(), offset, offset + length);
+    }
+
+    /**
+     * @return the message the payload was read from.
+     */
+    public BytesMessage getMessage() {
+        return message;
+    }
+
+    public boolean isReleased() {
+        return array == null;
+    }
+
+    /**
+     * Releases the payload and clears the body of its message, further calls have
+     * no effect.
+     */
+    public void release() {
+        if (array == null) {
+            return;
+        }
+
+        array = null;
+
+        try {
+            message.clearBody();
+        } catch (JMSException ex) {
+            // The body is only cleared so that it can be collected earlier.
+        }
+    }
+
+    @Override
+    public void close() {
+        release();
+    }
+
+    @Override
+    public String toString() {
+        return "QpidJMSBytesPayload [length=" + length + ", released=" + isReleased() + "]";
+    }
+
+    //----- Package level access ---------------------------------------------//
+
+    byte[] getArray() {
+        return checkNotReleased();
+    }
+
+    int getOffset() {
+        return offset;
+    }
+
+    //----- Internal implementation ------------------------------------------//
+
+    private byte[] checkNotReleased() {
+        byte[] bytes = array;
+        if (bytes == null) {
+            throw new IllegalStateException("The payload has been released");
+        }
+
+        return bytes;
+    }
+
+    private final class PayloadInputStream extends InputStream {
+
+        private int position;
+        private int mark;
+
+        @Override
+        public int read() throws IOException {
+            byte[] bytes = checkReadable();
+            return position < length ? bytes[offset + position++] & 0xFF : -1;
+        }
+
+        @Override
+        public int read(byte[] target, int targetOffset, int count) throws IOException {
+            byte[] bytes = checkReadable();
+            if (targetOffset < 0 || count < 0 || count > target.length - targetOffset) {
+                throw new IndexOutOfBoundsException();
+            }
+            if (count == 0) {
+                return 0;
+            }
+            if (position >= length) {
+                return -1;
+            }
+
+            int read = Math.min(count, length - position);
+            System.arraycopy(bytes, offset + position, target, targetOffset, read);
+            position += read;
+
+            return read;
+        }
+
+        @Override
+        public long skip(long count) throws IOException {
+            checkReadable();
+            long skipped = Math.max(0, Math.min(count, length - position));
+            position += (int) skipped;
+            return skipped;
+        }
+
+        @Override
+        public int available() throws IOException {
+            checkReadable();
+            return length - position;
+        }
+
+        @Override
+        public boolean markSupported() {
+            return true;
+        }
+
+        @Override
+        public void mark(int readLimit) {
+            mark = position;
+        }
+
+        @Override
+        public void reset() throws IOException {
+            checkReadable();
+            position = mark;
+        }
+
+        private byte[] checkReadable() throws IOException {
+            byte[] bytes = array;
+            if (bytes == null) {
+                throw new IOException("The payload has been released");
+            }
+
+            return bytes;
+        }
+    }
+}
@@ -0,0 +1,373 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.qpid.jms.spring.boot.autoconfigure;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Locale;
+import java.util.Map;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+
+import org.apache.qpid.jms.JmsDestination;
+import org.springframework.util.Assert;
+import org.springframework.util.ClassUtils;
+
+import com.github.luben.zstd.Zstd;
+
+import net.jpountz.lz4.LZ4Factory;
+
+/**
+ * Compression settings of a connection factory and the codecs that compress and
+ * decompress message bodies.
+ * <p>
+ * The algorithm and the minimum body size are resolved for each destination, the
+ * per-destination policies take precedence over the connection wide values.  A
+ * body is compressed when its encoded size reaches the minimum size of its
+ * destination.  The gzip codec is part of the JDK, the lz4 and zstd codecs need
+ * the lz4-java and zstd-jni libraries on the classpath.  LZ4 and Zstandard bodies
+ * are prefixed with their uncompressed length as a four byte integer.
+ * <p>
+ * The size of a decompressed body is set by its sender, a received body that
+ * would decompress to more than the maximum decompressed size is rejected before
+ * the memory for it is allocated.
+ */
+public class QpidJMSCompression {
+
+    /**
+     * Application property that carries the algorithm a body was compressed with.
+     */
+    public static final String COMPRESSION_PROPERTY = "_compression";
+
+    public static final int DEFAULT_MIN_SIZE = 1024;
+    public static final int DEFAULT_MAX_DECOMPRESSED_SIZE = 64 * 1024 * 1024;
+
+    /**
+     * Compression algorithms that can be applied to a message body.
+     */
+    public enum Algorithm {
+
+        /**
+         * Bodies are sent as they are.
+         */
+        NONE,
+
+        /**
+         * Deflate with the gzip framing of the JDK.
+         */
+        GZIP,
+
+        /**
+         * LZ4 block compression, the fastest codec with the lowest ratio.
+         */
+        LZ4,
+
+        /**
+         * Zstandard at its default level, close to gzip ratios at LZ4 like speed.
+         */
+        ZSTD;
+
+        /**
+         * @return the value of the compression property for this algorithm.
+         */
+        public String getPropertyValue() {
+            return name().toLowerCase(Locale.ROOT);
+        }
+
+        static Algorithm fromPropertyValue(String value) {
+            for (Algorithm algorithm : values()) {
+                if (algorithm.getPropertyValue().equals(value)) {
+                    return algorithm;
+                }
+            }
+
+            return null;
+        }
+    }
+
+    private static final int ZSTD_DEFAULT_LEVEL = 3;
+    private static final int LENGTH_PREFIX_SIZE = 4;
+    private static final int GZIP_BUFFER_SIZE = 8192;
+
+    private final Algorithm algorithm;
+
+    private int minSize = DEFAULT_MIN_SIZE;
+    private int maxDecompressedSize = DEFAULT_MAX_DECOMPRESSED_SIZE;
+    private QpidJMSDestinationPolicyMatcher matcher;
+
+    /**
+     * Creates new compression settings that use the given algorithm by default.
+     *
+     * @param algorithm
+     *      The algorithm used for destinations without an override.
+     */
+    public QpidJMSCompression(Algorithm algorithm) {
+        Assert.notNull(algorithm, "Compression algorithm must not be null");
+        checkAvailable(algorithm);
+        this.algorithm = algorithm;
+    }
+
+    public Algorithm getAlgorithm() {
+        return algorithm;
+    }
+
+    public int getMinSize() {
+        return minSize;
+    }
+
+    public void setMinSize(int minSize) {
+        Assert.isTrue(minSize >= 0, "Compression minSize must not be negative");
+        this.minSize = minSize;
+    }
+
+    public int getMaxDecompressedSize() {
+        return maxDecompressedSize;
+    }
+
+    public void setMaxDecompressedSize(int maxDecompressedSize) {
+        Assert.isTrue(maxDecompressedSize > 0, "Compression maxDecompressedSize must be greater than zero");
+        this.maxDecompressedSize = maxDecompressedSize;
+    }
+
+    public QpidJMSDestinationPolicyMatcher getDestinationPolicyMatcher() {
+        return matcher;
+    }
+
+    /**
+     * Sets the matcher that resolves the per-destination compression overrides.
+     *
+     * @param matcher
+     *      The matcher of the destination policies, or null when there are none.
+     */
+    public void setDestinationPolicyMatcher(QpidJMSDestinationPolicyMatcher matcher) {
+        this.matcher = matcher;
+    }
+
+    /**
+     * Returns the algorithm a body sent to the given destination is compressed with.
+     *
+     * @param destination
+     *      The destination the message is sent to, may be null.
+     * @param size
+     *      The encoded size of the body.
+     *
+     * @return the algorithm to use, {@link Algorithm#NONE} when the body is not compressed.
+     */
+    public Algorithm getAlgorithm(JmsDestination destination, int size) {
+        Algorithm selected = algorithm;
+        int threshold = minSize;
+
+        if (matcher != null) {
+            QpidJMSDestinationPolicyMatcher.ResolvedPolicy policy = matcher.getPolicy(destination);
+            if (policy.getCompression() != null) {
+                selected = policy.getCompression();
+            }
+            if (policy.getCompressionMinSize() != null) {
+                threshold = policy.getCompressionMinSize();
+            }
+        }
+
+        return size >= threshold ? selected : Algorithm.NONE;
+    }
+
+    /**
+     * Compresses the given bytes.
+     *
+     * @return the compressed bytes.
+     */
+    public static byte[] compress(Algorithm algorithm, byte[] array, int offset, int length) throws IOException {
+        switch (algorithm) {
+            case GZIP:
+                ByteArrayOutputStream bytes = new ByteArrayOutputStream(Math.max(64, length / 4));
+                try (GZIPOutputStream out = new GZIPOutputStream(bytes)) {
+                    out.write(array, offset, length);
+                }
+                return bytes.toByteArray();
+            case LZ4:
+                return Lz4Codec.compress(array, offset, length);
+            case ZSTD:
+                return ZstdCodec.compress(array, offset, length);
+            default:
+                throw new IllegalArgumentException("Cannot compress with " + algorithm);
+        }
+    }
+
+    /**
+     * Decompresses bytes compressed by {@link #compress(Algorithm, byte[], int, int)}
+     * to at most {@link #DEFAULT_MAX_DECOMPRESSED_SIZE} bytes.
+     *
+     * @return the decompressed bytes.
+     */
+    public static byte[] decompress(Algorithm algorithm, byte[] array, int offset, int length) throws IOException {
+        return decompress(algorithm, array, offset, length, DEFAULT_MAX_DECOMPRESSED_SIZE);
+    }
+
+    /**
+     * Decompresses bytes compressed by {@link #compress(Algorithm, byte[], int, int)}.
+     *
+     * @param maxSize
+     *      The maximum size of the decompressed bytes.
+     *
+     * @return the decompressed bytes.
+     *
+     * @throws IOException if the bytes are invalid or decompress to more than maxSize bytes.
+     */
+    public static byte[] decompress(Algorithm algorithm, byte[] array, int offset, int length, int maxSize) throws IOException {
+        switch (algorithm) {
+            case GZIP:
+                try (GZIPInputStream in = new GZIPInputStream(new ByteArrayInputStream(array, offset, length))) {
+                    return readAtMost(in, maxSize);
+                }
+            case LZ4:
+                return Lz4Codec.decompress(array, offset, length, maxSize);
+            case ZSTD:
+                return ZstdCodec.decompress(array, offset, length, maxSize);
+            default:
+                throw new IllegalArgumentException("Cannot decompress with " + algorithm);
+        }
+    }
+
+    /**
+     * Checks that the library of each algorithm set by the destination policies is available.
+     */
+    static void checkAvailable(Map<String, QpidJMSProperties.DestinationPolicy> policies) {
+        for (QpidJMSProperties.DestinationPolicy policy : policies.values()) {
+            if (policy.getCompression() != null) {
+                checkAvailable(policy.getCompression());
+            }
+        }
+    }
+
+    private static void checkAvailable(Algorithm algorithm) {
+        ClassLoader classLoader = QpidJMSCompression.class.getClassLoader();
+        if (algorithm == Algorithm.LZ4) {
+            Assert.isTrue(ClassUtils.isPresent("net.jpountz.lz4.LZ4Factory", classLoader),
+                "LZ4 compression requires org.lz4:lz4-java on the classpath");
+        } else if (algorithm == Algorithm.ZSTD) {
+            Assert.isTrue(ClassUtils.isPresent("com.github.luben.zstd.Zstd", classLoader),
+                "Zstandard compression requires com.github.luben:zstd-jni on the classpath");
+        }
+    }
+
+    private static void writeLength(byte[] target, int length) {
+        target[0] = (byte) (length >>> 24);
+        target[1] = (byte) (length >>> 16);
+        target[2] = (byte) (length >>> 8);
+        target[3] = (byte) length;
+    }
+
+    private static int readLength(byte[] array, int offset, int length, int maxSize) throws IOException {
+        if (length < LENGTH_PREFIX_SIZE) {
+            throw new IOException("Compressed body is too short to carry its length");
+        }
+
+        int value = ((array[offset] & 0xFF) << 24) | ((array[offset + 1] & 0xFF) << 16) |
+                    ((array[offset + 2] & 0xFF) << 8) | (array[offset + 3] & 0xFF);
+        if (value < 0) {
+            throw new IOException("Compressed body carries an invalid length: " + value);
+        }
+        if (value > maxSize) {
+            throw tooLarge(maxSize);
+        }
+
+        return value;
+    }
+
+    // The gzip framing does not carry a trustworthy length, the stream is read
+    // until it ends or passes the limit.
+    private static byte[] readAtMost(InputStream in, int maxSize) throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream(Math.min(maxSize, GZIP_BUFFER_SIZE));
+        byte[] buffer = new byte[GZIP_BUFFER_SIZE];
+
+        int read;
+        while ((read = in.read(buffer)) != -1) {
+            if (read > maxSize - out.size()) {
+                throw tooLarge(maxSize);
+            }
+            out.write(buffer, 0, read);
+        }
+
+        return out.toByteArray();
+    }
+
+    private static IOException tooLarge(int maxSize) {
+        return new IOException("Compressed body decompresses to more than the maximum of " + maxSize + " bytes");
+    }
+
+    // The optional libraries are only referenced from these classes so that they
+    // are loaded when the algorithm is used.
+
+    private static final class Lz4Codec {
+
+        private static final LZ4Factory FACTORY = LZ4Factory.fastestInstance();
+
+        static byte[] compress(byte[] array, int offset, int length) {
+            byte[] target = new byte[LENGTH_PREFIX_SIZE + FACTORY.fastCompressor().maxCompressedLength(length)];
+            writeLength(target, length);
+
+            int compressed = FACTORY.fastCompressor().compress(
+                array, offset, length, target, LENGTH_PREFIX_SIZE, target.length - LENGTH_PREFIX_SIZE);
+
+            byte[] result = new byte[LENGTH_PREFIX_SIZE + compressed];
+            System.arraycopy(target, 0, result, 0, result.length);
+            return result;
+        }
+
+        static byte[] decompress(byte[] array, int offset, int length, int maxSize) throws IOException {
+            byte[] target = new byte[readLength(array, offset, length, maxSize)];
+            try {
+                FACTORY.safeDecompressor().decompress(
+                    array, offset + LENGTH_PREFIX_SIZE, length - LENGTH_PREFIX_SIZE, target, 0, target.length);
+            } catch (RuntimeException ex) {
+                throw new IOException("Invalid LZ4 compressed body", ex);
+            }
+            return target;
+        }
+    }
+
+    private static final class ZstdCodec {
+
+        static byte[] compress(byte[] array, int offset, int length) throws IOException {
+            byte[] target = new byte[LENGTH_PREFIX_SIZE + (int) Zstd.compressBound(length)];
+            writeLength(target, length);
+
+            long compressed = Zstd.compressByteArray(
+                target, LENGTH_PREFIX_SIZE, target.length - LENGTH_PREFIX_SIZE, array, offset, length, ZSTD_DEFAULT_LEVEL);
+            if (Zstd.isError(compressed)) {
+                throw new IOException("Zstandard compression failed: " + Zstd.getErrorName(compressed));
+            }
+
+            byte[] result = new byte[LENGTH_PREFIX_SIZE + (int) compressed];
+            System.arraycopy(target, 0, result, 0, result.length);
+            return result;
+        }
+
+        static byte[] decompress(byte[] array, int offset, int length, int maxSize) throws IOException {
+            byte[] target = new byte[readLength(array, offset, length, maxSize)];
+
+            long decompressed = Zstd.decompressByteArray(
+                target, 0, target.length, array, offset + LENGTH_PREFIX_SIZE, length - LENGTH_PREFIX_SIZE);
+            if (Zstd.isError(decompressed) || decompressed != target.length) {
+                throw new IOException("Invalid Zstandard compressed body");
+            }
+
+            return target;
+        }
+    }
+}
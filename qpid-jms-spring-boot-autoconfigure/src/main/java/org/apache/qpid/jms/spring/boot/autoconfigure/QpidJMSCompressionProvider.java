@@ -0,0 +1,286 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.qpid.jms.spring.boot.autoconfigure;
+
+import java.io.IOException;
+import java.lang.reflect.Method;
+import java.util.Map;
+
+import javax.jms.JMSException;
+
+import org.apache.qpid.jms.message.JmsInboundMessageDispatch;
+import org.apache.qpid.jms.message.JmsMessage;
+import org.apache.qpid.jms.message.JmsOutboundMessageDispatch;
+import org.apache.qpid.jms.provider.AsyncResult;
+import org.apache.qpid.jms.provider.Provider;
+import org.apache.qpid.jms.provider.ProviderWrapper;
+import org.apache.qpid.jms.provider.amqp.message.AmqpCodec;
+import org.apache.qpid.jms.provider.amqp.message.AmqpJmsBytesMessageFacade;
+import org.apache.qpid.jms.provider.amqp.message.AmqpJmsMessageFacade;
+import org.apache.qpid.jms.provider.amqp.message.AmqpJmsTextMessageFacade;
+import org.apache.qpid.jms.provider.amqp.message.AmqpMessageSupport;
+import org.apache.qpid.proton.amqp.Binary;
+import org.apache.qpid.proton.amqp.messaging.AmqpValue;
+import org.apache.qpid.proton.amqp.messaging.ApplicationProperties;
+import org.apache.qpid.proton.amqp.messaging.Data;
+import org.apache.qpid.proton.amqp.messaging.Section;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.util.Assert;
+import org.springframework.util.ReflectionUtils;
+
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.Unpooled;
+import io.netty.util.ReferenceCountUtil;
+
+/**
+ * Provider that compresses the bodies of the messages a connection sends and
+ * decompresses those it receives.
+ * <p>
+ * Installed by the {@link QpidJMSConnectionFactory} between each connection and
+ * its transport provider, so every producer and consumer of the connection takes
+ * part whatever API it is used through.  The encoded body section of an outgoing
+ * message is compressed into a binary data section and the message is encoded
+ * again with the {@link QpidJMSCompression#COMPRESSION_PROPERTY} set to the
+ * algorithm, the message given to the send is left as it was.  Bodies below the
+ * minimum size of their destination, and bodies that do not get smaller, are sent
+ * as they are.  An incoming message that carries the property has its original
+ * body section restored and the property removed before the connection delivers
+ * it, so a consumer sees the message type and body that was sent.  Decompression
+ * runs on the connection's I/O thread.
+ * <p>
+ * Only BytesMessage and TextMessage bodies are compressed.  A compressed
+ * TextMessage travels as a BytesMessage, so consumers that do not decompress
+ * receive the compressed bytes instead of failing to decode them as text.
+ * <p>
+ * The Qpid JMS client does not expose the body of its AMQP messages publicly, when
+ * it cannot be reached messages pass through unchanged.
+ */
+public class QpidJMSCompressionProvider extends ProviderWrapper<Provider> {
+
+    private static final Logger LOG = LoggerFactory.getLogger(QpidJMSCompressionProvider.class);
+
+    private static final Method GET_BODY_METHOD;
+    private static final Method SET_BODY_METHOD;
+    private static final Method GET_APPLICATION_PROPERTIES_METHOD;
+    private static final Method SET_MESSAGE_ANNOTATION_METHOD;
+    private static final Method COPY_INTO_METHOD;
+
+    static {
+        Method getBody = ReflectionUtils.findMethod(AmqpJmsMessageFacade.class, "getBody");
+        Method setBody = ReflectionUtils.findMethod(AmqpJmsMessageFacade.class, "setBody", Section.class);
+        Method getApplicationProperties = ReflectionUtils.findMethod(AmqpJmsMessageFacade.class, "getApplicationProperties");
+        Method setMessageAnnotation = ReflectionUtils.findMethod(
+            AmqpJmsMessageFacade.class, "setMessageAnnotation", String.class, Object.class);
+        Method copyInto = ReflectionUtils.findMethod(AmqpJmsMessageFacade.class, "copyInto", AmqpJmsMessageFacade.class);
+        if (getBody != null && setBody != null && getApplicationProperties != null &&
+            setMessageAnnotation != null && copyInto != null) {
+
+            ReflectionUtils.makeAccessible(getBody);
+            ReflectionUtils.makeAccessible(setBody);
+            ReflectionUtils.makeAccessible(getApplicationProperties);
+            ReflectionUtils.makeAccessible(setMessageAnnotation);
+            ReflectionUtils.makeAccessible(copyInto);
+        } else {
+            LOG.warn("Message bodies of the Qpid JMS client cannot be reached, compression is disabled");
+            getBody = null;
+            setBody = null;
+            getApplicationProperties = null;
+            setMessageAnnotation = null;
+            copyInto = null;
+        }
+
+        GET_BODY_METHOD = getBody;
+        SET_BODY_METHOD = setBody;
+        GET_APPLICATION_PROPERTIES_METHOD = getApplicationProperties;
+        SET_MESSAGE_ANNOTATION_METHOD = setMessageAnnotation;
+        COPY_INTO_METHOD = copyInto;
+    }
+
+    private final QpidJMSCompression compression;
+
+    /**
+     * Creates a new compression provider in front of the given provider.
+     *
+     * @param next
+     *      The provider that carries the messages.
+     * @param compression
+     *      The compression settings to apply.
+     */
+    public QpidJMSCompressionProvider(Provider next, QpidJMSCompression compression) {
+        super(next);
+
+        Assert.notNull(compression, "Compression settings must not be null");
+        this.compression = compression;
+    }
+
+    public QpidJMSCompression getCompression() {
+        return compression;
+    }
+
+    @Override
+    public void send(JmsOutboundMessageDispatch envelope, AsyncResult request) throws IOException, JMSException {
+        if (GET_BODY_METHOD != null) {
+            compress(envelope);
+        }
+
+        super.send(envelope, request);
+    }
+
+    @Override
+    public void onInboundMessage(JmsInboundMessageDispatch envelope) {
+        if (GET_BODY_METHOD != null) {
+            decompress(envelope);
+        }
+
+        super.onInboundMessage(envelope);
+    }
+
+    //----- Internal implementation ------------------------------------------//
+
+    private void compress(JmsOutboundMessageDispatch envelope) throws JMSException {
+        AmqpJmsMessageFacade facade = getFacade(envelope.getMessage());
+        if (!(facade instanceof AmqpJmsBytesMessageFacade) && !(facade instanceof AmqpJmsTextMessageFacade)) {
+            return;
+        }
+
+        boolean text = facade instanceof AmqpJmsTextMessageFacade;
+
+        Section body = (Section) ReflectionUtils.invokeMethod(GET_BODY_METHOD, facade);
+        if (body == null) {
+            return;
+        }
+
+        ByteBuf encodedBody = AmqpCodec.encode(body);
+        try {
+            int size = encodedBody.readableBytes();
+
+            QpidJMSCompression.Algorithm algorithm = compression.getAlgorithm(envelope.getDestination(), size);
+            if (algorithm == QpidJMSCompression.Algorithm.NONE) {
+                return;
+            }
+
+            byte[] compressed;
+            if (encodedBody.hasArray()) {
+                compressed = QpidJMSCompression.compress(
+                    algorithm, encodedBody.array(), encodedBody.arrayOffset() + encodedBody.readerIndex(), size);
+            } else {
+                byte[] bytes = new byte[size];
+                encodedBody.getBytes(encodedBody.readerIndex(), bytes);
+                compressed = QpidJMSCompression.compress(algorithm, bytes, 0, size);
+            }
+
+            if (compressed.length >= size) {
+                return;
+            }
+
+            // The body is swapped only while the message is encoded again, the
+            // message given to the send keeps its original body and properties.
+            try {
+                ReflectionUtils.invokeMethod(SET_BODY_METHOD, facade, new Data(new Binary(compressed)));
+                facade.setApplicationProperty(QpidJMSCompression.COMPRESSION_PROPERTY, algorithm.getPropertyValue());
+                if (text) {
+                    setMessageType(facade, AmqpMessageSupport.JMS_BYTES_MESSAGE);
+                }
+
+                Object payload = facade.encodeMessage();
+                ReferenceCountUtil.release(envelope.getPayload());
+                envelope.setPayload(payload);
+            } finally {
+                ReflectionUtils.invokeMethod(SET_BODY_METHOD, facade, body);
+                removeApplicationProperty(facade, QpidJMSCompression.COMPRESSION_PROPERTY);
+                if (text) {
+                    setMessageType(facade, AmqpMessageSupport.JMS_TEXT_MESSAGE);
+                }
+            }
+        } catch (IOException | RuntimeException ex) {
+            LOG.warn("Could not compress the body of message {}, it is sent uncompressed: {}",
+                     envelope.getMessageId(), ex.getMessage());
+        } finally {
+            encodedBody.release();
+        }
+    }
+
+    private void decompress(JmsInboundMessageDispatch envelope) {
+        AmqpJmsMessageFacade facade = getFacade(envelope.getMessage());
+        if (facade == null) {
+            return;
+        }
+
+        try {
+            Object value = facade.getApplicationProperty(QpidJMSCompression.COMPRESSION_PROPERTY);
+            if (value == null) {
+                return;
+            }
+
+            QpidJMSCompression.Algorithm algorithm = QpidJMSCompression.Algorithm.fromPropertyValue(value.toString());
+            if (algorithm == null || algorithm == QpidJMSCompression.Algorithm.NONE) {
+                throw new IOException("Unknown compression algorithm " + value);
+            }
+
+            Section body = (Section) ReflectionUtils.invokeMethod(GET_BODY_METHOD, facade);
+            if (!(body instanceof Data)) {
+                throw new IOException("Compressed body is not a data section");
+            }
+
+            Binary binary = ((Data) body).getValue();
+            byte[] decompressed = QpidJMSCompression.decompress(
+                algorithm, binary.getArray(), binary.getArrayOffset(), binary.getLength(), compression.getMaxDecompressedSize());
+
+            Section original = AmqpCodec.decode(Unpooled.wrappedBuffer(decompressed));
+
+            // A TextMessage was sent as a BytesMessage, its body tells them apart.
+            if (original instanceof AmqpValue && facade instanceof AmqpJmsBytesMessageFacade) {
+                AmqpJmsTextMessageFacade textFacade = new AmqpJmsTextMessageFacade();
+                ReflectionUtils.invokeMethod(COPY_INTO_METHOD, facade, textFacade);
+                setMessageType(textFacade, AmqpMessageSupport.JMS_TEXT_MESSAGE);
+
+                JmsMessage message = textFacade.asJmsMessage();
+                message.onDispatch();
+                envelope.setMessage(message);
+                facade = textFacade;
+            }
+
+            ReflectionUtils.invokeMethod(SET_BODY_METHOD, facade, original);
+            removeApplicationProperty(facade, QpidJMSCompression.COMPRESSION_PROPERTY);
+        } catch (IOException | JMSException | RuntimeException ex) {
+            LOG.warn("Could not decompress the body of message {}, it is delivered as received: {}",
+                     facade.getMessageId(), ex.getMessage());
+        }
+    }
+
+    private static void setMessageType(AmqpJmsMessageFacade facade, byte type) {
+        ReflectionUtils.invokeMethod(SET_MESSAGE_ANNOTATION_METHOD, facade, AmqpMessageSupport.JMS_MSG_TYPE, type);
+    }
+
+    @SuppressWarnings("unchecked")
+    private static void removeApplicationProperty(AmqpJmsMessageFacade facade, String name) {
+        ApplicationProperties properties =
+            (ApplicationProperties) ReflectionUtils.invokeMethod(GET_APPLICATION_PROPERTIES_METHOD, facade);
+        if (properties != null && properties.getValue() != null) {
+            ((Map<String, Object>) properties.getValue()).remove(name);
+        }
+    }
+
+    private static AmqpJmsMessageFacade getFacade(JmsMessage message) {
+        if (message != null && message.getFacade() instanceof AmqpJmsMessageFacade) {
+            return (AmqpJmsMessageFacade) message.getFacade();
+        }
+
+        return null;
+    }
+}
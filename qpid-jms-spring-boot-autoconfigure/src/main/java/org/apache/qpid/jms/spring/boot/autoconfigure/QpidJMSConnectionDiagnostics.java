@@ -0,0 +1,408 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.qpid.jms.spring.boot.autoconfigure;
+
+import java.lang.reflect.Field;
+import java.lang.reflect.Method;
+import java.net.URI;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.TimeUnit;
+
+import javax.jms.ConnectionFactory;
+import javax.jms.Destination;
+import javax.jms.JMSException;
+
+import org.apache.qpid.jms.JmsConnection;
+import org.apache.qpid.jms.JmsDestination;
+import org.apache.qpid.jms.JmsMessageConsumer;
+import org.apache.qpid.jms.JmsMessageProducer;
+import org.apache.qpid.jms.JmsSession;
+import org.apache.qpid.jms.provider.Provider;
+import org.apache.qpid.jms.provider.ProviderWrapper;
+import org.apache.qpid.jms.provider.amqp.AmqpConnection;
+import org.apache.qpid.jms.provider.amqp.AmqpConsumer;
+import org.apache.qpid.jms.provider.amqp.AmqpProducer;
+import org.apache.qpid.jms.provider.amqp.AmqpProvider;
+import org.apache.qpid.jms.provider.amqp.AmqpSession;
+import org.apache.qpid.jms.provider.failover.FailoverProvider;
+import org.apache.qpid.proton.engine.Link;
+import org.messaginghub.pooled.jms.JmsPoolConnectionFactory;
+import org.springframework.util.ClassUtils;
+import org.springframework.util.ReflectionUtils;
+
+/**
+ * Utility methods that describe the state of the connections created by the
+ * Qpid JMS connection factories, down to the credit and settlement state of the
+ * AMQP links of each consumer and producer.
+ * <p>
+ * A consumer that holds prefetched messages while its link has no credit left
+ * is not keeping up with its deliveries, one with credit and an empty prefetch
+ * buffer is waiting for the broker.  A consumer whose selector is applied on
+ * the client reports the messages it discarded, a count that keeps growing
+ * means the broker delivers messages the consumer does not select.  A producer
+ * without credit is held back by the broker.  The link state is read on the connection's own I/O thread, the
+ * session and consumer state is read from the client and may be slightly stale.
+ */
+public final class QpidJMSConnectionDiagnostics {
+
+    /**
+     * Maximum time in milliseconds to wait for the I/O thread of a connection to
+     * report the state of its links.
+     */
+    public static final long LINK_STATE_TIMEOUT = 5000;
+
+    private static final boolean POOLED_JMS_PRESENT = ClassUtils.isPresent(
+        "org.messaginghub.pooled.jms.JmsPoolConnectionFactory", QpidJMSConnectionDiagnostics.class.getClassLoader());
+
+    private static final Field CONNECTION_SESSIONS_FIELD = findField(JmsConnection.class, "sessions");
+    private static final Field CONNECTION_PROVIDER_FIELD = findField(JmsConnection.class, "provider");
+    private static final Field SESSION_CONSUMERS_FIELD = findField(JmsSession.class, "consumers");
+    private static final Field SESSION_PRODUCERS_FIELD = findField(JmsSession.class, "producers");
+    private static final Method SESSION_ID_METHOD = findMethod(JmsSession.class, "getSessionId");
+    private static final Method PRODUCER_ID_METHOD = findMethod(JmsMessageProducer.class, "getProducerId");
+    private static final Field FAILOVER_PROVIDER_FIELD = findField(FailoverProvider.class, "provider");
+    private static final Field AMQP_CONNECTION_FIELD = findField(AmqpProvider.class, "connection");
+    private static final Field AMQP_SERIALIZER_FIELD = findField(AmqpProvider.class, "serializer");
+    private static final Field AMQP_SESSIONS_FIELD = findField(AmqpConnection.class, "sessions");
+    private static final Field AMQP_CONSUMERS_FIELD = findField(AmqpSession.class, "consumers");
+    private static final Field AMQP_PRODUCERS_FIELD = findField(AmqpSession.class, "producers");
+
+    private QpidJMSConnectionDiagnostics() {
+    }
+
+    /**
+     * Returns the Qpid JMS connection factories behind the given factory.
+     *
+     * @param connectionFactory
+     *      The factory to unwrap, may be a pooled or routing connection factory.
+     *
+     * @return the Qpid JMS connection factories, empty if the factory is not one.
+     */
+    public static List<QpidJMSConnectionFactory> getConnectionFactories(Object connectionFactory) {
+        if (connectionFactory instanceof QpidJMSConnectionFactory) {
+            return Collections.singletonList((QpidJMSConnectionFactory) connectionFactory);
+        }
+
+        if (connectionFactory instanceof QpidJMSRoutingConnectionFactory) {
+            List<QpidJMSConnectionFactory> connectionFactories = new ArrayList<>();
+            for (ConnectionFactory brokerFactory : ((QpidJMSRoutingConnectionFactory) connectionFactory).getConnectionFactories()) {
+                connectionFactories.addAll(getConnectionFactories(brokerFactory));
+            }
+
+            return connectionFactories;
+        }
+
+        if (POOLED_JMS_PRESENT) {
+            Object delegate = PooledConnectionFactoryUnwrapper.unwrap(connectionFactory);
+            if (delegate != null && delegate != connectionFactory) {
+                return getConnectionFactories(delegate);
+            }
+        }
+
+        return Collections.emptyList();
+    }
+
+    /**
+     * Describes the sessions, consumers and producers of the given connection.
+     *
+     * @param connection
+     *      The connection to describe.
+     *
+     * @return the connection state as nested maps and lists of simple values.
+     */
+    public static Map<String, Object> describe(JmsConnection connection) {
+        Map<String, Object> description = new LinkedHashMap<>();
+
+        URI remoteURI = connection.getConnectedURI() != null ? connection.getConnectedURI() : connection.getConfiguredURI();
+        description.put("remoteURI", remoteURI != null ? sanitize(remoteURI.toString()) : null);
+        try {
+            description.put("clientId", connection.getClientID());
+        } catch (JMSException ex) {
+            description.put("clientId", null);
+        }
+        description.put("connected", connection.isConnected());
+        description.put("failed", connection.isFailed());
+
+        Map<Object, LinkState> links = getLinks(connection);
+        QpidJMSSelectorProvider selectors = QpidJMSSelectorProvider.find(connection);
+
+        List<Map<String, Object>> sessions = new ArrayList<>();
+        for (JmsSession session : values(CONNECTION_SESSIONS_FIELD, connection, JmsSession.class)) {
+            sessions.add(describe(session, links, selectors));
+        }
+        description.put("sessions", sessions);
+
+        return description;
+    }
+
+    /**
+     * Removes the options and the user information of a remote URI, or of each of
+     * the peers of a failover URI, both of which can carry credentials.
+     *
+     * @param remoteURI
+     *      The remote URI, possibly a failover URI.
+     *
+     * @return the URI without its query options or user information.
+     */
+    public static String sanitize(String remoteURI) {
+        return remoteURI.replaceAll("\\?[^,)]*", "").replaceAll("//[^/@,()]*@", "//");
+    }
+
+    /**
+     * Returns the provider the given connection sends its requests to.
+     *
+     * @param connection
+     *      The connection to inspect.
+     *
+     * @return the provider of the connection or null if it cannot be reached.
+     */
+    static Provider getProvider(JmsConnection connection) {
+        return (Provider) getField(CONNECTION_PROVIDER_FIELD, connection);
+    }
+
+    /**
+     * Returns the AMQP connection behind the given provider.  The connection is
+     * read without going through its I/O thread, only state that no longer
+     * changes should be taken from it.
+     *
+     * @param provider
+     *      The provider to unwrap, may be a failover provider.
+     *
+     * @return the AMQP connection or null if it cannot be reached.
+     */
+    static AmqpConnection getAmqpConnection(Provider provider) {
+        return (AmqpConnection) getField(AMQP_CONNECTION_FIELD, getAmqpProvider(provider));
+    }
+
+    //----- Internal implementation ------------------------------------------//
+
+    private static Map<String, Object> describe(JmsSession session, Map<Object, LinkState> links,
+                                                QpidJMSSelectorProvider selectors) {
+        Map<String, Object> description = new LinkedHashMap<>();
+
+        description.put("id", String.valueOf(invoke(SESSION_ID_METHOD, session)));
+        try {
+            description.put("acknowledgeMode", session.getAcknowledgeMode());
+        } catch (JMSException ex) {
+            description.put("acknowledgeMode", null);
+        }
+        description.put("transacted", session.isTransacted());
+
+        List<Map<String, Object>> consumers = new ArrayList<>();
+        for (JmsMessageConsumer consumer : values(SESSION_CONSUMERS_FIELD, session, JmsMessageConsumer.class)) {
+            Map<String, Object> consumerDescription = new LinkedHashMap<>();
+            consumerDescription.put("id", consumer.getConsumerId().toString());
+            consumerDescription.put("destination", name(consumer.getDestination()));
+            consumerDescription.put("durable", consumer.isDurableSubscription());
+            consumerDescription.put("browser", consumer.isBrowser());
+            consumerDescription.put("prefetchSize", consumer.getPrefetchSize());
+            consumerDescription.put("prefetched", QpidJMSConsumerSupport.getPrefetchedMessageCount(consumer));
+            try {
+                consumerDescription.put("selector", consumer.getMessageSelector());
+            } catch (JMSException ex) {
+                consumerDescription.put("selector", null);
+            }
+            if (selectors != null) {
+                consumerDescription.put("discarded", selectors.getDiscardedMessageCount(consumer.getConsumerId()));
+            }
+            describe(links.get(consumer.getConsumerId()), consumerDescription);
+            consumers.add(consumerDescription);
+        }
+        description.put("consumers", consumers);
+
+        List<Map<String, Object>> producers = new ArrayList<>();
+        for (JmsMessageProducer producer : values(SESSION_PRODUCERS_FIELD, session, JmsMessageProducer.class)) {
+            Object producerId = invoke(PRODUCER_ID_METHOD, producer);
+
+            Map<String, Object> producerDescription = new LinkedHashMap<>();
+            producerDescription.put("id", String.valueOf(producerId));
+            try {
+                producerDescription.put("destination", name(producer.getDestination()));
+            } catch (JMSException ex) {
+                producerDescription.put("destination", null);
+            }
+            describe(producerId != null ? links.get(producerId) : null, producerDescription);
+            producers.add(producerDescription);
+        }
+        description.put("producers", producers);
+
+        return description;
+    }
+
+    private static void describe(LinkState link, Map<String, Object> description) {
+        if (link != null) {
+            description.put("credit", link.credit);
+            description.put("queued", link.queued);
+            description.put("unsettled", link.unsettled);
+        }
+    }
+
+    private static String name(Destination destination) {
+        if (destination instanceof JmsDestination) {
+            return ((JmsDestination) destination).getName();
+        }
+
+        return destination != null ? destination.toString() : null;
+    }
+
+    // Reads the state of every link of the connection on its I/O thread, keyed
+    // by the id of the consumer or producer the link belongs to.
+    private static Map<Object, LinkState> getLinks(JmsConnection connection) {
+        final AmqpProvider provider = getAmqpProvider(getProvider(connection));
+        if (provider == null || AMQP_SERIALIZER_FIELD == null) {
+            return Collections.emptyMap();
+        }
+
+        ExecutorService serializer = (ExecutorService) getField(AMQP_SERIALIZER_FIELD, provider);
+        if (serializer == null) {
+            return Collections.emptyMap();
+        }
+
+        try {
+            return serializer.submit(new Callable<Map<Object, LinkState>>() {
+
+                @Override
+                public Map<Object, LinkState> call() throws Exception {
+                    Map<Object, LinkState> links = new HashMap<>();
+
+                    AmqpConnection amqpConnection = (AmqpConnection) getField(AMQP_CONNECTION_FIELD, provider);
+                    for (AmqpSession session : values(AMQP_SESSIONS_FIELD, amqpConnection, AmqpSession.class)) {
+                        for (AmqpConsumer consumer : values(AMQP_CONSUMERS_FIELD, session, AmqpConsumer.class)) {
+                            links.put(consumer.getConsumerId(), new LinkState(consumer.getEndpoint()));
+                        }
+                        for (AmqpProducer producer : values(AMQP_PRODUCERS_FIELD, session, AmqpProducer.class)) {
+                            links.put(producer.getProducerId(), new LinkState(producer.getEndpoint()));
+                        }
+                    }
+
+                    return links;
+                }
+            }).get(LINK_STATE_TIMEOUT, TimeUnit.MILLISECONDS);
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+            return Collections.emptyMap();
+        } catch (Exception ex) {
+            return Collections.emptyMap();
+        }
+    }
+
+    private static AmqpProvider getAmqpProvider(Provider provider) {
+        while (provider != null) {
+            if (provider instanceof AmqpProvider) {
+                return (AmqpProvider) provider;
+            } else if (provider instanceof ProviderWrapper) {
+                provider = ((ProviderWrapper<?>) provider).getNext();
+            } else if (provider instanceof FailoverProvider) {
+                provider = (Provider) getField(FAILOVER_PROVIDER_FIELD, provider);
+            } else {
+                return null;
+            }
+        }
+
+        return null;
+    }
+
+    private static <T> List<T> values(Field field, Object target, Class<T> type) {
+        Object map = getField(field, target);
+        if (!(map instanceof Map)) {
+            return Collections.emptyList();
+        }
+
+        List<T> values = new ArrayList<>();
+        for (Object value : new ArrayList<>(((Map<?, ?>) map).values())) {
+            if (type.isInstance(value)) {
+                values.add(type.cast(value));
+            }
+        }
+
+        return values;
+    }
+
+    private static Object getField(Field field, Object target) {
+        if (field == null || target == null) {
+            return null;
+        }
+
+        try {
+            return field.get(target);
+        } catch (Exception ex) {
+            return null;
+        }
+    }
+
+    private static Object invoke(Method method, Object target) {
+        if (method == null) {
+            return null;
+        }
+
+        try {
+            return method.invoke(target);
+        } catch (Exception ex) {
+            return null;
+        }
+    }
+
+    private static Field findField(Class<?> type, String name) {
+        Field field = ReflectionUtils.findField(type, name);
+        if (field != null) {
+            ReflectionUtils.makeAccessible(field);
+        }
+
+        return field;
+    }
+
+    private static Method findMethod(Class<?> type, String name) {
+        Method method = ReflectionUtils.findMethod(type, name);
+        if (method != null) {
+            ReflectionUtils.makeAccessible(method);
+        }
+
+        return method;
+    }
+
+    private static final class LinkState {
+
+        private final int credit;
+        private final int queued;
+        private final int unsettled;
+
+        LinkState(Link link) {
+            this.credit = link.getCredit();
+            this.queued = link.getQueued();
+            this.unsettled = link.getUnsettled();
+        }
+    }
+
+    // Kept separate so the pool classes are only loaded when they are present.
+    private static final class PooledConnectionFactoryUnwrapper {
+
+        static Object unwrap(Object connectionFactory) {
+            if (connectionFactory instanceof JmsPoolConnectionFactory) {
+                return ((JmsPoolConnectionFactory) connectionFactory).getConnectionFactory();
+            }
+
+            return null;
+        }
+    }
+}
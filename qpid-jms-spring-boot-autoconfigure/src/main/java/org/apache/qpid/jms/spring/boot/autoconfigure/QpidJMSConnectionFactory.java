@@ -0,0 +1,274 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.qpid.jms.spring.boot.autoconfigure;
+
+import java.net.URI;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.WeakHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+import javax.jms.Connection;
+import javax.jms.JMSException;
+import javax.jms.QueueConnection;
+import javax.jms.TopicConnection;
+
+import org.apache.qpid.jms.JmsConnection;
+import org.apache.qpid.jms.JmsConnectionFactory;
+import org.apache.qpid.jms.JmsConnectionListener;
+import org.apache.qpid.jms.meta.JmsConnectionInfo;
+import org.apache.qpid.jms.provider.Provider;
+import org.springframework.util.Assert;
+
+/**
+ * JmsConnectionFactory that registers a set of {@link JmsConnectionListener}
+ * instances with every connection it creates.
+ * <p>
+ * The Qpid JMS client only accepts connection listeners on a connection, this
+ * factory allows listeners such as the metrics binding to observe every
+ * connection the application creates, including those held by a pool.  When
+ * compression is configured the provider of each connection is wrapped in a
+ * {@link QpidJMSCompressionProvider}, when consumer selectors may be applied
+ * on the client in a {@link QpidJMSSelectorProvider}, and when send metrics are
+ * set in a {@link QpidJMSSendMetricsProvider}.
+ * <p>
+ * The connections the factory created and that are still open are tracked, so
+ * health checks and diagnostics can inspect them without opening connections
+ * of their own.  Connections the application drops without closing them are
+ * not kept from being collected.
+ * <p>
+ * The client reads every bean property of the factory, and the properties of
+ * the objects they return, for each connection it creates.  The accessors added
+ * here are therefore not named as bean getters, reading the lists and settings
+ * they return that way would call methods such as List.getFirst(), which fail
+ * on an empty list.
+ */
+public class QpidJMSConnectionFactory extends JmsConnectionFactory {
+
+    private final List<JmsConnectionListener> connectionListeners = new CopyOnWriteArrayList<>();
+    private final Map<JmsConnection, Boolean> connections = new WeakHashMap<>();
+    private final ThreadLocal<Boolean> withoutClientID = new ThreadLocal<>();
+
+    private QpidJMSCompression compression;
+    private QpidJMSSelectorFilter selectorFilter;
+    private QpidJMSSendMetrics sendMetrics;
+
+    /**
+     * Creates a new QpidJMSConnectionFactory for bean style configuration.
+     */
+    public QpidJMSConnectionFactory() {
+    }
+
+    /**
+     * Creates a new QpidJMSConnectionFactory that connects to the given URI.
+     *
+     * @param remoteURI
+     *      The remote URI of the peer to connect to.
+     */
+    public QpidJMSConnectionFactory(String remoteURI) {
+        super(remoteURI);
+    }
+
+    /**
+     * Adds a listener that is registered with each connection created after this call.
+     *
+     * @param listener
+     *      The listener to add.
+     */
+    public void addConnectionListener(JmsConnectionListener listener) {
+        Assert.notNull(listener, "Connection listener must not be null");
+        connectionListeners.add(listener);
+    }
+
+    /**
+     * Removes a listener so that it is not registered with connections created after this call.
+     *
+     * @param listener
+     *      The listener to remove.
+     *
+     * @return true if the listener was previously added.
+     */
+    public boolean removeConnectionListener(JmsConnectionListener listener) {
+        return connectionListeners.remove(listener);
+    }
+
+    /**
+     * @return the listeners registered with each connection this factory creates.
+     */
+    public List<JmsConnectionListener> connectionListeners() {
+        return Collections.unmodifiableList(connectionListeners);
+    }
+
+    /**
+     * @return the connections created by this factory that have not been closed.
+     */
+    public List<JmsConnection> openConnections() {
+        synchronized (connections) {
+            List<JmsConnection> open = new ArrayList<>(connections.size());
+            for (Iterator<JmsConnection> iterator = connections.keySet().iterator(); iterator.hasNext();) {
+                JmsConnection connection = iterator.next();
+                if (connection.isClosed()) {
+                    iterator.remove();
+                } else {
+                    open.add(connection);
+                }
+            }
+
+            return open;
+        }
+    }
+
+    /**
+     * @return the compression applied by connections this factory creates, or null.
+     */
+    public QpidJMSCompression compression() {
+        return compression;
+    }
+
+    /**
+     * Sets the compression applied by connections created after this call.
+     *
+     * @param compression
+     *      The compression settings, or null to send and receive bodies unchanged.
+     */
+    public void setCompression(QpidJMSCompression compression) {
+        this.compression = compression;
+    }
+
+    /**
+     * @return the selector settings of connections this factory creates, or null.
+     */
+    public QpidJMSSelectorFilter selectorFilter() {
+        return selectorFilter;
+    }
+
+    /**
+     * Sets how connections created after this call apply the selectors of their
+     * consumers, the compiled selectors are shared by all of them.
+     *
+     * @param selectorFilter
+     *      The selector settings, or null to leave selectors to the broker.
+     */
+    public void setSelectorFilter(QpidJMSSelectorFilter selectorFilter) {
+        this.selectorFilter = selectorFilter;
+    }
+
+    /**
+     * @return the metrics the sends of connections this factory creates are timed with, or null.
+     */
+    public QpidJMSSendMetrics sendMetrics() {
+        return sendMetrics;
+    }
+
+    /**
+     * Sets the metrics that the sends made without a CompletionListener by connections
+     * created after this call are timed with.
+     *
+     * @param sendMetrics
+     *      The send metrics, or null to leave sends untimed.
+     */
+    public void setSendMetrics(QpidJMSSendMetrics sendMetrics) {
+        this.sendMetrics = sendMetrics;
+    }
+
+    /**
+     * Creates a connection with a generated client ID in place of the one set on
+     * this factory, for connections such as health probes that must not take the
+     * client ID the application connects with.
+     *
+     * @return a new connection that is tracked and observed like any other.
+     *
+     * @throws JMSException if the connection cannot be created.
+     */
+    public Connection createConnectionWithoutClientID() throws JMSException {
+        withoutClientID.set(Boolean.TRUE);
+        try {
+            return createConnection();
+        } finally {
+            withoutClientID.remove();
+        }
+    }
+
+    @Override
+    public Connection createConnection(String username, String password) throws JMSException {
+        return registerListeners(super.createConnection(username, password));
+    }
+
+    @Override
+    public QueueConnection createQueueConnection(String username, String password) throws JMSException {
+        return registerListeners(super.createQueueConnection(username, password));
+    }
+
+    @Override
+    public TopicConnection createTopicConnection(String username, String password) throws JMSException {
+        return registerListeners(super.createTopicConnection(username, password));
+    }
+
+    @Override
+    protected JmsConnectionInfo configureConnectionInfo(String username, String password) throws JMSException {
+        JmsConnectionInfo connectionInfo = super.configureConnectionInfo(username, password);
+        if (withoutClientID.get() != null && connectionInfo.isExplicitClientID()) {
+            connectionInfo.setClientId(getClientIdGenerator().generateId(), false);
+        }
+
+        return connectionInfo;
+    }
+
+    @Override
+    protected Provider createProvider(URI remoteURI) throws Exception {
+        Provider provider = super.createProvider(remoteURI);
+
+        // Selectors are applied first so discarded messages are never decompressed.
+        if (selectorFilter != null && selectorFilter.getMode() != QpidJMSSelectorFilter.Mode.BROKER) {
+            provider = new QpidJMSSelectorProvider(provider, selectorFilter);
+        }
+
+        if (compression != null) {
+            provider = new QpidJMSCompressionProvider(provider, compression);
+        }
+
+        return sendMetrics != null ? new QpidJMSSendMetricsProvider(provider, sendMetrics) : provider;
+    }
+
+    private <T extends Connection> T registerListeners(T connection) {
+        if (connection instanceof JmsConnection) {
+            JmsConnection jmsConnection = (JmsConnection) connection;
+
+            synchronized (connections) {
+                connections.put(jmsConnection, Boolean.TRUE);
+            }
+
+            for (JmsConnectionListener listener : connectionListeners) {
+                jmsConnection.addConnectionListener(listener);
+            }
+
+            // A connection with a configured client ID connects before it is
+            // returned, so the listeners are told about that connection here.
+            if (jmsConnection.isConnected()) {
+                URI connectedURI = jmsConnection.getConnectedURI();
+                for (JmsConnectionListener listener : connectionListeners) {
+                    listener.onConnectionEstablished(connectedURI);
+                }
+            }
+        }
+
+        return connection;
+    }
+}
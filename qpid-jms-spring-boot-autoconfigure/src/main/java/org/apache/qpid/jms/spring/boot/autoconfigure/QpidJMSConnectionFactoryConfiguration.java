@@ -16,12 +16,26 @@
  */
 package org.apache.qpid.jms.spring.boot.autoconfigure;
 
+import java.util.ArrayList;
+import java.util.List;
+
 import javax.jms.ConnectionFactory;
 
-import org.apache.qpid.jms.JmsConnectionFactory;
+import org.apache.qpid.jms.JmsConnectionListener;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.boot.autoconfigure.condition.ConditionMessage;
+import org.springframework.boot.autoconfigure.condition.ConditionOutcome;
 import org.springframework.boot.autoconfigure.condition.ConditionalOnMissingBean;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnMissingClass;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.boot.autoconfigure.condition.SpringBootCondition;
+import org.springframework.boot.bind.RelaxedPropertyResolver;
 import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.ConditionContext;
+import org.springframework.context.annotation.Conditional;
 import org.springframework.context.annotation.Configuration;
+import org.springframework.context.annotation.Import;
+import org.springframework.core.type.AnnotatedTypeMetadata;
 
 /**
  * Class that is responsible for creating and configuration the resulting
@@ -29,11 +43,155 @@ import org.springframework.context.annotation.Configuration;
  */
 @Configuration
 @ConditionalOnMissingBean(ConnectionFactory.class)
+@Import(QpidJMSPooledConnectionFactoryConfiguration.class)
 public class QpidJMSConnectionFactoryConfiguration {
 
     @Bean
-    public JmsConnectionFactory jmsConnectionFactory(QpidJMSProperties properties) {
-        return new QpidJMSConnectionFactoryFactory(properties)
-            .createConnectionFactory(JmsConnectionFactory.class);
+    @ConditionalOnProperty(prefix = "spring.qpidjms.pool", name = "enabled", havingValue = "false", matchIfMissing = true)
+    @Conditional(SingleBrokerCondition.class)
+    public QpidJMSConnectionFactory jmsConnectionFactory(QpidJMSProperties properties,
+                                                         ObjectProvider<List<JmsConnectionListener>> connectionListeners) {
+        return createConnectionFactory(properties, connectionListeners.getIfAvailable());
+    }
+
+    @Bean
+    @ConditionalOnProperty(prefix = "spring.qpidjms.pool", name = "enabled", havingValue = "false", matchIfMissing = true)
+    @Conditional(MultipleBrokersCondition.class)
+    public QpidJMSRoutingConnectionFactory routingJmsConnectionFactory(QpidJMSProperties properties,
+                                                                       ObjectProvider<List<JmsConnectionListener>> connectionListeners) {
+        return createRoutingConnectionFactory(properties, connectionListeners.getIfAvailable());
+    }
+
+    @Bean
+    @ConditionalOnProperty(prefix = "spring.qpidjms.failover", name = "warmStandby", havingValue = "true", matchIfMissing = false)
+    @Conditional(SingleBrokerCondition.class)
+    public QpidJMSFailoverStandby qpidJMSFailoverStandby(QpidJMSProperties properties) {
+        QpidJMSConnectionFactoryFactory factoryFactory = new QpidJMSConnectionFactoryFactory(properties);
+
+        QpidJMSFailoverStandby standby = new QpidJMSFailoverStandby(
+            factoryFactory.applyFailoverOptions(factoryFactory.applyTransportOptions(factoryFactory.getRemoteURI())),
+            properties.getUsername(), properties.getPassword());
+
+        if (properties.getConnectTimeout() != null) {
+            standby.setConnectTimeout(properties.getConnectTimeout());
+        }
+
+        standby.setSslContext(factoryFactory.getSslContext());
+
+        return standby;
+    }
+
+    static ConnectionFactory createTargetConnectionFactory(QpidJMSProperties properties,
+                                                           List<JmsConnectionListener> connectionListeners) {
+        if (properties.getBrokers().isEmpty()) {
+            return createConnectionFactory(properties, connectionListeners);
+        } else {
+            return createRoutingConnectionFactory(properties, connectionListeners);
+        }
+    }
+
+    static QpidJMSConnectionFactory createConnectionFactory(QpidJMSProperties properties,
+                                                            List<JmsConnectionListener> connectionListeners) {
+        QpidJMSConnectionFactoryFactory factoryFactory = new QpidJMSConnectionFactoryFactory(properties);
+
+        // The warm standby opens its connection with the SSLContext the application's
+        // connections then resume the next peer's TLS session from.
+        if (connectionListeners != null) {
+            for (JmsConnectionListener listener : connectionListeners) {
+                if (listener instanceof QpidJMSFailoverStandby && ((QpidJMSFailoverStandby) listener).getSslContext() != null) {
+                    factoryFactory.setSslContext(((QpidJMSFailoverStandby) listener).getSslContext());
+                }
+            }
+        }
+
+        QpidJMSConnectionFactory connectionFactory = factoryFactory.createConnectionFactory(QpidJMSConnectionFactory.class);
+
+        addConnectionListeners(connectionFactory, connectionListeners);
+
+        return connectionFactory;
+    }
+
+    static QpidJMSRoutingConnectionFactory createRoutingConnectionFactory(QpidJMSProperties properties,
+                                                                          List<JmsConnectionListener> connectionListeners) {
+        QpidJMSConnectionFactoryFactory factoryFactory = new QpidJMSConnectionFactoryFactory(properties);
+
+        List<QpidJMSConnectionFactory> brokerFactories = new ArrayList<>(properties.getBrokers().size());
+        for (QpidJMSProperties.Broker broker : properties.getBrokers()) {
+            QpidJMSConnectionFactory connectionFactory =
+                factoryFactory.createConnectionFactory(QpidJMSConnectionFactory.class, broker);
+            addConnectionListeners(connectionFactory, connectionListeners);
+            brokerFactories.add(connectionFactory);
+        }
+
+        QpidJMSRoutingConnectionFactory routingConnectionFactory = new QpidJMSRoutingConnectionFactory(brokerFactories);
+        routingConnectionFactory.setStrategy(properties.getRouting().getStrategy());
+        routingConnectionFactory.setRetryInterval(properties.getRouting().getRetryInterval());
+
+        return routingConnectionFactory;
+    }
+
+    private static void addConnectionListeners(QpidJMSConnectionFactory connectionFactory,
+                                               List<JmsConnectionListener> connectionListeners) {
+        if (connectionListeners != null) {
+            for (JmsConnectionListener listener : connectionListeners) {
+                connectionFactory.addConnectionListener(listener);
+
+                // The metrics also time the sends of templates that do not report them.
+                if (listener instanceof QpidJMSSendMetrics && connectionFactory.sendMetrics() == null) {
+                    connectionFactory.setSendMetrics((QpidJMSSendMetrics) listener);
+                }
+            }
+        }
+    }
+
+    /**
+     * Fails on startup when pooling is enabled but the pool library is missing,
+     * rather than leaving the application without a ConnectionFactory.
+     */
+    @Configuration
+    @ConditionalOnMissingClass(QpidJMSPooledConnectionFactoryConfiguration.POOL_CLASS_NAME)
+    @ConditionalOnProperty(prefix = "spring.qpidjms.pool", name = "enabled", havingValue = "true", matchIfMissing = false)
+    static class PoolMissingConfiguration {
+
+        PoolMissingConfiguration() {
+            throw new IllegalStateException(QpidJMSPooledConnectionFactoryConfiguration.POOL_MISSING_MESSAGE);
+        }
+    }
+
+    /**
+     * Matches when spring.qpidjms.brokers lists at least one broker.
+     */
+    static class MultipleBrokersCondition extends SpringBootCondition {
+
+        @Override
+        public ConditionOutcome getMatchOutcome(ConditionContext context, AnnotatedTypeMetadata metadata) {
+            ConditionMessage.Builder message = ConditionMessage.forCondition("Qpid JMS brokers");
+            if (brokersConfigured(context)) {
+                return ConditionOutcome.match(message.found("property").items("spring.qpidjms.brokers"));
+            } else {
+                return ConditionOutcome.noMatch(message.didNotFind("property").items("spring.qpidjms.brokers"));
+            }
+        }
+
+        static boolean brokersConfigured(ConditionContext context) {
+            return !new RelaxedPropertyResolver(context.getEnvironment(), "spring.qpidjms.")
+                .getSubProperties("brokers").isEmpty();
+        }
+    }
+
+    /**
+     * Matches when no spring.qpidjms.brokers are listed and the remoteURL is used.
+     */
+    static class SingleBrokerCondition extends SpringBootCondition {
+
+        @Override
+        public ConditionOutcome getMatchOutcome(ConditionContext context, AnnotatedTypeMetadata metadata) {
+            ConditionMessage.Builder message = ConditionMessage.forCondition("Qpid JMS remoteURL");
+            if (MultipleBrokersCondition.brokersConfigured(context)) {
+                return ConditionOutcome.noMatch(message.found("property").items("spring.qpidjms.brokers"));
+            } else {
+                return ConditionOutcome.match(message.didNotFind("property").items("spring.qpidjms.brokers"));
+            }
+        }
     }
 }
@@ -16,11 +16,30 @@
  */
 package org.apache.qpid.jms.spring.boot.autoconfigure;
 
+import java.io.UnsupportedEncodingException;
+import java.lang.reflect.InvocationTargetException;
+import java.net.InetAddress;
+import java.net.URI;
+import java.net.URISyntaxException;
+import java.net.URLEncoder;
+import java.net.UnknownHostException;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+
+import javax.net.ssl.SSLContext;
+
 import org.apache.qpid.jms.JmsConnectionFactory;
 import org.apache.qpid.jms.policy.JmsDefaultDeserializationPolicy;
+import org.apache.qpid.jms.policy.JmsDefaultPrefetchPolicy;
+import org.apache.qpid.jms.policy.JmsDefaultPresettlePolicy;
+import org.apache.qpid.jms.util.URISupport;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.util.Assert;
+import org.springframework.util.CollectionUtils;
 import org.springframework.util.StringUtils;
 
 /**
@@ -31,9 +50,35 @@ public class QpidJMSConnectionFactoryFactory {
     private static final Logger LOG = LoggerFactory.getLogger(QpidJMSConnectionFactoryFactory.class);
 
     private static final String DEFAULT_REMOTE_URL = "amqp://localhost:5672";
+    private static final String DEFAULT_CLIENT_ID = "qpid-jms";
+
+    static final String FAILOVER_SCHEME = "failover";
+
+    /**
+     * How the client ID of the connections a factory creates is chosen.
+     */
+    public enum ClientIdStrategy {
+
+        /**
+         * The configured client ID is set on every connection, a second connection
+         * with the same client ID is refused by the broker.
+         */
+        FIXED,
+
+        /**
+         * Every connection is given a unique client ID generated by the client,
+         * prefixed with the configured client ID and the id of the application
+         * instance.  The client ID is not set explicitly, so shared subscriptions
+         * are not scoped to it and the connections of all instances join the same
+         * shared subscription.  Unshared durable subscriptions need a FIXED client ID.
+         */
+        INSTANCE
+    }
 
     private final QpidJMSProperties properties;
 
+    private SSLContext sslContext;
+
     /**
      * Creates a new QpidJMSConnectionFactoryFactory instance
      *
@@ -45,6 +90,31 @@ public class QpidJMSConnectionFactoryFactory {
         this.properties = properties;
     }
 
+    /**
+     * Returns the SSLContext given to every factory this instance creates, built
+     * once so that the factories of all brokers resume sessions from one cache.
+     *
+     * @return the shared SSLContext, or null when SSL is not enabled.
+     */
+    public SSLContext getSslContext() {
+        if (sslContext == null && properties.getSsl().isEnabled()) {
+            sslContext = new QpidJMSSslContextFactory(properties.getSsl()).createSslContext();
+        }
+
+        return sslContext;
+    }
+
+    /**
+     * Sets the SSLContext given to the factories created after this call, for one
+     * that was built from the same configuration for other connections.
+     *
+     * @param sslContext
+     *      The SSLContext to share, used only when SSL is enabled.
+     */
+    public void setSslContext(SSLContext sslContext) {
+        this.sslContext = sslContext;
+    }
+
     /**
      * Creates and returns a JmsConnectionFactory instance using the current
      * configuration to prepare the factory for use.
@@ -52,28 +122,57 @@ public class QpidJMSConnectionFactoryFactory {
      * @param factoryClass
      *      The type of JmsConnectionFactory to create.
      *
+     * @param <T>
+     *      The type of the returned factory.
+     *
+     * @return a newly created and configured JmsConnectionFactory instance.
+     */
+    public <T extends JmsConnectionFactory> T createConnectionFactory(Class<T> factoryClass) {
+        return createConnectionFactory(factoryClass, getRemoteURI(), properties.getUsername(), properties.getPassword());
+    }
+
+    /**
+     * Creates and returns a JmsConnectionFactory instance for one of the configured
+     * brokers, the broker's remote URL and credentials replace the top level values
+     * and all other configuration is shared.
+     *
+     * @param factoryClass
+     *      The type of JmsConnectionFactory to create.
+     * @param broker
+     *      The broker the factory connects to.
+     * @param <T>
+     *      The type of the returned factory.
+     *
      * @return a newly created and configured JmsConnectionFactory instance.
      */
-    public JmsConnectionFactory createConnectionFactory(Class<JmsConnectionFactory> factoryClass) {
+    public <T extends JmsConnectionFactory> T createConnectionFactory(Class<T> factoryClass, QpidJMSProperties.Broker broker) {
+        Assert.notNull(broker, "Broker must not be null");
+        Assert.hasLength(broker.getRemoteURL(), "Broker remoteURL must be set");
+
+        return createConnectionFactory(factoryClass, broker.getRemoteURL(),
+            StringUtils.hasLength(broker.getUsername()) ? broker.getUsername() : properties.getUsername(),
+            StringUtils.hasLength(broker.getPassword()) ? broker.getPassword() : properties.getPassword());
+    }
+
+    private <T extends JmsConnectionFactory> T createConnectionFactory(Class<T> factoryClass, String remoteURI,
+                                                                       String username, String password) {
         try {
-            JmsConnectionFactory factory = new JmsConnectionFactory();
+            T factory = factoryClass.getDeclaredConstructor().newInstance();
 
-            factory.setRemoteURI(getRemoteURI());
+            factory.setRemoteURI(applyFailoverOptions(applyTransportOptions(remoteURI)));
 
             // Override the URI options with configuration values, but only if
             // the value is actually set.
 
-            if (StringUtils.hasLength(properties.getUsername())) {
-                factory.setUsername(properties.getUsername());
+            if (StringUtils.hasLength(username)) {
+                factory.setUsername(username);
             }
 
-            if (StringUtils.hasLength(properties.getPassword())) {
-                factory.setPassword(properties.getPassword());
+            if (StringUtils.hasLength(password)) {
+                factory.setPassword(password);
             }
 
-            if (StringUtils.hasLength(properties.getClientId())) {
-                factory.setClientID(properties.getClientId());
-            }
+            configureClientId(properties, factory);
 
             if (properties.isReceiveLocalOnly() != null) {
                 factory.setReceiveLocalOnly(properties.isReceiveLocalOnly());
@@ -83,9 +182,60 @@ public class QpidJMSConnectionFactoryFactory {
                 factory.setReceiveNoWaitLocalOnly(properties.isReceiveNoWaitLocalOnly());
             }
 
+            Assert.isTrue(!(Boolean.TRUE.equals(properties.isForceAsyncSend()) &&
+                            Boolean.TRUE.equals(properties.isForceSyncSend())),
+                "Only one of forceAsyncSend and forceSyncSend may be enabled");
+
+            if (properties.isForceAsyncSend() != null) {
+                factory.setForceAsyncSend(properties.isForceAsyncSend());
+            }
+
+            if (properties.isForceSyncSend() != null) {
+                factory.setForceSyncSend(properties.isForceSyncSend());
+            }
+
+            if (properties.isLocalMessagePriority() != null) {
+                factory.setLocalMessagePriority(properties.isLocalMessagePriority());
+            }
+
+            if (properties.getCloseTimeout() != null) {
+                factory.setCloseTimeout(properties.getCloseTimeout());
+            }
+
+            if (properties.getConnectTimeout() != null) {
+                factory.setConnectTimeout(properties.getConnectTimeout());
+            }
+
+            if (properties.getSendTimeout() != null) {
+                factory.setSendTimeout(properties.getSendTimeout());
+            }
+
+            if (properties.getRequestTimeout() != null) {
+                factory.setRequestTimeout(properties.getRequestTimeout());
+            }
+
+            // A single matcher is shared by the destination policies, compression and
+            // every connection so that each destination is only resolved once.
+            QpidJMSDestinationPolicyMatcher matcher = null;
+            if (!properties.getDestinationPolicies().isEmpty()) {
+                matcher = new QpidJMSDestinationPolicyMatcher(properties.getDestinationPolicies());
+            }
+
             configureDeserializationPolicy(properties, factory);
+            configurePrefetchPolicy(properties, factory);
+            configurePresettlePolicy(properties, factory);
+            configureDestinationPolicies(matcher, factory);
+            configureCompression(properties, matcher, factory);
+            configureSelectorFilter(properties, factory);
+            configureSslContext(properties, factory);
 
             return factory;
+        } catch (IllegalArgumentException ex) {
+            throw ex;
+        } catch (InvocationTargetException ex) {
+            LOG.error("Exception while createing Qpid JMS Connection Factory.", ex.getCause());
+            throw new IllegalStateException("Failed to create the Qpid JMS ConnectionFactory, " +
+                "its constructor failed.", ex.getCause());
         } catch (Exception ex) {
             LOG.error("Exception while createing Qpid JMS Connection Factory.", ex);
             throw new IllegalStateException("Failed to create the Qpid JMS ConnectionFactory, " +
@@ -101,16 +251,323 @@ public class QpidJMSConnectionFactoryFactory {
         }
     }
 
+    /**
+     * Adds the configured failover options to a failover remote URI, the typed
+     * values take precedence over the same options given on the URI.
+     *
+     * @param remoteURI
+     *      The remote URI to update.
+     *
+     * @return the remote URI including the configured failover options.
+     */
+    String applyFailoverOptions(String remoteURI) {
+        Map<String, String> options = getFailoverOptions(properties.getFailover());
+        if (options.isEmpty()) {
+            return remoteURI;
+        }
+
+        try {
+            URI uri = new URI(remoteURI);
+            if (!FAILOVER_SCHEME.equalsIgnoreCase(uri.getScheme())) {
+                LOG.warn("Failover options are only applied to failover: remote URLs, ignoring them for {}",
+                         URISupport.removeQuery(uri));
+                return remoteURI;
+            }
+
+            URISupport.CompositeData composite = URISupport.parseComposite(uri);
+
+            Map<String, String> merged = new LinkedHashMap<>(composite.getParameters());
+            merged.putAll(options);
+
+            return createFailoverURI(composite.getComponents(), merged);
+        } catch (URISyntaxException | UnsupportedEncodingException ex) {
+            throw new IllegalArgumentException("Invalid remote URL: " + ex.getMessage(), ex);
+        }
+    }
+
+    /**
+     * Adds the configured transport options to a remote URI, or to each of the
+     * peers of a failover remote URI, the typed values take precedence over the
+     * same options given on the URI.
+     *
+     * @param remoteURI
+     *      The remote URI to update.
+     *
+     * @return the remote URI including the configured transport options.
+     */
+    String applyTransportOptions(String remoteURI) {
+        Map<String, String> options = getTransportOptions(properties.getTransport());
+        if (options.isEmpty()) {
+            return remoteURI;
+        }
+
+        try {
+            URI uri = new URI(remoteURI);
+            if (!FAILOVER_SCHEME.equalsIgnoreCase(uri.getScheme())) {
+                return URISupport.applyParameters(uri, new LinkedHashMap<>(options)).toString();
+            }
+
+            // The failover nested options do not replace options set on a peer's URI.
+            URISupport.CompositeData composite = URISupport.parseComposite(uri);
+
+            List<URI> components = new ArrayList<>(composite.getComponents().size());
+            for (URI component : composite.getComponents()) {
+                components.add(URISupport.applyParameters(component, new LinkedHashMap<>(options)));
+            }
+
+            return createFailoverURI(components, composite.getParameters());
+        } catch (URISyntaxException | UnsupportedEncodingException ex) {
+            throw new IllegalArgumentException("Invalid remote URL: " + ex.getMessage(), ex);
+        }
+    }
+
+    private static String createFailoverURI(List<URI> components, Map<String, String> parameters) throws UnsupportedEncodingException {
+        StringBuilder failoverURI = new StringBuilder(FAILOVER_SCHEME).append(":(");
+        for (int i = 0; i < components.size(); ++i) {
+            failoverURI.append(i > 0 ? "," : "").append(components.get(i));
+        }
+        failoverURI.append(')');
+
+        char separator = '?';
+        for (Map.Entry<String, String> option : parameters.entrySet()) {
+            failoverURI.append(separator).append(URLEncoder.encode(option.getKey(), "UTF-8"))
+                       .append('=').append(URLEncoder.encode(option.getValue(), "UTF-8"));
+            separator = '&';
+        }
+
+        return failoverURI.toString();
+    }
+
+    private static Map<String, String> getTransportOptions(QpidJMSProperties.Transport transport) {
+        Map<String, String> options = new LinkedHashMap<>();
+
+        if (transport.isUseEpoll() != null) {
+            options.put("transport.useEpoll", transport.isUseEpoll().toString());
+        }
+
+        if (transport.isTcpNoDelay() != null) {
+            options.put("transport.tcpNoDelay", transport.isTcpNoDelay().toString());
+        }
+
+        if (transport.isTcpKeepAlive() != null) {
+            options.put("transport.tcpKeepAlive", transport.isTcpKeepAlive().toString());
+        }
+
+        if (transport.getSendBufferSize() != null) {
+            Assert.isTrue(transport.getSendBufferSize() > 0, "Transport sendBufferSize must be positive");
+            options.put("transport.sendBufferSize", transport.getSendBufferSize().toString());
+        }
+
+        if (transport.getReceiveBufferSize() != null) {
+            Assert.isTrue(transport.getReceiveBufferSize() > 0, "Transport receiveBufferSize must be positive");
+            options.put("transport.receiveBufferSize", transport.getReceiveBufferSize().toString());
+        }
+
+        if (transport.getConnectTimeout() != null) {
+            Assert.isTrue(transport.getConnectTimeout() >= 0, "Transport connectTimeout must not be negative");
+            options.put("transport.connectTimeout", transport.getConnectTimeout().toString());
+        }
+
+        if (transport.getTrafficClass() != null) {
+            Assert.isTrue(transport.getTrafficClass() >= 0 && transport.getTrafficClass() <= 255,
+                "Transport trafficClass must be between 0 and 255");
+            options.put("transport.trafficClass", transport.getTrafficClass().toString());
+        }
+
+        return options;
+    }
+
+    private static Map<String, String> getFailoverOptions(QpidJMSProperties.Failover failover) {
+        Map<String, String> options = new LinkedHashMap<>();
+
+        if (failover.getInitialReconnectDelay() != null) {
+            Assert.isTrue(failover.getInitialReconnectDelay() >= 0, "Failover initialReconnectDelay must not be negative");
+            options.put("failover.initialReconnectDelay", failover.getInitialReconnectDelay().toString());
+        }
+
+        if (failover.getReconnectDelay() != null) {
+            Assert.isTrue(failover.getReconnectDelay() >= 0, "Failover reconnectDelay must not be negative");
+            options.put("failover.reconnectDelay", failover.getReconnectDelay().toString());
+        }
+
+        if (failover.getMaxReconnectDelay() != null) {
+            Assert.isTrue(failover.getMaxReconnectDelay() >= 0, "Failover maxReconnectDelay must not be negative");
+            options.put("failover.maxReconnectDelay", failover.getMaxReconnectDelay().toString());
+        }
+
+        if (failover.getReconnectBackOffMultiplier() != null) {
+            Assert.isTrue(failover.getReconnectBackOffMultiplier() >= 1, "Failover reconnectBackOffMultiplier must be at least 1");
+            options.put("failover.reconnectBackOffMultiplier", failover.getReconnectBackOffMultiplier().toString());
+        }
+
+        if (failover.getMaxReconnectAttempts() != null) {
+            options.put("failover.maxReconnectAttempts", failover.getMaxReconnectAttempts().toString());
+        }
+
+        return options;
+    }
+
+    private void configureClientId(QpidJMSProperties properties, JmsConnectionFactory factory) {
+        if (properties.getClientIdStrategy() == ClientIdStrategy.INSTANCE) {
+            String prefix = StringUtils.hasLength(properties.getClientId()) ? properties.getClientId() : DEFAULT_CLIENT_ID;
+            String instanceId = StringUtils.hasLength(properties.getInstanceId()) ? properties.getInstanceId() : getLocalHostName();
+
+            factory.setClientIDPrefix(prefix + "-" + instanceId + "-");
+        } else if (StringUtils.hasLength(properties.getClientId())) {
+            factory.setClientID(properties.getClientId());
+        }
+    }
+
+    private static String getLocalHostName() {
+        try {
+            return InetAddress.getLocalHost().getHostName();
+        } catch (UnknownHostException ex) {
+            return UUID.randomUUID().toString().substring(0, 8);
+        }
+    }
+
+    private void configureSslContext(QpidJMSProperties properties, JmsConnectionFactory factory) {
+        if (!properties.getSsl().isEnabled()) {
+            return;
+        }
+
+        factory.setSslContext(getSslContext());
+    }
+
     private void configureDeserializationPolicy(QpidJMSProperties properties, JmsConnectionFactory factory) {
-        JmsDefaultDeserializationPolicy deserializationPolicy =
-            (JmsDefaultDeserializationPolicy) factory.getDeserializationPolicy();
+        // Starts from the lists the connection URI options may have set.
+        QpidJMSDeserializationPolicy deserializationPolicy =
+            new QpidJMSDeserializationPolicy((JmsDefaultDeserializationPolicy) factory.getDeserializationPolicy());
+
+        if (!CollectionUtils.isEmpty(properties.getDeserializationPolicy().getWhiteList())) {
+            deserializationPolicy.setWhiteList(
+                StringUtils.collectionToCommaDelimitedString(properties.getDeserializationPolicy().getWhiteList()));
+        }
+
+        if (!CollectionUtils.isEmpty(properties.getDeserializationPolicy().getBlackList())) {
+            deserializationPolicy.setBlackList(
+                StringUtils.collectionToCommaDelimitedString(properties.getDeserializationPolicy().getBlackList()));
+        }
+
+        factory.setDeserializationPolicy(deserializationPolicy);
+    }
+
+    private void configurePrefetchPolicy(QpidJMSProperties properties, JmsConnectionFactory factory) {
+        QpidJMSProperties.PrefetchPolicy prefetch = properties.getPrefetchPolicy();
+        JmsDefaultPrefetchPolicy prefetchPolicy = (JmsDefaultPrefetchPolicy) factory.getPrefetchPolicy();
 
-        if (StringUtils.hasLength(properties.getDeserializationPolicy().getWhiteList())) {
-            deserializationPolicy.setWhiteList(properties.getDeserializationPolicy().getWhiteList());
+        if (prefetch.getAll() != null) {
+            prefetchPolicy.setAll(validatePrefetch("all", prefetch.getAll()));
         }
 
-        if (StringUtils.hasLength(properties.getDeserializationPolicy().getBlackList())) {
-            deserializationPolicy.setBlackList(properties.getDeserializationPolicy().getBlackList());
+        if (prefetch.getQueuePrefetch() != null) {
+            prefetchPolicy.setQueuePrefetch(validatePrefetch("queuePrefetch", prefetch.getQueuePrefetch()));
         }
+
+        if (prefetch.getQueueBrowserPrefetch() != null) {
+            prefetchPolicy.setQueueBrowserPrefetch(validatePrefetch("queueBrowserPrefetch", prefetch.getQueueBrowserPrefetch()));
+        }
+
+        if (prefetch.getTopicPrefetch() != null) {
+            prefetchPolicy.setTopicPrefetch(validatePrefetch("topicPrefetch", prefetch.getTopicPrefetch()));
+        }
+
+        if (prefetch.getDurableTopicPrefetch() != null) {
+            prefetchPolicy.setDurableTopicPrefetch(validatePrefetch("durableTopicPrefetch", prefetch.getDurableTopicPrefetch()));
+        }
+    }
+
+    private void configurePresettlePolicy(QpidJMSProperties properties, JmsConnectionFactory factory) {
+        QpidJMSProperties.PresettlePolicy presettle = properties.getPresettlePolicy();
+        JmsDefaultPresettlePolicy presettlePolicy = (JmsDefaultPresettlePolicy) factory.getPresettlePolicy();
+
+        if (presettle.isPresettleAll() != null) {
+            presettlePolicy.setPresettleAll(presettle.isPresettleAll());
+        }
+
+        if (presettle.isPresettleProducers() != null) {
+            presettlePolicy.setPresettleProducers(presettle.isPresettleProducers());
+        }
+
+        if (presettle.isPresettleQueueProducers() != null) {
+            presettlePolicy.setPresettleQueueProducers(presettle.isPresettleQueueProducers());
+        }
+
+        if (presettle.isPresettleTopicProducers() != null) {
+            presettlePolicy.setPresettleTopicProducers(presettle.isPresettleTopicProducers());
+        }
+
+        if (presettle.isPresettleTransactedProducers() != null) {
+            presettlePolicy.setPresettleTransactedProducers(presettle.isPresettleTransactedProducers());
+        }
+
+        if (presettle.isPresettleConsumers() != null) {
+            presettlePolicy.setPresettleConsumers(presettle.isPresettleConsumers());
+        }
+
+        if (presettle.isPresettleQueueConsumers() != null) {
+            presettlePolicy.setPresettleQueueConsumers(presettle.isPresettleQueueConsumers());
+        }
+
+        if (presettle.isPresettleTopicConsumers() != null) {
+            presettlePolicy.setPresettleTopicConsumers(presettle.isPresettleTopicConsumers());
+        }
+    }
+
+    private void configureDestinationPolicies(QpidJMSDestinationPolicyMatcher matcher, JmsConnectionFactory factory) {
+        if (matcher == null) {
+            return;
+        }
+
+        factory.setPrefetchPolicy(new QpidJMSDestinationPrefetchPolicy(matcher, factory.getPrefetchPolicy()));
+        factory.setPresettlePolicy(new QpidJMSDestinationPresettlePolicy(matcher, factory.getPresettlePolicy()));
+        factory.setRedeliveryPolicy(new QpidJMSDestinationRedeliveryPolicy(matcher, factory.getRedeliveryPolicy()));
+    }
+
+    private void configureCompression(QpidJMSProperties properties, QpidJMSDestinationPolicyMatcher matcher,
+                                      JmsConnectionFactory factory) {
+        QpidJMSProperties.Compression settings = properties.getCompression();
+        if (!settings.isEnabled()) {
+            return;
+        }
+
+        if (!(factory instanceof QpidJMSConnectionFactory)) {
+            LOG.warn("Compression is only applied by a QpidJMSConnectionFactory, ignoring it for {}",
+                     factory.getClass().getName());
+            return;
+        }
+
+        QpidJMSCompression.checkAvailable(properties.getDestinationPolicies());
+
+        QpidJMSCompression compression = new QpidJMSCompression(settings.getAlgorithm());
+        compression.setMinSize(settings.getMinSize());
+        compression.setMaxDecompressedSize(settings.getMaxDecompressedSize());
+        compression.setDestinationPolicyMatcher(matcher);
+
+        ((QpidJMSConnectionFactory) factory).setCompression(compression);
+    }
+
+    private void configureSelectorFilter(QpidJMSProperties properties, JmsConnectionFactory factory) {
+        QpidJMSProperties.Selector settings = properties.getSelector();
+        if (settings.getMode() == null || settings.getMode() == QpidJMSSelectorFilter.Mode.BROKER) {
+            return;
+        }
+
+        if (!(factory instanceof QpidJMSConnectionFactory)) {
+            LOG.debug("Selectors are only applied on the client by a QpidJMSConnectionFactory, leaving them to the broker for {}",
+                      factory.getClass().getName());
+            return;
+        }
+
+        QpidJMSSelectorFilter selectorFilter = new QpidJMSSelectorFilter(settings.getMode());
+        selectorFilter.setMaxCacheSize(settings.getCacheSize());
+
+        ((QpidJMSConnectionFactory) factory).setSelectorFilter(selectorFilter);
+    }
+
+    private static int validatePrefetch(String name, int value) {
+        Assert.isTrue(value >= 0 && value <= JmsDefaultPrefetchPolicy.MAX_PREFETCH_SIZE,
+            "Prefetch value " + name + " must be between 0 and " + JmsDefaultPrefetchPolicy.MAX_PREFETCH_SIZE);
+        return value;
     }
 }
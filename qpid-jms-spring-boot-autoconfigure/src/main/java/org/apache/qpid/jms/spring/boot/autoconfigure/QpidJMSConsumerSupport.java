@@ -0,0 +1,181 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.qpid.jms.spring.boot.autoconfigure;
+
+import java.lang.reflect.Field;
+import java.lang.reflect.Method;
+
+import javax.jms.JMSException;
+import javax.jms.MessageConsumer;
+
+import org.apache.qpid.jms.JmsConnection;
+import org.apache.qpid.jms.JmsMessageConsumer;
+import org.messaginghub.pooled.jms.JmsPoolMessageConsumer;
+import org.springframework.util.ClassUtils;
+import org.springframework.util.ReflectionUtils;
+
+/**
+ * Utility methods for inspecting Qpid JMS consumers that may be wrapped by a
+ * connection pool.  The counts of a routing consumer attached to several brokers
+ * are the sums over its consumers.
+ */
+public final class QpidJMSConsumerSupport {
+
+    private static final boolean POOLED_JMS_PRESENT = ClassUtils.isPresent(
+        "org.messaginghub.pooled.jms.JmsPoolMessageConsumer", QpidJMSConsumerSupport.class.getClassLoader());
+
+    private static final Method MESSAGE_QUEUE_SIZE_METHOD;
+    private static final Field CONNECTION_FIELD;
+
+    static {
+        Method method = ReflectionUtils.findMethod(JmsMessageConsumer.class, "getMessageQueueSize");
+        if (method != null) {
+            ReflectionUtils.makeAccessible(method);
+        }
+
+        Field field = ReflectionUtils.findField(JmsMessageConsumer.class, "connection", JmsConnection.class);
+        if (field != null) {
+            ReflectionUtils.makeAccessible(field);
+        }
+
+        MESSAGE_QUEUE_SIZE_METHOD = method;
+        CONNECTION_FIELD = field;
+    }
+
+    private QpidJMSConsumerSupport() {
+    }
+
+    /**
+     * Returns the Qpid JMS consumer behind the given consumer.
+     *
+     * @param consumer
+     *      The consumer to unwrap, may be a pooled consumer.
+     *
+     * @return the Qpid JMS consumer or null if the consumer is not a Qpid JMS consumer.
+     */
+    public static JmsMessageConsumer unwrap(MessageConsumer consumer) {
+        if (consumer instanceof JmsMessageConsumer) {
+            return (JmsMessageConsumer) consumer;
+        }
+
+        if (POOLED_JMS_PRESENT) {
+            MessageConsumer delegate = PooledConsumerUnwrapper.unwrap(consumer);
+            if (delegate != null && delegate != consumer) {
+                return unwrap(delegate);
+            }
+        }
+
+        return null;
+    }
+
+    /**
+     * Returns the number of messages that have arrived for the given consumer and
+     * are waiting in its local prefetch buffer to be dispatched.
+     *
+     * @param consumer
+     *      The consumer to inspect, may be a pooled consumer.
+     *
+     * @return the prefetch buffer depth or -1 if it cannot be determined.
+     */
+    public static int getPrefetchedMessageCount(MessageConsumer consumer) {
+        QpidJMSRoutingMessageConsumer routingConsumer = unwrapRouting(consumer);
+        if (routingConsumer != null) {
+            int total = 0;
+            for (MessageConsumer brokerConsumer : routingConsumer.getConsumers()) {
+                int count = getPrefetchedMessageCount(brokerConsumer);
+                if (count < 0) {
+                    return -1;
+                }
+                total += count;
+            }
+            return total;
+        }
+
+        JmsMessageConsumer qpidConsumer = unwrap(consumer);
+        if (qpidConsumer == null || MESSAGE_QUEUE_SIZE_METHOD == null) {
+            return -1;
+        }
+
+        try {
+            return (Integer) MESSAGE_QUEUE_SIZE_METHOD.invoke(qpidConsumer);
+        } catch (Exception ex) {
+            return -1;
+        }
+    }
+
+    /**
+     * Returns the number of messages the broker delivered to the given consumer
+     * that did not match its selector and were discarded by the client.
+     *
+     * @param consumer
+     *      The consumer to inspect, may be a pooled consumer.
+     *
+     * @return the number of discarded messages or -1 if the consumer's selector is
+     *         not applied on the client.
+     *
+     * @see QpidJMSSelectorProvider
+     */
+    public static long getDiscardedMessageCount(MessageConsumer consumer) {
+        QpidJMSRoutingMessageConsumer routingConsumer = unwrapRouting(consumer);
+        if (routingConsumer != null) {
+            long total = -1;
+            for (MessageConsumer brokerConsumer : routingConsumer.getConsumers()) {
+                long count = getDiscardedMessageCount(brokerConsumer);
+                if (count >= 0) {
+                    total = Math.max(total, 0) + count;
+                }
+            }
+            return total;
+        }
+
+        JmsMessageConsumer qpidConsumer = unwrap(consumer);
+        if (qpidConsumer == null || CONNECTION_FIELD == null) {
+            return -1;
+        }
+
+        QpidJMSSelectorProvider selectors = QpidJMSSelectorProvider.find(
+            (JmsConnection) ReflectionUtils.getField(CONNECTION_FIELD, qpidConsumer));
+        return selectors != null ? selectors.getDiscardedMessageCount(qpidConsumer.getConsumerId()) : -1;
+    }
+
+    private static QpidJMSRoutingMessageConsumer unwrapRouting(MessageConsumer consumer) {
+        if (POOLED_JMS_PRESENT) {
+            MessageConsumer delegate = PooledConsumerUnwrapper.unwrap(consumer);
+            if (delegate != null) {
+                consumer = delegate;
+            }
+        }
+
+        return consumer instanceof QpidJMSRoutingMessageConsumer ? (QpidJMSRoutingMessageConsumer) consumer : null;
+    }
+
+    // Kept separate so the pool classes are only loaded when they are present.
+    private static final class PooledConsumerUnwrapper {
+
+        static MessageConsumer unwrap(MessageConsumer consumer) {
+            if (consumer instanceof JmsPoolMessageConsumer) {
+                try {
+                    return ((JmsPoolMessageConsumer) consumer).getMessageConsumer();
+                } catch (JMSException ex) {
+                    return null;
+                }
+            }
+
+            return null;
+        }
+    }
+}
@@ -0,0 +1,213 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.qpid.jms.spring.boot.autoconfigure;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+import org.apache.qpid.jms.JmsDestination;
+import org.apache.qpid.jms.policy.JmsDefaultDeserializationPolicy;
+import org.apache.qpid.jms.policy.JmsDeserializationPolicy;
+import org.springframework.util.StringUtils;
+
+/**
+ * Deserialization policy that compiles the white and black lists once and
+ * caches the decision for each class.
+ * <p>
+ * The lists have the format and meaning of the client's default policy: a class
+ * matches an entry that is its name or one of its enclosing packages or classes,
+ * and "*" matches every class.  Blacklisted classes are never trusted.  Instead
+ * of rescanning both lists for every class an ObjectMessage resolves, the entries
+ * are compiled into a tree of name segments that is walked once per class, and
+ * the decision is cached by class.  The compiled lists and the cache are shared
+ * by the copies each connection takes until a copy's lists are changed.
+ */
+public class QpidJMSDeserializationPolicy extends JmsDefaultDeserializationPolicy {
+
+    static final int DEFAULT_CACHE_SIZE = 1024;
+
+    // Not initialized here, the super constructor sets the lists before the
+    // fields of this class are initialized and the lists compile on first use.
+    private volatile ClassMatcher matcher;
+
+    public QpidJMSDeserializationPolicy() {
+        super();
+    }
+
+    /**
+     * Creates a new policy with the lists of the given policy, for example one
+     * configured through the options of the connection URI.
+     *
+     * @param source
+     *      The policy whose white and black lists are copied.
+     */
+    public QpidJMSDeserializationPolicy(JmsDefaultDeserializationPolicy source) {
+        super(source);
+        if (source instanceof QpidJMSDeserializationPolicy) {
+            this.matcher = ((QpidJMSDeserializationPolicy) source).matcher;
+        }
+    }
+
+    @Override
+    public JmsDeserializationPolicy copy() {
+        return new QpidJMSDeserializationPolicy(this);
+    }
+
+    @Override
+    public void setWhiteList(String whiteList) {
+        super.setWhiteList(whiteList);
+        this.matcher = null;
+    }
+
+    @Override
+    public void setBlackList(String blackList) {
+        super.setBlackList(blackList);
+        this.matcher = null;
+    }
+
+    @Override
+    public boolean isTrustedType(JmsDestination destination, Class<?> clazz) {
+        if (clazz == null) {
+            return true;
+        }
+
+        ClassMatcher current = matcher;
+        if (current == null) {
+            current = new ClassMatcher(getWhiteList(), getBlackList(), DEFAULT_CACHE_SIZE);
+            matcher = current;
+        }
+
+        return current.isTrusted(clazz);
+    }
+
+    int getCacheSize() {
+        ClassMatcher current = matcher;
+        return current != null ? current.getCacheSize() : 0;
+    }
+
+    //----- Compiled lists and decision cache --------------------------------//
+
+    static final class ClassMatcher {
+
+        private final PrefixIndex whiteList;
+        private final PrefixIndex blackList;
+        private final ConcurrentMap<Class<?>, Boolean> cache = new ConcurrentHashMap<>();
+        private final int maxCacheSize;
+
+        ClassMatcher(String whiteList, String blackList, int maxCacheSize) {
+            this.whiteList = new PrefixIndex(whiteList);
+            this.blackList = new PrefixIndex(blackList);
+            this.maxCacheSize = maxCacheSize;
+        }
+
+        boolean isTrusted(Class<?> clazz) {
+            Boolean trusted = cache.get(clazz);
+            if (trusted == null) {
+                String className = clazz.getCanonicalName();
+                if (className == null) {
+                    className = clazz.getName();
+                }
+
+                trusted = !blackList.matches(className) && whiteList.matches(className);
+
+                // Bound the cache, classes beyond this are simply matched again.
+                if (cache.size() >= maxCacheSize) {
+                    cache.clear();
+                }
+
+                cache.put(clazz, trusted);
+            }
+
+            return trusted;
+        }
+
+        int getCacheSize() {
+            return cache.size();
+        }
+    }
+
+    static final class PrefixIndex {
+
+        private final Node root = new Node();
+        private boolean catchAll;
+
+        PrefixIndex(String entries) {
+            for (String entry : StringUtils.commaDelimitedListToStringArray(entries)) {
+                entry = entry.trim();
+                if (entry.equals(CATCH_ALL_WILDCARD)) {
+                    catchAll = true;
+                } else if (!entry.isEmpty()) {
+                    add(entry);
+                }
+            }
+        }
+
+        /**
+         * @return true if the name is an entry or starts with an entry followed by a '.'.
+         */
+        boolean matches(String className) {
+            if (catchAll) {
+                return true;
+            }
+
+            Node node = root;
+            int start = 0;
+            while (node.children != null) {
+                int end = className.indexOf('.', start);
+                node = node.children.get(end < 0 ? className.substring(start) : className.substring(start, end));
+                if (node == null) {
+                    return false;
+                } else if (node.terminal) {
+                    return true;
+                } else if (end < 0) {
+                    return false;
+                }
+
+                start = end + 1;
+            }
+
+            return false;
+        }
+
+        private void add(String entry) {
+            Node node = root;
+            for (String segment : StringUtils.delimitedListToStringArray(entry, ".")) {
+                if (node.children == null) {
+                    node.children = new HashMap<>();
+                }
+
+                Node child = node.children.get(segment);
+                if (child == null) {
+                    child = new Node();
+                    node.children.put(segment, child);
+                }
+
+                node = child;
+            }
+
+            node.terminal = true;
+        }
+    }
+
+    private static final class Node {
+
+        private Map<String, Node> children;
+        private boolean terminal;
+    }
+}
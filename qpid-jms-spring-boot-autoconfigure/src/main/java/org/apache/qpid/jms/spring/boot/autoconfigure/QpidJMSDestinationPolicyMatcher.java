@@ -0,0 +1,286 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.qpid.jms.spring.boot.autoconfigure;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+import org.apache.qpid.jms.JmsDestination;
+import org.apache.qpid.jms.policy.JmsDefaultPrefetchPolicy;
+import org.apache.qpid.jms.policy.JmsDefaultRedeliveryPolicy;
+import org.springframework.util.Assert;
+import org.springframework.util.StringUtils;
+
+/**
+ * Resolves the configured per-destination policy overrides for a destination.
+ * <p>
+ * Patterns are either exact destination names or contain '*' wildcards that
+ * match any sequence of characters.  When several patterns match, each value is
+ * taken from the most specific pattern that sets it, exact names first and then
+ * wildcard patterns with the most literal characters.  Resolved values are
+ * cached by destination name so that link creation does not rescan the
+ * patterns, the cache is shared by every copy of the policies that use it.
+ */
+public class QpidJMSDestinationPolicyMatcher {
+
+    static final int DEFAULT_CACHE_SIZE = 4096;
+
+    private static final ResolvedPolicy NO_POLICY = new ResolvedPolicy(null, null, null, null, null, null, null);
+
+    private final List<PatternEntry> patterns;
+    private final ConcurrentMap<String, ResolvedPolicy> cache = new ConcurrentHashMap<>();
+    private final int maxCacheSize;
+
+    /**
+     * Creates a new matcher for the given destination policies.
+     *
+     * @param policies
+     *      The configured policies keyed by destination name or pattern.
+     */
+    public QpidJMSDestinationPolicyMatcher(Map<String, QpidJMSProperties.DestinationPolicy> policies) {
+        this(policies, DEFAULT_CACHE_SIZE);
+    }
+
+    QpidJMSDestinationPolicyMatcher(Map<String, QpidJMSProperties.DestinationPolicy> policies, int maxCacheSize) {
+        Assert.notNull(policies, "Destination policies must not be null");
+
+        List<PatternEntry> entries = new ArrayList<>(policies.size());
+        int order = 0;
+        for (Map.Entry<String, QpidJMSProperties.DestinationPolicy> entry : policies.entrySet()) {
+            Assert.hasLength(entry.getKey(), "Destination policy pattern must not be empty");
+            entries.add(new PatternEntry(entry.getKey(), resolve(entry.getKey(), entry.getValue()), order++));
+        }
+
+        Collections.sort(entries);
+
+        this.patterns = entries;
+        this.maxCacheSize = maxCacheSize;
+    }
+
+    /**
+     * Returns the resolved policy for the given destination, never null.
+     *
+     * @param destination
+     *      The destination to resolve, may be null for anonymous producers.
+     *
+     * @return the resolved policy values, unset values are null.
+     */
+    public ResolvedPolicy getPolicy(JmsDestination destination) {
+        if (destination == null || destination.getName() == null) {
+            return NO_POLICY;
+        }
+
+        final String name = destination.getName();
+
+        ResolvedPolicy policy = cache.get(name);
+        if (policy == null) {
+            policy = match(name);
+
+            // Bound the cache, destinations beyond this are simply resolved again.
+            if (cache.size() >= maxCacheSize) {
+                cache.clear();
+            }
+
+            cache.put(name, policy);
+        }
+
+        return policy;
+    }
+
+    int getCacheSize() {
+        return cache.size();
+    }
+
+    private ResolvedPolicy match(String name) {
+        Integer prefetch = null;
+        Boolean presettleProducers = null;
+        Boolean presettleConsumers = null;
+        Integer maxRedeliveries = null;
+        Integer redeliveryOutcome = null;
+        QpidJMSCompression.Algorithm compression = null;
+        Integer compressionMinSize = null;
+
+        boolean matched = false;
+
+        for (PatternEntry entry : patterns) {
+            if (entry.matches(name)) {
+                ResolvedPolicy policy = entry.policy;
+
+                prefetch = prefetch != null ? prefetch : policy.prefetch;
+                presettleProducers = presettleProducers != null ? presettleProducers : policy.presettleProducers;
+                presettleConsumers = presettleConsumers != null ? presettleConsumers : policy.presettleConsumers;
+                maxRedeliveries = maxRedeliveries != null ? maxRedeliveries : policy.maxRedeliveries;
+                redeliveryOutcome = redeliveryOutcome != null ? redeliveryOutcome : policy.redeliveryOutcome;
+                compression = compression != null ? compression : policy.compression;
+                compressionMinSize = compressionMinSize != null ? compressionMinSize : policy.compressionMinSize;
+
+                matched = true;
+            }
+        }
+
+        if (!matched) {
+            return NO_POLICY;
+        }
+
+        return new ResolvedPolicy(prefetch, presettleProducers, presettleConsumers, maxRedeliveries, redeliveryOutcome,
+                                  compression, compressionMinSize);
+    }
+
+    private static ResolvedPolicy resolve(String pattern, QpidJMSProperties.DestinationPolicy policy) {
+        Integer prefetch = policy.getPrefetch();
+        if (prefetch != null) {
+            Assert.isTrue(prefetch >= 0 && prefetch <= JmsDefaultPrefetchPolicy.MAX_PREFETCH_SIZE,
+                "Prefetch for destination policy " + pattern + " must be between 0 and " +
+                JmsDefaultPrefetchPolicy.MAX_PREFETCH_SIZE);
+        }
+
+        Integer outcome = null;
+        if (StringUtils.hasText(policy.getRedeliveryOutcome())) {
+            JmsDefaultRedeliveryPolicy parser = new JmsDefaultRedeliveryPolicy();
+            try {
+                parser.setOutcome(policy.getRedeliveryOutcome().trim());
+            } catch (RuntimeException ex) {
+                throw new IllegalArgumentException("Invalid redelivery outcome for destination policy " +
+                    pattern + ": " + policy.getRedeliveryOutcome(), ex);
+            }
+            outcome = parser.getOutcome();
+        }
+
+        Integer compressionMinSize = policy.getCompressionMinSize();
+        if (compressionMinSize != null) {
+            Assert.isTrue(compressionMinSize >= 0,
+                "Compression minSize for destination policy " + pattern + " must not be negative");
+        }
+
+        return new ResolvedPolicy(prefetch, policy.isPresettleProducers(), policy.isPresettleConsumers(),
+                                  policy.getMaxRedeliveries(), outcome, policy.getCompression(), compressionMinSize);
+    }
+
+    /**
+     * Immutable view of the policy values that apply to one destination.
+     */
+    public static final class ResolvedPolicy {
+
+        private final Integer prefetch;
+        private final Boolean presettleProducers;
+        private final Boolean presettleConsumers;
+        private final Integer maxRedeliveries;
+        private final Integer redeliveryOutcome;
+        private final QpidJMSCompression.Algorithm compression;
+        private final Integer compressionMinSize;
+
+        ResolvedPolicy(Integer prefetch, Boolean presettleProducers, Boolean presettleConsumers,
+                       Integer maxRedeliveries, Integer redeliveryOutcome,
+                       QpidJMSCompression.Algorithm compression, Integer compressionMinSize) {
+            this.prefetch = prefetch;
+            this.presettleProducers = presettleProducers;
+            this.presettleConsumers = presettleConsumers;
+            this.maxRedeliveries = maxRedeliveries;
+            this.redeliveryOutcome = redeliveryOutcome;
+            this.compression = compression;
+            this.compressionMinSize = compressionMinSize;
+        }
+
+        public Integer getPrefetch() {
+            return prefetch;
+        }
+
+        public Boolean isPresettleProducers() {
+            return presettleProducers;
+        }
+
+        public Boolean isPresettleConsumers() {
+            return presettleConsumers;
+        }
+
+        public Integer getMaxRedeliveries() {
+            return maxRedeliveries;
+        }
+
+        public Integer getRedeliveryOutcome() {
+            return redeliveryOutcome;
+        }
+
+        public QpidJMSCompression.Algorithm getCompression() {
+            return compression;
+        }
+
+        public Integer getCompressionMinSize() {
+            return compressionMinSize;
+        }
+    }
+
+    private static final class PatternEntry implements Comparable<PatternEntry> {
+
+        private final String[] segments;
+        private final boolean wildcard;
+        private final int literalLength;
+        private final int order;
+        private final ResolvedPolicy policy;
+
+        PatternEntry(String pattern, ResolvedPolicy policy, int order) {
+            this.segments = pattern.split("\\*", -1);
+            this.wildcard = segments.length > 1;
+            this.literalLength = pattern.length() - (segments.length - 1);
+            this.order = order;
+            this.policy = policy;
+        }
+
+        boolean matches(String name) {
+            if (!wildcard) {
+                return segments[0].equals(name);
+            }
+
+            final String first = segments[0];
+            final String last = segments[segments.length - 1];
+
+            if (name.length() < literalLength || !name.startsWith(first) || !name.endsWith(last)) {
+                return false;
+            }
+
+            int position = first.length();
+            final int limit = name.length() - last.length();
+
+            for (int i = 1; i < segments.length - 1; ++i) {
+                int index = name.indexOf(segments[i], position);
+                if (index < 0 || index + segments[i].length() > limit) {
+                    return false;
+                }
+                position = index + segments[i].length();
+            }
+
+            return true;
+        }
+
+        @Override
+        public int compareTo(PatternEntry other) {
+            if (wildcard != other.wildcard) {
+                return wildcard ? 1 : -1;
+            }
+
+            if (literalLength != other.literalLength) {
+                return other.literalLength - literalLength;
+            }
+
+            return order - other.order;
+        }
+    }
+}
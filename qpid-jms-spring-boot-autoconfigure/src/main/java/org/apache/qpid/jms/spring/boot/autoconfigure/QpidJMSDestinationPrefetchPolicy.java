@@ -0,0 +1,67 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.qpid.jms.spring.boot.autoconfigure;
+
+import org.apache.qpid.jms.JmsDestination;
+import org.apache.qpid.jms.JmsSession;
+import org.apache.qpid.jms.policy.JmsPrefetchPolicy;
+import org.springframework.util.Assert;
+
+/**
+ * Prefetch policy that applies per-destination overrides and otherwise defers
+ * to the connection wide prefetch policy.
+ */
+public class QpidJMSDestinationPrefetchPolicy implements JmsPrefetchPolicy {
+
+    private final QpidJMSDestinationPolicyMatcher matcher;
+    private final JmsPrefetchPolicy defaultPolicy;
+
+    /**
+     * Creates a new per-destination prefetch policy.
+     *
+     * @param matcher
+     *      The matcher used to resolve destination overrides.
+     * @param defaultPolicy
+     *      The policy used when no override applies to a destination.
+     */
+    public QpidJMSDestinationPrefetchPolicy(QpidJMSDestinationPolicyMatcher matcher, JmsPrefetchPolicy defaultPolicy) {
+        Assert.notNull(matcher, "Destination policy matcher must not be null");
+        Assert.notNull(defaultPolicy, "Default prefetch policy must not be null");
+
+        this.matcher = matcher;
+        this.defaultPolicy = defaultPolicy;
+    }
+
+    @Override
+    public JmsPrefetchPolicy copy() {
+        return new QpidJMSDestinationPrefetchPolicy(matcher, defaultPolicy.copy());
+    }
+
+    @Override
+    public int getConfiguredPrefetch(JmsSession session, JmsDestination destination, boolean durable, boolean browser) {
+        Integer prefetch = matcher.getPolicy(destination).getPrefetch();
+        if (prefetch != null) {
+            return prefetch;
+        }
+
+        return defaultPolicy.getConfiguredPrefetch(session, destination, durable, browser);
+    }
+
+    public JmsPrefetchPolicy getDefaultPolicy() {
+        return defaultPolicy;
+    }
+}
@@ -0,0 +1,77 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.qpid.jms.spring.boot.autoconfigure;
+
+import org.apache.qpid.jms.JmsDestination;
+import org.apache.qpid.jms.JmsSession;
+import org.apache.qpid.jms.policy.JmsPresettlePolicy;
+import org.springframework.util.Assert;
+
+/**
+ * Presettle policy that applies per-destination overrides and otherwise defers
+ * to the connection wide presettle policy.
+ */
+public class QpidJMSDestinationPresettlePolicy implements JmsPresettlePolicy {
+
+    private final QpidJMSDestinationPolicyMatcher matcher;
+    private final JmsPresettlePolicy defaultPolicy;
+
+    /**
+     * Creates a new per-destination presettle policy.
+     *
+     * @param matcher
+     *      The matcher used to resolve destination overrides.
+     * @param defaultPolicy
+     *      The policy used when no override applies to a destination.
+     */
+    public QpidJMSDestinationPresettlePolicy(QpidJMSDestinationPolicyMatcher matcher, JmsPresettlePolicy defaultPolicy) {
+        Assert.notNull(matcher, "Destination policy matcher must not be null");
+        Assert.notNull(defaultPolicy, "Default presettle policy must not be null");
+
+        this.matcher = matcher;
+        this.defaultPolicy = defaultPolicy;
+    }
+
+    @Override
+    public JmsPresettlePolicy copy() {
+        return new QpidJMSDestinationPresettlePolicy(matcher, defaultPolicy.copy());
+    }
+
+    @Override
+    public boolean isProducerPresttled(JmsSession session, JmsDestination destination) {
+        Boolean presettle = matcher.getPolicy(destination).isPresettleProducers();
+        if (presettle != null) {
+            return presettle;
+        }
+
+        return defaultPolicy.isProducerPresttled(session, destination);
+    }
+
+    @Override
+    public boolean isConsumerPresttled(JmsSession session, JmsDestination destination) {
+        Boolean presettle = matcher.getPolicy(destination).isPresettleConsumers();
+        if (presettle != null) {
+            return presettle;
+        }
+
+        return defaultPolicy.isConsumerPresttled(session, destination);
+    }
+
+    public JmsPresettlePolicy getDefaultPolicy() {
+        return defaultPolicy;
+    }
+}
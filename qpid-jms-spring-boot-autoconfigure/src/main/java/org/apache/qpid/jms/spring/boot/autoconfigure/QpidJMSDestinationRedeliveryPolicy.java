@@ -0,0 +1,76 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.qpid.jms.spring.boot.autoconfigure;
+
+import org.apache.qpid.jms.JmsDestination;
+import org.apache.qpid.jms.policy.JmsRedeliveryPolicy;
+import org.springframework.util.Assert;
+
+/**
+ * Redelivery policy that applies per-destination overrides and otherwise defers
+ * to the connection wide redelivery policy.
+ */
+public class QpidJMSDestinationRedeliveryPolicy implements JmsRedeliveryPolicy {
+
+    private final QpidJMSDestinationPolicyMatcher matcher;
+    private final JmsRedeliveryPolicy defaultPolicy;
+
+    /**
+     * Creates a new per-destination redelivery policy.
+     *
+     * @param matcher
+     *      The matcher used to resolve destination overrides.
+     * @param defaultPolicy
+     *      The policy used when no override applies to a destination.
+     */
+    public QpidJMSDestinationRedeliveryPolicy(QpidJMSDestinationPolicyMatcher matcher, JmsRedeliveryPolicy defaultPolicy) {
+        Assert.notNull(matcher, "Destination policy matcher must not be null");
+        Assert.notNull(defaultPolicy, "Default redelivery policy must not be null");
+
+        this.matcher = matcher;
+        this.defaultPolicy = defaultPolicy;
+    }
+
+    @Override
+    public JmsRedeliveryPolicy copy() {
+        return new QpidJMSDestinationRedeliveryPolicy(matcher, defaultPolicy.copy());
+    }
+
+    @Override
+    public int getMaxRedeliveries(JmsDestination destination) {
+        Integer maxRedeliveries = matcher.getPolicy(destination).getMaxRedeliveries();
+        if (maxRedeliveries != null) {
+            return maxRedeliveries;
+        }
+
+        return defaultPolicy.getMaxRedeliveries(destination);
+    }
+
+    @Override
+    public int getOutcome(JmsDestination destination) {
+        Integer outcome = matcher.getPolicy(destination).getRedeliveryOutcome();
+        if (outcome != null) {
+            return outcome;
+        }
+
+        return defaultPolicy.getOutcome(destination);
+    }
+
+    public JmsRedeliveryPolicy getDefaultPolicy() {
+        return defaultPolicy;
+    }
+}
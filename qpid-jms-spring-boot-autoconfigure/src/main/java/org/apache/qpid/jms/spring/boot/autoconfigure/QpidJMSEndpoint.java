@@ -0,0 +1,76 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.qpid.jms.spring.boot.autoconfigure;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import javax.jms.ConnectionFactory;
+
+import org.apache.qpid.jms.JmsConnection;
+import org.springframework.boot.actuate.endpoint.AbstractEndpoint;
+import org.springframework.util.Assert;
+
+/**
+ * Endpoint that lists the open connections of the Qpid JMS connection factories
+ * with their sessions, consumers and producers, and for each consumer and
+ * producer the credit, queued and unsettled deliveries of its link and the
+ * messages waiting in the consumer's prefetch buffer.
+ * <p>
+ * See {@link QpidJMSConnectionDiagnostics} for how the values tell a consumer
+ * that is falling behind apart from one the broker is not sending to.
+ */
+public class QpidJMSEndpoint extends AbstractEndpoint<Map<String, Object>> {
+
+    public static final String ENDPOINT_ID = "qpidjms";
+
+    private final ConnectionFactory connectionFactory;
+
+    /**
+     * Creates a new endpoint for the given connection factory.
+     *
+     * @param connectionFactory
+     *      The factory to describe, may be a pooled or routing connection factory.
+     */
+    public QpidJMSEndpoint(ConnectionFactory connectionFactory) {
+        super(ENDPOINT_ID);
+        Assert.notNull(connectionFactory, "ConnectionFactory must not be null");
+        this.connectionFactory = connectionFactory;
+    }
+
+    @Override
+    public Map<String, Object> invoke() {
+        List<Map<String, Object>> connectionFactories = new ArrayList<>();
+        for (QpidJMSConnectionFactory brokerFactory : QpidJMSConnectionDiagnostics.getConnectionFactories(connectionFactory)) {
+            List<Map<String, Object>> connections = new ArrayList<>();
+            for (JmsConnection connection : brokerFactory.openConnections()) {
+                connections.add(QpidJMSConnectionDiagnostics.describe(connection));
+            }
+
+            Map<String, Object> description = new LinkedHashMap<>();
+            description.put("remoteURI", QpidJMSConnectionDiagnostics.sanitize(brokerFactory.getRemoteURI()));
+            description.put("connections", connections);
+            connectionFactories.add(description);
+        }
+
+        Map<String, Object> result = new LinkedHashMap<>();
+        result.put("connectionFactories", connectionFactories);
+        return result;
+    }
+}
@@ -0,0 +1,270 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.qpid.jms.spring.boot.autoconfigure;
+
+import java.util.ArrayList;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+
+import javax.jms.ConnectionFactory;
+
+import org.apache.qpid.jms.JmsConnectionFactory;
+import org.apache.qpid.jms.JmsConnectionListener;
+import org.springframework.beans.factory.ListableBeanFactory;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.beans.factory.support.AbstractBeanDefinition;
+import org.springframework.beans.factory.support.BeanDefinitionBuilder;
+import org.springframework.beans.factory.support.BeanDefinitionRegistry;
+import org.springframework.boot.autoconfigure.AutoConfigureAfter;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnClass;
+import org.springframework.boot.autoconfigure.jms.JmsAutoConfiguration;
+import org.springframework.boot.autoconfigure.jms.JmsProperties;
+import org.springframework.boot.bind.PropertiesConfigurationFactory;
+import org.springframework.boot.bind.RelaxedPropertyResolver;
+import org.springframework.context.EnvironmentAware;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.context.annotation.Import;
+import org.springframework.context.annotation.ImportBeanDefinitionRegistrar;
+import org.springframework.core.convert.support.DefaultConversionService;
+import org.springframework.core.env.ConfigurableEnvironment;
+import org.springframework.core.env.Environment;
+import org.springframework.core.type.AnnotationMetadata;
+import org.springframework.jms.core.JmsTemplate;
+import org.springframework.jms.support.converter.MessageConverter;
+import org.springframework.jms.support.destination.DestinationResolver;
+import org.springframework.util.Assert;
+import org.springframework.util.ClassUtils;
+import org.springframework.validation.BindException;
+
+/**
+ * Auto Configuration class that registers a connection factory, and optionally a
+ * JmsTemplate and a listener container factory, for each connection factory named
+ * under spring.qpidjms.factories.
+ * <p>
+ * Each named connection factory is configured from its own properties as the
+ * default one is from the spring.qpidjms properties, and opens connections of its
+ * own, so slow bulk traffic never shares a connection, or the I/O thread of that
+ * connection, with latency sensitive traffic sent through another factory.  The
+ * beans of a factory named bulk are bulkConnectionFactory, bulkJmsTemplate and
+ * bulkJmsListenerContainerFactory.  The connection factory and JmsTemplate that
+ * already exist remain the primary beans, injected wherever no qualifier is given.
+ * <p>
+ * The connection listener beans of the application are registered with the
+ * connections of every named factory, except for the warm failover standby,
+ * which follows the connections of the default factory only.  A named factory
+ * records to metrics of its own that are tagged with its own remote URI.
+ */
+@Configuration
+@AutoConfigureAfter({QpidJMSAutoConfiguration.class, JmsAutoConfiguration.class})
+@ConditionalOnClass({ConnectionFactory.class, JmsConnectionFactory.class, JmsTemplate.class})
+@Import(QpidJMSFactoriesAutoConfiguration.Registrar.class)
+public class QpidJMSFactoriesAutoConfiguration {
+
+    public static final String FACTORIES_PREFIX = "spring.qpidjms.factories.";
+
+    public static final String CONNECTION_FACTORY_BEAN_NAME_SUFFIX = "ConnectionFactory";
+    public static final String JMS_TEMPLATE_BEAN_NAME_SUFFIX = "JmsTemplate";
+    public static final String LISTENER_CONTAINER_FACTORY_BEAN_NAME_SUFFIX = "JmsListenerContainerFactory";
+
+    private static final boolean POOL_PRESENT = ClassUtils.isPresent(
+        QpidJMSPooledConnectionFactoryConfiguration.POOL_CLASS_NAME, QpidJMSFactoriesAutoConfiguration.class.getClassLoader());
+    private static final boolean METRICS_PRESENT = ClassUtils.isPresent(
+        "io.micrometer.core.instrument.MeterRegistry", QpidJMSFactoriesAutoConfiguration.class.getClassLoader());
+
+    static ConnectionFactory createConnectionFactory(QpidJMSFactoryProperties properties,
+                                                     ObjectProvider<List<JmsConnectionListener>> connectionListeners) {
+        return QpidJMSConnectionFactoryConfiguration.createTargetConnectionFactory(
+            properties, getConnectionListeners(properties, connectionListeners));
+    }
+
+    static ConnectionFactory createPooledConnectionFactory(QpidJMSFactoryProperties properties,
+                                                           ObjectProvider<List<JmsConnectionListener>> connectionListeners) {
+        return QpidJMSPooledConnectionFactoryConfiguration.createPooledConnectionFactory(
+            properties, getConnectionListeners(properties, connectionListeners));
+    }
+
+    static List<JmsConnectionListener> getConnectionListeners(QpidJMSFactoryProperties properties,
+                                                              ObjectProvider<List<JmsConnectionListener>> connectionListeners) {
+        List<JmsConnectionListener> listeners = new ArrayList<>();
+
+        List<JmsConnectionListener> available = connectionListeners.getIfAvailable();
+        if (available != null) {
+            for (JmsConnectionListener listener : available) {
+                if (listener instanceof QpidJMSFailoverStandby) {
+                    continue;
+                }
+
+                listeners.add(METRICS_PRESENT ? FactoryMetrics.forFactory(listener, properties) : listener);
+            }
+        }
+
+        return listeners;
+    }
+
+    static JmsTemplate createJmsTemplate(ConnectionFactory connectionFactory,
+                                         ObjectProvider<DestinationResolver> destinationResolver,
+                                         ObjectProvider<MessageConverter> messageConverter,
+                                         ObjectProvider<JmsProperties> jmsProperties) {
+        JmsTemplate jmsTemplate = new JmsTemplate(connectionFactory);
+
+        DestinationResolver resolver = destinationResolver.getIfUnique();
+        if (resolver != null) {
+            jmsTemplate.setDestinationResolver(resolver);
+        }
+
+        MessageConverter converter = messageConverter.getIfUnique();
+        if (converter != null) {
+            jmsTemplate.setMessageConverter(converter);
+        }
+
+        JmsProperties jms = jmsProperties.getIfAvailable();
+        if (jms != null) {
+            jmsTemplate.setPubSubDomain(jms.isPubSubDomain());
+        }
+
+        return jmsTemplate;
+    }
+
+    /**
+     * Registers the beans of every named connection factory once the default
+     * connection factory and JmsTemplate have been configured.
+     */
+    static class Registrar implements ImportBeanDefinitionRegistrar, EnvironmentAware {
+
+        private ConfigurableEnvironment environment;
+
+        @Override
+        public void setEnvironment(Environment environment) {
+            this.environment = (ConfigurableEnvironment) environment;
+        }
+
+        @Override
+        public void registerBeanDefinitions(AnnotationMetadata metadata, BeanDefinitionRegistry registry) {
+            Set<String> names = getFactoryNames();
+            if (names.isEmpty()) {
+                return;
+            }
+
+            // Keeps unqualified injection points on the beans they received before.
+            markPrimary(registry, ConnectionFactory.class);
+            markPrimary(registry, JmsTemplate.class);
+
+            for (String name : names) {
+                registerFactory(registry, name, bind(name));
+            }
+        }
+
+        private Set<String> getFactoryNames() {
+            Set<String> names = new LinkedHashSet<>();
+            for (String key : new RelaxedPropertyResolver(environment, FACTORIES_PREFIX).getSubProperties("").keySet()) {
+                int end = key.indexOf('.');
+                if (end > 0) {
+                    names.add(key.substring(0, end));
+                }
+            }
+
+            return names;
+        }
+
+        private QpidJMSFactoryProperties bind(String name) {
+            QpidJMSFactoryProperties properties = new QpidJMSFactoryProperties();
+
+            PropertiesConfigurationFactory<QpidJMSFactoryProperties> binder = new PropertiesConfigurationFactory<>(properties);
+            binder.setPropertySources(environment.getPropertySources());
+            binder.setConversionService(new DefaultConversionService());
+            binder.setTargetName(FACTORIES_PREFIX + name);
+
+            try {
+                binder.bindPropertiesToTarget();
+            } catch (BindException ex) {
+                throw new IllegalStateException("Could not bind the properties of Qpid JMS connection factory " + name, ex);
+            }
+
+            return properties;
+        }
+
+        private void registerFactory(BeanDefinitionRegistry registry, String name, QpidJMSFactoryProperties properties) {
+            String connectionFactoryBeanName = name + CONNECTION_FACTORY_BEAN_NAME_SUFFIX;
+
+            BeanDefinitionBuilder connectionFactory;
+            if (properties.getPool().isEnabled()) {
+                Assert.state(POOL_PRESENT, QpidJMSPooledConnectionFactoryConfiguration.POOL_MISSING_MESSAGE);
+                connectionFactory = BeanDefinitionBuilder
+                    .genericBeanDefinition(QpidJMSFactoriesAutoConfiguration.class)
+                    .setFactoryMethod("createPooledConnectionFactory")
+                    .setDestroyMethodName("stop");
+            } else {
+                connectionFactory = BeanDefinitionBuilder
+                    .genericBeanDefinition(QpidJMSFactoriesAutoConfiguration.class)
+                    .setFactoryMethod("createConnectionFactory")
+                    .setDestroyMethodName(AbstractBeanDefinition.INFER_METHOD);
+            }
+
+            connectionFactory.addConstructorArgValue(properties);
+            register(registry, connectionFactoryBeanName, connectionFactory);
+
+            if (properties.isJmsTemplate()) {
+                register(registry, name + JMS_TEMPLATE_BEAN_NAME_SUFFIX, BeanDefinitionBuilder
+                    .genericBeanDefinition(QpidJMSFactoriesAutoConfiguration.class)
+                    .setFactoryMethod("createJmsTemplate")
+                    .addConstructorArgReference(connectionFactoryBeanName));
+            }
+
+            if (properties.isListenerContainerFactory()) {
+                register(registry, name + LISTENER_CONTAINER_FACTORY_BEAN_NAME_SUFFIX, BeanDefinitionBuilder
+                    .genericBeanDefinition(QpidJMSListenerContainerConfiguration.class)
+                    .setFactoryMethod("createListenerContainerFactory")
+                    .addConstructorArgReference(connectionFactoryBeanName)
+                    .addConstructorArgValue(properties));
+            }
+        }
+
+        // The arguments not given explicitly are autowired.
+        private void register(BeanDefinitionRegistry registry, String beanName, BeanDefinitionBuilder builder) {
+            if (registry.containsBeanDefinition(beanName)) {
+                throw new IllegalStateException("Cannot register Qpid JMS connection factory bean " + beanName +
+                    ", a bean with that name is already defined");
+            }
+
+            builder.setAutowireMode(AbstractBeanDefinition.AUTOWIRE_CONSTRUCTOR);
+            registry.registerBeanDefinition(beanName, builder.getBeanDefinition());
+        }
+
+        // Only a single bean is made primary, several beans were already ambiguous.
+        private void markPrimary(BeanDefinitionRegistry registry, Class<?> type) {
+            if (registry instanceof ListableBeanFactory) {
+                String[] beanNames = ((ListableBeanFactory) registry).getBeanNamesForType(type, true, false);
+                if (beanNames.length == 1 && registry.containsBeanDefinition(beanNames[0])) {
+                    registry.getBeanDefinition(beanNames[0]).setPrimary(true);
+                }
+            }
+        }
+    }
+
+    // Kept separate so the metrics classes are only loaded when they are present.
+    private static final class FactoryMetrics {
+
+        static JmsConnectionListener forFactory(JmsConnectionListener listener, QpidJMSProperties properties) {
+            if (listener instanceof QpidJMSMetrics) {
+                return ((QpidJMSMetrics) listener).forRemote(QpidJMSMetricsAutoConfiguration.getRemoteTag(properties));
+            }
+
+            return listener;
+        }
+    }
+}
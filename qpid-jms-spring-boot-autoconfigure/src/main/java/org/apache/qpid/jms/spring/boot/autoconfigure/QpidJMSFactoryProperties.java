@@ -0,0 +1,54 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.qpid.jms.spring.boot.autoconfigure;
+
+/**
+ * Configuration properties of a named Qpid JMS connection factory, bound from
+ * spring.qpidjms.factories.&lt;name&gt;.
+ * <p>
+ * A named factory takes every Qpid JMS property under its own prefix, none of
+ * them are inherited from the spring.qpidjms properties of the default factory.
+ */
+public class QpidJMSFactoryProperties extends QpidJMSProperties {
+
+    /**
+     * Whether a JmsTemplate that uses the named connection factory is registered.
+     */
+    private boolean jmsTemplate = true;
+
+    /**
+     * Whether a listener container factory that uses the named connection factory
+     * is registered.
+     */
+    private boolean listenerContainerFactory = true;
+
+    public boolean isJmsTemplate() {
+        return jmsTemplate;
+    }
+
+    public void setJmsTemplate(boolean jmsTemplate) {
+        this.jmsTemplate = jmsTemplate;
+    }
+
+    public boolean isListenerContainerFactory() {
+        return listenerContainerFactory;
+    }
+
+    public void setListenerContainerFactory(boolean listenerContainerFactory) {
+        this.listenerContainerFactory = listenerContainerFactory;
+    }
+}
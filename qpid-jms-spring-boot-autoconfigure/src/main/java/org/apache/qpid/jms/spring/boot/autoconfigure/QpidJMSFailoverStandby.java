@@ -0,0 +1,407 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.qpid.jms.spring.boot.autoconfigure;
+
+import java.net.URI;
+import java.net.URISyntaxException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+
+import javax.jms.Connection;
+import javax.jms.ExceptionListener;
+import javax.jms.JMSException;
+import javax.jms.MessageConsumer;
+import javax.jms.MessageProducer;
+import javax.jms.Session;
+import javax.net.ssl.SSLContext;
+
+import org.apache.qpid.jms.JmsConnectionFactory;
+import org.apache.qpid.jms.JmsConnectionListener;
+import org.apache.qpid.jms.message.JmsInboundMessageDispatch;
+import org.apache.qpid.jms.util.URISupport;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.jms.support.JmsUtils;
+import org.springframework.util.Assert;
+import org.springframework.util.StringUtils;
+
+/**
+ * Keeps an idle connection open to the failover peer that follows the one the
+ * application is connected to.
+ * <p>
+ * Registered as a {@link JmsConnectionListener} on the connections of a
+ * {@link QpidJMSConnectionFactory} created from a failover URI it follows the
+ * peer each connection is established or restored on, and opens, authenticates
+ * and then holds a plain connection to the next peer in the failover list.  The
+ * failover provider still opens its own transport when it moves to that peer,
+ * the standby ensures the peer is known to accept connections beforehand and
+ * keeps its address cached.  When it is given the SSLContext the application's
+ * connections share, its handshake also leaves the peer's TLS session in the
+ * cache they resume from.  The standby never carries a client ID so it cannot
+ * collide with the connection that fails over to its peer.  A standby that
+ * cannot be opened or that is lost is retried after the retry interval.  Like the
+ * failover options, a standby for a remote URI that is not a failover URI is
+ * ignored with a warning and never opens a connection.
+ */
+public class QpidJMSFailoverStandby implements JmsConnectionListener, DisposableBean {
+
+    public static final long DEFAULT_RETRY_INTERVAL = 5000;
+
+    private static final Logger LOG = LoggerFactory.getLogger(QpidJMSFailoverStandby.class);
+
+    private static final String NESTED_OPTION_PREFIX = "failover.nested.";
+    private static final String JMS_OPTION_PREFIX = "jms.";
+    private static final String CLIENT_ID_OPTION = "jms.clientID";
+
+    private final List<URI> peers;
+    private final List<JmsConnectionFactory> peerFactories;
+    private final ScheduledExecutorService executor;
+
+    private long retryInterval = DEFAULT_RETRY_INTERVAL;
+    private SSLContext sslContext;
+
+    // Only changed from the executor thread.
+    private volatile Connection standby;
+    private volatile int standbyIndex = -1;
+    private int activeIndex = -1;
+    private ScheduledFuture<?> retry;
+
+    private volatile boolean closed;
+
+    /**
+     * Creates a new standby for the peers of the given failover URI, a remote URI
+     * that is not a failover URI is ignored and leaves the standby without peers.
+     *
+     * @param remoteURI
+     *      The failover URI the application connections are created from.
+     * @param username
+     *      The user name of the standby connections, or null to use any given on the URI.
+     * @param password
+     *      The password of the standby connections, or null to use any given on the URI.
+     */
+    public QpidJMSFailoverStandby(String remoteURI, String username, String password) {
+        Assert.hasText(remoteURI, "Remote URI must not be empty");
+
+        try {
+            URI uri = new URI(remoteURI);
+            if (QpidJMSConnectionFactoryFactory.FAILOVER_SCHEME.equalsIgnoreCase(uri.getScheme())) {
+                this.peers = Collections.unmodifiableList(getPeers(uri));
+            } else {
+                LOG.warn("A warm standby is only kept for failover: remote URLs, ignoring it for {}",
+                         URISupport.removeQuery(uri));
+                this.peers = Collections.emptyList();
+            }
+        } catch (URISyntaxException ex) {
+            throw new IllegalArgumentException("Invalid remote URL: " + ex.getMessage(), ex);
+        }
+
+        this.peerFactories = new ArrayList<>(peers.size());
+        for (URI peer : peers) {
+            JmsConnectionFactory factory = new JmsConnectionFactory(peer);
+            if (StringUtils.hasLength(username)) {
+                factory.setUsername(username);
+            }
+            if (StringUtils.hasLength(password)) {
+                factory.setPassword(password);
+            }
+
+            peerFactories.add(factory);
+        }
+
+        this.executor = Executors.newSingleThreadScheduledExecutor(new ThreadFactory() {
+
+            @Override
+            public Thread newThread(Runnable runnable) {
+                Thread thread = new Thread(runnable, "QpidJMS Failover Standby");
+                thread.setDaemon(true);
+                return thread;
+            }
+        });
+    }
+
+    public long getRetryInterval() {
+        return retryInterval;
+    }
+
+    public void setRetryInterval(long retryInterval) {
+        Assert.isTrue(retryInterval > 0, "Retry interval must be greater than zero");
+        this.retryInterval = retryInterval;
+    }
+
+    /**
+     * Sets the time to wait for a standby connection to be established.
+     *
+     * @param connectTimeout
+     *      The connect timeout in milliseconds.
+     */
+    public void setConnectTimeout(long connectTimeout) {
+        for (JmsConnectionFactory factory : peerFactories) {
+            factory.setConnectTimeout(connectTimeout);
+        }
+    }
+
+    public SSLContext getSslContext() {
+        return sslContext;
+    }
+
+    /**
+     * Sets the SSLContext of the standby connections, which should be the one
+     * shared by the application's connections.
+     *
+     * @param sslContext
+     *      The SSLContext, or null to let the client create one per connection.
+     */
+    public void setSslContext(SSLContext sslContext) {
+        this.sslContext = sslContext;
+        for (JmsConnectionFactory factory : peerFactories) {
+            factory.setSslContext(sslContext);
+        }
+    }
+
+    public List<URI> getPeers() {
+        return peers;
+    }
+
+    /**
+     * @return the peer the standby connection is open to, or null when there is none.
+     */
+    public URI getStandbyURI() {
+        int index = standbyIndex;
+        return standby != null && index >= 0 ? peers.get(index) : null;
+    }
+
+    public boolean isStandbyConnected() {
+        return standby != null;
+    }
+
+    @Override
+    public void destroy() throws InterruptedException {
+        closed = true;
+
+        executor.shutdownNow();
+        executor.awaitTermination(5, TimeUnit.SECONDS);
+
+        JmsUtils.closeConnection(standby);
+        standby = null;
+        standbyIndex = -1;
+    }
+
+    @Override
+    public void onConnectionEstablished(URI remoteURI) {
+        activePeerChanged(remoteURI);
+    }
+
+    @Override
+    public void onConnectionRestored(URI remoteURI) {
+        activePeerChanged(remoteURI);
+    }
+
+    @Override
+    public void onConnectionFailure(Throwable error) {
+    }
+
+    @Override
+    public void onConnectionInterrupted(URI remoteURI) {
+    }
+
+    @Override
+    public void onInboundMessage(JmsInboundMessageDispatch envelope) {
+    }
+
+    @Override
+    public void onSessionClosed(Session session, Throwable cause) {
+    }
+
+    @Override
+    public void onConsumerClosed(MessageConsumer consumer, Throwable cause) {
+    }
+
+    @Override
+    public void onProducerClosed(MessageProducer producer, Throwable cause) {
+    }
+
+    @Override
+    public void onRemoteDiscovery(List<URI> uris) {
+    }
+
+    //----- Internal implementation ------------------------------------------//
+
+    private void activePeerChanged(URI remoteURI) {
+        final int index = indexOf(remoteURI);
+        if (index < 0 || peers.size() < 2 || closed) {
+            return;
+        }
+
+        execute(new Runnable() {
+
+            @Override
+            public void run() {
+                activeIndex = index;
+
+                int next = (index + 1) % peers.size();
+                if (standby != null && standbyIndex == next) {
+                    return;
+                }
+
+                closeStandby();
+                openStandby(next);
+            }
+        });
+    }
+
+    private void openStandby(int index) {
+        if (closed) {
+            return;
+        }
+
+        Connection connection = null;
+        try {
+            connection = peerFactories.get(index).createConnection();
+
+            final Connection created = connection;
+            connection.setExceptionListener(new ExceptionListener() {
+
+                @Override
+                public void onException(final JMSException exception) {
+                    execute(new Runnable() {
+
+                        @Override
+                        public void run() {
+                            standbyFailed(created, exception);
+                        }
+                    });
+                }
+            });
+
+            // Starting the connection connects and authenticates it.
+            connection.start();
+
+            standby = connection;
+            standbyIndex = index;
+
+            LOG.debug("Failover standby connection open to {}", URISupport.removeQuery(peers.get(index)));
+        } catch (Exception ex) {
+            JmsUtils.closeConnection(connection);
+            LOG.warn("Failover standby connection to {} could not be opened: {}",
+                     peers.get(index).getHost() + ":" + peers.get(index).getPort(), ex.getMessage());
+            scheduleRetry();
+        }
+    }
+
+    private void standbyFailed(Connection connection, JMSException cause) {
+        if (standby != connection) {
+            return;
+        }
+
+        LOG.warn("Failover standby connection to {} lost: {}",
+                 peers.get(standbyIndex).getHost() + ":" + peers.get(standbyIndex).getPort(), cause.getMessage());
+
+        closeStandby();
+        scheduleRetry();
+    }
+
+    private void closeStandby() {
+        JmsUtils.closeConnection(standby);
+        standby = null;
+        standbyIndex = -1;
+    }
+
+    private void scheduleRetry() {
+        if (closed || (retry != null && !retry.isDone())) {
+            return;
+        }
+
+        try {
+            retry = executor.schedule(new Runnable() {
+
+                @Override
+                public void run() {
+                    if (standby == null && activeIndex >= 0) {
+                        openStandby((activeIndex + 1) % peers.size());
+                    }
+                }
+            }, retryInterval, TimeUnit.MILLISECONDS);
+        } catch (RejectedExecutionException ex) {
+            // The standby has been destroyed while the attempt was in progress.
+        }
+    }
+
+    private void execute(Runnable task) {
+        try {
+            executor.execute(task);
+        } catch (RejectedExecutionException ex) {
+            // The standby has been destroyed, there is nothing left to update.
+        }
+    }
+
+    private int indexOf(URI remoteURI) {
+        if (remoteURI == null || remoteURI.getHost() == null) {
+            return -1;
+        }
+
+        for (int i = 0; i < peers.size(); ++i) {
+            URI peer = peers.get(i);
+            if (remoteURI.getHost().equalsIgnoreCase(peer.getHost()) && remoteURI.getPort() == peer.getPort()) {
+                return i;
+            }
+        }
+
+        return -1;
+    }
+
+    /**
+     * Returns the peers of a failover URI, each carrying the nested options and the
+     * connection level options of the failover URI except for the client ID.
+     */
+    static List<URI> getPeers(URI remoteURI) throws URISyntaxException {
+        Assert.isTrue(QpidJMSConnectionFactoryFactory.FAILOVER_SCHEME.equalsIgnoreCase(remoteURI.getScheme()),
+            "A failover standby requires a failover: remote URL");
+
+        URISupport.CompositeData composite = URISupport.parseComposite(remoteURI);
+
+        Map<String, String> shared = new LinkedHashMap<>();
+        for (Map.Entry<String, String> option : composite.getParameters().entrySet()) {
+            String key = option.getKey();
+            if (key.startsWith(NESTED_OPTION_PREFIX)) {
+                shared.put(key.substring(NESTED_OPTION_PREFIX.length()), option.getValue());
+            } else if (key.startsWith(JMS_OPTION_PREFIX) && !key.equalsIgnoreCase(CLIENT_ID_OPTION)) {
+                shared.put(key, option.getValue());
+            }
+        }
+
+        List<URI> peers = new ArrayList<>(composite.getComponents().size());
+        for (URI component : composite.getComponents()) {
+            Map<String, String> options = new LinkedHashMap<>(shared);
+            options.putAll(URISupport.parseParameters(component));
+            options.remove(CLIENT_ID_OPTION);
+
+            peers.add(URISupport.applyParameters(URISupport.removeQuery(component), options, ""));
+        }
+
+        return peers;
+    }
+}
@@ -0,0 +1,283 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.qpid.jms.spring.boot.autoconfigure;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+import javax.jms.Connection;
+import javax.jms.ConnectionFactory;
+import javax.jms.ExceptionListener;
+import javax.jms.JMSException;
+
+import org.apache.qpid.jms.JmsConnection;
+import org.apache.qpid.jms.JmsConnectionFactory;
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.boot.actuate.health.AbstractHealthIndicator;
+import org.springframework.boot.actuate.health.Health;
+import org.springframework.boot.actuate.health.Status;
+import org.springframework.jms.support.JmsUtils;
+import org.springframework.util.Assert;
+
+/**
+ * HealthIndicator that reports the state of the connections the Qpid JMS
+ * connection factories already hold rather than opening a connection for every
+ * check.
+ * <p>
+ * A connection factory is up while at least one of its open connections is
+ * connected.  Only a factory without any open connection is probed, with a
+ * connection that is opened once in the background and kept open for later
+ * checks, so a broker that is slow to respond or a failover URI that keeps
+ * reconnecting never holds up the health endpoint for longer than the probe
+ * timeout.  A failed probe connection is replaced on the next check.  With
+ * several brokers the indicator is up while any of them is, each broker is
+ * listed in the details.  Connection factories of other JMS clients are
+ * checked with a probe connection alone.
+ * <p>
+ * A probe connection must not hold the client ID the application connects with,
+ * the probes of QpidJMSConnectionFactory instances use a generated client ID.
+ * The probe of a plain JmsConnectionFactory with a client ID is closed after
+ * each check instead.
+ */
+public class QpidJMSHealthIndicator extends AbstractHealthIndicator implements DisposableBean {
+
+    public static final long DEFAULT_PROBE_TIMEOUT = 5000;
+
+    private final ConnectionFactory connectionFactory;
+    private final Map<Object, ProbeConnection> probes = new HashMap<>();
+    private final ExecutorService probeExecutor;
+
+    private long probeTimeout = DEFAULT_PROBE_TIMEOUT;
+
+    /**
+     * Creates a new health indicator for the given connection factory.
+     *
+     * @param connectionFactory
+     *      The factory to check, may be a pooled or routing connection factory.
+     */
+    public QpidJMSHealthIndicator(ConnectionFactory connectionFactory) {
+        Assert.notNull(connectionFactory, "ConnectionFactory must not be null");
+        this.connectionFactory = connectionFactory;
+        this.probeExecutor = Executors.newCachedThreadPool(new ThreadFactory() {
+
+            @Override
+            public Thread newThread(Runnable runnable) {
+                Thread thread = new Thread(runnable, "QpidJMS Health Probe");
+                thread.setDaemon(true);
+                return thread;
+            }
+        });
+    }
+
+    public long getProbeTimeout() {
+        return probeTimeout;
+    }
+
+    /**
+     * Sets the time in milliseconds a check waits for a probe connection to be
+     * established before it reports the connection factory as down.
+     *
+     * @param probeTimeout
+     *      The maximum time to wait for a probe connection.
+     */
+    public void setProbeTimeout(long probeTimeout) {
+        Assert.isTrue(probeTimeout >= 0, "Probe timeout must not be negative");
+        this.probeTimeout = probeTimeout;
+    }
+
+    @Override
+    protected void doHealthCheck(Health.Builder builder) throws Exception {
+        List<QpidJMSConnectionFactory> connectionFactories =
+            QpidJMSConnectionDiagnostics.getConnectionFactories(connectionFactory);
+
+        if (connectionFactories.isEmpty()) {
+            ProbeConnection probe = probe(connectionFactory);
+            builder.status(probe.await(probeTimeout) ? Status.UP : Status.DOWN);
+            if (connectionFactory instanceof JmsConnectionFactory &&
+                ((JmsConnectionFactory) connectionFactory).getClientID() != null) {
+                discard(probe);
+            }
+            return;
+        }
+
+        boolean available = false;
+        List<Map<String, Object>> brokers = new ArrayList<>(connectionFactories.size());
+
+        for (QpidJMSConnectionFactory brokerFactory : connectionFactories) {
+            List<JmsConnection> connections = brokerFactory.openConnections();
+            if (connections.isEmpty() || hasFailedProbe(brokerFactory)) {
+                probe(brokerFactory).await(probeTimeout);
+                connections = brokerFactory.openConnections();
+            }
+
+            int connected = 0;
+            for (JmsConnection connection : connections) {
+                if (connection.isConnected() && !connection.isFailed()) {
+                    connected++;
+                }
+            }
+
+            available |= connected > 0;
+
+            Map<String, Object> broker = new LinkedHashMap<>();
+            broker.put("remoteURI", QpidJMSConnectionDiagnostics.sanitize(brokerFactory.getRemoteURI()));
+            broker.put("connections", connections.size());
+            broker.put("connected", connected);
+            brokers.add(broker);
+        }
+
+        builder.status(available ? Status.UP : Status.DOWN);
+        if (brokers.size() == 1) {
+            for (Map.Entry<String, Object> detail : brokers.get(0).entrySet()) {
+                builder.withDetail(detail.getKey(), detail.getValue());
+            }
+        } else {
+            builder.withDetail("brokers", brokers);
+        }
+    }
+
+    @Override
+    public void destroy() {
+        probeExecutor.shutdownNow();
+
+        synchronized (probes) {
+            for (ProbeConnection probe : probes.values()) {
+                probe.close();
+            }
+            probes.clear();
+        }
+    }
+
+    // Returns the probe of the factory, replacing one that has failed.
+    private ProbeConnection probe(ConnectionFactory factory) {
+        synchronized (probes) {
+            ProbeConnection probe = probes.get(factory);
+            if (probe == null || probe.isFailed()) {
+                if (probe != null) {
+                    probe.close();
+                }
+
+                probe = new ProbeConnection(factory);
+                probes.put(factory, probe);
+            }
+
+            return probe;
+        }
+    }
+
+    private void discard(ProbeConnection probe) {
+        synchronized (probes) {
+            probes.values().remove(probe);
+        }
+
+        probe.close();
+    }
+
+    private boolean hasFailedProbe(ConnectionFactory factory) {
+        synchronized (probes) {
+            ProbeConnection probe = probes.get(factory);
+            return probe != null && probe.isFailed();
+        }
+    }
+
+    /**
+     * A connection opened in the background and kept open to check a connection
+     * factory that has no other open connections.
+     */
+    private final class ProbeConnection implements ExceptionListener {
+
+        private final Future<Connection> connecting;
+
+        private volatile boolean failed;
+
+        ProbeConnection(final ConnectionFactory factory) {
+            this.connecting = probeExecutor.submit(new Callable<Connection>() {
+
+                @Override
+                public Connection call() throws JMSException {
+                    Connection connection = factory instanceof QpidJMSConnectionFactory ?
+                        ((QpidJMSConnectionFactory) factory).createConnectionWithoutClientID() : factory.createConnection();
+                    try {
+                        connection.setExceptionListener(ProbeConnection.this);
+                        connection.start();
+                    } catch (JMSException ex) {
+                        JmsUtils.closeConnection(connection);
+                        throw ex;
+                    }
+
+                    return connection;
+                }
+            });
+        }
+
+        boolean await(long timeout) throws InterruptedException {
+            try {
+                Connection connection = connecting.get(timeout, TimeUnit.MILLISECONDS);
+                if (connection instanceof JmsConnection) {
+                    return ((JmsConnection) connection).isConnected() && !failed;
+                }
+
+                return !failed;
+            } catch (ExecutionException | TimeoutException ex) {
+                return false;
+            }
+        }
+
+        boolean isFailed() {
+            if (failed) {
+                return true;
+            }
+
+            if (connecting.isDone()) {
+                try {
+                    Connection connection = connecting.get();
+                    return connection instanceof JmsConnection && ((JmsConnection) connection).isFailed();
+                } catch (Exception ex) {
+                    return true;
+                }
+            }
+
+            return false;
+        }
+
+        void close() {
+            if (!connecting.cancel(true)) {
+                try {
+                    JmsUtils.closeConnection(connecting.get());
+                } catch (Exception ex) {
+                    // The probe never connected, there is nothing to close.
+                }
+            }
+        }
+
+        @Override
+        public void onException(JMSException ex) {
+            failed = true;
+        }
+    }
+}
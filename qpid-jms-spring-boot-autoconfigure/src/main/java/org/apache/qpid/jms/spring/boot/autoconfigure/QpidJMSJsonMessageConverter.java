@@ -0,0 +1,103 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.qpid.jms.spring.boot.autoconfigure;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+import javax.jms.Message;
+
+import org.springframework.util.Assert;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectReader;
+import com.fasterxml.jackson.databind.ObjectWriter;
+
+/**
+ * Converter that encodes payloads as JSON using a Jackson {@link ObjectMapper}.
+ * <p>
+ * Any payload other than text, which is left to the delegate as a TextMessage,
+ * binary content and JMS messages is written as JSON.  The writer and reader for
+ * each payload type are created from the ObjectMapper once and reused.  Messages
+ * without a type id are decoded to the generic Jackson types, maps, lists and
+ * simple values.
+ */
+public class QpidJMSJsonMessageConverter extends QpidJMSPayloadMessageConverter {
+
+    public static final String CONTENT_TYPE = "application/json";
+
+    private final ObjectMapper objectMapper;
+    private final ConcurrentMap<Class<?>, ObjectWriter> writers = new ConcurrentHashMap<>();
+    private final ConcurrentMap<Class<?>, ObjectReader> readers = new ConcurrentHashMap<>();
+
+    /**
+     * Creates a new converter with a default ObjectMapper.
+     */
+    public QpidJMSJsonMessageConverter() {
+        this(new ObjectMapper());
+    }
+
+    /**
+     * Creates a new converter that uses the given ObjectMapper.
+     *
+     * @param objectMapper
+     *      The ObjectMapper that payloads are written and read with.
+     */
+    public QpidJMSJsonMessageConverter(ObjectMapper objectMapper) {
+        super(CONTENT_TYPE);
+        Assert.notNull(objectMapper, "ObjectMapper must not be null");
+        this.objectMapper = objectMapper;
+    }
+
+    public ObjectMapper getObjectMapper() {
+        return objectMapper;
+    }
+
+    @Override
+    protected boolean supports(Object payload) {
+        return !(payload instanceof CharSequence || payload instanceof byte[] || payload instanceof ByteBuffer ||
+                 payload instanceof QpidJMSBytesPayload || payload instanceof Message);
+    }
+
+    @Override
+    protected void encode(Object payload, OutputStream out) throws IOException {
+        ObjectWriter writer = writers.get(payload.getClass());
+        if (writer == null) {
+            writer = writers.computeIfAbsent(payload.getClass(), objectMapper::writerFor);
+        }
+
+        writer.writeValue(out, payload);
+    }
+
+    @Override
+    protected Object decode(byte[] array, int offset, int length, Class<?> type) throws IOException {
+        ObjectReader reader = readers.get(type);
+        if (reader == null) {
+            reader = readers.computeIfAbsent(type, objectMapper::readerFor);
+        }
+
+        return reader.readValue(array, offset, length);
+    }
+
+    @Override
+    protected Class<?> getDefaultType() {
+        return Object.class;
+    }
+}
@@ -0,0 +1,130 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.qpid.jms.spring.boot.autoconfigure;
+
+import javax.jms.ConnectionFactory;
+import javax.jms.Session;
+
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnClass;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnMissingBean;
+import org.springframework.boot.autoconfigure.jms.JmsProperties;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.core.env.Environment;
+import org.springframework.jms.annotation.EnableJms;
+import org.springframework.jms.support.converter.MessageConverter;
+import org.springframework.jms.support.destination.DestinationResolver;
+
+/**
+ * Class that is responsible for creating the Qpid JMS specific listener container
+ * factory that annotated listeners can select by name.
+ */
+@Configuration
+@ConditionalOnClass(EnableJms.class)
+public class QpidJMSListenerContainerConfiguration {
+
+    public static final String LISTENER_CONTAINER_FACTORY_BEAN_NAME = "qpidJmsListenerContainerFactory";
+
+    @Bean(name = LISTENER_CONTAINER_FACTORY_BEAN_NAME)
+    @ConditionalOnMissingBean(name = LISTENER_CONTAINER_FACTORY_BEAN_NAME)
+    public QpidJMSListenerContainerFactory qpidJmsListenerContainerFactory(
+            ConnectionFactory connectionFactory, QpidJMSProperties properties,
+            ObjectProvider<DestinationResolver> destinationResolver,
+            ObjectProvider<MessageConverter> messageConverter,
+            ObjectProvider<JmsProperties> jmsProperties, Environment environment) {
+
+        return createListenerContainerFactory(connectionFactory, properties,
+            destinationResolver, messageConverter, jmsProperties, environment);
+    }
+
+    static QpidJMSListenerContainerFactory createListenerContainerFactory(
+            ConnectionFactory connectionFactory, QpidJMSProperties properties,
+            ObjectProvider<DestinationResolver> destinationResolver,
+            ObjectProvider<MessageConverter> messageConverter,
+            ObjectProvider<JmsProperties> jmsProperties, Environment environment) {
+
+        QpidJMSListenerContainerFactory factory = new QpidJMSListenerContainerFactory();
+        factory.setConnectionFactory(connectionFactory);
+
+        DestinationResolver resolver = destinationResolver.getIfUnique();
+        if (resolver != null) {
+            factory.setDestinationResolver(resolver);
+        }
+
+        MessageConverter converter = messageConverter.getIfUnique();
+        if (converter != null) {
+            factory.setMessageConverter(converter);
+        }
+
+        JmsProperties jms = jmsProperties.getIfAvailable();
+        if (jms != null) {
+            factory.setPubSubDomain(jms.isPubSubDomain());
+        }
+
+        QpidJMSProperties.Listener listener = properties.getListener();
+
+        if (listener.getMaxConcurrency() != null) {
+            factory.setConcurrency(listener.getConcurrency() + "-" + listener.getMaxConcurrency());
+        } else {
+            factory.setConcurrency(String.valueOf(listener.getConcurrency()));
+        }
+
+        factory.setBacklogThreshold(listener.getBacklogThreshold());
+        factory.setMonitorInterval(listener.getMonitorInterval());
+        factory.setIdleChecksBeforeScaleDown(listener.getIdleChecksBeforeScaleDown());
+        factory.setVirtualThreads(listener.isVirtualThreads());
+
+        if (listener.getAcknowledgeMode() != null) {
+            factory.setSessionAcknowledgeMode(listener.getAcknowledgeMode().getMode());
+        }
+
+        // Batches are committed as one local transaction of the listener session.
+        if (listener.getBatchSize() > 1) {
+            factory.setSessionTransacted(true);
+        }
+
+        factory.setBatchSize(listener.getBatchSize());
+        factory.setBatchTimeout(listener.getBatchTimeout());
+
+        // Coalesced acknowledgements settle everything a session delivered, which
+        // client acknowledgement does with a single acknowledge call.
+        QpidJMSProperties.Ack ack = properties.getAck();
+        if (ack.isEnabled()) {
+            factory.setSessionAcknowledgeMode(Session.CLIENT_ACKNOWLEDGE);
+            factory.setMaxPendingAcknowledgements(ack.getMaxPending());
+            factory.setAcknowledgeFlushInterval(ack.getFlushInterval());
+        }
+
+        // Shared and durable subscriptions apply to the listeners on topics only.
+        QpidJMSProperties.Subscription subscription = properties.getSubscription();
+        if (subscription.isShared()) {
+            factory.setSubscriptionShared(true);
+        }
+
+        if (subscription.isDurable()) {
+            factory.setSubscriptionDurable(true);
+        }
+
+        factory.setSubscriptionNameTemplate(subscription.getNameTemplate());
+        factory.setApplicationName(environment.getProperty("spring.application.name", "application"));
+
+        factory.setAutoStartup(listener.isAutoStartup());
+
+        return factory;
+    }
+}
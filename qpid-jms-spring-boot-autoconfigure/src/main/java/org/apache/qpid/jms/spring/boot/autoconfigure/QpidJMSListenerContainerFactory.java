@@ -0,0 +1,245 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.qpid.jms.spring.boot.autoconfigure;
+
+import org.springframework.jms.config.AbstractJmsListenerContainerFactory;
+import org.springframework.jms.config.AbstractJmsListenerEndpoint;
+import org.springframework.jms.config.JmsListenerEndpoint;
+import org.springframework.jms.config.MethodJmsListenerEndpoint;
+import org.springframework.util.ClassUtils;
+
+/**
+ * JmsListenerContainerFactory that creates {@link QpidJMSMessageListenerContainer}
+ * instances for annotated listener endpoints.
+ * <p>
+ * The values configured on the factory are defaults, a concurrency set on the
+ * endpoint itself takes precedence.
+ * <p>
+ * Shared and durable subscriptions are only applied to listeners on topics, that
+ * is listeners of a publish/subscribe factory and endpoints that name their
+ * subscription.  Other listeners of the same factory keep consuming from their
+ * queue, where a Spring factory would make every listener a topic subscriber.
+ * <p>
+ * Listeners on durable or shared topic subscriptions that do not name their
+ * subscription are given a name from the subscription name template, so that
+ * each listener has a subscription of its own that keeps its name across
+ * restarts and is the same on every instance of the application.  The listener
+ * id in the template is the id of the endpoint, or for annotated listeners
+ * without an id the simple name of the bean class and the listener method.
+ */
+public class QpidJMSListenerContainerFactory extends AbstractJmsListenerContainerFactory<QpidJMSMessageListenerContainer> {
+
+    public static final String DEFAULT_SUBSCRIPTION_NAME_TEMPLATE = "{listener}";
+
+    // Prefix of the ids Spring generates for annotated listeners without an id.
+    private static final String GENERATED_ENDPOINT_ID_PREFIX = "org.springframework.jms.JmsListenerEndpointContainer#";
+
+    private String concurrency;
+    private Integer backlogThreshold;
+    private Long monitorInterval;
+    private Integer idleChecksBeforeScaleDown;
+    private Boolean virtualThreads;
+    private Integer batchSize;
+    private Long batchTimeout;
+    private Integer maxPendingAcknowledgements;
+    private Long acknowledgeFlushInterval;
+    private Boolean subscriptionShared;
+    private Boolean subscriptionDurable;
+    private String subscriptionNameTemplate;
+    private String applicationName;
+
+    /**
+     * @param concurrency
+     *      The fixed count or "lower-upper" range of consumers for each container.
+     */
+    public void setConcurrency(String concurrency) {
+        this.concurrency = concurrency;
+    }
+
+    public void setBacklogThreshold(Integer backlogThreshold) {
+        this.backlogThreshold = backlogThreshold;
+    }
+
+    public void setMonitorInterval(Long monitorInterval) {
+        this.monitorInterval = monitorInterval;
+    }
+
+    public void setIdleChecksBeforeScaleDown(Integer idleChecksBeforeScaleDown) {
+        this.idleChecksBeforeScaleDown = idleChecksBeforeScaleDown;
+    }
+
+    public void setVirtualThreads(Boolean virtualThreads) {
+        this.virtualThreads = virtualThreads;
+    }
+
+    /**
+     * @param batchSize
+     *      The number of messages each session commits at once, above one the
+     *      factory must also create transacted sessions.
+     */
+    public void setBatchSize(Integer batchSize) {
+        this.batchSize = batchSize;
+    }
+
+    public void setBatchTimeout(Long batchTimeout) {
+        this.batchTimeout = batchTimeout;
+    }
+
+    /**
+     * @param maxPendingAcknowledgements
+     *      The number of processed messages a client acknowledged session may
+     *      leave unacknowledged, above one acknowledgements are coalesced.
+     */
+    public void setMaxPendingAcknowledgements(Integer maxPendingAcknowledgements) {
+        this.maxPendingAcknowledgements = maxPendingAcknowledgements;
+    }
+
+    public void setAcknowledgeFlushInterval(Long acknowledgeFlushInterval) {
+        this.acknowledgeFlushInterval = acknowledgeFlushInterval;
+    }
+
+    /**
+     * @param subscriptionShared
+     *      Whether listeners on topics consume from shared subscriptions, queue
+     *      listeners of the factory are left unchanged.
+     */
+    @Override
+    public void setSubscriptionShared(Boolean subscriptionShared) {
+        this.subscriptionShared = subscriptionShared;
+    }
+
+    /**
+     * @param subscriptionDurable
+     *      Whether listeners on topics consume from durable subscriptions, queue
+     *      listeners of the factory are left unchanged.
+     */
+    @Override
+    public void setSubscriptionDurable(Boolean subscriptionDurable) {
+        this.subscriptionDurable = subscriptionDurable;
+    }
+
+    /**
+     * @param subscriptionNameTemplate
+     *      The template of the names of durable and shared subscriptions with the
+     *      {application}, {listener} and {destination} placeholders, or null to
+     *      leave unnamed subscriptions to the container.
+     */
+    public void setSubscriptionNameTemplate(String subscriptionNameTemplate) {
+        this.subscriptionNameTemplate = subscriptionNameTemplate;
+    }
+
+    /**
+     * @param applicationName
+     *      The value of the {application} placeholder of subscription names.
+     */
+    public void setApplicationName(String applicationName) {
+        this.applicationName = applicationName;
+    }
+
+    @Override
+    public QpidJMSMessageListenerContainer createListenerContainer(JmsListenerEndpoint endpoint) {
+        QpidJMSMessageListenerContainer container = super.createListenerContainer(endpoint);
+
+        // The container setters switch it to topics, so they are only called for
+        // listeners that already consume from a topic.
+        if (container.isPubSubDomain() || hasSubscription(endpoint)) {
+            if (subscriptionShared != null) {
+                container.setSubscriptionShared(subscriptionShared);
+            }
+
+            if (subscriptionDurable != null) {
+                container.setSubscriptionDurable(subscriptionDurable);
+            }
+        }
+
+        if (subscriptionNameTemplate != null && container.isPubSubDomain() &&
+            (container.isSubscriptionDurable() || container.isSubscriptionShared()) && !hasSubscription(endpoint)) {
+
+            container.setSubscriptionName(subscriptionNameTemplate
+                .replace("{application}", applicationName != null ? applicationName : "")
+                .replace("{listener}", getListenerName(endpoint))
+                .replace("{destination}", String.valueOf(container.getDestinationName())));
+        }
+
+        return container;
+    }
+
+    @Override
+    protected QpidJMSMessageListenerContainer createContainerInstance() {
+        QpidJMSMessageListenerContainer container = new QpidJMSMessageListenerContainer();
+
+        // Applied here, before the endpoint configures the container, so that the
+        // endpoint's own concurrency overrides the factory default.
+        if (concurrency != null) {
+            container.setConcurrency(concurrency);
+        }
+
+        if (backlogThreshold != null) {
+            container.setBacklogThreshold(backlogThreshold);
+        }
+
+        if (monitorInterval != null) {
+            container.setMonitorInterval(monitorInterval);
+        }
+
+        if (idleChecksBeforeScaleDown != null) {
+            container.setIdleChecksBeforeScaleDown(idleChecksBeforeScaleDown);
+        }
+
+        if (virtualThreads != null) {
+            container.setVirtualThreads(virtualThreads);
+        }
+
+        if (batchSize != null) {
+            container.setBatchSize(batchSize);
+        }
+
+        if (batchTimeout != null) {
+            container.setBatchTimeout(batchTimeout);
+        }
+
+        if (maxPendingAcknowledgements != null) {
+            container.setMaxPendingAcknowledgements(maxPendingAcknowledgements);
+        }
+
+        if (acknowledgeFlushInterval != null) {
+            container.setAcknowledgeFlushInterval(acknowledgeFlushInterval);
+        }
+
+        return container;
+    }
+
+    private static boolean hasSubscription(JmsListenerEndpoint endpoint) {
+        return endpoint instanceof AbstractJmsListenerEndpoint && ((AbstractJmsListenerEndpoint) endpoint).getSubscription() != null;
+    }
+
+    private static String getListenerName(JmsListenerEndpoint endpoint) {
+        if (endpoint.getId() != null && !endpoint.getId().startsWith(GENERATED_ENDPOINT_ID_PREFIX)) {
+            return endpoint.getId();
+        }
+
+        if (endpoint instanceof MethodJmsListenerEndpoint) {
+            MethodJmsListenerEndpoint methodEndpoint = (MethodJmsListenerEndpoint) endpoint;
+            if (methodEndpoint.getBean() != null && methodEndpoint.getMethod() != null) {
+                return ClassUtils.getUserClass(methodEndpoint.getBean()).getSimpleName() + "." +
+                    methodEndpoint.getMethod().getName();
+            }
+        }
+
+        return endpoint.getId();
+    }
+}
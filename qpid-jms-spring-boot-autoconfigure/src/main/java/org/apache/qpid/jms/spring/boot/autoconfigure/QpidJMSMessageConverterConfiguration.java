@@ -0,0 +1,96 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.qpid.jms.spring.boot.autoconfigure;
+
+import org.apache.avro.specific.SpecificRecord;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnClass;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnMissingBean;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.jms.support.converter.MessageConverter;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.google.protobuf.MessageLite;
+
+/**
+ * Class that is responsible for creating the MessageConverter used by the JMS
+ * templates and listener containers when no application converter is defined.
+ * <p>
+ * The converter selected by format takes precedence over the zero copy bytes
+ * converter, which then handles the binary payloads the format leaves to it.
+ */
+@Configuration
+@ConditionalOnClass(MessageConverter.class)
+public class QpidJMSMessageConverterConfiguration {
+
+    @Bean
+    @ConditionalOnMissingBean(MessageConverter.class)
+    @ConditionalOnProperty(prefix = "spring.qpidjms.bytesMessage", name = "zeroCopy", havingValue = "true")
+    public QpidJMSBytesMessageConverter qpidJMSBytesMessageConverter() {
+        return new QpidJMSBytesMessageConverter();
+    }
+
+    @Configuration
+    @ConditionalOnClass(ObjectMapper.class)
+    @ConditionalOnProperty(prefix = "spring.qpidjms", name = "converter", havingValue = "json")
+    static class JsonMessageConverterConfiguration {
+
+        @Bean
+        @ConditionalOnMissingBean(MessageConverter.class)
+        public QpidJMSJsonMessageConverter qpidJMSJsonMessageConverter(QpidJMSProperties properties,
+                                                                       ObjectProvider<ObjectMapper> objectMapper) {
+            ObjectMapper mapper = objectMapper.getIfUnique();
+            return configure(mapper != null ? new QpidJMSJsonMessageConverter(mapper) : new QpidJMSJsonMessageConverter(), properties);
+        }
+    }
+
+    @Configuration
+    @ConditionalOnClass(SpecificRecord.class)
+    @ConditionalOnProperty(prefix = "spring.qpidjms", name = "converter", havingValue = "avro")
+    static class AvroMessageConverterConfiguration {
+
+        @Bean
+        @ConditionalOnMissingBean(MessageConverter.class)
+        public QpidJMSAvroMessageConverter qpidJMSAvroMessageConverter(QpidJMSProperties properties) {
+            return configure(new QpidJMSAvroMessageConverter(), properties);
+        }
+    }
+
+    @Configuration
+    @ConditionalOnClass(MessageLite.class)
+    @ConditionalOnProperty(prefix = "spring.qpidjms", name = "converter", havingValue = "protobuf")
+    static class ProtobufMessageConverterConfiguration {
+
+        @Bean
+        @ConditionalOnMissingBean(MessageConverter.class)
+        public QpidJMSProtobufMessageConverter qpidJMSProtobufMessageConverter(QpidJMSProperties properties) {
+            return configure(new QpidJMSProtobufMessageConverter(), properties);
+        }
+    }
+
+    private static <T extends QpidJMSPayloadMessageConverter> T configure(T converter, QpidJMSProperties properties) {
+        converter.setTrustedPackages(properties.getConverterTrustedPackages().toArray(new String[0]));
+
+        if (properties.getBytesMessage().isZeroCopy()) {
+            converter.setDelegate(new QpidJMSBytesMessageConverter());
+        }
+
+        return converter;
+    }
+}
@@ -0,0 +1,923 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.qpid.jms.spring.boot.autoconfigure;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executors;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicLong;
+
+import javax.jms.InvalidSelectorException;
+import javax.jms.JMSException;
+import javax.jms.Message;
+import javax.jms.MessageConsumer;
+import javax.jms.Session;
+
+import org.springframework.jms.connection.JmsResourceHolder;
+import org.springframework.jms.listener.SimpleMessageListenerContainer;
+import org.springframework.jms.listener.adapter.MessagingMessageListenerAdapter;
+import org.springframework.jms.support.JmsUtils;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+import org.springframework.util.Assert;
+
+/**
+ * Message listener container that uses the native asynchronous MessageListener
+ * delivery path of the Qpid JMS client and scales its consumers based on the
+ * depth of their local prefetch buffers.
+ * <p>
+ * Messages are pushed to each consumer using its link credit and dispatched on
+ * the session's own delivery thread, there is no polling receive loop.  When the
+ * average number of prefetched but undelivered messages per consumer exceeds the
+ * backlog threshold an additional session and consumer are added, up to the
+ * maximum concurrency.  Added consumers are removed again once every consumer's
+ * buffer has been empty for the configured number of consecutive checks.  Topic
+ * consumers are only scaled when they use a shared subscription, where each
+ * added consumer joins the subscription and takes a share of its messages.
+ * <p>
+ * When virtual threads are enabled and the JVM supports them each session
+ * delivers on its own virtual thread instead of a platform thread, so listeners
+ * that block on I/O can run at a concurrency of thousands of sessions.  Delivery
+ * within a session stays serial, keeping its ordering and acknowledgement.
+ * <p>
+ * With a batch size above one each session collects the messages it receives
+ * and commits its transaction once per batch, when the batch is full or the
+ * batch timeout has passed since its first message, rather than per message.
+ * The messages of a batch are passed to the listener one by one or, for a
+ * {@link QpidJMSBatchMessageListener} and annotated listener methods that take
+ * a List, all at once.  A failure rolls back the whole batch.  The timeout is
+ * handled on the session's delivery thread so that commits never race with the
+ * delivery of the next message.
+ * <p>
+ * With more than one pending acknowledgement allowed, sessions that use client
+ * acknowledgement do not acknowledge each processed message on the delivery
+ * thread.  They acknowledge once the number of processed but unacknowledged
+ * messages reaches the maximum, or once the flush interval has passed since
+ * the first of them, settling all of them in a single acknowledgement of the
+ * session.  A crash or a failing listener redelivers at most that many
+ * messages which were already processed.  Before a session is closed, when a
+ * scaled consumer is removed or the container shuts down, the messages it has
+ * not yet acknowledged are acknowledged once the delivery in progress has
+ * finished, waiting for at most {@value #FLUSH_BEFORE_CLOSE_TIMEOUT}
+ * milliseconds.  A session that is no longer delivering acknowledges them on the
+ * calling thread.
+ */
+public class QpidJMSMessageListenerContainer extends SimpleMessageListenerContainer {
+
+    public static final int DEFAULT_BACKLOG_THRESHOLD = 100;
+    public static final long DEFAULT_MONITOR_INTERVAL = 1000;
+    public static final int DEFAULT_IDLE_CHECKS_BEFORE_SCALE_DOWN = 10;
+    public static final long DEFAULT_BATCH_TIMEOUT = 100;
+    public static final long DEFAULT_ACKNOWLEDGE_FLUSH_INTERVAL = 100;
+
+    static final long FLUSH_BEFORE_CLOSE_TIMEOUT = 5000;
+
+    private final List<MessageConsumer> trackedConsumers = new CopyOnWriteArrayList<>();
+    private final List<Session> virtualThreadSessions = new CopyOnWriteArrayList<>();
+    private final List<ScaledConsumer> scaledConsumers = new ArrayList<>();
+    private final Object scaleMonitor = new Object();
+    private final ConcurrentMap<Session, MessageBatch> batches = new ConcurrentHashMap<>();
+    private final ConcurrentMap<Session, PendingAcknowledgements> pendingAcknowledgements = new ConcurrentHashMap<>();
+    private final AtomicLong discardedByClosedConsumers = new AtomicLong();
+
+    private int concurrentConsumers = 1;
+    private int maxConcurrentConsumers = 1;
+    private int backlogThreshold = DEFAULT_BACKLOG_THRESHOLD;
+    private long monitorInterval = DEFAULT_MONITOR_INTERVAL;
+    private int idleChecksBeforeScaleDown = DEFAULT_IDLE_CHECKS_BEFORE_SCALE_DOWN;
+    private boolean virtualThreads;
+    private int batchSize = 1;
+    private long batchTimeout = DEFAULT_BATCH_TIMEOUT;
+    private int maxPendingAcknowledgements = 1;
+    private long acknowledgeFlushInterval = DEFAULT_ACKNOWLEDGE_FLUSH_INTERVAL;
+
+    private ThreadFactory virtualThreadFactory;
+    private ScheduledExecutorService monitor;
+    private ScheduledExecutorService flushTimer;
+    private int idleChecks;
+
+    /**
+     * Sets the concurrency as either a fixed count or a "lower-upper" range, the
+     * container scales between the two bounds.
+     */
+    @Override
+    public void setConcurrency(String concurrency) {
+        try {
+            int separatorIndex = concurrency.indexOf('-');
+            if (separatorIndex != -1) {
+                setConcurrentConsumers(Integer.parseInt(concurrency.substring(0, separatorIndex)));
+                setMaxConcurrentConsumers(Integer.parseInt(concurrency.substring(separatorIndex + 1)));
+            } else {
+                setConcurrentConsumers(Integer.parseInt(concurrency));
+                setMaxConcurrentConsumers(Integer.parseInt(concurrency));
+            }
+        } catch (NumberFormatException ex) {
+            throw new IllegalArgumentException("Invalid concurrency value [" + concurrency + "]: only " +
+                "single fixed integer (e.g. \"5\") and minimum-maximum combo (e.g. \"3-5\") supported.");
+        }
+    }
+
+    @Override
+    public void setConcurrentConsumers(int concurrentConsumers) {
+        super.setConcurrentConsumers(concurrentConsumers);
+        this.concurrentConsumers = concurrentConsumers;
+        if (this.maxConcurrentConsumers < concurrentConsumers) {
+            this.maxConcurrentConsumers = concurrentConsumers;
+        }
+    }
+
+    public int getConcurrentConsumers() {
+        return concurrentConsumers;
+    }
+
+    public void setMaxConcurrentConsumers(int maxConcurrentConsumers) {
+        Assert.isTrue(maxConcurrentConsumers > 0, "'maxConcurrentConsumers' value must be at least 1 (one)");
+        this.maxConcurrentConsumers = maxConcurrentConsumers;
+    }
+
+    public int getMaxConcurrentConsumers() {
+        return maxConcurrentConsumers;
+    }
+
+    public void setBacklogThreshold(int backlogThreshold) {
+        Assert.isTrue(backlogThreshold > 0, "'backlogThreshold' value must be at least 1 (one)");
+        this.backlogThreshold = backlogThreshold;
+    }
+
+    public int getBacklogThreshold() {
+        return backlogThreshold;
+    }
+
+    public void setMonitorInterval(long monitorInterval) {
+        Assert.isTrue(monitorInterval > 0, "'monitorInterval' value must be greater than zero");
+        this.monitorInterval = monitorInterval;
+    }
+
+    public long getMonitorInterval() {
+        return monitorInterval;
+    }
+
+    public void setIdleChecksBeforeScaleDown(int idleChecksBeforeScaleDown) {
+        Assert.isTrue(idleChecksBeforeScaleDown > 0, "'idleChecksBeforeScaleDown' value must be at least 1 (one)");
+        this.idleChecksBeforeScaleDown = idleChecksBeforeScaleDown;
+    }
+
+    public int getIdleChecksBeforeScaleDown() {
+        return idleChecksBeforeScaleDown;
+    }
+
+    /**
+     * Sets whether sessions deliver to the listener on virtual threads, falls back
+     * to the platform delivery threads when the JVM does not support them.  On a
+     * JVM that does, the container fails to start if the delivery executor of its
+     * sessions cannot be replaced.
+     *
+     * @param virtualThreads
+     *      true to deliver on virtual threads when available.
+     */
+    public void setVirtualThreads(boolean virtualThreads) {
+        this.virtualThreads = virtualThreads;
+    }
+
+    public boolean isVirtualThreads() {
+        return virtualThreads;
+    }
+
+    /**
+     * Sets the number of messages each session commits at once, a value above one
+     * requires a transacted session.
+     *
+     * @param batchSize
+     *      The maximum number of messages in a batch, one to commit each message.
+     */
+    public void setBatchSize(int batchSize) {
+        Assert.isTrue(batchSize > 0, "'batchSize' value must be at least 1 (one)");
+        this.batchSize = batchSize;
+    }
+
+    public int getBatchSize() {
+        return batchSize;
+    }
+
+    /**
+     * Sets the time in milliseconds after its first message at which a batch that
+     * is not yet full is handed to the listener and committed.
+     *
+     * @param batchTimeout
+     *      The maximum time a message waits in a batch.
+     */
+    public void setBatchTimeout(long batchTimeout) {
+        Assert.isTrue(batchTimeout > 0, "'batchTimeout' value must be greater than zero");
+        this.batchTimeout = batchTimeout;
+    }
+
+    public long getBatchTimeout() {
+        return batchTimeout;
+    }
+
+    /**
+     * Sets the number of messages a session using client acknowledgement may have
+     * processed before it acknowledges them, which is also the number of processed
+     * messages that are redelivered should the application crash.
+     *
+     * @param maxPendingAcknowledgements
+     *      The maximum number of unacknowledged messages, one to acknowledge each message.
+     */
+    public void setMaxPendingAcknowledgements(int maxPendingAcknowledgements) {
+        Assert.isTrue(maxPendingAcknowledgements > 0, "'maxPendingAcknowledgements' value must be at least 1 (one)");
+        this.maxPendingAcknowledgements = maxPendingAcknowledgements;
+    }
+
+    public int getMaxPendingAcknowledgements() {
+        return maxPendingAcknowledgements;
+    }
+
+    /**
+     * Sets the time in milliseconds after its first processed message at which a
+     * session acknowledges the messages it has not yet acknowledged.
+     *
+     * @param acknowledgeFlushInterval
+     *      The maximum time a processed message stays unacknowledged.
+     */
+    public void setAcknowledgeFlushInterval(long acknowledgeFlushInterval) {
+        Assert.isTrue(acknowledgeFlushInterval > 0, "'acknowledgeFlushInterval' value must be greater than zero");
+        this.acknowledgeFlushInterval = acknowledgeFlushInterval;
+    }
+
+    public long getAcknowledgeFlushInterval() {
+        return acknowledgeFlushInterval;
+    }
+
+    /**
+     * Sets the listener, annotated listener methods that take a List of messages
+     * are invoked with each batch.
+     */
+    @Override
+    public void setupMessageListener(Object messageListener) {
+        if (messageListener instanceof MessagingMessageListenerAdapter) {
+            QpidJMSBatchMessageListener batchListener =
+                QpidJMSBatchMessageListenerAdapter.forBatchMethod((MessagingMessageListenerAdapter) messageListener);
+            if (batchListener != null) {
+                messageListener = batchListener;
+            }
+        }
+
+        super.setupMessageListener(messageListener);
+    }
+
+    /**
+     * @return true if the container's sessions are delivering on virtual threads.
+     */
+    public boolean isUsingVirtualThreads() {
+        return virtualThreadFactory != null;
+    }
+
+    /**
+     * @return the number of consumers currently active in this container.
+     */
+    public int getActiveConsumerCount() {
+        return trackedConsumers.size();
+    }
+
+    /**
+     * @return the total number of prefetched messages waiting in the local buffers
+     *         of this container's consumers, or -1 if it cannot be determined.
+     */
+    public int getPrefetchedMessageCount() {
+        int total = 0;
+        for (MessageConsumer consumer : trackedConsumers) {
+            int prefetched = QpidJMSConsumerSupport.getPrefetchedMessageCount(consumer);
+            if (prefetched < 0) {
+                return -1;
+            }
+            total += prefetched;
+        }
+
+        return total;
+    }
+
+    /**
+     * @return the total number of messages the selector of this container's
+     *         consumers discarded on the client, including consumers that have
+     *         been closed, zero when the selector is left to the broker.
+     */
+    public long getDiscardedMessageCount() {
+        long total = discardedByClosedConsumers.get();
+        for (MessageConsumer consumer : trackedConsumers) {
+            total += Math.max(0, QpidJMSConsumerSupport.getDiscardedMessageCount(consumer));
+        }
+
+        return total;
+    }
+
+    @Override
+    protected void checkMessageListener(Object messageListener) {
+        if (!(messageListener instanceof QpidJMSBatchMessageListener)) {
+            super.checkMessageListener(messageListener);
+        }
+    }
+
+    @Override
+    protected void validateConfiguration() {
+        super.validateConfiguration();
+        Assert.isTrue(maxConcurrentConsumers >= concurrentConsumers,
+            "'maxConcurrentConsumers' must not be lower than 'concurrentConsumers'");
+        Assert.isTrue(batchSize == 1 || isSessionTransacted(),
+            "A 'batchSize' above one requires a transacted session");
+        // The batch timeout and acknowledgement flush run on the delivery thread of the session.
+        Assert.isTrue(batchSize == 1 || QpidJMSVirtualThreadSupport.hasDeliveryExecutor(getConnectionFactory()),
+            "A 'batchSize' above one requires a Qpid JMS connection factory");
+        Assert.isTrue(maxPendingAcknowledgements == 1 || QpidJMSVirtualThreadSupport.hasDeliveryExecutor(getConnectionFactory()),
+            "A 'maxPendingAcknowledgements' above one requires a Qpid JMS connection factory");
+        // Acknowledging every broker of a routing session uses a method of the client that is not public.
+        Assert.isTrue(maxPendingAcknowledgements == 1 || QpidJMSRoutingSession.isAcknowledgeSupported() ||
+            !QpidJMSVirtualThreadSupport.isRoutingConnectionFactory(getConnectionFactory()),
+            "A 'maxPendingAcknowledgements' above one with several brokers is not supported by the Qpid JMS client in use");
+        // Virtual thread delivery replaces a private executor of the client's sessions.
+        if (virtualThreads && QpidJMSVirtualThreadSupport.isSupportedByJvm()) {
+            Assert.state(QpidJMSVirtualThreadSupport.isSupportedByClient(),
+                "Virtual threads are not supported by the Qpid JMS client in use, its sessions' delivery executor cannot be replaced");
+            Assert.isTrue(QpidJMSVirtualThreadSupport.canInstallDeliveryExecutor(getConnectionFactory()),
+                "Virtual threads require a Qpid JMS connection factory of a single broker");
+        }
+
+        // Fail on startup rather than when the first consumer is created.
+        if (getMessageSelector() != null) {
+            try {
+                QpidJMSSelectorFilter.parse(getMessageSelector());
+            } catch (InvalidSelectorException ex) {
+                throw new IllegalArgumentException(
+                    "Invalid message selector of the listener for " + getDestinationDescription(), ex);
+            }
+        }
+    }
+
+    @Override
+    protected void doInitialize() throws JMSException {
+        if (virtualThreads) {
+            if (QpidJMSVirtualThreadSupport.isSupportedByJvm()) {
+                virtualThreadFactory = QpidJMSVirtualThreadSupport.createThreadFactory(
+                    "QpidJMS Listener: " + getBeanName() + "-");
+            } else {
+                logger.info("Virtual threads are not supported by this JVM, listener for " +
+                    getDestinationDescription() + " will use platform delivery threads");
+            }
+        }
+
+        super.doInitialize();
+
+        if (batchSize > 1 || maxPendingAcknowledgements > 1) {
+            flushTimer = Executors.newSingleThreadScheduledExecutor(new ThreadFactory() {
+
+                @Override
+                public Thread newThread(Runnable runnable) {
+                    Thread thread = new Thread(runnable, "QpidJMS Listener Flush Timer: " + getBeanName());
+                    thread.setDaemon(true);
+                    return thread;
+                }
+            });
+        }
+
+        // Each consumer of a topic has a subscription of its own, so added consumers
+        // would receive every message again unless they share the subscription.
+        if (maxConcurrentConsumers > concurrentConsumers && isPubSubDomain() && !isSubscriptionShared()) {
+            logger.info("Listener for " + getDestinationDescription() + " does not use a shared subscription, " +
+                "it stays at " + concurrentConsumers + " consumers");
+        } else if (maxConcurrentConsumers > concurrentConsumers) {
+            monitor = Executors.newSingleThreadScheduledExecutor(new ThreadFactory() {
+
+                @Override
+                public Thread newThread(Runnable runnable) {
+                    Thread thread = new Thread(runnable, "QpidJMS Listener Scaler: " + getBeanName());
+                    thread.setDaemon(true);
+                    return thread;
+                }
+            });
+
+            monitor.scheduleWithFixedDelay(new Runnable() {
+
+                @Override
+                public void run() {
+                    checkBacklog();
+                }
+            }, monitorInterval, monitorInterval, TimeUnit.MILLISECONDS);
+        }
+    }
+
+    @Override
+    protected MessageConsumer createListenerConsumer(Session session) throws JMSException {
+        if (virtualThreadFactory != null) {
+            if (!QpidJMSVirtualThreadSupport.installDeliveryExecutor(session, virtualThreadFactory)) {
+                logger.debug("Session for " + getDestinationDescription() + " will deliver on a platform thread");
+            }
+            virtualThreadSessions.add(session);
+        }
+
+        MessageConsumer consumer = super.createListenerConsumer(session);
+        trackedConsumers.add(consumer);
+        return consumer;
+    }
+
+    @Override
+    protected void doStart() throws JMSException {
+        // A Qpid JMS session shuts its delivery executor down when the connection
+        // stops and creates one on a platform thread when it starts again.
+        for (Session session : virtualThreadSessions) {
+            QpidJMSVirtualThreadSupport.installDeliveryExecutor(session, virtualThreadFactory);
+        }
+
+        super.doStart();
+    }
+
+    @Override
+    protected void processMessage(Message message, Session session) {
+        if (batchSize == 1 && !(getMessageListener() instanceof QpidJMSBatchMessageListener)) {
+            super.processMessage(message, session);
+            return;
+        }
+
+        // Only the delivery thread of the session uses its batch.
+        MessageBatch batch = batches.get(session);
+        if (batch == null) {
+            batch = new MessageBatch(session);
+            batches.put(session, batch);
+        }
+
+        batch.add(message);
+    }
+
+    /**
+     * Hands a batch of messages received by the given session to the listener and
+     * commits the session, or rolls it back if the listener fails.
+     *
+     * @param session
+     *      The session that received the messages.
+     * @param messages
+     *      The messages of the batch.
+     */
+    protected void executeBatch(Session session, List<Message> messages) {
+        try {
+            if (!isAcceptMessagesWhileStopping() && !isRunning()) {
+                logger.debug("Rejecting batch of " + messages.size() + " messages because of the listener container " +
+                    "having been stopped in the meantime");
+                rollbackIfNecessary(session);
+                return;
+            }
+
+            invokeBatchListener(session, messages);
+            commitIfNecessary(session, messages.get(messages.size() - 1));
+        } catch (Throwable ex) {
+            Throwable failure = ex;
+            try {
+                rollbackOnExceptionIfNecessary(session, ex);
+            } catch (Throwable rollbackEx) {
+                failure = rollbackEx;
+            }
+
+            handleListenerException(failure);
+        }
+    }
+
+    private void invokeBatchListener(Session session, List<Message> messages) throws JMSException {
+        // The session is exposed to JmsTemplate operations of the listener only
+        // while it runs, so that their sends join the batch's transaction while
+        // the container itself still commits it.
+        boolean exposeResource = isExposeListenerSession();
+        if (exposeResource) {
+            TransactionSynchronizationManager.bindResource(getConnectionFactory(), new JmsResourceHolder(session));
+        }
+
+        try {
+            Object listener = getMessageListener();
+            if (listener instanceof QpidJMSBatchMessageListener) {
+                ((QpidJMSBatchMessageListener) listener).onMessages(messages, session);
+            } else {
+                for (Message message : messages) {
+                    invokeListener(session, message);
+                }
+            }
+        } finally {
+            if (exposeResource) {
+                TransactionSynchronizationManager.unbindResource(getConnectionFactory());
+            }
+        }
+    }
+
+    @Override
+    protected void commitIfNecessary(Session session, Message message) throws JMSException {
+        if (maxPendingAcknowledgements == 1 || message == null || session.getTransacted() || !isClientAcknowledge(session)) {
+            super.commitIfNecessary(session, message);
+            return;
+        }
+
+        pendingAcknowledgements(session).add(message);
+    }
+
+    @Override
+    protected void rollbackOnExceptionIfNecessary(Session session, Throwable ex) throws JMSException {
+        // Recovering the session redelivers the processed messages that were not
+        // yet acknowledged along with the failed one.
+        PendingAcknowledgements pending = pendingAcknowledgements.get(session);
+        if (pending != null) {
+            pending.clear();
+        }
+
+        super.rollbackOnExceptionIfNecessary(session, ex);
+    }
+
+    @Override
+    public void onException(JMSException ex) {
+        // The scaled sessions belong to the failed connection, the base class
+        // recreates the minimum set of consumers and scaling resumes from there.
+        // Batches still open are rolled back with their sessions.
+        synchronized (scaleMonitor) {
+            retireConsumers();
+            scaledConsumers.clear();
+            idleChecks = 0;
+        }
+
+        virtualThreadSessions.clear();
+        batches.clear();
+        pendingAcknowledgements.clear();
+
+        super.onException(ex);
+    }
+
+    @Override
+    protected void doShutdown() throws JMSException {
+        if (monitor != null) {
+            monitor.shutdownNow();
+            monitor = null;
+        }
+
+        if (flushTimer != null) {
+            flushTimer.shutdownNow();
+            flushTimer = null;
+        }
+
+        // The shared connection is already stopped, so the acknowledgements still
+        // pending are flushed here before the sessions close and are not redelivered.
+        for (PendingAcknowledgements pending : pendingAcknowledgements.values()) {
+            pending.flushBeforeClose();
+        }
+
+        synchronized (scaleMonitor) {
+            for (ScaledConsumer scaled : scaledConsumers) {
+                scaled.close();
+            }
+            scaledConsumers.clear();
+            retireConsumers();
+        }
+
+        virtualThreadSessions.clear();
+        batches.clear();
+        pendingAcknowledgements.clear();
+
+        super.doShutdown();
+    }
+
+    /**
+     * Checks the local backlog of the container's consumers and adds or removes a
+     * consumer as needed, called periodically while the container is active.
+     */
+    protected void checkBacklog() {
+        if (!isRunning()) {
+            return;
+        }
+
+        final int consumers = trackedConsumers.size();
+        final int prefetched = getPrefetchedMessageCount();
+
+        if (consumers == 0 || prefetched < 0) {
+            return;
+        }
+
+        synchronized (scaleMonitor) {
+            if (prefetched / consumers >= backlogThreshold) {
+                idleChecks = 0;
+                if (consumers < maxConcurrentConsumers) {
+                    scaleUp();
+                }
+            } else if (prefetched == 0 && !scaledConsumers.isEmpty()) {
+                if (++idleChecks >= idleChecksBeforeScaleDown) {
+                    idleChecks = 0;
+                    scaleDown();
+                }
+            } else {
+                idleChecks = 0;
+            }
+        }
+    }
+
+    private void scaleUp() {
+        Session session = null;
+        try {
+            session = createSession(getSharedConnection());
+            MessageConsumer consumer = createListenerConsumer(session);
+            scaledConsumers.add(new ScaledConsumer(session, consumer));
+            logger.debug("Added consumer to " + getDestinationDescription() + " now at " + trackedConsumers.size());
+        } catch (Exception ex) {
+            JmsUtils.closeSession(session);
+            logger.debug("Failed to add consumer to " + getDestinationDescription(), ex);
+        }
+    }
+
+    private void scaleDown() {
+        ScaledConsumer scaled = scaledConsumers.remove(scaledConsumers.size() - 1);
+        retireConsumer(scaled.consumer);
+        virtualThreadSessions.remove(scaled.session);
+        batches.remove(scaled.session);
+        if (maxPendingAcknowledgements > 1) {
+            pendingAcknowledgements(scaled.session).flushBeforeClose();
+        }
+        scaled.close();
+        pendingAcknowledgements.remove(scaled.session);
+        logger.debug("Removed consumer from " + getDestinationDescription() + " now at " + trackedConsumers.size());
+    }
+
+    // Keeps the count of messages a consumer discarded once it is no longer tracked.
+    private void retireConsumer(MessageConsumer consumer) {
+        if (trackedConsumers.remove(consumer)) {
+            discardedByClosedConsumers.addAndGet(Math.max(0, QpidJMSConsumerSupport.getDiscardedMessageCount(consumer)));
+        }
+    }
+
+    private PendingAcknowledgements pendingAcknowledgements(Session session) {
+        PendingAcknowledgements pending = pendingAcknowledgements.get(session);
+        if (pending == null) {
+            pending = new PendingAcknowledgements(session);
+            PendingAcknowledgements existing = pendingAcknowledgements.putIfAbsent(session, pending);
+            if (existing != null) {
+                pending = existing;
+            }
+        }
+
+        return pending;
+    }
+
+    private void retireConsumers() {
+        for (MessageConsumer consumer : trackedConsumers) {
+            retireConsumer(consumer);
+        }
+    }
+
+    /**
+     * The open batch of one session, used by the session's delivery thread only.
+     */
+    private final class MessageBatch {
+
+        private final Session session;
+        private final List<Message> messages = new ArrayList<>();
+
+        private long started;
+        private int generation;
+        private ScheduledFuture<?> timeout;
+
+        MessageBatch(Session session) {
+            this.session = session;
+        }
+
+        void add(Message message) {
+            if (messages.isEmpty()) {
+                started = System.nanoTime();
+                scheduleTimeout();
+            }
+
+            messages.add(message);
+
+            // Sessions that cannot run the timeout on their delivery thread
+            // complete a late batch with its next message.
+            if (messages.size() >= batchSize || System.nanoTime() - started >= TimeUnit.MILLISECONDS.toNanos(batchTimeout)) {
+                complete();
+            }
+        }
+
+        void complete() {
+            generation++;
+            if (timeout != null) {
+                timeout.cancel(false);
+                timeout = null;
+            }
+
+            List<Message> batch = new ArrayList<>(messages);
+            messages.clear();
+
+            executeBatch(session, batch);
+        }
+
+        private void scheduleTimeout() {
+            final int expected = generation;
+            timeout = scheduleOnDeliveryThread(session, new Runnable() {
+
+                @Override
+                public void run() {
+                    if (generation == expected && !messages.isEmpty()) {
+                        complete();
+                    }
+                }
+            }, batchTimeout, false);
+        }
+    }
+
+    /**
+     * The processed but unacknowledged messages of one session, used by the
+     * session's delivery thread and, once the session stopped delivering, by the
+     * thread that closes it.
+     */
+    private final class PendingAcknowledgements {
+
+        private final Session session;
+
+        private Message last;
+        private int count;
+        private long started;
+        private int generation;
+        private ScheduledFuture<?> flush;
+        private boolean closing;
+
+        PendingAcknowledgements(Session session) {
+            this.session = session;
+        }
+
+        synchronized void add(Message message) throws JMSException {
+            // Messages the session delivers while it is being closed are
+            // acknowledged one by one.
+            if (closing) {
+                last = message;
+                acknowledge();
+                return;
+            }
+
+            if (count++ == 0) {
+                started = System.nanoTime();
+                scheduleFlush();
+            }
+
+            last = message;
+
+            // Sessions that cannot run the flush on their delivery thread
+            // acknowledge late messages with the next one.
+            if (count >= maxPendingAcknowledgements ||
+                System.nanoTime() - started >= TimeUnit.MILLISECONDS.toNanos(acknowledgeFlushInterval)) {
+                acknowledge();
+            }
+        }
+
+        synchronized void acknowledge() throws JMSException {
+            Message message = last;
+            clear();
+
+            // A client acknowledgement covers every message the session delivered,
+            // a routing session acknowledges each of its broker sessions.
+            Session target = QpidJMSVirtualThreadSupport.unwrapPooled(session);
+            if (message != null && target instanceof QpidJMSRoutingSession) {
+                ((QpidJMSRoutingSession) target).acknowledge();
+            } else if (message != null) {
+                message.acknowledge();
+            }
+        }
+
+        void flush() {
+            try {
+                acknowledge();
+            } catch (Throwable ex) {
+                handleListenerException(ex);
+            }
+        }
+
+        /**
+         * Acknowledges the pending messages once the delivery in progress has
+         * finished and makes the session acknowledge each message it still
+         * delivers, the session is closed after this returns.
+         */
+        void flushBeforeClose() {
+            FutureTask<Void> task = new FutureTask<>(new Runnable() {
+
+                @Override
+                public void run() {
+                    synchronized (PendingAcknowledgements.this) {
+                        closing = true;
+                        flush();
+                    }
+                }
+            }, null);
+
+            if (!runOnDeliveryThread(session, task)) {
+                // Nothing is delivered any more, acknowledged on this thread.
+                task.run();
+                return;
+            }
+
+            try {
+                task.get(FLUSH_BEFORE_CLOSE_TIMEOUT, TimeUnit.MILLISECONDS);
+            } catch (InterruptedException ex) {
+                Thread.currentThread().interrupt();
+            } catch (ExecutionException | TimeoutException ex) {
+                logger.warn("Pending acknowledgements of a session of " + getDestinationDescription() +
+                    " were not flushed before it closed, its processed messages will be redelivered");
+            }
+        }
+
+        synchronized void clear() {
+            generation++;
+            if (flush != null) {
+                flush.cancel(false);
+                flush = null;
+            }
+
+            last = null;
+            count = 0;
+        }
+
+        private void scheduleFlush() {
+            final int expected = generation;
+            flush = scheduleOnDeliveryThread(session, new Runnable() {
+
+                @Override
+                public void run() {
+                    synchronized (PendingAcknowledgements.this) {
+                        if (generation == expected && count > 0) {
+                            flush();
+                        }
+                    }
+                }
+            }, acknowledgeFlushInterval, true);
+        }
+    }
+
+    // A task that may run off the delivery thread does so when the session is not
+    // delivering, others complete with the next message or are rolled back when
+    // the session closes.
+    private ScheduledFuture<?> scheduleOnDeliveryThread(final Session session, final Runnable task, long delay,
+                                                        final boolean runWhenNotDelivering) {
+        ScheduledExecutorService timer = flushTimer;
+        if (timer == null) {
+            return null;
+        }
+
+        return timer.schedule(new Runnable() {
+
+            @Override
+            public void run() {
+                if (!runOnDeliveryThread(session, task) && runWhenNotDelivering) {
+                    task.run();
+                }
+            }
+        }, delay, TimeUnit.MILLISECONDS);
+    }
+
+    private static boolean runOnDeliveryThread(Session session, Runnable task) {
+        Executor delivery = QpidJMSVirtualThreadSupport.getDeliveryExecutor(session);
+        if (delivery == null) {
+            return false;
+        }
+
+        try {
+            delivery.execute(task);
+            return true;
+        } catch (RejectedExecutionException ex) {
+            return false;
+        }
+    }
+
+    private static final class ScaledConsumer {
+
+        private final Session session;
+        private final MessageConsumer consumer;
+
+        ScaledConsumer(Session session, MessageConsumer consumer) {
+            this.session = session;
+            this.consumer = consumer;
+        }
+
+        void close() {
+            JmsUtils.closeMessageConsumer(consumer);
+            JmsUtils.closeSession(session);
+        }
+    }
+}
@@ -0,0 +1,339 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.qpid.jms.spring.boot.autoconfigure;
+
+import java.net.URI;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import javax.jms.Destination;
+import javax.jms.MessageConsumer;
+import javax.jms.MessageProducer;
+import javax.jms.Session;
+
+import org.apache.qpid.jms.JmsConnectionListener;
+import org.apache.qpid.jms.JmsDestination;
+import org.apache.qpid.jms.message.JmsInboundMessageDispatch;
+import org.apache.qpid.jms.message.JmsMessage;
+import org.springframework.util.Assert;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Tags;
+import io.micrometer.core.instrument.Timer;
+
+/**
+ * Records Qpid JMS client activity to a Micrometer {@link MeterRegistry}.
+ * <p>
+ * Registered as a {@link JmsConnectionListener} on every connection of a
+ * {@link QpidJMSConnectionFactory} it counts connection events such as failover
+ * interruptions, inbound messages and redeliveries and resources closed by the
+ * remote, and as the {@link QpidJMSSendMetrics} of the templates and the
+ * connections it times sends and their settlement, and as the
+ * {@link QpidJMSWarmupMetrics} it times the startup warm-up.  Per-destination
+ * meters are created once and then looked up by destination name so that
+ * recording does not allocate.  The number of destination tags is bounded,
+ * destinations beyond the limit share the {@value #OTHER_DESTINATION} tag.
+ * <p>
+ * All meters carry the {@value #REMOTE_TAG} tag given on creation, which names
+ * the remote peers of the connection factory rather than a single connection.
+ * The client's connection listener callbacks do not identify the connection
+ * they are made for, so the meters aggregate every connection of the factory,
+ * including each connection of a pool.
+ */
+public class QpidJMSMetrics implements JmsConnectionListener, QpidJMSSendMetrics, QpidJMSWarmupMetrics {
+
+    public static final int DEFAULT_MAX_DESTINATIONS = 1000;
+
+    public static final String OTHER_DESTINATION = "other";
+
+    public static final String REMOTE_TAG = "remote";
+
+    static final String CONNECTION_EVENTS = "qpid.jms.connection.events";
+    static final String RESOURCES_CLOSED = "qpid.jms.resources.remotely.closed";
+    static final String CONSUMER_MESSAGES = "qpid.jms.consumer.messages";
+    static final String CONSUMER_REDELIVERIES = "qpid.jms.consumer.redeliveries";
+    static final String PRODUCER_SEND = "qpid.jms.producer.send";
+    static final String PRODUCER_SETTLEMENT = "qpid.jms.producer.settlement";
+    static final String PRODUCER_FAILURES = "qpid.jms.producer.failures";
+    static final String LISTENER_PREFETCHED = "qpid.jms.listener.prefetched";
+    static final String LISTENER_CONSUMERS = "qpid.jms.listener.consumers";
+    static final String LISTENER_DISCARDED = "qpid.jms.listener.discarded";
+    static final String WARMUP = "qpid.jms.warmup";
+    static final String WARMUP_CONNECTIONS = "qpid.jms.warmup.connections";
+
+    private final MeterRegistry registry;
+    private final Tags tags;
+    private final int maxDestinations;
+    private final ConcurrentMap<String, DestinationMeters> destinations = new ConcurrentHashMap<>();
+    private final AtomicInteger warmedConnections = new AtomicInteger();
+
+    private final Counter established;
+    private final Counter failed;
+    private final Counter interrupted;
+    private final Counter restored;
+    private final Counter sessionsClosed;
+    private final Counter consumersClosed;
+    private final Counter producersClosed;
+
+    /**
+     * Creates a new metrics binding with the default destination limit.
+     *
+     * @param registry
+     *      The registry the meters are registered with.
+     * @param remote
+     *      The value of the remote tag of every meter.
+     */
+    public QpidJMSMetrics(MeterRegistry registry, String remote) {
+        this(registry, remote, DEFAULT_MAX_DESTINATIONS);
+    }
+
+    /**
+     * Creates a new metrics binding.
+     *
+     * @param registry
+     *      The registry the meters are registered with.
+     * @param remote
+     *      The value of the remote tag of every meter.
+     * @param maxDestinations
+     *      The maximum number of distinct destination tags.
+     */
+    public QpidJMSMetrics(MeterRegistry registry, String remote, int maxDestinations) {
+        Assert.notNull(registry, "MeterRegistry must not be null");
+        Assert.hasText(remote, "Remote tag must not be empty");
+        Assert.isTrue(maxDestinations > 0, "Max destinations must be greater than zero");
+
+        this.registry = registry;
+        this.tags = Tags.of(REMOTE_TAG, remote);
+        this.maxDestinations = maxDestinations;
+
+        this.established = connectionEvent("established");
+        this.failed = connectionEvent("failed");
+        this.interrupted = connectionEvent("interrupted");
+        this.restored = connectionEvent("restored");
+
+        this.sessionsClosed = resourceClosed("session");
+        this.consumersClosed = resourceClosed("consumer");
+        this.producersClosed = resourceClosed("producer");
+    }
+
+    /**
+     * Creates metrics that record to the same registry, with the same destination
+     * limit, under another remote tag.
+     *
+     * @param remote
+     *      The value of the remote tag of every meter.
+     *
+     * @return a new metrics binding.
+     */
+    public QpidJMSMetrics forRemote(String remote) {
+        return new QpidJMSMetrics(registry, remote, maxDestinations);
+    }
+
+    /**
+     * Registers gauges for the prefetch depth and consumer count of a listener container
+     * and a counter of the messages its selector discarded, the meters do not prevent
+     * the container from being garbage collected.
+     *
+     * @param name
+     *      The value of the listener tag of the meters.
+     * @param container
+     *      The listener container to observe.
+     */
+    public void bindListenerContainer(String name, QpidJMSMessageListenerContainer container) {
+        Tags listenerTags = tags.and("listener", name);
+
+        Gauge.builder(LISTENER_PREFETCHED, container, QpidJMSMessageListenerContainer::getPrefetchedMessageCount)
+             .description("Messages prefetched by the listener consumers but not yet delivered")
+             .tags(listenerTags)
+             .register(registry);
+        Gauge.builder(LISTENER_CONSUMERS, container, QpidJMSMessageListenerContainer::getActiveConsumerCount)
+             .description("Consumers currently active in the listener container")
+             .tags(listenerTags)
+             .register(registry);
+        FunctionCounter.builder(LISTENER_DISCARDED, container, QpidJMSMessageListenerContainer::getDiscardedMessageCount)
+             .description("Prefetched messages the listener consumers discarded because their selector did not match")
+             .tags(listenerTags)
+             .register(registry);
+    }
+
+    //----- Send timings -----------------------------------------------------//
+
+    @Override
+    public void sendCompleted(Destination destination, long sendNanos) {
+        meters(destination).send.record(sendNanos, TimeUnit.NANOSECONDS);
+    }
+
+    @Override
+    public void sendSettled(Destination destination, long settlementNanos, boolean failed) {
+        DestinationMeters meters = meters(destination);
+        if (failed) {
+            meters.failures.increment();
+        } else {
+            meters.settlement.record(settlementNanos, TimeUnit.NANOSECONDS);
+        }
+    }
+
+    //----- Warm-up ----------------------------------------------------------//
+
+    @Override
+    public void warmupCompleted(int connections, int warmed, long durationNanos) {
+        Timer.builder(WARMUP)
+             .description("Time taken to open the connections warmed at startup")
+             .tags(tags)
+             .tag("outcome", warmed == connections ? "success" : "failure")
+             .register(registry)
+             .record(durationNanos, TimeUnit.NANOSECONDS);
+
+        warmedConnections.set(warmed);
+        Gauge.builder(WARMUP_CONNECTIONS, warmedConnections, AtomicInteger::doubleValue)
+             .description("Connections opened by the startup warm-up")
+             .tags(tags)
+             .register(registry);
+    }
+
+    //----- Connection events ------------------------------------------------//
+
+    @Override
+    public void onConnectionEstablished(URI remoteURI) {
+        established.increment();
+    }
+
+    @Override
+    public void onConnectionFailure(Throwable error) {
+        failed.increment();
+    }
+
+    @Override
+    public void onConnectionInterrupted(URI remoteURI) {
+        interrupted.increment();
+    }
+
+    @Override
+    public void onConnectionRestored(URI remoteURI) {
+        restored.increment();
+    }
+
+    @Override
+    public void onInboundMessage(JmsInboundMessageDispatch envelope) {
+        JmsMessage message = envelope.getMessage();
+        if (message == null) {
+            return;
+        }
+
+        DestinationMeters meters = meters(message.getFacade().getDestination());
+
+        meters.messages.increment();
+        if (envelope.getRedeliveryCount() > 0) {
+            meters.redeliveries.increment();
+        }
+    }
+
+    @Override
+    public void onSessionClosed(Session session, Throwable cause) {
+        sessionsClosed.increment();
+    }
+
+    @Override
+    public void onConsumerClosed(MessageConsumer consumer, Throwable cause) {
+        consumersClosed.increment();
+    }
+
+    @Override
+    public void onProducerClosed(MessageProducer producer, Throwable cause) {
+        producersClosed.increment();
+    }
+
+    @Override
+    public void onRemoteDiscovery(List<URI> uris) {
+    }
+
+    //----- Internal implementation ------------------------------------------//
+
+    private DestinationMeters meters(Destination destination) {
+        String name = OTHER_DESTINATION;
+        if (destination instanceof JmsDestination && ((JmsDestination) destination).getName() != null) {
+            name = ((JmsDestination) destination).getName();
+        }
+
+        DestinationMeters meters = destinations.get(name);
+        if (meters == null) {
+            if (destinations.size() >= maxDestinations) {
+                name = OTHER_DESTINATION;
+            }
+
+            meters = destinations.computeIfAbsent(name, DestinationMeters::new);
+        }
+
+        return meters;
+    }
+
+    private Counter connectionEvent(String event) {
+        return Counter.builder(CONNECTION_EVENTS)
+                      .description("Connection lifecycle events, including failover interruptions and restores")
+                      .tags(tags)
+                      .tag("event", event)
+                      .register(registry);
+    }
+
+    private Counter resourceClosed(String resource) {
+        return Counter.builder(RESOURCES_CLOSED)
+                      .description("Sessions, consumers and producers closed by the remote peer")
+                      .tags(tags)
+                      .tag("resource", resource)
+                      .register(registry);
+    }
+
+    private final class DestinationMeters {
+
+        private final Counter messages;
+        private final Counter redeliveries;
+        private final Counter failures;
+        private final Timer send;
+        private final Timer settlement;
+
+        DestinationMeters(String destination) {
+            Tags destinationTags = tags.and("destination", destination);
+
+            this.messages = Counter.builder(CONSUMER_MESSAGES)
+                                   .description("Messages dispatched to consumers by the remote peer")
+                                   .tags(destinationTags)
+                                   .register(registry);
+            this.redeliveries = Counter.builder(CONSUMER_REDELIVERIES)
+                                       .description("Dispatched messages that were redeliveries")
+                                       .tags(destinationTags)
+                                       .register(registry);
+            this.failures = Counter.builder(PRODUCER_FAILURES)
+                                   .description("Sends that failed to settle")
+                                   .tags(destinationTags)
+                                   .register(registry);
+            this.send = Timer.builder(PRODUCER_SEND)
+                             .description("Time spent in the send call of sends")
+                             .tags(destinationTags)
+                             .register(registry);
+            this.settlement = Timer.builder(PRODUCER_SETTLEMENT)
+                                   .description("Time from the start of a send until it was settled")
+                                   .tags(destinationTags)
+                                   .register(registry);
+        }
+    }
+}
@@ -0,0 +1,127 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.qpid.jms.spring.boot.autoconfigure;
+
+import java.util.Map;
+
+import org.apache.qpid.jms.JmsConnectionFactory;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.boot.autoconfigure.AutoConfigureAfter;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnBean;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnClass;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnMissingBean;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.boot.context.properties.EnableConfigurationProperties;
+import org.springframework.context.ApplicationListener;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.context.event.ContextRefreshedEvent;
+import org.springframework.jms.config.JmsListenerEndpointRegistry;
+import org.springframework.jms.listener.MessageListenerContainer;
+
+import io.micrometer.core.instrument.MeterRegistry;
+
+/**
+ * Auto Configuration class that publishes Qpid JMS metrics to the application's
+ * Micrometer registry.
+ * <p>
+ * The metrics are registered as a connection listener and the send metrics of
+ * the auto configured connection factory and as the send metrics of the
+ * templates, listener containers are bound once the context has been refreshed.
+ * The meters are tagged with the remote URI of the factory, without its options,
+ * and aggregate all of the factory's connections.
+ */
+@Configuration
+@AutoConfigureAfter(name = {
+    "io.micrometer.spring.autoconfigure.MetricsAutoConfiguration",
+    "io.micrometer.spring.autoconfigure.CompositeMeterRegistryAutoConfiguration",
+    "io.micrometer.spring.autoconfigure.export.simple.SimpleMetricsExportAutoConfiguration" })
+@ConditionalOnClass({ MeterRegistry.class, JmsConnectionFactory.class })
+@ConditionalOnBean(MeterRegistry.class)
+@ConditionalOnProperty(prefix = "spring.qpidjms.metrics", name = "enabled", havingValue = "true", matchIfMissing = true)
+@EnableConfigurationProperties(QpidJMSProperties.class)
+public class QpidJMSMetricsAutoConfiguration {
+
+    @Bean
+    @ConditionalOnMissingBean
+    public QpidJMSMetrics qpidJMSMetrics(MeterRegistry registry, QpidJMSProperties properties) {
+        return new QpidJMSMetrics(registry, getRemoteTag(properties), properties.getMetrics().getMaxDestinations());
+    }
+
+    /**
+     * Returns the value of the remote tag of the metrics of a connection factory,
+     * its remote URI or the URIs of its brokers without their options or user
+     * information.
+     *
+     * @param properties
+     *      The properties the connection factory is configured from.
+     *
+     * @return the remote tag value.
+     */
+    static String getRemoteTag(QpidJMSProperties properties) {
+        String remote;
+        if (properties.getBrokers().isEmpty()) {
+            remote = new QpidJMSConnectionFactoryFactory(properties).getRemoteURI();
+        } else {
+            StringBuilder brokers = new StringBuilder();
+            for (QpidJMSProperties.Broker broker : properties.getBrokers()) {
+                brokers.append(brokers.length() > 0 ? "," : "").append(broker.getRemoteURL());
+            }
+            remote = brokers.toString();
+        }
+
+        // Options and user information can carry credentials and are not useful
+        // as a tag value.
+        return QpidJMSConnectionDiagnostics.sanitize(remote);
+    }
+
+    /**
+     * Binds the prefetch gauges of the Qpid JMS listener containers, both those
+     * created for annotated listeners and those declared as beans.
+     */
+    @Configuration
+    @ConditionalOnClass(JmsListenerEndpointRegistry.class)
+    static class ListenerContainerMetricsConfiguration {
+
+        @Bean
+        public ApplicationListener<ContextRefreshedEvent> qpidJMSListenerContainerMetricsBinder(
+                final QpidJMSMetrics metrics, final ObjectProvider<JmsListenerEndpointRegistry> endpointRegistry) {
+
+            return new ApplicationListener<ContextRefreshedEvent>() {
+
+                @Override
+                public void onApplicationEvent(ContextRefreshedEvent event) {
+                    JmsListenerEndpointRegistry registry = endpointRegistry.getIfAvailable();
+                    if (registry != null) {
+                        for (String id : registry.getListenerContainerIds()) {
+                            MessageListenerContainer container = registry.getListenerContainer(id);
+                            if (container instanceof QpidJMSMessageListenerContainer) {
+                                metrics.bindListenerContainer(id, (QpidJMSMessageListenerContainer) container);
+                            }
+                        }
+                    }
+
+                    Map<String, QpidJMSMessageListenerContainer> containers =
+                        event.getApplicationContext().getBeansOfType(QpidJMSMessageListenerContainer.class);
+                    for (Map.Entry<String, QpidJMSMessageListenerContainer> entry : containers.entrySet()) {
+                        metrics.bindListenerContainer(entry.getKey(), entry.getValue());
+                    }
+                }
+            };
+        }
+    }
+}
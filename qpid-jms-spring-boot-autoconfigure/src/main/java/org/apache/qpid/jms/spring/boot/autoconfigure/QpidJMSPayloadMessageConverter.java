@@ -0,0 +1,295 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.qpid.jms.spring.boot.autoconfigure;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+import javax.jms.BytesMessage;
+import javax.jms.JMSException;
+import javax.jms.Message;
+import javax.jms.Session;
+
+import org.apache.qpid.jms.message.JmsMessage;
+import org.apache.qpid.jms.provider.amqp.message.AmqpJmsMessageFacade;
+import org.springframework.jms.support.converter.MessageConversionException;
+import org.springframework.jms.support.converter.MessageConverter;
+import org.springframework.jms.support.converter.SimpleMessageConverter;
+import org.springframework.util.Assert;
+import org.springframework.util.ClassUtils;
+import org.springframework.util.StringUtils;
+
+/**
+ * Base for the MessageConverters that encode payloads into the body of a
+ * BytesMessage using a serialization format.
+ * <p>
+ * Payloads the format supports are encoded into a buffer that is reused by the
+ * sending thread and become the body of the BytesMessage as a single exactly
+ * sized array.  The message carries the AMQP content-type of the format, so
+ * consumers can tell the encoding without inspecting the body, and the class of
+ * the payload in the type id property.  Received BytesMessages with the content
+ * type, or with a type id when a broker delivered them as octet-stream, are
+ * decoded straight from the bytes the client decoded the body into.
+ * Type ids are resolved to classes once, subclasses cache their per type
+ * readers, writers and schemas.
+ * <p>
+ * The type id is chosen by whoever sent the message, so only type ids in one of
+ * the trusted packages are loaded, no package is trusted by default and "*"
+ * trusts every type.  Other type ids are rejected before their class is looked
+ * up, which would otherwise run the static initializers of any class on the
+ * class path.  Other payloads and messages are converted by
+ * the delegate converter, a {@link SimpleMessageConverter} by default.
+ */
+public abstract class QpidJMSPayloadMessageConverter implements MessageConverter {
+
+    /**
+     * The serialization formats of the auto configured converters.
+     */
+    public enum Format {
+        JSON, AVRO, PROTOBUF
+    }
+
+    public static final String DEFAULT_TYPE_ID_PROPERTY = "_type";
+
+    private static final String OCTET_STREAM_CONTENT_TYPE = "application/octet-stream";
+
+    // Buffers that grew beyond this size for one large payload are not kept by the thread.
+    private static final int MAX_RETAINED_BUFFER_SIZE = 1024 * 1024;
+
+    private static final ThreadLocal<PayloadBuffer> BUFFERS = new ThreadLocal<PayloadBuffer>() {
+
+        @Override
+        protected PayloadBuffer initialValue() {
+            return new PayloadBuffer();
+        }
+    };
+
+    private final String contentType;
+    private final ConcurrentMap<String, Class<?>> types = new ConcurrentHashMap<>();
+
+    private MessageConverter delegate = new SimpleMessageConverter();
+    private String typeIdPropertyName = DEFAULT_TYPE_ID_PROPERTY;
+    private ClassLoader classLoader = ClassUtils.getDefaultClassLoader();
+    private volatile QpidJMSDeserializationPolicy.PrefixIndex trustedPackages = new QpidJMSDeserializationPolicy.PrefixIndex("");
+
+    /**
+     * Creates a new converter for the given format.
+     *
+     * @param contentType
+     *      The AMQP content-type of the messages the converter creates and decodes.
+     */
+    protected QpidJMSPayloadMessageConverter(String contentType) {
+        Assert.hasText(contentType, "Content type must not be empty");
+        this.contentType = contentType;
+    }
+
+    public String getContentType() {
+        return contentType;
+    }
+
+    public MessageConverter getDelegate() {
+        return delegate;
+    }
+
+    /**
+     * Sets the converter used for payloads the format does not support and for
+     * messages that do not carry the content-type of the format.
+     *
+     * @param delegate
+     *      The converter to delegate to.
+     */
+    public void setDelegate(MessageConverter delegate) {
+        Assert.notNull(delegate, "Delegate MessageConverter must not be null");
+        this.delegate = delegate;
+    }
+
+    public String getTypeIdPropertyName() {
+        return typeIdPropertyName;
+    }
+
+    public void setTypeIdPropertyName(String typeIdPropertyName) {
+        Assert.hasText(typeIdPropertyName, "Type id property name must not be empty");
+        this.typeIdPropertyName = typeIdPropertyName;
+    }
+
+    public void setBeanClassLoader(ClassLoader classLoader) {
+        this.classLoader = classLoader;
+    }
+
+    /**
+     * Sets the packages whose classes received messages may name as their type,
+     * a class is trusted when it or one of its enclosing packages is listed.
+     *
+     * @param trustedPackages
+     *      The trusted package names, or "*" to trust every type.
+     */
+    public void setTrustedPackages(String... trustedPackages) {
+        this.trustedPackages = new QpidJMSDeserializationPolicy.PrefixIndex(
+            StringUtils.arrayToCommaDelimitedString(trustedPackages));
+        this.types.clear();
+    }
+
+    @Override
+    public Message toMessage(Object object, Session session) throws JMSException, MessageConversionException {
+        if (object == null || !supports(object)) {
+            return delegate.toMessage(object, session);
+        }
+
+        byte[] body;
+        try {
+            body = toByteArray(object);
+        } catch (IOException | RuntimeException ex) {
+            throw new MessageConversionException("Could not encode " + object.getClass().getName() + " payload", ex);
+        }
+
+        BytesMessage message = session.createBytesMessage();
+        QpidJMSBytesMessageConverter.writeBody(message, body, 0, body.length);
+
+        AmqpJmsMessageFacade facade = getFacade(message);
+        if (facade != null) {
+            facade.setContentType(contentType);
+        }
+
+        message.setStringProperty(typeIdPropertyName, object.getClass().getName());
+
+        return message;
+    }
+
+    @Override
+    public Object fromMessage(Message message) throws JMSException, MessageConversionException {
+        if (!(message instanceof BytesMessage) || !isEncoded(message)) {
+            return delegate.fromMessage(message);
+        }
+
+        Class<?> type = resolveType(message.getStringProperty(typeIdPropertyName));
+        QpidJMSBytesPayload payload = QpidJMSBytesMessageConverter.readPayload((BytesMessage) message);
+
+        try {
+            return decode(payload.getArray(), payload.getOffset(), payload.length(), type);
+        } catch (IOException | RuntimeException ex) {
+            throw new MessageConversionException("Could not decode " + contentType + " payload of type " + type.getName(), ex);
+        }
+    }
+
+    //----- Format specific implementation -----------------------------------//
+
+    /**
+     * @return true if the payload is encoded by this converter rather than the delegate.
+     */
+    protected abstract boolean supports(Object payload);
+
+    /**
+     * Writes the encoded payload to the given stream.
+     */
+    protected abstract void encode(Object payload, OutputStream out) throws IOException;
+
+    /**
+     * Decodes a payload of the given type from the body of a received message.
+     */
+    protected abstract Object decode(byte[] array, int offset, int length, Class<?> type) throws IOException;
+
+    /**
+     * Returns the type payloads are decoded to when a message carries no type id.
+     *
+     * @throws MessageConversionException if the format cannot decode a payload without its type.
+     */
+    protected Class<?> getDefaultType() {
+        throw new MessageConversionException("Message carries no " + typeIdPropertyName + " property to decode the payload with");
+    }
+
+    /**
+     * Returns the encoded payload, by default encoding it into the buffer of the
+     * calling thread and copying the result into an exactly sized array.
+     */
+    protected byte[] toByteArray(Object payload) throws IOException {
+        PayloadBuffer buffer = BUFFERS.get();
+        try {
+            encode(payload, buffer);
+            return buffer.toByteArray();
+        } finally {
+            if (buffer.capacity() > MAX_RETAINED_BUFFER_SIZE) {
+                BUFFERS.remove();
+            } else {
+                buffer.reset();
+            }
+        }
+    }
+
+    //----- Internal implementation ------------------------------------------//
+
+    private boolean isEncoded(Message message) throws JMSException {
+        AmqpJmsMessageFacade facade = getFacade(message);
+        if (facade != null) {
+            String messageContentType = facade.getContentType();
+            if (contentType.equals(messageContentType)) {
+                return true;
+            } else if (messageContentType != null && !OCTET_STREAM_CONTENT_TYPE.equals(messageContentType)) {
+                return false;
+            }
+        }
+
+        // Brokers that convert messages to their own format may deliver bytes
+        // bodies as octet-stream, those and messages of other clients are then
+        // identified by their type id alone.
+        return message.propertyExists(typeIdPropertyName);
+    }
+
+    private Class<?> resolveType(String typeId) {
+        if (typeId == null) {
+            return getDefaultType();
+        }
+
+        Class<?> type = types.get(typeId);
+        if (type == null) {
+            if (!trustedPackages.matches(typeId)) {
+                throw new MessageConversionException("Payload type " + typeId + " is not in a trusted package");
+            }
+
+            try {
+                type = ClassUtils.forName(typeId, classLoader);
+            } catch (ClassNotFoundException | LinkageError ex) {
+                throw new MessageConversionException("Could not resolve payload type " + typeId, ex);
+            }
+
+            types.putIfAbsent(typeId, type);
+        }
+
+        return type;
+    }
+
+    private static AmqpJmsMessageFacade getFacade(Message message) {
+        if (message instanceof JmsMessage && ((JmsMessage) message).getFacade() instanceof AmqpJmsMessageFacade) {
+            return (AmqpJmsMessageFacade) ((JmsMessage) message).getFacade();
+        }
+
+        return null;
+    }
+
+    private static final class PayloadBuffer extends ByteArrayOutputStream {
+
+        PayloadBuffer() {
+            super(4096);
+        }
+
+        int capacity() {
+            return buf.length;
+        }
+    }
+}
@@ -0,0 +1,74 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.qpid.jms.spring.boot.autoconfigure;
+
+import java.util.List;
+
+import javax.jms.ConnectionFactory;
+
+import org.apache.qpid.jms.JmsConnectionListener;
+import org.messaginghub.pooled.jms.JmsPoolConnectionFactory;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnClass;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnMissingBean;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+
+/**
+ * Wraps the Qpid JMS ConnectionFactory in a pool of connections, sessions and
+ * producers when pooling is enabled and the pool library is on the classpath.
+ * <p>
+ * The pool library is optional, so this configuration checks for the pool class
+ * by name and is the only configuration whose methods use the pool types.
+ */
+@Configuration
+@ConditionalOnClass(name = QpidJMSPooledConnectionFactoryConfiguration.POOL_CLASS_NAME)
+@ConditionalOnMissingBean(ConnectionFactory.class)
+public class QpidJMSPooledConnectionFactoryConfiguration {
+
+    static final String POOL_CLASS_NAME = "org.messaginghub.pooled.jms.JmsPoolConnectionFactory";
+
+    static final String POOL_MISSING_MESSAGE =
+        "A pooled Qpid JMS ConnectionFactory requires org.messaginghub:pooled-jms on the classpath";
+
+    @Bean(destroyMethod = "stop")
+    @ConditionalOnProperty(prefix = "spring.qpidjms.pool", name = "enabled", havingValue = "true", matchIfMissing = false)
+    public JmsPoolConnectionFactory pooledJmsConnectionFactory(QpidJMSProperties properties,
+                                                               ObjectProvider<List<JmsConnectionListener>> connectionListeners) {
+        return createPooledConnectionFactory(properties, connectionListeners.getIfAvailable());
+    }
+
+    static JmsPoolConnectionFactory createPooledConnectionFactory(QpidJMSProperties properties,
+                                                                  List<JmsConnectionListener> connectionListeners) {
+        JmsPoolConnectionFactory pooledConnectionFactory = new JmsPoolConnectionFactory();
+        pooledConnectionFactory.setConnectionFactory(
+            QpidJMSConnectionFactoryConfiguration.createTargetConnectionFactory(properties, connectionListeners));
+
+        QpidJMSProperties.Pool pool = properties.getPool();
+
+        pooledConnectionFactory.setBlockIfSessionPoolIsFull(pool.isBlockIfFull());
+        pooledConnectionFactory.setBlockIfSessionPoolIsFullTimeout(pool.getBlockIfFullTimeout());
+        pooledConnectionFactory.setConnectionIdleTimeout(pool.getIdleTimeout());
+        pooledConnectionFactory.setConnectionCheckInterval(pool.getTimeBetweenExpirationCheck());
+        pooledConnectionFactory.setMaxConnections(pool.getMaxConnections());
+        pooledConnectionFactory.setMaxSessionsPerConnection(pool.getMaxSessionsPerConnection());
+        pooledConnectionFactory.setUseAnonymousProducers(pool.isUseAnonymousProducers());
+
+        return pooledConnectionFactory;
+    }
+}
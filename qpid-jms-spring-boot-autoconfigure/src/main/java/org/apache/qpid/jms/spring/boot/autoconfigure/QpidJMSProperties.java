@@ -16,6 +16,12 @@
  */
 package org.apache.qpid.jms.spring.boot.autoconfigure;
 
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.springframework.boot.autoconfigure.jms.JmsProperties.AcknowledgeMode;
 import org.springframework.boot.context.properties.ConfigurationProperties;
 
 /**
@@ -29,10 +35,108 @@ public class QpidJMSProperties {
     private String password;
     private String clientId;
 
+    /**
+     * How the client ID of connections is chosen: fixed sets the clientId on every
+     * connection, instance gives every connection a unique generated client ID
+     * prefixed with the clientId and the instance id, which lets the instances of
+     * a scaled out application join the same shared subscriptions.
+     */
+    private QpidJMSConnectionFactoryFactory.ClientIdStrategy clientIdStrategy =
+        QpidJMSConnectionFactoryFactory.ClientIdStrategy.FIXED;
+
+    /**
+     * Identifier of this application instance in generated client IDs, defaults to
+     * the local host name.
+     */
+    private String instanceId;
+
     private Boolean receiveLocalOnly;
     private Boolean receiveNoWaitLocalOnly;
 
+    /**
+     * Whether all producer sends are performed asynchronously without waiting for
+     * the remote to settle them.
+     */
+    private Boolean forceAsyncSend;
+
+    /**
+     * Whether all producer sends wait for the remote to settle them, including
+     * non-persistent and transacted sends.
+     */
+    private Boolean forceSyncSend;
+
+    /**
+     * Whether prefetched messages are reordered locally by priority before dispatch.
+     */
+    private Boolean localMessagePriority;
+
+    /**
+     * Time in milliseconds to wait for the remote to respond to a resource close.
+     */
+    private Long closeTimeout;
+
+    /**
+     * Time in milliseconds to wait for the initial connection to be established.
+     */
+    private Long connectTimeout;
+
+    /**
+     * Time in milliseconds to wait for a synchronous send to be settled, zero
+     * waits forever.
+     */
+    private Long sendTimeout;
+
+    /**
+     * Time in milliseconds to wait for the remote to respond to a resource
+     * creation or similar request, zero waits forever.
+     */
+    private Long requestTimeout;
+
+    /**
+     * Serialization format of the auto configured message converter, json, avro
+     * or protobuf, when not set the Spring default converter is used.
+     */
+    private QpidJMSPayloadMessageConverter.Format converter;
+
+    /**
+     * Packages whose classes the auto configured message converter decodes the
+     * payloads of received messages to, "*" trusts every class.  Messages whose
+     * type is in no trusted package are rejected.
+     */
+    private List<String> converterTrustedPackages = new ArrayList<>();
+
     private final DeserializationPolicy deserializationPolicy = new DeserializationPolicy();
+    private final PrefetchPolicy prefetchPolicy = new PrefetchPolicy();
+    private final PresettlePolicy presettlePolicy = new PresettlePolicy();
+    private final Pool pool = new Pool();
+    private final Batch batch = new Batch();
+    private final RequestReply requestReply = new RequestReply();
+    private final Listener listener = new Listener();
+    private final Metrics metrics = new Metrics();
+    private final Routing routing = new Routing();
+    private final Failover failover = new Failover();
+    private final Transport transport = new Transport();
+    private final Ssl ssl = new Ssl();
+    private final Warmup warmup = new Warmup();
+    private final BytesMessage bytesMessage = new BytesMessage();
+    private final Compression compression = new Compression();
+    private final Ack ack = new Ack();
+    private final Selector selector = new Selector();
+    private final Subscription subscription = new Subscription();
+
+    /**
+     * Brokers that producers and consumers are spread across, each broker shares
+     * the configuration above but has its own remote URL and credentials.  When
+     * set the remoteURL is not used.  Transactions are not atomic across brokers,
+     * a failed commit rolls back only the brokers that have not committed yet.
+     */
+    private final List<Broker> brokers = new ArrayList<>();
+
+    /**
+     * Per-destination policy overrides keyed by destination name or wildcard pattern
+     * where '*' matches any sequence of characters.
+     */
+    private final Map<String, DestinationPolicy> destinationPolicies = new LinkedHashMap<>();
 
     public String getRemoteURL() {
         return remoteURL;
@@ -66,6 +170,22 @@ public class QpidJMSProperties {
         this.clientId = clientId;
     }
 
+    public QpidJMSConnectionFactoryFactory.ClientIdStrategy getClientIdStrategy() {
+        return clientIdStrategy;
+    }
+
+    public void setClientIdStrategy(QpidJMSConnectionFactoryFactory.ClientIdStrategy clientIdStrategy) {
+        this.clientIdStrategy = clientIdStrategy;
+    }
+
+    public String getInstanceId() {
+        return instanceId;
+    }
+
+    public void setInstanceId(String instanceId) {
+        this.instanceId = instanceId;
+    }
+
     public Boolean isReceiveLocalOnly() {
         return receiveLocalOnly;
     }
@@ -82,29 +202,1476 @@ public class QpidJMSProperties {
         this.receiveNoWaitLocalOnly = receiveNoWaitLocalOnly;
     }
 
+    public Boolean isForceAsyncSend() {
+        return forceAsyncSend;
+    }
+
+    public void setForceAsyncSend(Boolean forceAsyncSend) {
+        this.forceAsyncSend = forceAsyncSend;
+    }
+
+    public Boolean isForceSyncSend() {
+        return forceSyncSend;
+    }
+
+    public void setForceSyncSend(Boolean forceSyncSend) {
+        this.forceSyncSend = forceSyncSend;
+    }
+
+    public Boolean isLocalMessagePriority() {
+        return localMessagePriority;
+    }
+
+    public void setLocalMessagePriority(Boolean localMessagePriority) {
+        this.localMessagePriority = localMessagePriority;
+    }
+
+    public Long getCloseTimeout() {
+        return closeTimeout;
+    }
+
+    public void setCloseTimeout(Long closeTimeout) {
+        this.closeTimeout = closeTimeout;
+    }
+
+    public Long getConnectTimeout() {
+        return connectTimeout;
+    }
+
+    public void setConnectTimeout(Long connectTimeout) {
+        this.connectTimeout = connectTimeout;
+    }
+
+    public Long getSendTimeout() {
+        return sendTimeout;
+    }
+
+    public void setSendTimeout(Long sendTimeout) {
+        this.sendTimeout = sendTimeout;
+    }
+
+    public Long getRequestTimeout() {
+        return requestTimeout;
+    }
+
+    public void setRequestTimeout(Long requestTimeout) {
+        this.requestTimeout = requestTimeout;
+    }
+
+    public QpidJMSPayloadMessageConverter.Format getConverter() {
+        return converter;
+    }
+
+    public void setConverter(QpidJMSPayloadMessageConverter.Format converter) {
+        this.converter = converter;
+    }
+
+    public List<String> getConverterTrustedPackages() {
+        return converterTrustedPackages;
+    }
+
+    public void setConverterTrustedPackages(List<String> converterTrustedPackages) {
+        this.converterTrustedPackages = converterTrustedPackages;
+    }
+
     public DeserializationPolicy getDeserializationPolicy() {
         return deserializationPolicy;
     }
 
+    public PrefetchPolicy getPrefetchPolicy() {
+        return prefetchPolicy;
+    }
+
+    public PresettlePolicy getPresettlePolicy() {
+        return presettlePolicy;
+    }
+
+    public Pool getPool() {
+        return pool;
+    }
+
+    public Batch getBatch() {
+        return batch;
+    }
+
+    public RequestReply getRequestReply() {
+        return requestReply;
+    }
+
+    public Listener getListener() {
+        return listener;
+    }
+
+    public Metrics getMetrics() {
+        return metrics;
+    }
+
+    public Routing getRouting() {
+        return routing;
+    }
+
+    public Failover getFailover() {
+        return failover;
+    }
+
+    public Transport getTransport() {
+        return transport;
+    }
+
+    public Ssl getSsl() {
+        return ssl;
+    }
+
+    public Warmup getWarmup() {
+        return warmup;
+    }
+
+    public BytesMessage getBytesMessage() {
+        return bytesMessage;
+    }
+
+    public Compression getCompression() {
+        return compression;
+    }
+
+    public Ack getAck() {
+        return ack;
+    }
+
+    public Selector getSelector() {
+        return selector;
+    }
+
+    public Subscription getSubscription() {
+        return subscription;
+    }
+
+    public List<Broker> getBrokers() {
+        return brokers;
+    }
+
+    public Map<String, DestinationPolicy> getDestinationPolicies() {
+        return destinationPolicies;
+    }
+
     public static class DeserializationPolicy {
 
-        private String whiteList;
-        private String blackList;
+        /**
+         * Classes and packages trusted for ObjectMessage deserialization, as a list
+         * or a comma separated value, "*" trusts every class not blacklisted.
+         */
+        private List<String> whiteList;
 
-        public String getWhiteList() {
+        /**
+         * Classes and packages never deserialized from ObjectMessage bodies, as a
+         * list or a comma separated value, "*" rejects every class.
+         */
+        private List<String> blackList;
+
+        public List<String> getWhiteList() {
             return whiteList;
         }
 
-        public void setWhiteList(String whiteList) {
+        public void setWhiteList(List<String> whiteList) {
             this.whiteList = whiteList;
         }
 
-        public String getBlackList() {
+        public List<String> getBlackList() {
             return blackList;
         }
 
-        public void setBlackList(String blackList) {
+        public void setBlackList(List<String> blackList) {
             this.blackList = blackList;
         }
     }
+
+    public static class PrefetchPolicy {
+
+        /**
+         * Prefetch applied to every consumer type, the per-type values below take
+         * precedence when also set.
+         */
+        private Integer all;
+
+        /**
+         * Number of messages a queue consumer may have outstanding.
+         */
+        private Integer queuePrefetch;
+
+        /**
+         * Number of messages a queue browser may have outstanding.
+         */
+        private Integer queueBrowserPrefetch;
+
+        /**
+         * Number of messages a non-durable topic consumer may have outstanding.
+         */
+        private Integer topicPrefetch;
+
+        /**
+         * Number of messages a durable topic subscriber may have outstanding.
+         */
+        private Integer durableTopicPrefetch;
+
+        public Integer getAll() {
+            return all;
+        }
+
+        public void setAll(Integer all) {
+            this.all = all;
+        }
+
+        public Integer getQueuePrefetch() {
+            return queuePrefetch;
+        }
+
+        public void setQueuePrefetch(Integer queuePrefetch) {
+            this.queuePrefetch = queuePrefetch;
+        }
+
+        public Integer getQueueBrowserPrefetch() {
+            return queueBrowserPrefetch;
+        }
+
+        public void setQueueBrowserPrefetch(Integer queueBrowserPrefetch) {
+            this.queueBrowserPrefetch = queueBrowserPrefetch;
+        }
+
+        public Integer getTopicPrefetch() {
+            return topicPrefetch;
+        }
+
+        public void setTopicPrefetch(Integer topicPrefetch) {
+            this.topicPrefetch = topicPrefetch;
+        }
+
+        public Integer getDurableTopicPrefetch() {
+            return durableTopicPrefetch;
+        }
+
+        public void setDurableTopicPrefetch(Integer durableTopicPrefetch) {
+            this.durableTopicPrefetch = durableTopicPrefetch;
+        }
+    }
+
+    public static class PresettlePolicy {
+
+        /**
+         * Whether all producers and consumers are presettled, the per-type values
+         * below are only consulted when this is not enabled.
+         */
+        private Boolean presettleAll;
+
+        /**
+         * Whether all producers send presettled messages.
+         */
+        private Boolean presettleProducers;
+
+        /**
+         * Whether queue producers send presettled messages.
+         */
+        private Boolean presettleQueueProducers;
+
+        /**
+         * Whether topic producers send presettled messages.
+         */
+        private Boolean presettleTopicProducers;
+
+        /**
+         * Whether producers in transacted sessions send presettled messages.
+         */
+        private Boolean presettleTransactedProducers;
+
+        /**
+         * Whether all consumers request presettled deliveries.
+         */
+        private Boolean presettleConsumers;
+
+        /**
+         * Whether queue consumers request presettled deliveries.
+         */
+        private Boolean presettleQueueConsumers;
+
+        /**
+         * Whether topic consumers request presettled deliveries.
+         */
+        private Boolean presettleTopicConsumers;
+
+        public Boolean isPresettleAll() {
+            return presettleAll;
+        }
+
+        public void setPresettleAll(Boolean presettleAll) {
+            this.presettleAll = presettleAll;
+        }
+
+        public Boolean isPresettleProducers() {
+            return presettleProducers;
+        }
+
+        public void setPresettleProducers(Boolean presettleProducers) {
+            this.presettleProducers = presettleProducers;
+        }
+
+        public Boolean isPresettleQueueProducers() {
+            return presettleQueueProducers;
+        }
+
+        public void setPresettleQueueProducers(Boolean presettleQueueProducers) {
+            this.presettleQueueProducers = presettleQueueProducers;
+        }
+
+        public Boolean isPresettleTopicProducers() {
+            return presettleTopicProducers;
+        }
+
+        public void setPresettleTopicProducers(Boolean presettleTopicProducers) {
+            this.presettleTopicProducers = presettleTopicProducers;
+        }
+
+        public Boolean isPresettleTransactedProducers() {
+            return presettleTransactedProducers;
+        }
+
+        public void setPresettleTransactedProducers(Boolean presettleTransactedProducers) {
+            this.presettleTransactedProducers = presettleTransactedProducers;
+        }
+
+        public Boolean isPresettleConsumers() {
+            return presettleConsumers;
+        }
+
+        public void setPresettleConsumers(Boolean presettleConsumers) {
+            this.presettleConsumers = presettleConsumers;
+        }
+
+        public Boolean isPresettleQueueConsumers() {
+            return presettleQueueConsumers;
+        }
+
+        public void setPresettleQueueConsumers(Boolean presettleQueueConsumers) {
+            this.presettleQueueConsumers = presettleQueueConsumers;
+        }
+
+        public Boolean isPresettleTopicConsumers() {
+            return presettleTopicConsumers;
+        }
+
+        public void setPresettleTopicConsumers(Boolean presettleTopicConsumers) {
+            this.presettleTopicConsumers = presettleTopicConsumers;
+        }
+    }
+
+    public static class DestinationPolicy {
+
+        /**
+         * Number of messages a consumer on a matching destination may have outstanding.
+         */
+        private Integer prefetch;
+
+        /**
+         * Whether producers sending to a matching destination send presettled messages.
+         */
+        private Boolean presettleProducers;
+
+        /**
+         * Whether consumers on a matching destination request presettled deliveries.
+         */
+        private Boolean presettleConsumers;
+
+        /**
+         * Maximum number of redeliveries before a message from a matching destination
+         * is rejected, a negative value means no limit.
+         */
+        private Integer maxRedeliveries;
+
+        /**
+         * Outcome applied to a message from a matching destination that exceeds the
+         * maximum redeliveries, for example MODIFIED_FAILED_UNDELIVERABLE or REJECTED.
+         */
+        private String redeliveryOutcome;
+
+        /**
+         * Compression algorithm for bodies sent to a matching destination, none
+         * disables compression for the destination.
+         */
+        private QpidJMSCompression.Algorithm compression;
+
+        /**
+         * Minimum encoded body size in bytes that is compressed when sent to a
+         * matching destination.
+         */
+        private Integer compressionMinSize;
+
+        public Integer getPrefetch() {
+            return prefetch;
+        }
+
+        public void setPrefetch(Integer prefetch) {
+            this.prefetch = prefetch;
+        }
+
+        public Boolean isPresettleProducers() {
+            return presettleProducers;
+        }
+
+        public void setPresettleProducers(Boolean presettleProducers) {
+            this.presettleProducers = presettleProducers;
+        }
+
+        public Boolean isPresettleConsumers() {
+            return presettleConsumers;
+        }
+
+        public void setPresettleConsumers(Boolean presettleConsumers) {
+            this.presettleConsumers = presettleConsumers;
+        }
+
+        public Integer getMaxRedeliveries() {
+            return maxRedeliveries;
+        }
+
+        public void setMaxRedeliveries(Integer maxRedeliveries) {
+            this.maxRedeliveries = maxRedeliveries;
+        }
+
+        public String getRedeliveryOutcome() {
+            return redeliveryOutcome;
+        }
+
+        public void setRedeliveryOutcome(String redeliveryOutcome) {
+            this.redeliveryOutcome = redeliveryOutcome;
+        }
+
+        public QpidJMSCompression.Algorithm getCompression() {
+            return compression;
+        }
+
+        public void setCompression(QpidJMSCompression.Algorithm compression) {
+            this.compression = compression;
+        }
+
+        public Integer getCompressionMinSize() {
+            return compressionMinSize;
+        }
+
+        public void setCompressionMinSize(Integer compressionMinSize) {
+            this.compressionMinSize = compressionMinSize;
+        }
+    }
+
+    public static class Pool {
+
+        /**
+         * Whether a pooled ConnectionFactory should be created in place of the plain
+         * Qpid JMS ConnectionFactory.
+         */
+        private boolean enabled;
+
+        /**
+         * Whether to block when a session is requested and the pool is full, when
+         * false an exception is thrown instead.
+         */
+        private boolean blockIfFull = true;
+
+        /**
+         * Time in milliseconds to block waiting for a free session before failing,
+         * a negative value means wait forever.
+         */
+        private long blockIfFullTimeout = -1;
+
+        /**
+         * Time in milliseconds a pooled connection may sit unused before it is
+         * closed and evicted, zero disables idle eviction.
+         */
+        private int idleTimeout = 30000;
+
+        /**
+         * Time in milliseconds between checks for idle or expired connections, a
+         * negative value disables the background check.
+         */
+        private long timeBetweenExpirationCheck = -1;
+
+        /**
+         * Maximum number of pooled connections.
+         */
+        private int maxConnections = 1;
+
+        /**
+         * Maximum number of pooled sessions per connection.
+         */
+        private int maxSessionsPerConnection = 500;
+
+        /**
+         * Whether each pooled session shares a single anonymous producer rather
+         * than creating a producer link per destination.
+         */
+        private boolean useAnonymousProducers = true;
+
+        public boolean isEnabled() {
+            return enabled;
+        }
+
+        public void setEnabled(boolean enabled) {
+            this.enabled = enabled;
+        }
+
+        public boolean isBlockIfFull() {
+            return blockIfFull;
+        }
+
+        public void setBlockIfFull(boolean blockIfFull) {
+            this.blockIfFull = blockIfFull;
+        }
+
+        public long getBlockIfFullTimeout() {
+            return blockIfFullTimeout;
+        }
+
+        public void setBlockIfFullTimeout(long blockIfFullTimeout) {
+            this.blockIfFullTimeout = blockIfFullTimeout;
+        }
+
+        public int getIdleTimeout() {
+            return idleTimeout;
+        }
+
+        public void setIdleTimeout(int idleTimeout) {
+            this.idleTimeout = idleTimeout;
+        }
+
+        public long getTimeBetweenExpirationCheck() {
+            return timeBetweenExpirationCheck;
+        }
+
+        public void setTimeBetweenExpirationCheck(long timeBetweenExpirationCheck) {
+            this.timeBetweenExpirationCheck = timeBetweenExpirationCheck;
+        }
+
+        public int getMaxConnections() {
+            return maxConnections;
+        }
+
+        public void setMaxConnections(int maxConnections) {
+            this.maxConnections = maxConnections;
+        }
+
+        public int getMaxSessionsPerConnection() {
+            return maxSessionsPerConnection;
+        }
+
+        public void setMaxSessionsPerConnection(int maxSessionsPerConnection) {
+            this.maxSessionsPerConnection = maxSessionsPerConnection;
+        }
+
+        public boolean isUseAnonymousProducers() {
+            return useAnonymousProducers;
+        }
+
+        public void setUseAnonymousProducers(boolean useAnonymousProducers) {
+            this.useAnonymousProducers = useAnonymousProducers;
+        }
+    }
+
+    public static class Batch {
+
+        /**
+         * Maximum number of unsettled sends a single batch may have outstanding
+         * before the sending thread waits for earlier sends to settle.
+         */
+        private int maxInFlight = QpidJMSBatchTemplate.DEFAULT_MAX_IN_FLIGHT;
+
+        public int getMaxInFlight() {
+            return maxInFlight;
+        }
+
+        public void setMaxInFlight(int maxInFlight) {
+            this.maxInFlight = maxInFlight;
+        }
+    }
+
+    public static class RequestReply {
+
+        /**
+         * Time in milliseconds to wait for a reply before the request is evicted and
+         * fails with a timeout.
+         */
+        private long replyTimeout = QpidJMSRequestReplyTemplate.DEFAULT_REPLY_TIMEOUT;
+
+        public long getReplyTimeout() {
+            return replyTimeout;
+        }
+
+        public void setReplyTimeout(long replyTimeout) {
+            this.replyTimeout = replyTimeout;
+        }
+    }
+
+    public static class Broker {
+
+        /**
+         * Remote URL of the broker, options on the URL apply to this broker only.
+         */
+        private String remoteURL;
+
+        /**
+         * User name for this broker, defaults to the top level username.
+         */
+        private String username;
+
+        /**
+         * Password for this broker, defaults to the top level password.
+         */
+        private String password;
+
+        public String getRemoteURL() {
+            return remoteURL;
+        }
+
+        public void setRemoteURL(String remoteURL) {
+            this.remoteURL = remoteURL;
+        }
+
+        public String getUsername() {
+            return username;
+        }
+
+        public void setUsername(String username) {
+            this.username = username;
+        }
+
+        public String getPassword() {
+            return password;
+        }
+
+        public void setPassword(String password) {
+            this.password = password;
+        }
+    }
+
+    public static class Routing {
+
+        /**
+         * Strategy used to spread sends and consumers across the configured brokers.
+         */
+        private QpidJMSRoutingConnectionFactory.Strategy strategy = QpidJMSRoutingConnectionFactory.Strategy.ROUND_ROBIN;
+
+        /**
+         * Time in milliseconds a broker whose connection failed is kept out of rotation.
+         */
+        private long retryInterval = QpidJMSRoutingConnectionFactory.DEFAULT_RETRY_INTERVAL;
+
+        public QpidJMSRoutingConnectionFactory.Strategy getStrategy() {
+            return strategy;
+        }
+
+        public void setStrategy(QpidJMSRoutingConnectionFactory.Strategy strategy) {
+            this.strategy = strategy;
+        }
+
+        public long getRetryInterval() {
+            return retryInterval;
+        }
+
+        public void setRetryInterval(long retryInterval) {
+            this.retryInterval = retryInterval;
+        }
+    }
+
+    public static class Transport {
+
+        /**
+         * Whether the native epoll transport is used where it is available, when
+         * false the connections always use the NIO transport.
+         */
+        private Boolean useEpoll;
+
+        /**
+         * Whether Nagle's algorithm is disabled so that small frames such as
+         * dispositions and flow updates are written without delay.
+         */
+        private Boolean tcpNoDelay;
+
+        /**
+         * Whether TCP keep alive probes are sent on idle connections.
+         */
+        private Boolean tcpKeepAlive;
+
+        /**
+         * Size in bytes of the socket send buffer.
+         */
+        private Integer sendBufferSize;
+
+        /**
+         * Size in bytes of the socket receive buffer.
+         */
+        private Integer receiveBufferSize;
+
+        /**
+         * Time in milliseconds to wait for the socket of a connection to connect,
+         * the connectTimeout covers the whole connection setup after that.
+         */
+        private Integer connectTimeout;
+
+        /**
+         * IP traffic class, or type of service, of the packets the connections send.
+         */
+        private Integer trafficClass;
+
+        public Boolean isUseEpoll() {
+            return useEpoll;
+        }
+
+        public void setUseEpoll(Boolean useEpoll) {
+            this.useEpoll = useEpoll;
+        }
+
+        public Boolean isTcpNoDelay() {
+            return tcpNoDelay;
+        }
+
+        public void setTcpNoDelay(Boolean tcpNoDelay) {
+            this.tcpNoDelay = tcpNoDelay;
+        }
+
+        public Boolean isTcpKeepAlive() {
+            return tcpKeepAlive;
+        }
+
+        public void setTcpKeepAlive(Boolean tcpKeepAlive) {
+            this.tcpKeepAlive = tcpKeepAlive;
+        }
+
+        public Integer getSendBufferSize() {
+            return sendBufferSize;
+        }
+
+        public void setSendBufferSize(Integer sendBufferSize) {
+            this.sendBufferSize = sendBufferSize;
+        }
+
+        public Integer getReceiveBufferSize() {
+            return receiveBufferSize;
+        }
+
+        public void setReceiveBufferSize(Integer receiveBufferSize) {
+            this.receiveBufferSize = receiveBufferSize;
+        }
+
+        public Integer getConnectTimeout() {
+            return connectTimeout;
+        }
+
+        public void setConnectTimeout(Integer connectTimeout) {
+            this.connectTimeout = connectTimeout;
+        }
+
+        public Integer getTrafficClass() {
+            return trafficClass;
+        }
+
+        public void setTrafficClass(Integer trafficClass) {
+            this.trafficClass = trafficClass;
+        }
+    }
+
+    public static class Ssl {
+
+        /**
+         * Whether one SSLContext is built at startup from these properties and
+         * shared by all connections of the factory and the failover warm standby,
+         * so that reconnects resume cached TLS sessions instead of performing full
+         * handshakes.
+         */
+        private boolean enabled;
+
+        /**
+         * Protocol of the SSLContext.
+         */
+        private String protocol = QpidJMSSslContextFactory.DEFAULT_PROTOCOL;
+
+        /**
+         * Security provider of the SSLContext, such as an OpenSSL based provider
+         * registered with the JVM, the JVM's default provider when not set.
+         */
+        private String provider;
+
+        /**
+         * Location of the key store, a file path or resource URL.
+         */
+        private String keyStoreLocation;
+
+        /**
+         * Password of the key store and its keys.
+         */
+        private String keyStorePassword;
+
+        /**
+         * Type of the key store, the JVM's default type when not set.
+         */
+        private String keyStoreType;
+
+        /**
+         * Location of the trust store, a file path or resource URL, the JVM's
+         * default trust store is used when not set.
+         */
+        private String trustStoreLocation;
+
+        /**
+         * Password of the trust store.
+         */
+        private String trustStorePassword;
+
+        /**
+         * Type of the trust store, the JVM's default type when not set.
+         */
+        private String trustStoreType;
+
+        /**
+         * Maximum number of TLS sessions cached for resumption, 0 for no limit.
+         */
+        private Integer sessionCacheSize;
+
+        /**
+         * Time in seconds a cached TLS session can be resumed for, 0 for no limit.
+         */
+        private Integer sessionTimeout;
+
+        public boolean isEnabled() {
+            return enabled;
+        }
+
+        public void setEnabled(boolean enabled) {
+            this.enabled = enabled;
+        }
+
+        public String getProtocol() {
+            return protocol;
+        }
+
+        public void setProtocol(String protocol) {
+            this.protocol = protocol;
+        }
+
+        public String getProvider() {
+            return provider;
+        }
+
+        public void setProvider(String provider) {
+            this.provider = provider;
+        }
+
+        public String getKeyStoreLocation() {
+            return keyStoreLocation;
+        }
+
+        public void setKeyStoreLocation(String keyStoreLocation) {
+            this.keyStoreLocation = keyStoreLocation;
+        }
+
+        public String getKeyStorePassword() {
+            return keyStorePassword;
+        }
+
+        public void setKeyStorePassword(String keyStorePassword) {
+            this.keyStorePassword = keyStorePassword;
+        }
+
+        public String getKeyStoreType() {
+            return keyStoreType;
+        }
+
+        public void setKeyStoreType(String keyStoreType) {
+            this.keyStoreType = keyStoreType;
+        }
+
+        public String getTrustStoreLocation() {
+            return trustStoreLocation;
+        }
+
+        public void setTrustStoreLocation(String trustStoreLocation) {
+            this.trustStoreLocation = trustStoreLocation;
+        }
+
+        public String getTrustStorePassword() {
+            return trustStorePassword;
+        }
+
+        public void setTrustStorePassword(String trustStorePassword) {
+            this.trustStorePassword = trustStorePassword;
+        }
+
+        public String getTrustStoreType() {
+            return trustStoreType;
+        }
+
+        public void setTrustStoreType(String trustStoreType) {
+            this.trustStoreType = trustStoreType;
+        }
+
+        public Integer getSessionCacheSize() {
+            return sessionCacheSize;
+        }
+
+        public void setSessionCacheSize(Integer sessionCacheSize) {
+            this.sessionCacheSize = sessionCacheSize;
+        }
+
+        public Integer getSessionTimeout() {
+            return sessionTimeout;
+        }
+
+        public void setSessionTimeout(Integer sessionTimeout) {
+            this.sessionTimeout = sessionTimeout;
+        }
+    }
+
+    public static class Failover {
+
+        /**
+         * Time in milliseconds to wait before the first reconnect attempt after the
+         * connection to the current failover peer is lost.
+         */
+        private Long initialReconnectDelay;
+
+        /**
+         * Time in milliseconds to wait between reconnect attempts before any back
+         * off is applied.
+         */
+        private Long reconnectDelay;
+
+        /**
+         * Upper bound in milliseconds on the delay between reconnect attempts.
+         */
+        private Long maxReconnectDelay;
+
+        /**
+         * Factor the reconnect delay is multiplied by after each failed attempt,
+         * a value of one disables the back off.
+         */
+        private Double reconnectBackOffMultiplier;
+
+        /**
+         * Number of reconnect attempts made before the connection is failed, -1
+         * retries forever.
+         */
+        private Integer maxReconnectAttempts;
+
+        /**
+         * Whether an idle connection to the next failover peer is kept open and
+         * authenticated so that the peer is known to be reachable before it is needed,
+         * ignored unless the remote URL is a failover URL.
+         */
+        private boolean warmStandby;
+
+        public Long getInitialReconnectDelay() {
+            return initialReconnectDelay;
+        }
+
+        public void setInitialReconnectDelay(Long initialReconnectDelay) {
+            this.initialReconnectDelay = initialReconnectDelay;
+        }
+
+        public Long getReconnectDelay() {
+            return reconnectDelay;
+        }
+
+        public void setReconnectDelay(Long reconnectDelay) {
+            this.reconnectDelay = reconnectDelay;
+        }
+
+        public Long getMaxReconnectDelay() {
+            return maxReconnectDelay;
+        }
+
+        public void setMaxReconnectDelay(Long maxReconnectDelay) {
+            this.maxReconnectDelay = maxReconnectDelay;
+        }
+
+        public Double getReconnectBackOffMultiplier() {
+            return reconnectBackOffMultiplier;
+        }
+
+        public void setReconnectBackOffMultiplier(Double reconnectBackOffMultiplier) {
+            this.reconnectBackOffMultiplier = reconnectBackOffMultiplier;
+        }
+
+        public Integer getMaxReconnectAttempts() {
+            return maxReconnectAttempts;
+        }
+
+        public void setMaxReconnectAttempts(Integer maxReconnectAttempts) {
+            this.maxReconnectAttempts = maxReconnectAttempts;
+        }
+
+        public boolean isWarmStandby() {
+            return warmStandby;
+        }
+
+        public void setWarmStandby(boolean warmStandby) {
+            this.warmStandby = warmStandby;
+        }
+    }
+
+    public static class Warmup {
+
+        /**
+         * Whether connections are opened while the application context starts
+         * rather than on first use.  Only a pooled ConnectionFactory keeps them for
+         * the application, without spring.qpidjms.pool.enabled they are closed
+         * again and the warm-up only validates that they can be opened.
+         */
+        private boolean enabled;
+
+        /**
+         * Number of connections opened in parallel, when pooled the pool should
+         * allow at least this many connections.
+         */
+        private int connections = QpidJMSWarmup.DEFAULT_CONNECTIONS;
+
+        /**
+         * Destinations a producer is attached to on each warmed connection.
+         */
+        private List<String> producerDestinations = new ArrayList<>();
+
+        /**
+         * Destinations a consumer is attached to and then closed on each warmed
+         * connection, validating that they can be consumed from.
+         */
+        private List<String> consumerDestinations = new ArrayList<>();
+
+        /**
+         * Time in milliseconds to wait for all connections to be warmed.
+         */
+        private long timeout = QpidJMSWarmup.DEFAULT_TIMEOUT;
+
+        /**
+         * Whether the application fails to start when a connection cannot be
+         * warmed within the timeout.
+         */
+        private boolean failFast;
+
+        public boolean isEnabled() {
+            return enabled;
+        }
+
+        public void setEnabled(boolean enabled) {
+            this.enabled = enabled;
+        }
+
+        public int getConnections() {
+            return connections;
+        }
+
+        public void setConnections(int connections) {
+            this.connections = connections;
+        }
+
+        public List<String> getProducerDestinations() {
+            return producerDestinations;
+        }
+
+        public void setProducerDestinations(List<String> producerDestinations) {
+            this.producerDestinations = producerDestinations;
+        }
+
+        public List<String> getConsumerDestinations() {
+            return consumerDestinations;
+        }
+
+        public void setConsumerDestinations(List<String> consumerDestinations) {
+            this.consumerDestinations = consumerDestinations;
+        }
+
+        public long getTimeout() {
+            return timeout;
+        }
+
+        public void setTimeout(long timeout) {
+            this.timeout = timeout;
+        }
+
+        public boolean isFailFast() {
+            return failFast;
+        }
+
+        public void setFailFast(boolean failFast) {
+            this.failFast = failFast;
+        }
+    }
+
+    public static class BytesMessage {
+
+        /**
+         * Whether a message converter is registered that exposes received bytes
+         * message bodies as QpidJMSBytesPayload views and sends byte arrays and
+         * buffers without copying them.
+         */
+        private boolean zeroCopy;
+
+        public boolean isZeroCopy() {
+            return zeroCopy;
+        }
+
+        public void setZeroCopy(boolean zeroCopy) {
+            this.zeroCopy = zeroCopy;
+        }
+    }
+
+    public static class Compression {
+
+        /**
+         * Whether connections compress the bodies of the messages they send and
+         * decompress compressed bodies they receive.
+         */
+        private boolean enabled;
+
+        /**
+         * Compression algorithm for sent bodies, gzip, lz4 or zstd, or none to only
+         * decompress received bodies.
+         */
+        private QpidJMSCompression.Algorithm algorithm = QpidJMSCompression.Algorithm.GZIP;
+
+        /**
+         * Minimum encoded body size in bytes that is compressed, smaller bodies are
+         * sent as they are.
+         */
+        private int minSize = QpidJMSCompression.DEFAULT_MIN_SIZE;
+
+        /**
+         * Maximum size in bytes a received body may decompress to, larger bodies
+         * are delivered compressed.
+         */
+        private int maxDecompressedSize = QpidJMSCompression.DEFAULT_MAX_DECOMPRESSED_SIZE;
+
+        public boolean isEnabled() {
+            return enabled;
+        }
+
+        public void setEnabled(boolean enabled) {
+            this.enabled = enabled;
+        }
+
+        public QpidJMSCompression.Algorithm getAlgorithm() {
+            return algorithm;
+        }
+
+        public void setAlgorithm(QpidJMSCompression.Algorithm algorithm) {
+            this.algorithm = algorithm;
+        }
+
+        public int getMinSize() {
+            return minSize;
+        }
+
+        public void setMinSize(int minSize) {
+            this.minSize = minSize;
+        }
+
+        public int getMaxDecompressedSize() {
+            return maxDecompressedSize;
+        }
+
+        public void setMaxDecompressedSize(int maxDecompressedSize) {
+            this.maxDecompressedSize = maxDecompressedSize;
+        }
+    }
+
+    public static class Ack {
+
+        /**
+         * Whether listener sessions use client acknowledgement and coalesce the
+         * acknowledgements of the messages they process.
+         */
+        private boolean enabled;
+
+        /**
+         * Maximum number of processed but unacknowledged messages per listener
+         * session, which bounds the processed messages redelivered after a crash.
+         */
+        private int maxPending = 100;
+
+        /**
+         * Time in milliseconds after its first processed message at which a listener
+         * session acknowledges the messages still pending.
+         */
+        private long flushInterval = QpidJMSMessageListenerContainer.DEFAULT_ACKNOWLEDGE_FLUSH_INTERVAL;
+
+        public boolean isEnabled() {
+            return enabled;
+        }
+
+        public void setEnabled(boolean enabled) {
+            this.enabled = enabled;
+        }
+
+        public int getMaxPending() {
+            return maxPending;
+        }
+
+        public void setMaxPending(int maxPending) {
+            this.maxPending = maxPending;
+        }
+
+        public long getFlushInterval() {
+            return flushInterval;
+        }
+
+        public void setFlushInterval(long flushInterval) {
+            this.flushInterval = flushInterval;
+        }
+    }
+
+    public static class Selector {
+
+        /**
+         * Where consumer selectors are applied: broker, auto to also apply them on the
+         * client for consumers whose link the broker attached without the selector,
+         * or client to apply the selectors of topic subscriptions on the client only.
+         */
+        private QpidJMSSelectorFilter.Mode mode = QpidJMSSelectorFilter.Mode.AUTO;
+
+        /**
+         * Maximum number of compiled selectors shared by the consumers of the
+         * connection factory.
+         */
+        private int cacheSize = QpidJMSSelectorFilter.DEFAULT_CACHE_SIZE;
+
+        public QpidJMSSelectorFilter.Mode getMode() {
+            return mode;
+        }
+
+        public void setMode(QpidJMSSelectorFilter.Mode mode) {
+            this.mode = mode;
+        }
+
+        public int getCacheSize() {
+            return cacheSize;
+        }
+
+        public void setCacheSize(int cacheSize) {
+            this.cacheSize = cacheSize;
+        }
+    }
+
+    public static class Subscription {
+
+        /**
+         * Whether listeners on topics consume from shared subscriptions, which every
+         * consumer of every instance joins and takes a share of the messages from.
+         * Listeners on topics are those of a publish/subscribe domain and those that
+         * name their subscription, queue listeners are left unchanged.
+         */
+        private boolean shared;
+
+        /**
+         * Whether listeners on topics consume from durable subscriptions, queue
+         * listeners are left unchanged.
+         */
+        private boolean durable;
+
+        /**
+         * Template of the subscription names of listeners that do not name their
+         * subscription, {application}, {listener} and {destination} are replaced with
+         * the application name, the listener id and the topic name.
+         */
+        private String nameTemplate = QpidJMSListenerContainerFactory.DEFAULT_SUBSCRIPTION_NAME_TEMPLATE;
+
+        public boolean isShared() {
+            return shared;
+        }
+
+        public void setShared(boolean shared) {
+            this.shared = shared;
+        }
+
+        public boolean isDurable() {
+            return durable;
+        }
+
+        public void setDurable(boolean durable) {
+            this.durable = durable;
+        }
+
+        public String getNameTemplate() {
+            return nameTemplate;
+        }
+
+        public void setNameTemplate(String nameTemplate) {
+            this.nameTemplate = nameTemplate;
+        }
+    }
+
+    public static class Metrics {
+
+        /**
+         * Whether Qpid JMS connection, consumer and send metrics are published to
+         * the Micrometer registry when one is available.
+         */
+        private boolean enabled = true;
+
+        /**
+         * Maximum number of distinct destinations tagged on the per-destination
+         * meters, further destinations are recorded under a shared tag.
+         */
+        private int maxDestinations = QpidJMSMetrics.DEFAULT_MAX_DESTINATIONS;
+
+        public boolean isEnabled() {
+            return enabled;
+        }
+
+        public void setEnabled(boolean enabled) {
+            this.enabled = enabled;
+        }
+
+        public int getMaxDestinations() {
+            return maxDestinations;
+        }
+
+        public void setMaxDestinations(int maxDestinations) {
+            this.maxDestinations = maxDestinations;
+        }
+    }
+
+    public static class Listener {
+
+        /**
+         * Minimum number of consumers each listener container starts with.
+         */
+        private int concurrency = 1;
+
+        /**
+         * Maximum number of consumers each listener container may scale up to based
+         * on the depth of the local prefetch buffers, defaults to the minimum.
+         */
+        private Integer maxConcurrency;
+
+        /**
+         * Average number of prefetched but undelivered messages per consumer at
+         * which another consumer is added.
+         */
+        private int backlogThreshold = QpidJMSMessageListenerContainer.DEFAULT_BACKLOG_THRESHOLD;
+
+        /**
+         * Time in milliseconds between checks of the prefetch buffer depth.
+         */
+        private long monitorInterval = QpidJMSMessageListenerContainer.DEFAULT_MONITOR_INTERVAL;
+
+        /**
+         * Number of consecutive checks with empty prefetch buffers before an added
+         * consumer is removed again.
+         */
+        private int idleChecksBeforeScaleDown = QpidJMSMessageListenerContainer.DEFAULT_IDLE_CHECKS_BEFORE_SCALE_DOWN;
+
+        /**
+         * Whether listener sessions deliver on virtual threads, requires Java 21 or
+         * later and falls back to platform threads otherwise.  Replaces the delivery
+         * executor of the Qpid JMS client's sessions, which is supported with
+         * qpid-jms-client 0.23.0, startup fails with a client whose sessions cannot
+         * be changed or with several brokers.
+         */
+        private boolean virtualThreads;
+
+        /**
+         * Acknowledge mode of the listener sessions, defaults to auto.
+         */
+        private AcknowledgeMode acknowledgeMode;
+
+        /**
+         * Number of messages a listener session commits at once, above one the
+         * sessions are transacted and listener methods may take a List of messages.
+         */
+        private int batchSize = 1;
+
+        /**
+         * Time in milliseconds after its first message at which a batch that is
+         * not yet full is handed to the listener and committed.
+         */
+        private long batchTimeout = QpidJMSMessageListenerContainer.DEFAULT_BATCH_TIMEOUT;
+
+        /**
+         * Whether the listener containers start automatically.
+         */
+        private boolean autoStartup = true;
+
+        public int getConcurrency() {
+            return concurrency;
+        }
+
+        public void setConcurrency(int concurrency) {
+            this.concurrency = concurrency;
+        }
+
+        public Integer getMaxConcurrency() {
+            return maxConcurrency;
+        }
+
+        public void setMaxConcurrency(Integer maxConcurrency) {
+            this.maxConcurrency = maxConcurrency;
+        }
+
+        public int getBacklogThreshold() {
+            return backlogThreshold;
+        }
+
+        public void setBacklogThreshold(int backlogThreshold) {
+            this.backlogThreshold = backlogThreshold;
+        }
+
+        public long getMonitorInterval() {
+            return monitorInterval;
+        }
+
+        public void setMonitorInterval(long monitorInterval) {
+            this.monitorInterval = monitorInterval;
+        }
+
+        public int getIdleChecksBeforeScaleDown() {
+            return idleChecksBeforeScaleDown;
+        }
+
+        public void setIdleChecksBeforeScaleDown(int idleChecksBeforeScaleDown) {
+            this.idleChecksBeforeScaleDown = idleChecksBeforeScaleDown;
+        }
+
+        public boolean isVirtualThreads() {
+            return virtualThreads;
+        }
+
+        public void setVirtualThreads(boolean virtualThreads) {
+            this.virtualThreads = virtualThreads;
+        }
+
+        public AcknowledgeMode getAcknowledgeMode() {
+            return acknowledgeMode;
+        }
+
+        public void setAcknowledgeMode(AcknowledgeMode acknowledgeMode) {
+            this.acknowledgeMode = acknowledgeMode;
+        }
+
+        public int getBatchSize() {
+            return batchSize;
+        }
+
+        public void setBatchSize(int batchSize) {
+            this.batchSize = batchSize;
+        }
+
+        public long getBatchTimeout() {
+            return batchTimeout;
+        }
+
+        public void setBatchTimeout(long batchTimeout) {
+            this.batchTimeout = batchTimeout;
+        }
+
+        public boolean isAutoStartup() {
+            return autoStartup;
+        }
+
+        public void setAutoStartup(boolean autoStartup) {
+            this.autoStartup = autoStartup;
+        }
+    }
 }
@@ -0,0 +1,84 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.qpid.jms.spring.boot.autoconfigure;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.lang.reflect.Method;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+import org.springframework.jms.support.converter.MessageConversionException;
+import org.springframework.util.ReflectionUtils;
+
+import com.google.protobuf.MessageLite;
+import com.google.protobuf.Parser;
+
+/**
+ * Converter that encodes Protocol Buffers {@link MessageLite} payloads in their
+ * binary wire format.
+ * <p>
+ * Protocol Buffers messages know their encoded size, so each payload is written
+ * straight into an exactly sized array without an intermediate buffer.  The
+ * parser of each message type is looked up reflectively once and reused.
+ * Payloads that are not Protocol Buffers messages are converted by the delegate.
+ */
+public class QpidJMSProtobufMessageConverter extends QpidJMSPayloadMessageConverter {
+
+    public static final String CONTENT_TYPE = "application/x-protobuf";
+
+    private final ConcurrentMap<Class<?>, Parser<?>> parsers = new ConcurrentHashMap<>();
+
+    public QpidJMSProtobufMessageConverter() {
+        super(CONTENT_TYPE);
+    }
+
+    @Override
+    protected boolean supports(Object payload) {
+        return payload instanceof MessageLite;
+    }
+
+    @Override
+    protected byte[] toByteArray(Object payload) {
+        return ((MessageLite) payload).toByteArray();
+    }
+
+    @Override
+    protected void encode(Object payload, OutputStream out) throws IOException {
+        ((MessageLite) payload).writeTo(out);
+    }
+
+    @Override
+    protected Object decode(byte[] array, int offset, int length, Class<?> type) throws IOException {
+        Parser<?> parser = parsers.get(type);
+        if (parser == null) {
+            parser = parsers.computeIfAbsent(type, QpidJMSProtobufMessageConverter::findParser);
+        }
+
+        return parser.parseFrom(array, offset, length);
+    }
+
+    private static Parser<?> findParser(Class<?> type) {
+        Method defaultInstance = MessageLite.class.isAssignableFrom(type) ?
+            ReflectionUtils.findMethod(type, "getDefaultInstance") : null;
+        if (defaultInstance == null) {
+            throw new MessageConversionException(type.getName() + " is not a Protocol Buffers message");
+        }
+
+        return ((MessageLite) ReflectionUtils.invokeMethod(defaultInstance, null)).getParserForType();
+    }
+}
@@ -0,0 +1,492 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.qpid.jms.spring.boot.autoconfigure;
+
+import java.util.UUID;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicLong;
+
+import javax.jms.CompletionListener;
+import javax.jms.Connection;
+import javax.jms.ConnectionFactory;
+import javax.jms.Destination;
+import javax.jms.ExceptionListener;
+import javax.jms.JMSException;
+import javax.jms.Message;
+import javax.jms.MessageConsumer;
+import javax.jms.MessageListener;
+import javax.jms.MessageProducer;
+import javax.jms.Session;
+import javax.jms.TemporaryQueue;
+
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.jms.support.JmsUtils;
+import org.springframework.jms.support.converter.MessageConverter;
+import org.springframework.jms.support.converter.SimpleMessageConverter;
+import org.springframework.jms.support.destination.JmsDestinationAccessor;
+import org.springframework.util.Assert;
+
+/**
+ * Template that sends requests and completes a future with the correlated reply.
+ * <p>
+ * All requests share one long lived consumer on a temporary reply queue that is
+ * created together with the template's connection.  Each request is sent with a
+ * unique correlation ID and the reply queue as its JMSReplyTo, the reply is
+ * matched to the waiting future through a concurrent map.  Requests that receive
+ * no reply within their timeout are evicted and their future completes with a
+ * {@link TimeoutException}, late replies are discarded.  When the connection
+ * fails every outstanding request fails and the next request creates a new
+ * connection and reply queue.
+ * <p>
+ * Futures are completed on the reply session's delivery thread, dependent work
+ * that may block should use the async variants of the CompletableFuture methods.
+ */
+public class QpidJMSRequestReplyTemplate extends JmsDestinationAccessor implements DisposableBean {
+
+    public static final long DEFAULT_REPLY_TIMEOUT = 30000;
+
+    private final ConcurrentMap<String, PendingRequest> pending = new ConcurrentHashMap<>();
+    private final BlockingQueue<RequestSession> idleSessions = new LinkedBlockingQueue<>();
+    private final String correlationPrefix = UUID.randomUUID().toString() + ":";
+    private final AtomicLong correlationSequence = new AtomicLong();
+    private final ScheduledThreadPoolExecutor timeouts;
+    private final Object connectionLock = new Object();
+
+    private MessageConverter messageConverter = new SimpleMessageConverter();
+    private long replyTimeout = DEFAULT_REPLY_TIMEOUT;
+
+    private ReplyEndpoint replyEndpoint;
+    private volatile boolean closed;
+
+    /**
+     * Creates a new QpidJMSRequestReplyTemplate for bean style configuration.
+     */
+    public QpidJMSRequestReplyTemplate() {
+        timeouts = new ScheduledThreadPoolExecutor(1, new ThreadFactory() {
+
+            @Override
+            public Thread newThread(Runnable runnable) {
+                Thread thread = new Thread(runnable, "QpidJMS Request Reply Timeouts");
+                thread.setDaemon(true);
+                return thread;
+            }
+        });
+        timeouts.setRemoveOnCancelPolicy(true);
+    }
+
+    /**
+     * Creates a new QpidJMSRequestReplyTemplate that uses the given ConnectionFactory.
+     *
+     * @param connectionFactory
+     *      The ConnectionFactory used to create the shared connection.
+     */
+    public QpidJMSRequestReplyTemplate(ConnectionFactory connectionFactory) {
+        this();
+        setConnectionFactory(connectionFactory);
+        afterPropertiesSet();
+    }
+
+    public MessageConverter getMessageConverter() {
+        return messageConverter;
+    }
+
+    public void setMessageConverter(MessageConverter messageConverter) {
+        Assert.notNull(messageConverter, "MessageConverter must not be null");
+        this.messageConverter = messageConverter;
+    }
+
+    public long getReplyTimeout() {
+        return replyTimeout;
+    }
+
+    /**
+     * @param replyTimeout
+     *      The time in milliseconds to wait for a reply before a request is evicted.
+     */
+    public void setReplyTimeout(long replyTimeout) {
+        Assert.isTrue(replyTimeout > 0, "Reply timeout must be greater than zero");
+        this.replyTimeout = replyTimeout;
+    }
+
+    /**
+     * @return the number of requests currently waiting for a reply.
+     */
+    public int getPendingRequestCount() {
+        return pending.size();
+    }
+
+    /**
+     * Sends the payload as a request to the named destination.
+     *
+     * @param destinationName
+     *      The name of the destination, resolved using the configured DestinationResolver.
+     * @param payload
+     *      The payload to convert and send.
+     *
+     * @return a future that completes with the reply message.
+     */
+    public CompletableFuture<Message> sendAndReceive(String destinationName, Object payload) {
+        return sendAndReceive(destinationName, payload, replyTimeout);
+    }
+
+    /**
+     * Sends the payload as a request to the named destination.
+     *
+     * @param destinationName
+     *      The name of the destination, resolved using the configured DestinationResolver.
+     * @param payload
+     *      The payload to convert and send.
+     * @param timeout
+     *      The time in milliseconds to wait for the reply.
+     *
+     * @return a future that completes with the reply message.
+     */
+    public CompletableFuture<Message> sendAndReceive(String destinationName, Object payload, long timeout) {
+        Assert.notNull(destinationName, "Destination name must not be null");
+        return doSendAndReceive(null, destinationName, payload, timeout);
+    }
+
+    /**
+     * Sends the payload as a request to the given destination.
+     *
+     * @param destination
+     *      The destination to send to.
+     * @param payload
+     *      The payload to convert and send.
+     *
+     * @return a future that completes with the reply message.
+     */
+    public CompletableFuture<Message> sendAndReceive(Destination destination, Object payload) {
+        return sendAndReceive(destination, payload, replyTimeout);
+    }
+
+    /**
+     * Sends the payload as a request to the given destination.
+     *
+     * @param destination
+     *      The destination to send to.
+     * @param payload
+     *      The payload to convert and send.
+     * @param timeout
+     *      The time in milliseconds to wait for the reply.
+     *
+     * @return a future that completes with the reply message.
+     */
+    public CompletableFuture<Message> sendAndReceive(Destination destination, Object payload, long timeout) {
+        Assert.notNull(destination, "Destination must not be null");
+        return doSendAndReceive(destination, null, payload, timeout);
+    }
+
+    /**
+     * Sends the payload as a request to the named destination and converts the reply.
+     *
+     * @param destinationName
+     *      The name of the destination, resolved using the configured DestinationResolver.
+     * @param payload
+     *      The payload to convert and send.
+     *
+     * @return a future that completes with the converted reply payload.
+     */
+    public CompletableFuture<Object> convertSendAndReceive(String destinationName, Object payload) {
+        return sendAndReceive(destinationName, payload).thenApply(this::convertReply);
+    }
+
+    /**
+     * Sends the payload as a request to the given destination and converts the reply.
+     *
+     * @param destination
+     *      The destination to send to.
+     * @param payload
+     *      The payload to convert and send.
+     *
+     * @return a future that completes with the converted reply payload.
+     */
+    public CompletableFuture<Object> convertSendAndReceive(Destination destination, Object payload) {
+        return sendAndReceive(destination, payload).thenApply(this::convertReply);
+    }
+
+    @Override
+    public void destroy() {
+        closed = true;
+
+        timeouts.shutdownNow();
+
+        RequestSession requestSession;
+        while ((requestSession = idleSessions.poll()) != null) {
+            requestSession.close();
+        }
+
+        ReplyEndpoint endpoint;
+        synchronized (connectionLock) {
+            endpoint = replyEndpoint;
+            replyEndpoint = null;
+        }
+
+        if (endpoint != null) {
+            endpoint.close();
+        }
+
+        failPending(null, new IllegalStateException("The request reply template has been closed"));
+    }
+
+    private CompletableFuture<Message> doSendAndReceive(Destination destination, String destinationName, Object payload, long timeout) {
+        Assert.isTrue(timeout > 0, "Reply timeout must be greater than zero");
+
+        final String correlationId = correlationPrefix + correlationSequence.incrementAndGet();
+        final PendingRequest request = new PendingRequest(correlationId);
+
+        RequestSession requestSession = null;
+        try {
+            final ReplyEndpoint endpoint = getReplyEndpoint();
+            request.endpoint = endpoint;
+
+            requestSession = acquireSession(endpoint);
+
+            final Session session = requestSession.session;
+            final Destination target = destination != null ? destination : resolveDestinationName(session, destinationName);
+            final Message message = messageConverter.toMessage(payload, session);
+
+            message.setJMSCorrelationID(correlationId);
+            message.setJMSReplyTo(endpoint.replyQueue);
+
+            // Registered before sending so that a fast reply always finds its request.
+            request.timeout = timeouts.schedule(request, timeout, TimeUnit.MILLISECONDS);
+            pending.put(correlationId, request);
+
+            requestSession.producer.send(target, message, request);
+        } catch (JMSException ex) {
+            if (requestSession != null) {
+                requestSession.broken = true;
+            }
+            request.fail(convertJmsAccessException(ex));
+        } catch (RuntimeException ex) {
+            request.fail(ex);
+        }
+
+        if (requestSession != null) {
+            releaseSession(requestSession);
+        }
+
+        return request.future;
+    }
+
+    private Object convertReply(Message reply) {
+        try {
+            return messageConverter.fromMessage(reply);
+        } catch (JMSException ex) {
+            throw convertJmsAccessException(ex);
+        }
+    }
+
+    private void failPending(ReplyEndpoint endpoint, Throwable cause) {
+        for (PendingRequest request : pending.values()) {
+            if (endpoint == null || request.endpoint == endpoint) {
+                request.fail(cause);
+            }
+        }
+    }
+
+    private RequestSession acquireSession(ReplyEndpoint endpoint) throws JMSException {
+        RequestSession requestSession;
+        while ((requestSession = idleSessions.poll()) != null) {
+            if (!requestSession.broken && requestSession.endpoint == endpoint) {
+                return requestSession;
+            }
+
+            requestSession.close();
+        }
+
+        Session session = endpoint.connection.createSession(false, Session.AUTO_ACKNOWLEDGE);
+        try {
+            return new RequestSession(endpoint, session, session.createProducer(null));
+        } catch (JMSException ex) {
+            JmsUtils.closeSession(session);
+            throw ex;
+        }
+    }
+
+    private void releaseSession(RequestSession requestSession) {
+        idleSessions.offer(requestSession);
+
+        if (closed && idleSessions.remove(requestSession)) {
+            requestSession.close();
+        }
+    }
+
+    private ReplyEndpoint getReplyEndpoint() throws JMSException {
+        synchronized (connectionLock) {
+            Assert.state(!closed, "The request reply template has been closed");
+
+            if (replyEndpoint == null) {
+                replyEndpoint = createReplyEndpoint();
+            }
+
+            return replyEndpoint;
+        }
+    }
+
+    private ReplyEndpoint createReplyEndpoint() throws JMSException {
+        final Connection connection = createConnection();
+        try {
+            final ReplyEndpoint endpoint = new ReplyEndpoint(connection);
+
+            connection.setExceptionListener(new ExceptionListener() {
+
+                @Override
+                public void onException(JMSException exception) {
+                    resetReplyEndpoint(endpoint, convertJmsAccessException(exception));
+                }
+            });
+
+            endpoint.session = connection.createSession(false, Session.AUTO_ACKNOWLEDGE);
+            endpoint.replyQueue = endpoint.session.createTemporaryQueue();
+            endpoint.consumer = endpoint.session.createConsumer(endpoint.replyQueue);
+            endpoint.consumer.setMessageListener(endpoint);
+
+            connection.start();
+
+            return endpoint;
+        } catch (JMSException | RuntimeException ex) {
+            JmsUtils.closeConnection(connection);
+            throw ex;
+        }
+    }
+
+    private void resetReplyEndpoint(ReplyEndpoint failed, Throwable cause) {
+        synchronized (connectionLock) {
+            if (replyEndpoint != failed) {
+                return;
+            }
+
+            replyEndpoint = null;
+        }
+
+        failPending(failed, cause);
+        failed.close();
+    }
+
+    private final class ReplyEndpoint implements MessageListener {
+
+        private final Connection connection;
+
+        private Session session;
+        private TemporaryQueue replyQueue;
+        private MessageConsumer consumer;
+
+        ReplyEndpoint(Connection connection) {
+            this.connection = connection;
+        }
+
+        @Override
+        public void onMessage(Message reply) {
+            final String correlationId;
+            try {
+                correlationId = reply.getJMSCorrelationID();
+            } catch (JMSException ex) {
+                logger.debug("Discarding reply without a readable correlation ID", ex);
+                return;
+            }
+
+            PendingRequest request = correlationId != null ? pending.get(correlationId) : null;
+            if (request != null) {
+                request.complete(reply);
+            } else if (logger.isDebugEnabled()) {
+                logger.debug("Discarding reply with unknown or expired correlation ID: " + correlationId);
+            }
+        }
+
+        void close() {
+            // The temporary queue is deleted by the remote when the connection closes.
+            JmsUtils.closeConnection(connection);
+        }
+    }
+
+    private static final class RequestSession {
+
+        private final ReplyEndpoint endpoint;
+        private final Session session;
+        private final MessageProducer producer;
+
+        private volatile boolean broken;
+
+        RequestSession(ReplyEndpoint endpoint, Session session, MessageProducer producer) {
+            this.endpoint = endpoint;
+            this.session = session;
+            this.producer = producer;
+        }
+
+        void close() {
+            JmsUtils.closeMessageProducer(producer);
+            JmsUtils.closeSession(session);
+        }
+    }
+
+    private final class PendingRequest implements CompletionListener, Runnable {
+
+        private final CompletableFuture<Message> future = new CompletableFuture<>();
+        private final String correlationId;
+
+        private volatile ReplyEndpoint endpoint;
+        private volatile ScheduledFuture<?> timeout;
+
+        PendingRequest(String correlationId) {
+            this.correlationId = correlationId;
+        }
+
+        void complete(Message reply) {
+            evict();
+            future.complete(reply);
+        }
+
+        void fail(Throwable cause) {
+            evict();
+            future.completeExceptionally(cause);
+        }
+
+        @Override
+        public void run() {
+            fail(new TimeoutException("No reply received for request " + correlationId + " within the timeout"));
+        }
+
+        @Override
+        public void onCompletion(Message message) {
+        }
+
+        @Override
+        public void onException(Message message, Exception exception) {
+            fail(exception instanceof JMSException ? convertJmsAccessException((JMSException) exception) : exception);
+        }
+
+        private void evict() {
+            pending.remove(correlationId, this);
+
+            ScheduledFuture<?> scheduled = timeout;
+            if (scheduled != null) {
+                scheduled.cancel(false);
+            }
+        }
+    }
+}
@@ -0,0 +1,52 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.qpid.jms.spring.boot.autoconfigure;
+
+import javax.jms.ConnectionFactory;
+
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnClass;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnMissingBean;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.jms.core.JmsTemplate;
+import org.springframework.jms.support.converter.MessageConverter;
+
+/**
+ * Class that is responsible for creating the QpidJMSRequestReplyTemplate that sends
+ * requests and correlates their replies using the configured ConnectionFactory.
+ */
+@Configuration
+@ConditionalOnClass(JmsTemplate.class)
+public class QpidJMSRequestReplyTemplateConfiguration {
+
+    @Bean
+    @ConditionalOnMissingBean
+    public QpidJMSRequestReplyTemplate qpidJMSRequestReplyTemplate(ConnectionFactory connectionFactory, QpidJMSProperties properties,
+                                                                   ObjectProvider<MessageConverter> messageConverter) {
+        QpidJMSRequestReplyTemplate requestReplyTemplate = new QpidJMSRequestReplyTemplate(connectionFactory);
+
+        requestReplyTemplate.setReplyTimeout(properties.getRequestReply().getReplyTimeout());
+
+        MessageConverter converter = messageConverter.getIfUnique();
+        if (converter != null) {
+            requestReplyTemplate.setMessageConverter(converter);
+        }
+
+        return requestReplyTemplate;
+    }
+}
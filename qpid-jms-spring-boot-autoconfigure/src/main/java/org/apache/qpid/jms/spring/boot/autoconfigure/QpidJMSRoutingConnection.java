@@ -0,0 +1,338 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.qpid.jms.spring.boot.autoconfigure;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+import javax.jms.Connection;
+import javax.jms.ConnectionConsumer;
+import javax.jms.ConnectionMetaData;
+import javax.jms.Destination;
+import javax.jms.ExceptionListener;
+import javax.jms.IllegalStateException;
+import javax.jms.JMSException;
+import javax.jms.ServerSessionPool;
+import javax.jms.Session;
+import javax.jms.Topic;
+
+import org.apache.qpid.jms.spring.boot.autoconfigure.QpidJMSRoutingConnectionFactory.BrokerNode;
+
+/**
+ * Connection created by the {@link QpidJMSRoutingConnectionFactory} that holds
+ * at most one connection per broker, each opened when first routed to.
+ */
+class QpidJMSRoutingConnection implements Connection {
+
+    private final QpidJMSRoutingConnectionFactory factory;
+    private final String username;
+    private final String password;
+    private final Connection[] connections;
+    private final List<Connection> failedConnections = new ArrayList<>();
+    private final ConcurrentMap<Destination, BrokerNode> temporaryDestinations = new ConcurrentHashMap<>();
+    private final List<QpidJMSRoutingSession> sessions = new CopyOnWriteArrayList<>();
+    private final Object lock = new Object();
+
+    private String clientID;
+    private boolean started;
+    private volatile boolean closed;
+    private volatile ExceptionListener exceptionListener;
+
+    QpidJMSRoutingConnection(QpidJMSRoutingConnectionFactory factory, String username, String password) {
+        this.factory = factory;
+        this.username = username;
+        this.password = password;
+        this.connections = new Connection[factory.getNodes().size()];
+    }
+
+    @Override
+    public Session createSession(boolean transacted, int acknowledgeMode) throws JMSException {
+        checkClosed();
+
+        QpidJMSRoutingSession session = new QpidJMSRoutingSession(this, transacted, transacted ? Session.SESSION_TRANSACTED : acknowledgeMode);
+        sessions.add(session);
+        return session;
+    }
+
+    @Override
+    public Session createSession(int sessionMode) throws JMSException {
+        return createSession(sessionMode == Session.SESSION_TRANSACTED, sessionMode);
+    }
+
+    @Override
+    public Session createSession() throws JMSException {
+        return createSession(false, Session.AUTO_ACKNOWLEDGE);
+    }
+
+    @Override
+    public String getClientID() throws JMSException {
+        checkClosed();
+        synchronized (lock) {
+            return clientID;
+        }
+    }
+
+    @Override
+    public void setClientID(String clientID) throws JMSException {
+        checkClosed();
+        synchronized (lock) {
+            for (Connection connection : connections) {
+                if (connection != null) {
+                    throw new IllegalStateException("Cannot set the client ID once the connection is in use");
+                }
+            }
+
+            this.clientID = clientID;
+        }
+    }
+
+    @Override
+    public ConnectionMetaData getMetaData() throws JMSException {
+        return getConnection(factory.selectInRotation()).getMetaData();
+    }
+
+    @Override
+    public ExceptionListener getExceptionListener() throws JMSException {
+        checkClosed();
+        return exceptionListener;
+    }
+
+    @Override
+    public void setExceptionListener(ExceptionListener listener) throws JMSException {
+        checkClosed();
+        this.exceptionListener = listener;
+    }
+
+    @Override
+    public void start() throws JMSException {
+        checkClosed();
+        synchronized (lock) {
+            started = true;
+            for (QpidJMSRoutingSession session : sessions) {
+                session.restoreDeliveryExecutor();
+            }
+            for (Connection connection : connections) {
+                if (connection != null) {
+                    connection.start();
+                }
+            }
+        }
+    }
+
+    @Override
+    public void stop() throws JMSException {
+        checkClosed();
+        synchronized (lock) {
+            started = false;
+            for (Connection connection : connections) {
+                if (connection != null) {
+                    connection.stop();
+                }
+            }
+        }
+    }
+
+    @Override
+    public void close() throws JMSException {
+        JMSException failure = null;
+
+        synchronized (lock) {
+            if (closed) {
+                return;
+            }
+
+            closed = true;
+
+            for (int i = 0; i < connections.length; ++i) {
+                if (connections[i] != null) {
+                    try {
+                        connections[i].close();
+                    } catch (JMSException ex) {
+                        failure = failure != null ? failure : ex;
+                    }
+                    connections[i] = null;
+                }
+            }
+
+            for (Connection connection : failedConnections) {
+                closeQuietly(connection);
+            }
+
+            failedConnections.clear();
+        }
+
+        temporaryDestinations.clear();
+        sessions.clear();
+
+        if (failure != null) {
+            throw failure;
+        }
+    }
+
+    @Override
+    public ConnectionConsumer createConnectionConsumer(Destination destination, String messageSelector,
+                                                       ServerSessionPool sessionPool, int maxMessages) throws JMSException {
+        throw unsupportedConnectionConsumer();
+    }
+
+    @Override
+    public ConnectionConsumer createSharedConnectionConsumer(Topic topic, String subscriptionName, String messageSelector,
+                                                             ServerSessionPool sessionPool, int maxMessages) throws JMSException {
+        throw unsupportedConnectionConsumer();
+    }
+
+    @Override
+    public ConnectionConsumer createDurableConnectionConsumer(Topic topic, String subscriptionName, String messageSelector,
+                                                              ServerSessionPool sessionPool, int maxMessages) throws JMSException {
+        throw unsupportedConnectionConsumer();
+    }
+
+    @Override
+    public ConnectionConsumer createSharedDurableConnectionConsumer(Topic topic, String subscriptionName, String messageSelector,
+                                                                    ServerSessionPool sessionPool, int maxMessages) throws JMSException {
+        throw unsupportedConnectionConsumer();
+    }
+
+    //----- Routing ----------------------------------------------------------//
+
+    QpidJMSRoutingConnectionFactory getFactory() {
+        return factory;
+    }
+
+    List<BrokerNode> getNodes() {
+        return factory.getNodes();
+    }
+
+    /**
+     * Returns the open connection to the given broker, connecting first if needed.
+     * A broker that cannot be connected to is taken out of rotation.
+     */
+    Connection getConnection(BrokerNode node) throws JMSException {
+        synchronized (lock) {
+            checkClosed();
+
+            Connection connection = connections[node.getIndex()];
+            if (connection != null) {
+                return connection;
+            }
+
+            try {
+                connection = username != null ?
+                    node.getConnectionFactory().createConnection(username, password) :
+                    node.getConnectionFactory().createConnection();
+            } catch (JMSException ex) {
+                factory.nodeFailed(node, ex);
+                throw ex;
+            }
+
+            try {
+                if (clientID != null) {
+                    connection.setClientID(clientID);
+                }
+
+                final Connection created = connection;
+                connection.setExceptionListener(new ExceptionListener() {
+
+                    @Override
+                    public void onException(JMSException exception) {
+                        connectionFailed(node, created, exception);
+                    }
+                });
+
+                if (started) {
+                    connection.start();
+                }
+            } catch (JMSException ex) {
+                factory.nodeFailed(node, ex);
+                closeQuietly(connection);
+                throw ex;
+            }
+
+            connections[node.getIndex()] = connection;
+
+            return connection;
+        }
+    }
+
+    BrokerNode routeSend(Destination destination) {
+        BrokerNode node = temporaryDestinations.get(destination);
+        return node != null ? node : factory.selectForSend(destination);
+    }
+
+    BrokerNode routeConsumer(Destination destination) {
+        BrokerNode node = temporaryDestinations.get(destination);
+        return node != null ? node : factory.selectForConsumer(destination);
+    }
+
+    boolean isSpreadAcrossBrokers(Destination destination) {
+        return !temporaryDestinations.containsKey(destination) && factory.isSpreadAcrossBrokers(destination);
+    }
+
+    BrokerNode routeSubscription(Destination destination) {
+        return factory.selectByHash(destination);
+    }
+
+    void temporaryDestinationCreated(Destination destination, BrokerNode node) {
+        temporaryDestinations.put(destination, node);
+    }
+
+    void sessionClosed(QpidJMSRoutingSession session) {
+        sessions.remove(session);
+    }
+
+    boolean isClosed() {
+        return closed;
+    }
+
+    private void connectionFailed(BrokerNode node, Connection failed, JMSException exception) {
+        factory.nodeFailed(node, exception);
+
+        synchronized (lock) {
+            if (connections[node.getIndex()] == failed) {
+                // The next use of this broker reconnects, the failed connection is
+                // not closed from the client thread that reported the failure.
+                connections[node.getIndex()] = null;
+                failedConnections.add(failed);
+            }
+        }
+
+        ExceptionListener listener = exceptionListener;
+        if (listener != null) {
+            listener.onException(exception);
+        }
+    }
+
+    private void checkClosed() throws IllegalStateException {
+        if (closed) {
+            throw new IllegalStateException("The Connection is closed");
+        }
+    }
+
+    private static void closeQuietly(Connection connection) {
+        try {
+            connection.close();
+        } catch (JMSException ignored) {
+        }
+    }
+
+    private static JMSException unsupportedConnectionConsumer() {
+        return new JMSException("Connection consumers are not supported by the routing ConnectionFactory");
+    }
+}
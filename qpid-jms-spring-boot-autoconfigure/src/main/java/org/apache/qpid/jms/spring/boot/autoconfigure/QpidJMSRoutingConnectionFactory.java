@@ -0,0 +1,351 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.qpid.jms.spring.boot.autoconfigure;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import javax.jms.Connection;
+import javax.jms.ConnectionFactory;
+import javax.jms.Destination;
+import javax.jms.IllegalStateRuntimeException;
+import javax.jms.JMSContext;
+import javax.jms.JMSException;
+
+import org.apache.qpid.jms.JmsDestination;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.util.Assert;
+
+/**
+ * ConnectionFactory that spreads producers and consumers over several brokers.
+ * <p>
+ * Each broker has its own ConnectionFactory, the connections created by this
+ * factory open a connection to a broker the first time something is routed to
+ * it.  Every send made by a producer is routed on its own so that sends spread
+ * across the brokers.  With the destination hash strategy all sends and consumers
+ * for a destination use the same broker.  The other strategies give no ordering
+ * guarantee across sends and attach each consumer to every broker in rotation,
+ * so that every message sent has a consumer however few consumers there are.
+ * Durable and shared subscriptions are always placed by destination hash so
+ * that they are found again by later consumers, temporary destinations live on
+ * the broker of the connection that created them.
+ * <p>
+ * A broker whose connection fails, or that cannot be connected to, is taken out
+ * of rotation for the configured retry interval.  When every broker is out of
+ * rotation they are all tried again.
+ * <p>
+ * Transactions are not atomic across brokers.  Transacted sessions commit each
+ * broker's session in turn, when one fails the brokers that have not committed
+ * yet are rolled back and a TransactionRolledBackException is thrown, while the
+ * brokers that committed before it stay committed.  Use the destination hash
+ * strategy to keep a transaction that uses one destination on one broker.
+ */
+public class QpidJMSRoutingConnectionFactory implements ConnectionFactory {
+
+    private static final Logger LOG = LoggerFactory.getLogger(QpidJMSRoutingConnectionFactory.class);
+
+    public static final long DEFAULT_RETRY_INTERVAL = 5000;
+
+    /**
+     * Strategy used to select the broker for a send or consumer.
+     */
+    public enum Strategy {
+
+        /**
+         * Rotate through the brokers for each send, consumers attach to every broker.
+         */
+        ROUND_ROBIN,
+
+        /**
+         * Send to the broker with the fewest sends awaiting settlement, consumers
+         * attach to every broker.
+         */
+        LEAST_OUTSTANDING,
+
+        /**
+         * Route by a hash of the destination name, a destination always uses the
+         * same broker while it is in rotation.
+         */
+        DESTINATION_HASH
+    }
+
+    private final List<BrokerNode> nodes;
+    private final AtomicInteger rotation = new AtomicInteger();
+
+    private Strategy strategy = Strategy.ROUND_ROBIN;
+    private long retryInterval = DEFAULT_RETRY_INTERVAL;
+
+    /**
+     * Creates a new routing factory over the given broker connection factories.
+     *
+     * @param connectionFactories
+     *      One ConnectionFactory per broker, in the order used for routing.
+     */
+    public QpidJMSRoutingConnectionFactory(List<? extends ConnectionFactory> connectionFactories) {
+        Assert.notEmpty(connectionFactories, "At least one broker ConnectionFactory is required");
+
+        List<BrokerNode> brokerNodes = new ArrayList<>(connectionFactories.size());
+        for (ConnectionFactory connectionFactory : connectionFactories) {
+            Assert.notNull(connectionFactory, "Broker ConnectionFactory must not be null");
+            brokerNodes.add(new BrokerNode(brokerNodes.size(), connectionFactory));
+        }
+
+        this.nodes = Collections.unmodifiableList(brokerNodes);
+    }
+
+    public Strategy getStrategy() {
+        return strategy;
+    }
+
+    public void setStrategy(Strategy strategy) {
+        Assert.notNull(strategy, "Routing strategy must not be null");
+        this.strategy = strategy;
+    }
+
+    public long getRetryInterval() {
+        return retryInterval;
+    }
+
+    /**
+     * Sets the time in milliseconds a failed broker is kept out of rotation.
+     *
+     * @param retryInterval
+     *      The retry interval, zero returns a failed broker to rotation immediately.
+     */
+    public void setRetryInterval(long retryInterval) {
+        Assert.isTrue(retryInterval >= 0, "Retry interval must not be negative");
+        this.retryInterval = retryInterval;
+    }
+
+    public List<ConnectionFactory> getConnectionFactories() {
+        List<ConnectionFactory> connectionFactories = new ArrayList<>(nodes.size());
+        for (BrokerNode node : nodes) {
+            connectionFactories.add(node.connectionFactory);
+        }
+
+        return connectionFactories;
+    }
+
+    /**
+     * @param index
+     *      The index of the broker in the configured order.
+     *
+     * @return true if the broker is currently in rotation.
+     */
+    public boolean isAvailable(int index) {
+        return nodes.get(index).isAvailable(System.nanoTime());
+    }
+
+    /**
+     * @param index
+     *      The index of the broker in the configured order.
+     *
+     * @return the number of sends to the broker that are awaiting settlement.
+     */
+    public int getOutstandingSends(int index) {
+        return nodes.get(index).outstanding.get();
+    }
+
+    @Override
+    public Connection createConnection() throws JMSException {
+        return new QpidJMSRoutingConnection(this, null, null);
+    }
+
+    @Override
+    public Connection createConnection(String username, String password) throws JMSException {
+        return new QpidJMSRoutingConnection(this, username, password);
+    }
+
+    @Override
+    public JMSContext createContext() {
+        throw unsupportedContext();
+    }
+
+    @Override
+    public JMSContext createContext(int sessionMode) {
+        throw unsupportedContext();
+    }
+
+    @Override
+    public JMSContext createContext(String userName, String password) {
+        throw unsupportedContext();
+    }
+
+    @Override
+    public JMSContext createContext(String userName, String password, int sessionMode) {
+        throw unsupportedContext();
+    }
+
+    //----- Routing ----------------------------------------------------------//
+
+    List<BrokerNode> getNodes() {
+        return nodes;
+    }
+
+    BrokerNode selectForSend(Destination destination) {
+        switch (strategy) {
+            case DESTINATION_HASH:
+                return selectByHash(destination);
+            case LEAST_OUTSTANDING:
+                return selectLeastOutstanding();
+            default:
+                return selectInRotation();
+        }
+    }
+
+    /**
+     * Returns whether the sends to the destination can reach any of the brokers,
+     * a consumer of such a destination is attached to every broker.
+     */
+    boolean isSpreadAcrossBrokers(Destination destination) {
+        return strategy != Strategy.DESTINATION_HASH ||
+               !(destination instanceof JmsDestination) || ((JmsDestination) destination).getName() == null;
+    }
+
+    /**
+     * Returns the brokers in rotation, or every broker when none of them is.
+     */
+    List<BrokerNode> selectAllForConsumer() {
+        final long now = System.nanoTime();
+
+        List<BrokerNode> selected = new ArrayList<>(nodes.size());
+        for (BrokerNode node : nodes) {
+            if (node.isAvailable(now)) {
+                selected.add(node);
+            }
+        }
+
+        return selected.isEmpty() ? nodes : selected;
+    }
+
+    BrokerNode selectForConsumer(Destination destination) {
+        if (strategy == Strategy.DESTINATION_HASH) {
+            return selectByHash(destination);
+        } else {
+            return selectInRotation();
+        }
+    }
+
+    BrokerNode selectByHash(Destination destination) {
+        String name = destination instanceof JmsDestination ? ((JmsDestination) destination).getName() : null;
+        if (name == null) {
+            return selectInRotation();
+        }
+
+        return firstAvailable((name.hashCode() & Integer.MAX_VALUE) % nodes.size());
+    }
+
+    void nodeFailed(BrokerNode node, Throwable cause) {
+        if (node.isAvailable(System.nanoTime())) {
+            LOG.warn("Broker {} taken out of rotation for {} ms: {}", node.connectionFactory, retryInterval,
+                     cause != null ? cause.getMessage() : "connection failed");
+        }
+
+        node.unavailableUntil = System.nanoTime() + retryInterval * 1000000L;
+    }
+
+    BrokerNode selectInRotation() {
+        return firstAvailable((rotation.getAndIncrement() & Integer.MAX_VALUE) % nodes.size());
+    }
+
+    /**
+     * Returns the node the next rotation would pick without advancing the rotation,
+     * used where a session is needed only to create messages so that it does not
+     * skew the spread of the sends that follow.
+     */
+    BrokerNode peekRotation() {
+        return firstAvailable((rotation.get() & Integer.MAX_VALUE) % nodes.size());
+    }
+
+    private BrokerNode selectLeastOutstanding() {
+        final long now = System.nanoTime();
+        final int start = (rotation.getAndIncrement() & Integer.MAX_VALUE) % nodes.size();
+
+        BrokerNode selected = null;
+        int least = Integer.MAX_VALUE;
+
+        // Starting from a rotating offset spreads sends evenly while the counts are equal.
+        for (int i = 0; i < nodes.size(); ++i) {
+            BrokerNode node = nodes.get((start + i) % nodes.size());
+            int outstanding = node.outstanding.get();
+            if (outstanding < least && node.isAvailable(now)) {
+                selected = node;
+                least = outstanding;
+            }
+        }
+
+        return selected != null ? selected : nodes.get(start);
+    }
+
+    private BrokerNode firstAvailable(int start) {
+        final long now = System.nanoTime();
+
+        for (int i = 0; i < nodes.size(); ++i) {
+            BrokerNode node = nodes.get((start + i) % nodes.size());
+            if (node.isAvailable(now)) {
+                return node;
+            }
+        }
+
+        // Nothing is in rotation, try the preferred broker rather than failing outright.
+        return nodes.get(start);
+    }
+
+    private static IllegalStateRuntimeException unsupportedContext() {
+        return new IllegalStateRuntimeException("JMSContext is not supported by the routing ConnectionFactory");
+    }
+
+    /**
+     * One broker and its routing state, shared by all connections of the factory.
+     */
+    static final class BrokerNode {
+
+        private final int index;
+        private final ConnectionFactory connectionFactory;
+        private final AtomicInteger outstanding = new AtomicInteger();
+
+        private volatile long unavailableUntil = Long.MIN_VALUE;
+
+        BrokerNode(int index, ConnectionFactory connectionFactory) {
+            this.index = index;
+            this.connectionFactory = connectionFactory;
+        }
+
+        int getIndex() {
+            return index;
+        }
+
+        ConnectionFactory getConnectionFactory() {
+            return connectionFactory;
+        }
+
+        boolean isAvailable(long now) {
+            return unavailableUntil == Long.MIN_VALUE || now - unavailableUntil >= 0;
+        }
+
+        void sendStarted() {
+            outstanding.incrementAndGet();
+        }
+
+        void sendSettled() {
+            outstanding.decrementAndGet();
+        }
+    }
+}
@@ -0,0 +1,188 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.qpid.jms.spring.boot.autoconfigure;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import javax.jms.IllegalStateException;
+import javax.jms.JMSException;
+import javax.jms.Message;
+import javax.jms.MessageConsumer;
+import javax.jms.MessageListener;
+
+/**
+ * Consumer of a {@link QpidJMSRoutingSession} that consumes a destination from
+ * each broker it was attached to.
+ * <p>
+ * Sends that are routed per message can reach any broker, so a consumer placed
+ * on a single broker would leave the messages sent to the others without a
+ * consumer whenever there are fewer consumers than brokers.  A MessageListener
+ * is set on every broker's consumer, the broker sessions of the routing session
+ * deliver one message at a time as a single session would.  A synchronous
+ * receive takes the messages already prefetched from any broker first and
+ * otherwise waits on each broker in turn for up to {@link #RECEIVE_POLL_INTERVAL}
+ * milliseconds.
+ */
+class QpidJMSRoutingMessageConsumer implements MessageConsumer {
+
+    static final long RECEIVE_POLL_INTERVAL = 100;
+
+    private final QpidJMSRoutingSession session;
+    private final String messageSelector;
+    private final List<MessageConsumer> consumers;
+
+    private MessageListener messageListener;
+    private int next;
+
+    private volatile boolean closed;
+
+    QpidJMSRoutingMessageConsumer(QpidJMSRoutingSession session, String messageSelector, MessageConsumer... consumers) {
+        this.session = session;
+        this.messageSelector = messageSelector;
+        this.consumers = Collections.unmodifiableList(Arrays.asList(consumers));
+    }
+
+    /**
+     * @return the consumers of this consumer, one for each broker it was attached to.
+     */
+    List<MessageConsumer> getConsumers() {
+        return consumers;
+    }
+
+    @Override
+    public String getMessageSelector() throws JMSException {
+        checkClosed();
+        return messageSelector;
+    }
+
+    @Override
+    public MessageListener getMessageListener() throws JMSException {
+        checkClosed();
+        return messageListener;
+    }
+
+    @Override
+    public void setMessageListener(MessageListener listener) throws JMSException {
+        checkClosed();
+        for (MessageConsumer consumer : consumers) {
+            consumer.setMessageListener(listener);
+        }
+
+        this.messageListener = listener;
+    }
+
+    @Override
+    public Message receive() throws JMSException {
+        return receive(0);
+    }
+
+    @Override
+    public Message receive(long timeout) throws JMSException {
+        checkCanReceive();
+
+        if (consumers.size() == 1) {
+            return consumers.get(0).receive(timeout);
+        }
+
+        final long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(timeout);
+
+        while (!closed) {
+            Message message = receiveNoWait();
+            if (message != null) {
+                return message;
+            }
+
+            long wait = RECEIVE_POLL_INTERVAL;
+            if (timeout > 0) {
+                long remaining = TimeUnit.NANOSECONDS.toMillis(deadline - System.nanoTime());
+                if (remaining <= 0) {
+                    return null;
+                }
+
+                wait = Math.min(wait, remaining);
+            }
+
+            message = nextConsumer().receive(wait);
+            if (message != null) {
+                return message;
+            }
+        }
+
+        return null;
+    }
+
+    @Override
+    public Message receiveNoWait() throws JMSException {
+        checkCanReceive();
+
+        for (int i = 0; i < consumers.size(); ++i) {
+            Message message = nextConsumer().receiveNoWait();
+            if (message != null) {
+                return message;
+            }
+        }
+
+        return null;
+    }
+
+    @Override
+    public void close() throws JMSException {
+        if (closed) {
+            return;
+        }
+
+        closed = true;
+
+        JMSException failure = null;
+        for (MessageConsumer consumer : consumers) {
+            try {
+                consumer.close();
+            } catch (JMSException ex) {
+                failure = failure != null ? failure : ex;
+            }
+        }
+
+        if (failure != null && !session.getConnection().isClosed()) {
+            throw failure;
+        }
+    }
+
+    // Starts each receive on a different broker so none of them is favoured.
+    private MessageConsumer nextConsumer() {
+        MessageConsumer consumer = consumers.get(next);
+        next = (next + 1) % consumers.size();
+        return consumer;
+    }
+
+    private void checkCanReceive() throws JMSException {
+        checkClosed();
+        if (messageListener != null) {
+            throw new IllegalStateException("Cannot synchronously receive a message when a MessageListener is set");
+        }
+    }
+
+    private void checkClosed() throws IllegalStateException {
+        if (closed) {
+            throw new IllegalStateException("The MessageConsumer is closed");
+        }
+
+        session.checkClosed();
+    }
+}
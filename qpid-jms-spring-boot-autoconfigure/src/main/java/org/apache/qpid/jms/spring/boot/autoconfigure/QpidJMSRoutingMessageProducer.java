@@ -0,0 +1,352 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.qpid.jms.spring.boot.autoconfigure;
+
+import javax.jms.CompletionListener;
+import javax.jms.DeliveryMode;
+import javax.jms.Destination;
+import javax.jms.IllegalStateException;
+import javax.jms.InvalidDestinationException;
+import javax.jms.JMSException;
+import javax.jms.Message;
+import javax.jms.MessageProducer;
+import javax.jms.Session;
+
+import org.apache.qpid.jms.spring.boot.autoconfigure.QpidJMSRoutingConnectionFactory.BrokerNode;
+
+/**
+ * Producer of a {@link QpidJMSRoutingSession} that routes every send on its own,
+ * using one producer per broker created when a send is first routed there.
+ * Sends are counted as outstanding on their broker until the send returns or,
+ * for asynchronous sends, until the completion listener is called.
+ */
+class QpidJMSRoutingMessageProducer implements MessageProducer {
+
+    private final QpidJMSRoutingSession session;
+    private final Destination destination;
+    private final Session[] producerSessions;
+    private final MessageProducer[] producers;
+
+    private boolean disableMessageID;
+    private boolean disableMessageTimestamp;
+    private int deliveryMode = Message.DEFAULT_DELIVERY_MODE;
+    private int priority = Message.DEFAULT_PRIORITY;
+    private long timeToLive = Message.DEFAULT_TIME_TO_LIVE;
+    private long deliveryDelay = Message.DEFAULT_DELIVERY_DELAY;
+
+    private volatile boolean closed;
+
+    QpidJMSRoutingMessageProducer(QpidJMSRoutingSession session, Destination destination) {
+        this.session = session;
+        this.destination = destination;
+        this.producerSessions = new Session[session.getConnection().getNodes().size()];
+        this.producers = new MessageProducer[session.getConnection().getNodes().size()];
+    }
+
+    //----- Producer settings ------------------------------------------------//
+
+    @Override
+    public void setDisableMessageID(boolean value) throws JMSException {
+        checkClosed();
+        disableMessageID = value;
+        for (MessageProducer producer : producers) {
+            if (producer != null) {
+                producer.setDisableMessageID(value);
+            }
+        }
+    }
+
+    @Override
+    public boolean getDisableMessageID() throws JMSException {
+        checkClosed();
+        return disableMessageID;
+    }
+
+    @Override
+    public void setDisableMessageTimestamp(boolean value) throws JMSException {
+        checkClosed();
+        disableMessageTimestamp = value;
+        for (MessageProducer producer : producers) {
+            if (producer != null) {
+                producer.setDisableMessageTimestamp(value);
+            }
+        }
+    }
+
+    @Override
+    public boolean getDisableMessageTimestamp() throws JMSException {
+        checkClosed();
+        return disableMessageTimestamp;
+    }
+
+    @Override
+    public void setDeliveryMode(int deliveryMode) throws JMSException {
+        checkClosed();
+        if (deliveryMode != DeliveryMode.PERSISTENT && deliveryMode != DeliveryMode.NON_PERSISTENT) {
+            throw new JMSException("Invalid delivery mode: " + deliveryMode);
+        }
+        this.deliveryMode = deliveryMode;
+    }
+
+    @Override
+    public int getDeliveryMode() throws JMSException {
+        checkClosed();
+        return deliveryMode;
+    }
+
+    @Override
+    public void setPriority(int priority) throws JMSException {
+        checkClosed();
+        if (priority < 0 || priority > 9) {
+            throw new JMSException("Priority must be between 0 and 9: " + priority);
+        }
+        this.priority = priority;
+    }
+
+    @Override
+    public int getPriority() throws JMSException {
+        checkClosed();
+        return priority;
+    }
+
+    @Override
+    public void setTimeToLive(long timeToLive) throws JMSException {
+        checkClosed();
+        this.timeToLive = timeToLive;
+    }
+
+    @Override
+    public long getTimeToLive() throws JMSException {
+        checkClosed();
+        return timeToLive;
+    }
+
+    @Override
+    public void setDeliveryDelay(long deliveryDelay) throws JMSException {
+        checkClosed();
+        this.deliveryDelay = deliveryDelay;
+        for (MessageProducer producer : producers) {
+            if (producer != null) {
+                producer.setDeliveryDelay(deliveryDelay);
+            }
+        }
+    }
+
+    @Override
+    public long getDeliveryDelay() throws JMSException {
+        checkClosed();
+        return deliveryDelay;
+    }
+
+    @Override
+    public Destination getDestination() throws JMSException {
+        checkClosed();
+        return destination;
+    }
+
+    @Override
+    public void close() throws JMSException {
+        if (closed) {
+            return;
+        }
+
+        closed = true;
+
+        for (int i = 0; i < producers.length; ++i) {
+            if (producers[i] != null) {
+                try {
+                    producers[i].close();
+                } catch (JMSException ignored) {
+                    // The broker session may already be gone along with its connection.
+                }
+                producers[i] = null;
+                producerSessions[i] = null;
+            }
+        }
+    }
+
+    //----- Sends ------------------------------------------------------------//
+
+    @Override
+    public void send(Message message) throws JMSException {
+        send(message, deliveryMode, priority, timeToLive);
+    }
+
+    @Override
+    public void send(Message message, int deliveryMode, int priority, long timeToLive) throws JMSException {
+        checkFixedDestination();
+        doSend(destination, message, deliveryMode, priority, timeToLive, null);
+    }
+
+    @Override
+    public void send(Destination destination, Message message) throws JMSException {
+        send(destination, message, deliveryMode, priority, timeToLive);
+    }
+
+    @Override
+    public void send(Destination destination, Message message, int deliveryMode, int priority, long timeToLive) throws JMSException {
+        checkAnonymous(destination);
+        doSend(destination, message, deliveryMode, priority, timeToLive, null);
+    }
+
+    @Override
+    public void send(Message message, CompletionListener completionListener) throws JMSException {
+        send(message, deliveryMode, priority, timeToLive, completionListener);
+    }
+
+    @Override
+    public void send(Message message, int deliveryMode, int priority, long timeToLive,
+                     CompletionListener completionListener) throws JMSException {
+        checkFixedDestination();
+        checkCompletionListener(completionListener);
+        doSend(destination, message, deliveryMode, priority, timeToLive, completionListener);
+    }
+
+    @Override
+    public void send(Destination destination, Message message, CompletionListener completionListener) throws JMSException {
+        send(destination, message, deliveryMode, priority, timeToLive, completionListener);
+    }
+
+    @Override
+    public void send(Destination destination, Message message, int deliveryMode, int priority, long timeToLive,
+                     CompletionListener completionListener) throws JMSException {
+        checkAnonymous(destination);
+        checkCompletionListener(completionListener);
+        doSend(destination, message, deliveryMode, priority, timeToLive, completionListener);
+    }
+
+    private void doSend(Destination target, Message message, int deliveryMode, int priority, long timeToLive,
+                        CompletionListener completionListener) throws JMSException {
+        checkClosed();
+
+        BrokerNode node = session.getConnection().routeSend(target);
+        Session current = null;
+
+        for (int attempt = 1; current == null; ++attempt) {
+            try {
+                current = session.getSession(node);
+            } catch (JMSException ex) {
+                // A broker that cannot be reached is now out of rotation, route again.
+                if (attempt >= producers.length || session.getConnection().getFactory().isAvailable(node.getIndex())) {
+                    throw ex;
+                }
+
+                node = session.getConnection().routeSend(target);
+            }
+        }
+
+        final BrokerNode routed = node;
+        final MessageProducer producer = getProducer(routed, current);
+
+        routed.sendStarted();
+
+        if (completionListener == null) {
+            try {
+                if (destination != null) {
+                    producer.send(message, deliveryMode, priority, timeToLive);
+                } else {
+                    producer.send(target, message, deliveryMode, priority, timeToLive);
+                }
+            } finally {
+                routed.sendSettled();
+            }
+        } else {
+            CompletionListener settling = new SettlingCompletionListener(routed, completionListener);
+            try {
+                if (destination != null) {
+                    producer.send(message, deliveryMode, priority, timeToLive, settling);
+                } else {
+                    producer.send(target, message, deliveryMode, priority, timeToLive, settling);
+                }
+            } catch (JMSException | RuntimeException ex) {
+                routed.sendSettled();
+                throw ex;
+            }
+        }
+    }
+
+    private MessageProducer getProducer(BrokerNode node, Session current) throws JMSException {
+        final int index = node.getIndex();
+
+        if (producers[index] == null || producerSessions[index] != current) {
+            MessageProducer producer = current.createProducer(destination);
+
+            producer.setDisableMessageID(disableMessageID);
+            producer.setDisableMessageTimestamp(disableMessageTimestamp);
+            producer.setDeliveryDelay(deliveryDelay);
+
+            producers[index] = producer;
+            producerSessions[index] = current;
+        }
+
+        return producers[index];
+    }
+
+    private void checkClosed() throws IllegalStateException {
+        if (closed) {
+            throw new IllegalStateException("The MessageProducer is closed");
+        }
+
+        session.checkClosed();
+    }
+
+    private void checkFixedDestination() throws JMSException {
+        checkClosed();
+        if (destination == null) {
+            throw new UnsupportedOperationException("Using this method is not supported on producers created without an explicit Destination");
+        }
+    }
+
+    private void checkAnonymous(Destination target) throws JMSException {
+        checkClosed();
+        if (destination != null) {
+            throw new UnsupportedOperationException("Using this method is not supported on producers created with an explicit Destination");
+        }
+        if (target == null) {
+            throw new InvalidDestinationException("Destination must not be null");
+        }
+    }
+
+    private static void checkCompletionListener(CompletionListener completionListener) {
+        if (completionListener == null) {
+            throw new IllegalArgumentException("CompletionListener must not be null");
+        }
+    }
+
+    private static final class SettlingCompletionListener implements CompletionListener {
+
+        private final BrokerNode node;
+        private final CompletionListener delegate;
+
+        SettlingCompletionListener(BrokerNode node, CompletionListener delegate) {
+            this.node = node;
+            this.delegate = delegate;
+        }
+
+        @Override
+        public void onCompletion(Message message) {
+            node.sendSettled();
+            delegate.onCompletion(message);
+        }
+
+        @Override
+        public void onException(Message message, Exception exception) {
+            node.sendSettled();
+            delegate.onException(message, exception);
+        }
+    }
+}
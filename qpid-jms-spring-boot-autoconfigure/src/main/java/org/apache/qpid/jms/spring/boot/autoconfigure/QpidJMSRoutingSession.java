@@ -0,0 +1,685 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.qpid.jms.spring.boot.autoconfigure;
+
+import java.io.Serializable;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.AbstractExecutorService;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+
+import javax.jms.BytesMessage;
+import javax.jms.Connection;
+import javax.jms.Destination;
+import javax.jms.IllegalStateException;
+import javax.jms.InvalidDestinationException;
+import javax.jms.JMSException;
+import javax.jms.MapMessage;
+import javax.jms.Message;
+import javax.jms.MessageConsumer;
+import javax.jms.MessageListener;
+import javax.jms.MessageProducer;
+import javax.jms.ObjectMessage;
+import javax.jms.Queue;
+import javax.jms.QueueBrowser;
+import javax.jms.Session;
+import javax.jms.StreamMessage;
+import javax.jms.TemporaryQueue;
+import javax.jms.TemporaryTopic;
+import javax.jms.TextMessage;
+import javax.jms.Topic;
+import javax.jms.TopicSubscriber;
+import javax.jms.TransactionRolledBackException;
+
+import org.apache.qpid.jms.JmsQueue;
+import org.apache.qpid.jms.JmsSession;
+import org.apache.qpid.jms.JmsTopic;
+import org.apache.qpid.jms.provider.ProviderConstants.ACK_TYPE;
+import org.apache.qpid.jms.spring.boot.autoconfigure.QpidJMSRoutingConnectionFactory.BrokerNode;
+import org.springframework.jms.support.JmsUtils;
+import org.springframework.util.ReflectionUtils;
+
+/**
+ * Session of a {@link QpidJMSRoutingConnection} that opens one session per broker
+ * as producers and consumers are routed to it.
+ * <p>
+ * Producers route each send.  A consumer of a destination whose sends are spread
+ * across the brokers is attached to every broker in rotation, other consumers
+ * and browsers are the broker session's own objects.  A broker that is out of
+ * rotation when a consumer is created is not consumed from until the consumer is
+ * created again.  Acknowledging a message acknowledges the messages consumed
+ * from the same broker, recover, commit and rollback apply to every broker
+ * session in turn.
+ * <p>
+ * Transactions are not atomic across brokers.  A commit that fails on one broker
+ * rolls back the brokers that have not committed yet and throws a
+ * TransactionRolledBackException, but the brokers that committed before it stay
+ * committed.
+ * <p>
+ * The broker sessions share one delivery thread, so MessageListeners are called
+ * one message at a time across all brokers and a commit or acknowledgement made
+ * between two deliveries covers only messages that were fully processed.
+ */
+class QpidJMSRoutingSession implements Session {
+
+    private static final Method ACKNOWLEDGE_METHOD;
+
+    static {
+        Method method = ReflectionUtils.findMethod(JmsSession.class, "acknowledge", ACK_TYPE.class);
+        if (method != null) {
+            ReflectionUtils.makeAccessible(method);
+        }
+
+        ACKNOWLEDGE_METHOD = method;
+    }
+
+    private final QpidJMSRoutingConnection connection;
+    private final boolean transacted;
+    private final int acknowledgeMode;
+    private final Connection[] sessionConnections;
+    private final Session[] sessions;
+    private final DeliveryExecutor deliveryExecutor = new DeliveryExecutor();
+    private final Object deliveryLock = new Object();
+
+    private Thread deliveryThread;
+    private volatile boolean closed;
+
+    QpidJMSRoutingSession(QpidJMSRoutingConnection connection, boolean transacted, int acknowledgeMode) {
+        this.connection = connection;
+        this.transacted = transacted;
+        this.acknowledgeMode = acknowledgeMode;
+        this.sessionConnections = new Connection[connection.getNodes().size()];
+        this.sessions = new Session[connection.getNodes().size()];
+    }
+
+    //----- Message factory methods ------------------------------------------//
+
+    @Override
+    public BytesMessage createBytesMessage() throws JMSException {
+        return anySession().createBytesMessage();
+    }
+
+    @Override
+    public MapMessage createMapMessage() throws JMSException {
+        return anySession().createMapMessage();
+    }
+
+    @Override
+    public Message createMessage() throws JMSException {
+        return anySession().createMessage();
+    }
+
+    @Override
+    public ObjectMessage createObjectMessage() throws JMSException {
+        return anySession().createObjectMessage();
+    }
+
+    @Override
+    public ObjectMessage createObjectMessage(Serializable object) throws JMSException {
+        return anySession().createObjectMessage(object);
+    }
+
+    @Override
+    public StreamMessage createStreamMessage() throws JMSException {
+        return anySession().createStreamMessage();
+    }
+
+    @Override
+    public TextMessage createTextMessage() throws JMSException {
+        return anySession().createTextMessage();
+    }
+
+    @Override
+    public TextMessage createTextMessage(String text) throws JMSException {
+        return anySession().createTextMessage(text);
+    }
+
+    //----- Session state ----------------------------------------------------//
+
+    @Override
+    public boolean getTransacted() throws JMSException {
+        checkClosed();
+        return transacted;
+    }
+
+    @Override
+    public int getAcknowledgeMode() throws JMSException {
+        checkClosed();
+        return acknowledgeMode;
+    }
+
+    @Override
+    public void commit() throws JMSException {
+        checkClosed();
+        if (!transacted) {
+            throw new IllegalStateException("Not a transacted session");
+        }
+
+        // Each broker commits on its own, once one fails the brokers that have not
+        // committed yet are rolled back so that none is left with an open transaction.
+        JMSException failure = null;
+        int committed = 0;
+        for (Session session : sessions) {
+            if (session == null) {
+                continue;
+            }
+
+            if (failure == null) {
+                try {
+                    session.commit();
+                    committed++;
+                } catch (JMSException ex) {
+                    failure = ex;
+                }
+            } else {
+                try {
+                    session.rollback();
+                } catch (JMSException ex) {
+                    // The transaction is already reported as rolled back.
+                }
+            }
+        }
+
+        if (failure != null) {
+            TransactionRolledBackException rolledBack = new TransactionRolledBackException(
+                "Commit failed after " + committed + " broker(s) committed, the other brokers were rolled back: " + failure.getMessage());
+            rolledBack.setLinkedException(failure);
+            rolledBack.initCause(failure);
+            throw rolledBack;
+        }
+    }
+
+    @Override
+    public void rollback() throws JMSException {
+        checkClosed();
+        if (!transacted) {
+            throw new IllegalStateException("Not a transacted session");
+        }
+
+        JMSException failure = null;
+        for (Session session : sessions) {
+            if (session != null) {
+                try {
+                    session.rollback();
+                } catch (JMSException ex) {
+                    failure = failure != null ? failure : ex;
+                }
+            }
+        }
+
+        if (failure != null) {
+            throw failure;
+        }
+    }
+
+    @Override
+    public void recover() throws JMSException {
+        checkClosed();
+        if (transacted) {
+            throw new IllegalStateException("Cannot recover a transacted session");
+        }
+
+        for (Session session : sessions) {
+            if (session != null) {
+                session.recover();
+            }
+        }
+    }
+
+    @Override
+    public void close() throws JMSException {
+        if (closed) {
+            return;
+        }
+
+        closed = true;
+
+        JMSException failure = null;
+        for (int i = 0; i < sessions.length; ++i) {
+            if (sessions[i] != null) {
+                try {
+                    sessions[i].close();
+                } catch (JMSException ex) {
+                    failure = failure != null ? failure : ex;
+                }
+                sessions[i] = null;
+                sessionConnections[i] = null;
+            }
+        }
+
+        deliveryExecutor.close();
+        connection.sessionClosed(this);
+
+        if (failure != null && !connection.isClosed()) {
+            throw failure;
+        }
+    }
+
+    @Override
+    public MessageListener getMessageListener() throws JMSException {
+        checkClosed();
+        return null;
+    }
+
+    @Override
+    public void setMessageListener(MessageListener listener) throws JMSException {
+        checkClosed();
+        if (listener != null) {
+            throw new IllegalStateException("Session message listeners are not supported by the routing ConnectionFactory");
+        }
+    }
+
+    @Override
+    public void run() {
+        throw new UnsupportedOperationException("Session message listeners are not supported by the routing ConnectionFactory");
+    }
+
+    //----- Producers and consumers ------------------------------------------//
+
+    @Override
+    public MessageProducer createProducer(Destination destination) throws JMSException {
+        checkClosed();
+        return new QpidJMSRoutingMessageProducer(this, destination);
+    }
+
+    @Override
+    public MessageConsumer createConsumer(Destination destination) throws JMSException {
+        return createConsumer(destination, null, false);
+    }
+
+    @Override
+    public MessageConsumer createConsumer(Destination destination, String messageSelector) throws JMSException {
+        return createConsumer(destination, messageSelector, false);
+    }
+
+    @Override
+    public MessageConsumer createConsumer(Destination destination, String messageSelector, boolean noLocal) throws JMSException {
+        checkDestination(destination);
+
+        if (connection.isSpreadAcrossBrokers(destination)) {
+            return createSpreadConsumer(destination, messageSelector, noLocal);
+        }
+
+        JMSException failure = null;
+        for (int attempt = 0; attempt < sessions.length; ++attempt) {
+            BrokerNode node = connection.routeConsumer(destination);
+            try {
+                return getSession(node).createConsumer(destination, messageSelector, noLocal);
+            } catch (JMSException ex) {
+                failure = ex;
+                if (connection.getFactory().isAvailable(node.getIndex())) {
+                    throw ex;
+                }
+            }
+        }
+
+        throw failure;
+    }
+
+    @Override
+    public MessageConsumer createSharedConsumer(Topic topic, String sharedSubscriptionName) throws JMSException {
+        checkDestination(topic);
+        return subscriptionSession(topic).createSharedConsumer(topic, sharedSubscriptionName);
+    }
+
+    @Override
+    public MessageConsumer createSharedConsumer(Topic topic, String sharedSubscriptionName, String messageSelector) throws JMSException {
+        checkDestination(topic);
+        return subscriptionSession(topic).createSharedConsumer(topic, sharedSubscriptionName, messageSelector);
+    }
+
+    @Override
+    public TopicSubscriber createDurableSubscriber(Topic topic, String name) throws JMSException {
+        checkDestination(topic);
+        return subscriptionSession(topic).createDurableSubscriber(topic, name);
+    }
+
+    @Override
+    public TopicSubscriber createDurableSubscriber(Topic topic, String name, String messageSelector, boolean noLocal) throws JMSException {
+        checkDestination(topic);
+        return subscriptionSession(topic).createDurableSubscriber(topic, name, messageSelector, noLocal);
+    }
+
+    @Override
+    public MessageConsumer createDurableConsumer(Topic topic, String name) throws JMSException {
+        checkDestination(topic);
+        return subscriptionSession(topic).createDurableConsumer(topic, name);
+    }
+
+    @Override
+    public MessageConsumer createDurableConsumer(Topic topic, String name, String messageSelector, boolean noLocal) throws JMSException {
+        checkDestination(topic);
+        return subscriptionSession(topic).createDurableConsumer(topic, name, messageSelector, noLocal);
+    }
+
+    @Override
+    public MessageConsumer createSharedDurableConsumer(Topic topic, String name) throws JMSException {
+        checkDestination(topic);
+        return subscriptionSession(topic).createSharedDurableConsumer(topic, name);
+    }
+
+    @Override
+    public MessageConsumer createSharedDurableConsumer(Topic topic, String name, String messageSelector) throws JMSException {
+        checkDestination(topic);
+        return subscriptionSession(topic).createSharedDurableConsumer(topic, name, messageSelector);
+    }
+
+    @Override
+    public QueueBrowser createBrowser(Queue queue) throws JMSException {
+        return createBrowser(queue, null);
+    }
+
+    @Override
+    public QueueBrowser createBrowser(Queue queue, String messageSelector) throws JMSException {
+        checkDestination(queue);
+        return getSession(connection.routeConsumer(queue)).createBrowser(queue, messageSelector);
+    }
+
+    @Override
+    public void unsubscribe(String name) throws JMSException {
+        checkClosed();
+
+        // The subscription was placed by the hash of a topic that is not known
+        // here, so every broker that can be reached is asked to remove it.
+        boolean removed = false;
+        JMSException failure = null;
+
+        for (BrokerNode node : connection.getNodes()) {
+            try {
+                getSession(node).unsubscribe(name);
+                removed = true;
+            } catch (InvalidDestinationException ex) {
+                failure = failure != null ? failure : ex;
+            } catch (JMSException ex) {
+                if (connection.getFactory().isAvailable(node.getIndex())) {
+                    throw ex;
+                }
+            }
+        }
+
+        if (!removed && failure != null) {
+            throw failure;
+        }
+    }
+
+    //----- Destinations -----------------------------------------------------//
+
+    @Override
+    public Queue createQueue(String queueName) throws JMSException {
+        checkClosed();
+        return new JmsQueue(queueName);
+    }
+
+    @Override
+    public Topic createTopic(String topicName) throws JMSException {
+        checkClosed();
+        return new JmsTopic(topicName);
+    }
+
+    @Override
+    public TemporaryQueue createTemporaryQueue() throws JMSException {
+        checkClosed();
+        BrokerNode node = connection.getFactory().selectInRotation();
+        TemporaryQueue queue = getSession(node).createTemporaryQueue();
+        connection.temporaryDestinationCreated(queue, node);
+        return queue;
+    }
+
+    @Override
+    public TemporaryTopic createTemporaryTopic() throws JMSException {
+        checkClosed();
+        BrokerNode node = connection.getFactory().selectInRotation();
+        TemporaryTopic topic = getSession(node).createTemporaryTopic();
+        connection.temporaryDestinationCreated(topic, node);
+        return topic;
+    }
+
+    //----- Routing ----------------------------------------------------------//
+
+    QpidJMSRoutingConnection getConnection() {
+        return connection;
+    }
+
+    /**
+     * @return the executor that delivers the messages of every broker session of
+     *         this session, tasks run on it are serialized with those deliveries.
+     */
+    Executor getDeliveryExecutor() {
+        return deliveryExecutor;
+    }
+
+    /**
+     * Returns whether the broker sessions can be acknowledged as a whole, which
+     * uses a method of the client's session that is not public.
+     *
+     * @return true if {@link #acknowledge()} is supported by the client in use.
+     */
+    static boolean isAcknowledgeSupported() {
+        return ACKNOWLEDGE_METHOD != null;
+    }
+
+    /**
+     * Acknowledges the messages delivered by every broker session, as a client
+     * acknowledgement of a single session would.
+     *
+     * @throws JMSException if a broker session fails to acknowledge its messages,
+     *      or the client in use does not support acknowledging them as a whole.
+     */
+    void acknowledge() throws JMSException {
+        if (ACKNOWLEDGE_METHOD == null) {
+            throw new IllegalStateException("The Qpid JMS client in use cannot acknowledge the sessions of every broker");
+        }
+
+        for (Session session : sessions) {
+            if (session instanceof JmsSession) {
+                try {
+                    ACKNOWLEDGE_METHOD.invoke(session, ACK_TYPE.ACCEPTED);
+                } catch (InvocationTargetException ex) {
+                    if (ex.getTargetException() instanceof JMSException) {
+                        throw (JMSException) ex.getTargetException();
+                    }
+                    ReflectionUtils.rethrowRuntimeException(ex.getTargetException());
+                } catch (IllegalAccessException ex) {
+                    ReflectionUtils.handleReflectionException(ex);
+                }
+            }
+        }
+    }
+
+    /**
+     * Hands the shared delivery executor back to the broker sessions, which drop
+     * it whenever their connection is stopped.  Called before the connections are
+     * started again.
+     */
+    void restoreDeliveryExecutor() {
+        synchronized (deliveryLock) {
+            for (Session session : sessions) {
+                if (session != null) {
+                    QpidJMSVirtualThreadSupport.shareDeliveryExecutor(session, deliveryExecutor, deliveryThread);
+                }
+            }
+        }
+    }
+
+    /**
+     * Returns this session's session on the given broker, creating it on the
+     * broker's current connection if there is none or the broker reconnected.
+     */
+    Session getSession(BrokerNode node) throws JMSException {
+        checkClosed();
+
+        final int index = node.getIndex();
+        final Connection current = connection.getConnection(node);
+
+        if (sessions[index] == null || sessionConnections[index] != current) {
+            Session session;
+            try {
+                session = current.createSession(transacted, acknowledgeMode);
+            } catch (JMSException ex) {
+                connection.getFactory().nodeFailed(node, ex);
+                throw ex;
+            }
+
+            synchronized (deliveryLock) {
+                QpidJMSVirtualThreadSupport.shareDeliveryExecutor(session, deliveryExecutor, deliveryThread);
+                sessions[index] = session;
+            }
+            sessionConnections[index] = current;
+        }
+
+        return sessions[index];
+    }
+
+    void checkClosed() throws IllegalStateException {
+        if (closed || connection.isClosed()) {
+            throw new IllegalStateException("The Session is closed");
+        }
+    }
+
+    private Session anySession() throws JMSException {
+        checkClosed();
+
+        for (int i = 0; i < sessions.length; ++i) {
+            if (sessions[i] != null && connection.getFactory().isAvailable(i)) {
+                return sessions[i];
+            }
+        }
+
+        JMSException failure = null;
+        for (int attempt = 0; attempt < sessions.length; ++attempt) {
+            BrokerNode node = connection.getFactory().peekRotation();
+            try {
+                return getSession(node);
+            } catch (JMSException ex) {
+                failure = ex;
+                if (connection.getFactory().isAvailable(node.getIndex())) {
+                    throw ex;
+                }
+            }
+        }
+
+        throw failure;
+    }
+
+    private MessageConsumer createSpreadConsumer(Destination destination, String messageSelector, boolean noLocal) throws JMSException {
+        List<MessageConsumer> consumers = new ArrayList<>(sessions.length);
+        JMSException failure = null;
+
+        for (BrokerNode node : connection.getFactory().selectAllForConsumer()) {
+            try {
+                consumers.add(getSession(node).createConsumer(destination, messageSelector, noLocal));
+            } catch (JMSException ex) {
+                failure = failure != null ? failure : ex;
+                if (connection.getFactory().isAvailable(node.getIndex())) {
+                    for (MessageConsumer consumer : consumers) {
+                        JmsUtils.closeMessageConsumer(consumer);
+                    }
+                    throw ex;
+                }
+            }
+        }
+
+        if (consumers.isEmpty()) {
+            throw failure;
+        }
+
+        return new QpidJMSRoutingMessageConsumer(this, messageSelector, consumers.toArray(new MessageConsumer[consumers.size()]));
+    }
+
+    private void deliveryThreadStarted(Thread thread) {
+        synchronized (deliveryLock) {
+            deliveryThread = thread;
+            for (Session session : sessions) {
+                if (session != null) {
+                    QpidJMSVirtualThreadSupport.shareDeliveryExecutor(session, deliveryExecutor, thread);
+                }
+            }
+        }
+    }
+
+    private Session subscriptionSession(Topic topic) throws JMSException {
+        return getSession(connection.routeSubscription(topic));
+    }
+
+    private void checkDestination(Destination destination) throws JMSException {
+        checkClosed();
+        if (destination == null) {
+            throw new InvalidDestinationException("Destination must not be null");
+        }
+    }
+
+    /**
+     * The delivery thread shared by the broker sessions, started with the first
+     * delivery.  A broker session shuts its delivery executor down whenever it is
+     * stopped, which is ignored here, the thread ends when this session closes.
+     */
+    private final class DeliveryExecutor extends AbstractExecutorService {
+
+        private final ExecutorService executor = Executors.newSingleThreadExecutor(new ThreadFactory() {
+
+            @Override
+            public Thread newThread(Runnable runnable) {
+                Thread thread = new Thread(runnable, "QpidJMS Routing Session: delivery dispatcher");
+                thread.setDaemon(true);
+                deliveryThreadStarted(thread);
+                return thread;
+            }
+        });
+
+        @Override
+        public void execute(Runnable command) {
+            executor.execute(command);
+        }
+
+        @Override
+        public void shutdown() {
+        }
+
+        @Override
+        public List<Runnable> shutdownNow() {
+            return Collections.emptyList();
+        }
+
+        @Override
+        public boolean isShutdown() {
+            return executor.isShutdown();
+        }
+
+        @Override
+        public boolean isTerminated() {
+            return executor.isTerminated();
+        }
+
+        @Override
+        public boolean awaitTermination(long timeout, TimeUnit unit) throws InterruptedException {
+            return executor.awaitTermination(timeout, unit);
+        }
+
+        // Also replaces ExecutorService.close() on Java 19 and later, which would
+        // wait for a shutdown that is ignored above.
+        public void close() {
+            executor.shutdown();
+        }
+    }
+}
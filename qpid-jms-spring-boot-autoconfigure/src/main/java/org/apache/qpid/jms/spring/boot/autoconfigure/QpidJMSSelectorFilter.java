@@ -0,0 +1,200 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.qpid.jms.spring.boot.autoconfigure;
+
+import java.io.StringReader;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+import javax.jms.InvalidSelectorException;
+import javax.jms.JMSException;
+
+import org.apache.qpid.jms.message.JmsMessage;
+import org.apache.qpid.jms.selector.filter.BooleanExpression;
+import org.apache.qpid.jms.selector.filter.FilterException;
+import org.apache.qpid.jms.selector.filter.Filterable;
+import org.apache.qpid.jms.selector.parser.SelectorParserImpl;
+import org.springframework.util.Assert;
+
+/**
+ * Selector settings of a connection factory and the compiled selector
+ * expressions shared by the consumers of all its connections.
+ * <p>
+ * Each distinct selector is parsed once and the compiled expression is reused by
+ * every consumer that filters with it on the client, however many connections
+ * and sessions they are spread over.  The cache is bounded, once it is full it is
+ * cleared and selectors are compiled again as consumers are created.  Selectors
+ * are evaluated against the JMS headers and properties of a message, the same
+ * values a broker filters on.
+ */
+public class QpidJMSSelectorFilter {
+
+    public static final int DEFAULT_CACHE_SIZE = 1024;
+
+    /**
+     * Where the selectors of consumers are applied.
+     */
+    public enum Mode {
+
+        /**
+         * Selectors are sent to the broker and applied by the broker alone.
+         */
+        BROKER,
+
+        /**
+         * Selectors are sent to the broker, and applied by the client as well to the
+         * messages of consumers whose link the broker attached without the selector.
+         */
+        AUTO,
+
+        /**
+         * Selectors of non-durable topic subscriptions are applied by the client alone,
+         * for brokers that reject or mishandle them.  Selectors of durable subscriptions
+         * and of queues are handled as with AUTO.
+         */
+        CLIENT
+    }
+
+    private final Mode mode;
+    private final ConcurrentMap<String, BooleanExpression> cache = new ConcurrentHashMap<>();
+
+    private int maxCacheSize = DEFAULT_CACHE_SIZE;
+
+    /**
+     * Creates new selector settings.
+     *
+     * @param mode
+     *      Where the selectors of consumers are applied.
+     */
+    public QpidJMSSelectorFilter(Mode mode) {
+        Assert.notNull(mode, "Selector mode must not be null");
+        this.mode = mode;
+    }
+
+    public Mode getMode() {
+        return mode;
+    }
+
+    public int getMaxCacheSize() {
+        return maxCacheSize;
+    }
+
+    public void setMaxCacheSize(int maxCacheSize) {
+        Assert.isTrue(maxCacheSize > 0, "Selector cacheSize must be positive");
+        this.maxCacheSize = maxCacheSize;
+    }
+
+    /**
+     * Returns the compiled expression of the given selector from the cache,
+     * compiling it on first use.
+     *
+     * @param selector
+     *      The selector to compile.
+     *
+     * @return the compiled selector expression.
+     *
+     * @throws InvalidSelectorException if the selector is not a valid JMS selector.
+     */
+    public BooleanExpression compile(String selector) throws InvalidSelectorException {
+        BooleanExpression expression = cache.get(selector);
+        if (expression == null) {
+            expression = parse(selector);
+
+            // Bound the cache, selectors beyond this are simply compiled again.
+            if (cache.size() >= maxCacheSize) {
+                cache.clear();
+            }
+
+            cache.put(selector, expression);
+        }
+
+        return expression;
+    }
+
+    int getCacheSize() {
+        return cache.size();
+    }
+
+    /**
+     * Compiles the given selector without caching it.
+     *
+     * @param selector
+     *      The selector to compile.
+     *
+     * @return the compiled selector expression.
+     *
+     * @throws InvalidSelectorException if the selector is not a valid JMS selector.
+     */
+    public static BooleanExpression parse(String selector) throws InvalidSelectorException {
+        try {
+            return new SelectorParserImpl(new StringReader(selector)).JmsSelector();
+        } catch (Throwable ex) {
+            // As in the client, the generated parser reports lexical errors as an Error.
+            InvalidSelectorException invalid = new InvalidSelectorException(
+                "Invalid selector '" + selector + "': " + ex.getMessage());
+            invalid.initCause(ex);
+            throw invalid;
+        }
+    }
+
+    /**
+     * Evaluates a compiled selector against the headers and properties of a message.
+     * A selector that cannot be evaluated against the message does not match it.
+     *
+     * @param expression
+     *      The compiled selector.
+     * @param message
+     *      The message to evaluate.
+     *
+     * @return true if the message is selected.
+     */
+    public static boolean matches(BooleanExpression expression, JmsMessage message) {
+        try {
+            return expression.matches(new MessageFilterable(message));
+        } catch (FilterException ex) {
+            return false;
+        }
+    }
+
+    private static final class MessageFilterable implements Filterable {
+
+        private final JmsMessage message;
+
+        MessageFilterable(JmsMessage message) {
+            this.message = message;
+        }
+
+        @Override
+        public <T> T getBodyAs(Class<T> type) {
+            return null;
+        }
+
+        @Override
+        public Object getProperty(String name) {
+            try {
+                return message.getObjectProperty(name);
+            } catch (JMSException ex) {
+                return null;
+            }
+        }
+
+        @Override
+        public Object getLocalConnectionId() {
+            return null;
+        }
+    }
+}
@@ -0,0 +1,265 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.qpid.jms.spring.boot.autoconfigure;
+
+import java.io.IOException;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+import javax.jms.JMSException;
+
+import org.apache.qpid.jms.JmsConnection;
+import org.apache.qpid.jms.message.JmsInboundMessageDispatch;
+import org.apache.qpid.jms.meta.JmsConsumerId;
+import org.apache.qpid.jms.meta.JmsConsumerInfo;
+import org.apache.qpid.jms.meta.JmsResource;
+import org.apache.qpid.jms.provider.AsyncResult;
+import org.apache.qpid.jms.provider.NoOpAsyncResult;
+import org.apache.qpid.jms.provider.Provider;
+import org.apache.qpid.jms.provider.ProviderConstants.ACK_TYPE;
+import org.apache.qpid.jms.provider.ProviderWrapper;
+import org.apache.qpid.jms.provider.amqp.AmqpConnection;
+import org.apache.qpid.jms.provider.amqp.AmqpConsumer;
+import org.apache.qpid.jms.provider.amqp.AmqpSession;
+import org.apache.qpid.jms.provider.amqp.AmqpSupport;
+import org.apache.qpid.jms.selector.filter.BooleanExpression;
+import org.apache.qpid.proton.amqp.messaging.Source;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.util.Assert;
+
+/**
+ * Provider that applies the selectors of consumers on the client, so that the
+ * messages a broker delivers without filtering them never reach the consumer.
+ * <p>
+ * Installed by the {@link QpidJMSConnectionFactory} between each connection and
+ * its transport provider.  The Qpid JMS client sends a consumer's selector to
+ * the broker as a filter of its link but does not check that the broker applied
+ * it, a broker that ignores the filter delivers every message of the destination
+ * and each of them takes a slot of the consumer's prefetch buffer.  In the
+ * {@link QpidJMSSelectorFilter.Mode#AUTO AUTO} mode the link the broker attached
+ * is inspected, and only when it does not carry the selector filter back are the
+ * consumer's messages evaluated against the selector on the connection's I/O
+ * thread.  In the {@link QpidJMSSelectorFilter.Mode#CLIENT CLIENT} mode the
+ * selector of a non-durable topic subscription with a prefetch buffer is left off
+ * its link and always applied by the client.  The selector of a durable
+ * subscription is part of the subscription the broker keeps, so it is always
+ * sent.
+ * <p>
+ * A message that does not match is settled before it is dispatched, which gives
+ * its credit back to the link: accepted on a topic, where it only concerns this
+ * subscription, and on a queue modified as undeliverable here, so it remains
+ * available to the other consumers of the queue without being sent to this
+ * consumer again.  The number of discarded messages is kept per consumer
+ * while the consumer is open.  Whether a consumer is filtered is decided when it
+ * is created, consumers that a failover connection recreates keep that decision.
+ * Queue browsers are never filtered.
+ */
+public class QpidJMSSelectorProvider extends ProviderWrapper<Provider> {
+
+    private static final Logger LOG = LoggerFactory.getLogger(QpidJMSSelectorProvider.class);
+
+    private final QpidJMSSelectorFilter filter;
+    private final ConcurrentMap<JmsConsumerId, ConsumerSelector> selectors = new ConcurrentHashMap<>();
+
+    /**
+     * Creates a new selector provider in front of the given provider.
+     *
+     * @param next
+     *      The provider that carries the messages.
+     * @param filter
+     *      The selector settings and shared expression cache to apply.
+     */
+    public QpidJMSSelectorProvider(Provider next, QpidJMSSelectorFilter filter) {
+        super(next);
+
+        Assert.notNull(filter, "Selector filter must not be null");
+        this.filter = filter;
+    }
+
+    public QpidJMSSelectorFilter getFilter() {
+        return filter;
+    }
+
+    /**
+     * Returns the number of messages discarded by the client-side selector of the
+     * given consumer.
+     *
+     * @param consumerId
+     *      The id of the consumer.
+     *
+     * @return the number of discarded messages, -1 if the consumer is not filtered
+     *         by the client.
+     */
+    public long getDiscardedMessageCount(JmsConsumerId consumerId) {
+        ConsumerSelector selector = selectors.get(consumerId);
+        return selector != null && selector.enabled ? selector.discarded.get() : -1;
+    }
+
+    /**
+     * Returns the selector provider of the given connection.
+     *
+     * @param connection
+     *      The connection to inspect.
+     *
+     * @return the selector provider or null if the connection does not filter on the client.
+     */
+    public static QpidJMSSelectorProvider find(JmsConnection connection) {
+        Provider provider = QpidJMSConnectionDiagnostics.getProvider(connection);
+        while (provider instanceof ProviderWrapper) {
+            if (provider instanceof QpidJMSSelectorProvider) {
+                return (QpidJMSSelectorProvider) provider;
+            }
+
+            provider = ((ProviderWrapper<?>) provider).getNext();
+        }
+
+        return null;
+    }
+
+    @Override
+    public void create(JmsResource resource, AsyncResult request) throws IOException, JMSException {
+        if (!(resource instanceof JmsConsumerInfo)) {
+            super.create(resource, request);
+            return;
+        }
+
+        final JmsConsumerInfo consumerInfo = (JmsConsumerInfo) resource;
+        final String selector = consumerInfo.getSelector();
+        if (selector == null || consumerInfo.isBrowser()) {
+            super.create(resource, request);
+            return;
+        }
+
+        final ConsumerSelector consumerSelector = new ConsumerSelector(
+            filter.compile(selector), consumerInfo.getDestination().isTopic());
+        selectors.put(consumerInfo.getId(), consumerSelector);
+
+        // The provider keeps the consumer info it creates a link for, so the selector
+        // is withheld from the link only until the broker has attached it.
+        final boolean clientOnly = filter.getMode() == QpidJMSSelectorFilter.Mode.CLIENT &&
+            consumerSelector.topic && !consumerInfo.isDurable() && consumerInfo.getPrefetchSize() > 0;
+        if (clientOnly) {
+            consumerInfo.setSelector(null);
+        }
+
+        super.create(resource, new AsyncResult() {
+
+            @Override
+            public void onFailure(Throwable result) {
+                consumerInfo.setSelector(selector);
+                selectors.remove(consumerInfo.getId());
+                request.onFailure(result);
+            }
+
+            @Override
+            public void onSuccess() {
+                consumerInfo.setSelector(selector);
+                consumerSelector.enabled = clientOnly || !isFilteredByBroker(consumerInfo.getId());
+                if (consumerSelector.enabled) {
+                    LOG.debug("Consumer {} selector '{}' is applied by the client", consumerInfo.getId(), selector);
+                }
+                request.onSuccess();
+            }
+
+            @Override
+            public boolean isComplete() {
+                return request.isComplete();
+            }
+        });
+    }
+
+    @Override
+    public void destroy(JmsResource resource, AsyncResult request) throws IOException, JMSException {
+        if (resource instanceof JmsConsumerInfo) {
+            selectors.remove(((JmsConsumerInfo) resource).getId());
+        }
+
+        super.destroy(resource, request);
+    }
+
+    @Override
+    public void onResourceClosed(JmsResource resource, Throwable cause) {
+        if (resource instanceof JmsConsumerInfo) {
+            selectors.remove(((JmsConsumerInfo) resource).getId());
+        }
+
+        super.onResourceClosed(resource, cause);
+    }
+
+    @Override
+    public void onInboundMessage(JmsInboundMessageDispatch envelope) {
+        ConsumerSelector selector = selectors.get(envelope.getConsumerId());
+        if (selector != null && selector.enabled &&
+            !QpidJMSSelectorFilter.matches(selector.expression, envelope.getMessage())) {
+
+            discard(envelope, selector);
+            return;
+        }
+
+        super.onInboundMessage(envelope);
+    }
+
+    //----- Internal implementation ------------------------------------------//
+
+    private void discard(JmsInboundMessageDispatch envelope, ConsumerSelector selector) {
+        selector.discarded.incrementAndGet();
+        try {
+            next.acknowledge(envelope, selector.topic ? ACK_TYPE.ACCEPTED : ACK_TYPE.MODIFIED_FAILED_UNDELIVERABLE, NoOpAsyncResult.INSTANCE);
+        } catch (Exception ex) {
+            LOG.debug("Failed to settle message {} discarded by its selector", envelope, ex);
+        }
+    }
+
+    // Called once the link is attached, the remote source of a link does not change
+    // after that.  When the link cannot be inspected the broker is trusted to filter.
+    private boolean isFilteredByBroker(JmsConsumerId consumerId) {
+        if (filter.getMode() == QpidJMSSelectorFilter.Mode.BROKER) {
+            return true;
+        }
+
+        try {
+            AmqpConnection connection = QpidJMSConnectionDiagnostics.getAmqpConnection(next);
+            AmqpSession session = connection != null ? connection.getSession(consumerId.getParentId()) : null;
+            AmqpConsumer consumer = session != null ? session.getConsumer(consumerId) : null;
+            if (consumer == null || !(consumer.getEndpoint().getRemoteSource() instanceof Source)) {
+                return true;
+            }
+
+            Map<?, ?> filters = ((Source) consumer.getEndpoint().getRemoteSource()).getFilter();
+            return filters != null && filters.containsKey(AmqpSupport.JMS_SELECTOR_SYMBOL);
+        } catch (RuntimeException ex) {
+            return true;
+        }
+    }
+
+    private static final class ConsumerSelector {
+
+        private final BooleanExpression expression;
+        private final boolean topic;
+        private final AtomicLong discarded = new AtomicLong();
+
+        private volatile boolean enabled;
+
+        ConsumerSelector(BooleanExpression expression, boolean topic) {
+            this.expression = expression;
+            this.topic = topic;
+        }
+    }
+}
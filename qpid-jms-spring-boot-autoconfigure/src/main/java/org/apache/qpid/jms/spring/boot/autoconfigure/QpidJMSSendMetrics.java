@@ -0,0 +1,52 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.qpid.jms.spring.boot.autoconfigure;
+
+import javax.jms.Destination;
+
+/**
+ * Receives the timings of sends made by the Qpid JMS templates, and by the
+ * connections of a {@link QpidJMSConnectionFactory} for the sends made without
+ * a CompletionListener.
+ * <p>
+ * Implementations are called on the sending thread and on the client's
+ * completion threads and so must be thread safe and must not block.
+ */
+public interface QpidJMSSendMetrics {
+
+    /**
+     * Called once the send call of a send has returned.
+     *
+     * @param destination
+     *      The destination the message was sent to.
+     * @param sendNanos
+     *      The time in nanoseconds spent in the send call.
+     */
+    void sendCompleted(Destination destination, long sendNanos);
+
+    /**
+     * Called once the remote peer has settled a send or the send has failed.
+     *
+     * @param destination
+     *      The destination the message was sent to.
+     * @param settlementNanos
+     *      The time in nanoseconds from the start of the send until it was settled.
+     * @param failed
+     *      True if the send failed rather than being accepted.
+     */
+    void sendSettled(Destination destination, long settlementNanos, boolean failed);
+}
@@ -0,0 +1,100 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.qpid.jms.spring.boot.autoconfigure;
+
+import java.io.IOException;
+
+import javax.jms.Destination;
+import javax.jms.JMSException;
+
+import org.apache.qpid.jms.message.JmsOutboundMessageDispatch;
+import org.apache.qpid.jms.provider.AsyncResult;
+import org.apache.qpid.jms.provider.Provider;
+import org.apache.qpid.jms.provider.ProviderWrapper;
+import org.apache.qpid.jms.provider.WrappedAsyncResult;
+import org.springframework.util.Assert;
+
+/**
+ * Provider that times the sends of a connection that are made without a
+ * CompletionListener, such as those of a JmsTemplate.
+ * <p>
+ * Installed by the {@link QpidJMSConnectionFactory} in front of the other
+ * providers of each connection, so the time taken to compress a message is part
+ * of its send.  The send is timed until the client completes it, which for a
+ * synchronous send is when the remote peer settled it, and the time is reported
+ * to the {@link QpidJMSSendMetrics} both as the time of the send call and as the
+ * time until settlement.  Sends with a CompletionListener are left to the code
+ * that made them, the {@link QpidJMSBatchTemplate} times those itself.
+ */
+public class QpidJMSSendMetricsProvider extends ProviderWrapper<Provider> {
+
+    private final QpidJMSSendMetrics metrics;
+
+    /**
+     * Creates a new provider that times the sends made through the given provider.
+     *
+     * @param next
+     *      The provider that sends the messages.
+     * @param metrics
+     *      The metrics the send timings are reported to.
+     */
+    public QpidJMSSendMetricsProvider(Provider next, QpidJMSSendMetrics metrics) {
+        super(next);
+
+        Assert.notNull(metrics, "Send metrics must not be null");
+
+        this.metrics = metrics;
+    }
+
+    @Override
+    public void send(JmsOutboundMessageDispatch envelope, AsyncResult request) throws IOException, JMSException {
+        if (envelope.isCompletionRequired()) {
+            super.send(envelope, request);
+        } else {
+            super.send(envelope, new TimedSend(request, envelope.getDestination(), System.nanoTime()));
+        }
+    }
+
+    //----- Internal implementation ------------------------------------------//
+
+    private final class TimedSend extends WrappedAsyncResult {
+
+        private final Destination destination;
+        private final long start;
+
+        TimedSend(AsyncResult request, Destination destination, long start) {
+            super(request);
+
+            this.destination = destination;
+            this.start = start;
+        }
+
+        @Override
+        public void onSuccess() {
+            long elapsed = System.nanoTime() - start;
+            metrics.sendCompleted(destination, elapsed);
+            metrics.sendSettled(destination, elapsed, false);
+            super.onSuccess();
+        }
+
+        @Override
+        public void onFailure(Throwable result) {
+            metrics.sendSettled(destination, System.nanoTime() - start, true);
+            super.onFailure(result);
+        }
+    }
+}
@@ -0,0 +1,138 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.qpid.jms.spring.boot.autoconfigure;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.security.GeneralSecurityException;
+import java.security.KeyStore;
+
+import javax.net.ssl.KeyManager;
+import javax.net.ssl.KeyManagerFactory;
+import javax.net.ssl.SSLContext;
+import javax.net.ssl.SSLSessionContext;
+import javax.net.ssl.TrustManager;
+import javax.net.ssl.TrustManagerFactory;
+
+import org.springframework.util.Assert;
+import org.springframework.util.ResourceUtils;
+import org.springframework.util.StringUtils;
+
+/**
+ * Builds the SSLContext that all connections of a connection factory share.
+ * <p>
+ * Without a shared context the Qpid JMS client loads the key and trust stores
+ * and creates a new SSLContext for every connection, so each connection starts
+ * with an empty session cache and performs a full TLS handshake.  Connections
+ * that share one context resume the sessions it has cached for the same host and
+ * port, which keeps the handshakes of a reconnect storm after a broker restart
+ * short.  Store locations may be file paths or Spring resource URLs such as
+ * classpath: locations.
+ */
+public class QpidJMSSslContextFactory {
+
+    public static final String DEFAULT_PROTOCOL = "TLS";
+
+    private final QpidJMSProperties.Ssl ssl;
+
+    /**
+     * Creates a new SSLContext factory.
+     *
+     * @param ssl
+     *      The SSL configuration of the connection factory.
+     */
+    public QpidJMSSslContextFactory(QpidJMSProperties.Ssl ssl) {
+        Assert.notNull(ssl, "SSL properties must not be null");
+        this.ssl = ssl;
+    }
+
+    /**
+     * Creates a new SSLContext from the key and trust stores of the configuration,
+     * with its client session cache configured.
+     *
+     * @return a new initialized SSLContext.
+     *
+     * @throws IllegalArgumentException if the SSLContext cannot be created from the configuration.
+     */
+    public SSLContext createSslContext() {
+        try {
+            String protocol = StringUtils.hasText(ssl.getProtocol()) ? ssl.getProtocol() : DEFAULT_PROTOCOL;
+
+            SSLContext context;
+            if (StringUtils.hasText(ssl.getProvider())) {
+                context = SSLContext.getInstance(protocol, ssl.getProvider());
+            } else {
+                context = SSLContext.getInstance(protocol);
+            }
+
+            context.init(loadKeyManagers(), loadTrustManagers(), null);
+
+            SSLSessionContext sessions = context.getClientSessionContext();
+            if (ssl.getSessionCacheSize() != null) {
+                Assert.isTrue(ssl.getSessionCacheSize() >= 0, "SSL sessionCacheSize must not be negative");
+                sessions.setSessionCacheSize(ssl.getSessionCacheSize());
+            }
+
+            if (ssl.getSessionTimeout() != null) {
+                Assert.isTrue(ssl.getSessionTimeout() >= 0, "SSL sessionTimeout must not be negative");
+                sessions.setSessionTimeout(ssl.getSessionTimeout());
+            }
+
+            return context;
+        } catch (GeneralSecurityException | IOException ex) {
+            throw new IllegalArgumentException("Could not create the SSLContext: " + ex.getMessage(), ex);
+        }
+    }
+
+    private KeyManager[] loadKeyManagers() throws GeneralSecurityException, IOException {
+        if (!StringUtils.hasText(ssl.getKeyStoreLocation())) {
+            return null;
+        }
+
+        char[] password = ssl.getKeyStorePassword() != null ? ssl.getKeyStorePassword().toCharArray() : null;
+        KeyStore keyStore = loadStore(ssl.getKeyStoreLocation(), ssl.getKeyStoreType(), password);
+
+        KeyManagerFactory keyManagerFactory = KeyManagerFactory.getInstance(KeyManagerFactory.getDefaultAlgorithm());
+        keyManagerFactory.init(keyStore, password);
+
+        return keyManagerFactory.getKeyManagers();
+    }
+
+    // Without a trust store the JVM's default trust store is used.
+    private TrustManager[] loadTrustManagers() throws GeneralSecurityException, IOException {
+        if (!StringUtils.hasText(ssl.getTrustStoreLocation())) {
+            return null;
+        }
+
+        char[] password = ssl.getTrustStorePassword() != null ? ssl.getTrustStorePassword().toCharArray() : null;
+        KeyStore trustStore = loadStore(ssl.getTrustStoreLocation(), ssl.getTrustStoreType(), password);
+
+        TrustManagerFactory trustManagerFactory = TrustManagerFactory.getInstance(TrustManagerFactory.getDefaultAlgorithm());
+        trustManagerFactory.init(trustStore);
+
+        return trustManagerFactory.getTrustManagers();
+    }
+
+    private static KeyStore loadStore(String location, String type, char[] password) throws GeneralSecurityException, IOException {
+        KeyStore store = KeyStore.getInstance(StringUtils.hasText(type) ? type : KeyStore.getDefaultType());
+        try (InputStream stream = ResourceUtils.getURL(location).openStream()) {
+            store.load(stream, password);
+        }
+
+        return store;
+    }
+}
@@ -0,0 +1,366 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.qpid.jms.spring.boot.autoconfigure;
+
+import java.lang.reflect.Field;
+import java.lang.reflect.Method;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+
+import javax.jms.ConnectionFactory;
+import javax.jms.JMSException;
+import javax.jms.Session;
+
+import org.apache.qpid.jms.JmsConnectionFactory;
+import org.apache.qpid.jms.JmsSession;
+import org.messaginghub.pooled.jms.JmsPoolConnectionFactory;
+import org.messaginghub.pooled.jms.JmsPoolSession;
+import org.springframework.util.ClassUtils;
+import org.springframework.util.ReflectionUtils;
+
+/**
+ * Support for running Qpid JMS session delivery on virtual threads when the JVM
+ * provides them, resolved reflectively so the module still runs on Java 8.
+ * <p>
+ * The Qpid JMS session creates a single threaded executor on first use to deliver
+ * messages to its MessageListeners.  Installing an equivalent executor that is
+ * backed by a virtual thread keeps the one thread per session delivery model,
+ * and with it message ordering and acknowledgement, while a listener that blocks
+ * no longer holds on to a platform thread.
+ */
+final class QpidJMSVirtualThreadSupport {
+
+    private static final boolean POOLED_JMS_PRESENT = ClassUtils.isPresent(
+        "org.messaginghub.pooled.jms.JmsPoolSession", QpidJMSVirtualThreadSupport.class.getClassLoader());
+
+    private static final Method OF_VIRTUAL_METHOD;
+    private static final Method BUILDER_NAME_METHOD;
+    private static final Method BUILDER_FACTORY_METHOD;
+
+    private static final Field DELIVERY_EXECUTOR_FIELD;
+    private static final Field DELIVERY_THREAD_FIELD;
+
+    static {
+        Method ofVirtual = null;
+        Method name = null;
+        Method factory = null;
+
+        try {
+            Class<?> builder = ClassUtils.forName("java.lang.Thread$Builder", null);
+            ofVirtual = Thread.class.getMethod("ofVirtual");
+            name = builder.getMethod("name", String.class, long.class);
+            factory = builder.getMethod("factory");
+        } catch (ClassNotFoundException | NoSuchMethodException | LinkageError ex) {
+            ofVirtual = null;
+        }
+
+        OF_VIRTUAL_METHOD = ofVirtual;
+        BUILDER_NAME_METHOD = name;
+        BUILDER_FACTORY_METHOD = factory;
+
+        Field executor = ReflectionUtils.findField(JmsSession.class, "deliveryExecutor", ExecutorService.class);
+        Field thread = ReflectionUtils.findField(JmsSession.class, "deliveryThread", Thread.class);
+        if (executor != null && thread != null) {
+            ReflectionUtils.makeAccessible(executor);
+            ReflectionUtils.makeAccessible(thread);
+        } else {
+            executor = null;
+            thread = null;
+        }
+
+        DELIVERY_EXECUTOR_FIELD = executor;
+        DELIVERY_THREAD_FIELD = thread;
+    }
+
+    private QpidJMSVirtualThreadSupport() {
+    }
+
+    /**
+     * @return true if the JVM supports virtual threads and the session delivery
+     *         executor of the Qpid JMS client can be replaced.
+     */
+    static boolean isAvailable() {
+        return isSupportedByJvm() && isSupportedByClient();
+    }
+
+    /**
+     * @return true if the JVM provides virtual threads.
+     */
+    static boolean isSupportedByJvm() {
+        return OF_VIRTUAL_METHOD != null;
+    }
+
+    /**
+     * @return true if the sessions of the Qpid JMS client in use have the delivery
+     *         executor and thread fields that are replaced, as those of 0.23.0 do.
+     */
+    static boolean isSupportedByClient() {
+        return DELIVERY_EXECUTOR_FIELD != null;
+    }
+
+    /**
+     * Returns whether {@link #installDeliveryExecutor(Session, ThreadFactory)} can
+     * install an executor on the sessions of the given connection factory.
+     *
+     * @param connectionFactory
+     *      The factory to check, may be a pooled connection factory.
+     *
+     * @return true if the factory creates Qpid JMS sessions of a single broker.
+     */
+    static boolean canInstallDeliveryExecutor(Object connectionFactory) {
+        if (connectionFactory instanceof JmsConnectionFactory) {
+            return isSupportedByClient();
+        }
+
+        if (POOLED_JMS_PRESENT) {
+            Object delegate = PooledUnwrapper.unwrap(connectionFactory);
+            return delegate != null && delegate != connectionFactory && canInstallDeliveryExecutor(delegate);
+        }
+
+        return false;
+    }
+
+    /**
+     * Creates a factory for virtual threads named with the given prefix followed by
+     * a sequence number.
+     *
+     * @param prefix
+     *      The prefix for the thread names.
+     *
+     * @return a new virtual thread factory.
+     *
+     * @throws IllegalStateException if virtual threads are not available.
+     */
+    static ThreadFactory createThreadFactory(String prefix) {
+        if (!isAvailable()) {
+            throw new IllegalStateException("Virtual threads are not supported by this JVM");
+        }
+
+        try {
+            Object builder = OF_VIRTUAL_METHOD.invoke(null);
+            builder = BUILDER_NAME_METHOD.invoke(builder, prefix, 0L);
+            return (ThreadFactory) BUILDER_FACTORY_METHOD.invoke(builder);
+        } catch (Exception ex) {
+            throw new IllegalStateException("Failed to create a virtual thread factory", ex);
+        }
+    }
+
+    /**
+     * Installs a single threaded delivery executor using the given thread factory
+     * on the Qpid JMS session behind the given session.  This must be done before
+     * a MessageListener is set on any consumer of the session.
+     *
+     * @param session
+     *      The session that will deliver to a MessageListener, may be pooled.
+     * @param threadFactory
+     *      The factory that creates the session's delivery thread.
+     *
+     * @return true if the executor was installed, false if the session is not a
+     *         Qpid JMS session or already has a delivery executor.
+     */
+    static boolean installDeliveryExecutor(Session session, ThreadFactory threadFactory) {
+        final JmsSession qpidSession = unwrap(session);
+        if (qpidSession == null || !isAvailable()) {
+            return false;
+        }
+
+        if (ReflectionUtils.getField(DELIVERY_EXECUTOR_FIELD, qpidSession) != null) {
+            return false;
+        }
+
+        ExecutorService executor = Executors.newSingleThreadExecutor(threadFactory);
+
+        // Mirrors the session's own executor setup, the session uses the recorded
+        // thread to reject calls such as close() from within a MessageListener.
+        executor.execute(new Runnable() {
+
+            @Override
+            public void run() {
+                ReflectionUtils.setField(DELIVERY_THREAD_FIELD, qpidSession, Thread.currentThread());
+            }
+        });
+
+        ReflectionUtils.setField(DELIVERY_EXECUTOR_FIELD, qpidSession, executor);
+
+        return true;
+    }
+
+    /**
+     * Hands an executor shared with other sessions to the given Qpid JMS session as
+     * its delivery executor, so that the sessions deliver on a single thread.  The
+     * session shuts its delivery executor down and drops it when stopped, so this
+     * must be done again before the session is started after a stop.
+     *
+     * @param session
+     *      The Qpid JMS session that will deliver on the shared executor.
+     * @param executor
+     *      The shared executor, which must ignore shutdown requests.
+     * @param deliveryThread
+     *      The thread of the shared executor, or null if it has not started yet.
+     *
+     * @return true if the session delivers on the shared executor, false if it is
+     *         not a Qpid JMS session or already has its own delivery executor.
+     */
+    static boolean shareDeliveryExecutor(Session session, ExecutorService executor, Thread deliveryThread) {
+        if (!(session instanceof JmsSession) || DELIVERY_EXECUTOR_FIELD == null) {
+            return false;
+        }
+
+        Object current = ReflectionUtils.getField(DELIVERY_EXECUTOR_FIELD, session);
+        if (current != null && current != executor) {
+            return false;
+        }
+
+        if (deliveryThread != null) {
+            ReflectionUtils.setField(DELIVERY_THREAD_FIELD, session, deliveryThread);
+        }
+        ReflectionUtils.setField(DELIVERY_EXECUTOR_FIELD, session, executor);
+
+        return true;
+    }
+
+    /**
+     * Returns the executor on which the Qpid JMS session behind the given session
+     * delivers to its MessageListeners, tasks run on it are serialized with the
+     * deliveries of the session.
+     *
+     * @param session
+     *      The session whose delivery executor is returned, may be pooled or a
+     *      routing session.
+     *
+     * @return the delivery executor, or null if the session is not a Qpid JMS session
+     *         or is not currently delivering to a MessageListener.
+     */
+    static Executor getDeliveryExecutor(Session session) {
+        Session target = unwrapPooled(session);
+        if (target instanceof QpidJMSRoutingSession) {
+            return ((QpidJMSRoutingSession) target).getDeliveryExecutor();
+        }
+
+        if (!(target instanceof JmsSession) || DELIVERY_EXECUTOR_FIELD == null) {
+            return null;
+        }
+
+        return (Executor) ReflectionUtils.getField(DELIVERY_EXECUTOR_FIELD, target);
+    }
+
+    /**
+     * Returns whether the sessions of the given connection factory have a delivery
+     * executor that {@link #getDeliveryExecutor(Session)} can return.
+     *
+     * @param connectionFactory
+     *      The factory to check, may be a pooled or routing connection factory.
+     *
+     * @return true if the factory creates Qpid JMS or routing sessions.
+     */
+    static boolean hasDeliveryExecutor(Object connectionFactory) {
+        if (DELIVERY_EXECUTOR_FIELD == null) {
+            return false;
+        }
+
+        if (connectionFactory instanceof JmsConnectionFactory) {
+            return true;
+        }
+
+        // A routing session only serializes the deliveries of Qpid JMS broker sessions.
+        if (connectionFactory instanceof QpidJMSRoutingConnectionFactory) {
+            for (ConnectionFactory brokerFactory : ((QpidJMSRoutingConnectionFactory) connectionFactory).getConnectionFactories()) {
+                if (!hasDeliveryExecutor(brokerFactory)) {
+                    return false;
+                }
+            }
+
+            return true;
+        }
+
+        if (POOLED_JMS_PRESENT) {
+            Object delegate = PooledUnwrapper.unwrap(connectionFactory);
+            if (delegate != null && delegate != connectionFactory) {
+                return hasDeliveryExecutor(delegate);
+            }
+        }
+
+        return false;
+    }
+
+    /**
+     * @param connectionFactory
+     *      The factory to check, may be a pooled connection factory.
+     *
+     * @return true if the factory is, or pools, a routing connection factory.
+     */
+    static boolean isRoutingConnectionFactory(Object connectionFactory) {
+        if (connectionFactory instanceof QpidJMSRoutingConnectionFactory) {
+            return true;
+        }
+
+        if (POOLED_JMS_PRESENT) {
+            Object delegate = PooledUnwrapper.unwrap(connectionFactory);
+            return delegate != null && delegate != connectionFactory && isRoutingConnectionFactory(delegate);
+        }
+
+        return false;
+    }
+
+    private static JmsSession unwrap(Session session) {
+        Session target = unwrapPooled(session);
+        return target instanceof JmsSession ? (JmsSession) target : null;
+    }
+
+    /**
+     * @param session
+     *      The session to unwrap, may be pooled.
+     *
+     * @return the session behind the given pooled session, or the session itself.
+     */
+    static Session unwrapPooled(Session session) {
+        if (POOLED_JMS_PRESENT) {
+            Session delegate = PooledUnwrapper.unwrap(session);
+            if (delegate != null && delegate != session) {
+                return unwrapPooled(delegate);
+            }
+        }
+
+        return session;
+    }
+
+    // Kept separate so the pool classes are only loaded when they are present.
+    private static final class PooledUnwrapper {
+
+        static Session unwrap(Session session) {
+            if (session instanceof JmsPoolSession) {
+                try {
+                    return ((JmsPoolSession) session).getInternalSession();
+                } catch (JMSException ex) {
+                    return null;
+                }
+            }
+
+            return null;
+        }
+
+        static Object unwrap(Object connectionFactory) {
+            if (connectionFactory instanceof JmsPoolConnectionFactory) {
+                return ((JmsPoolConnectionFactory) connectionFactory).getConnectionFactory();
+            }
+
+            return null;
+        }
+    }
+}
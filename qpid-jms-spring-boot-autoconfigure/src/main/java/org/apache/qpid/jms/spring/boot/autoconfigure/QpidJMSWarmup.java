@@ -0,0 +1,355 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.qpid.jms.spring.boot.autoconfigure;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import javax.jms.Connection;
+import javax.jms.ConnectionFactory;
+import javax.jms.JMSException;
+import javax.jms.Session;
+
+import org.messaginghub.pooled.jms.JmsPoolConnectionFactory;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.context.SmartLifecycle;
+import org.springframework.jms.connection.SingleConnectionFactory;
+import org.springframework.jms.support.JmsUtils;
+import org.springframework.jms.support.destination.JmsDestinationAccessor;
+import org.springframework.util.Assert;
+import org.springframework.util.ClassUtils;
+
+/**
+ * Opens connections from the configured ConnectionFactory while the application
+ * context starts, so the first request does not pay the connect, SASL and link
+ * attach latency.
+ * <p>
+ * Each connection is opened on its own thread, creates a session and attaches
+ * a producer and a consumer to each of the configured destinations, and is then
+ * closed again.  When the ConnectionFactory is pooled the connections, sessions
+ * and producers are returned to the pool and are reused by the application, the
+ * pool should allow at least as many connections as are warmed.  Consumers are
+ * always closed once attached, they validate that the destinations exist and
+ * can be read before any listener container starts.  Without a pool nothing is
+ * kept for the application to reuse, the warm-up only validates that the peer
+ * accepts the connections and links, and says so in a warning on start.
+ * <p>
+ * The warm-up runs in an early lifecycle phase, before the listener containers
+ * are started, and is bounded by the timeout.  The outcome and the time taken
+ * are logged and given to any configured {@link QpidJMSWarmupMetrics}.  A warm-up
+ * that fails or times out fails the context startup only when fail fast is set.
+ */
+public class QpidJMSWarmup extends JmsDestinationAccessor implements SmartLifecycle {
+
+    public static final int DEFAULT_CONNECTIONS = 1;
+    public static final long DEFAULT_TIMEOUT = 30000;
+
+    private static final Logger LOG = LoggerFactory.getLogger(QpidJMSWarmup.class);
+
+    private static final boolean POOLED_JMS_PRESENT = ClassUtils.isPresent(
+        QpidJMSPooledConnectionFactoryConfiguration.POOL_CLASS_NAME, QpidJMSWarmup.class.getClassLoader());
+
+    private int connections = DEFAULT_CONNECTIONS;
+    private List<String> producerDestinations = Collections.emptyList();
+    private List<String> consumerDestinations = Collections.emptyList();
+    private long timeout = DEFAULT_TIMEOUT;
+    private boolean failFast;
+    private QpidJMSWarmupMetrics warmupMetrics;
+
+    private volatile boolean running;
+    private volatile int warmedConnections = -1;
+    private volatile long duration = -1;
+
+    /**
+     * Creates a new QpidJMSWarmup for bean style configuration.
+     */
+    public QpidJMSWarmup() {
+    }
+
+    /**
+     * Creates a new QpidJMSWarmup that opens connections from the given ConnectionFactory.
+     *
+     * @param connectionFactory
+     *      The ConnectionFactory whose connections are warmed.
+     */
+    public QpidJMSWarmup(ConnectionFactory connectionFactory) {
+        setConnectionFactory(connectionFactory);
+        afterPropertiesSet();
+    }
+
+    public int getConnections() {
+        return connections;
+    }
+
+    public void setConnections(int connections) {
+        Assert.isTrue(connections > 0, "Warm-up connections must be greater than zero");
+        this.connections = connections;
+    }
+
+    public List<String> getProducerDestinations() {
+        return producerDestinations;
+    }
+
+    public void setProducerDestinations(List<String> producerDestinations) {
+        Assert.notNull(producerDestinations, "Producer destinations must not be null");
+        this.producerDestinations = new ArrayList<>(producerDestinations);
+    }
+
+    public List<String> getConsumerDestinations() {
+        return consumerDestinations;
+    }
+
+    public void setConsumerDestinations(List<String> consumerDestinations) {
+        Assert.notNull(consumerDestinations, "Consumer destinations must not be null");
+        this.consumerDestinations = new ArrayList<>(consumerDestinations);
+    }
+
+    public long getTimeout() {
+        return timeout;
+    }
+
+    /**
+     * Sets the time to wait for all connections to be warmed, connections still
+     * being opened once it has passed are abandoned.
+     *
+     * @param timeout
+     *      The timeout in milliseconds.
+     */
+    public void setTimeout(long timeout) {
+        Assert.isTrue(timeout > 0, "Warm-up timeout must be greater than zero");
+        this.timeout = timeout;
+    }
+
+    public boolean isFailFast() {
+        return failFast;
+    }
+
+    public void setFailFast(boolean failFast) {
+        this.failFast = failFast;
+    }
+
+    public QpidJMSWarmupMetrics getWarmupMetrics() {
+        return warmupMetrics;
+    }
+
+    public void setWarmupMetrics(QpidJMSWarmupMetrics warmupMetrics) {
+        this.warmupMetrics = warmupMetrics;
+    }
+
+    /**
+     * @return true if the ConnectionFactory pools the connections that are warmed,
+     *         so that the application reuses them rather than opening its own.
+     */
+    public boolean isPooled() {
+        ConnectionFactory connectionFactory = getConnectionFactory();
+        return connectionFactory instanceof SingleConnectionFactory ||
+            (POOLED_JMS_PRESENT && PooledConnectionFactoryCheck.isPooled(connectionFactory));
+    }
+
+    /**
+     * @return the number of connections warmed by the last warm-up, or -1 if none has run.
+     */
+    public int getWarmedConnections() {
+        return warmedConnections;
+    }
+
+    /**
+     * @return the time in milliseconds the last warm-up took, or -1 if none has run.
+     */
+    public long getDuration() {
+        return duration;
+    }
+
+    /**
+     * Opens the configured number of connections in parallel and waits for them
+     * to be warmed or for the timeout to pass.
+     *
+     * @return the number of connections that were warmed.
+     *
+     * @throws IllegalStateException if fail fast is set and any connection could not be warmed.
+     */
+    public int warmup() {
+        final long start = System.nanoTime();
+
+        List<Callable<Void>> tasks = new ArrayList<>(connections);
+        for (int i = 0; i < connections; ++i) {
+            tasks.add(new Callable<Void>() {
+
+                @Override
+                public Void call() throws JMSException {
+                    warmConnection();
+                    return null;
+                }
+            });
+        }
+
+        ExecutorService executor = Executors.newFixedThreadPool(connections, new ThreadFactory() {
+
+            private final AtomicInteger count = new AtomicInteger();
+
+            @Override
+            public Thread newThread(Runnable runnable) {
+                Thread thread = new Thread(runnable, "QpidJMS Warmup " + count.incrementAndGet());
+                thread.setDaemon(true);
+                return thread;
+            }
+        });
+
+        int warmed = 0;
+        int timedOut = 0;
+        Throwable failure = null;
+
+        try {
+            for (Future<Void> result : executor.invokeAll(tasks, timeout, TimeUnit.MILLISECONDS)) {
+                try {
+                    result.get();
+                    warmed++;
+                } catch (CancellationException ex) {
+                    timedOut++;
+                } catch (ExecutionException ex) {
+                    if (failure == null) {
+                        failure = ex.getCause();
+                    }
+                }
+            }
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+            failure = ex;
+        } finally {
+            executor.shutdownNow();
+        }
+
+        long elapsed = System.nanoTime() - start;
+
+        this.warmedConnections = warmed;
+        this.duration = TimeUnit.NANOSECONDS.toMillis(elapsed);
+
+        if (warmupMetrics != null) {
+            warmupMetrics.warmupCompleted(connections, warmed, elapsed);
+        }
+
+        // Unpooled connections are closed again, they only show that connecting works.
+        String outcome = isPooled() ? "opened pooled" : "validated";
+
+        if (warmed == connections) {
+            LOG.info("Qpid JMS warm-up {} {} connection(s) in {} ms", outcome, warmed, duration);
+            return warmed;
+        }
+
+        String message = "Qpid JMS warm-up " + outcome + " " + warmed + " of " + connections + " connection(s) in " + duration + " ms";
+        if (timedOut > 0) {
+            message += ", " + timedOut + " did not complete within " + timeout + " ms";
+        }
+        if (failure != null) {
+            message += ", " + failure.getMessage();
+        }
+
+        if (failFast) {
+            throw new IllegalStateException(message, failure);
+        }
+
+        LOG.warn(message);
+
+        return warmed;
+    }
+
+    //----- Lifecycle --------------------------------------------------------//
+
+    @Override
+    public void start() {
+        if (!running) {
+            running = true;
+
+            if (!isPooled()) {
+                LOG.warn("Qpid JMS warm-up is enabled but the ConnectionFactory does not pool connections, " +
+                         "the warmed connections are closed again and the application opens its own on first use");
+            }
+
+            warmup();
+        }
+    }
+
+    @Override
+    public void stop() {
+        running = false;
+    }
+
+    @Override
+    public void stop(Runnable callback) {
+        stop();
+        callback.run();
+    }
+
+    @Override
+    public boolean isRunning() {
+        return running;
+    }
+
+    @Override
+    public boolean isAutoStartup() {
+        return true;
+    }
+
+    /**
+     * Runs before any other lifecycle component, in particular the listener containers.
+     */
+    @Override
+    public int getPhase() {
+        return Integer.MIN_VALUE;
+    }
+
+    //----- Internal implementation ------------------------------------------//
+
+    private void warmConnection() throws JMSException {
+        Connection connection = createConnection();
+        Session session = null;
+        try {
+            // Creating the session connects and authenticates the connection.
+            session = connection.createSession(false, Session.AUTO_ACKNOWLEDGE);
+
+            for (String destination : producerDestinations) {
+                JmsUtils.closeMessageProducer(session.createProducer(resolveDestinationName(session, destination)));
+            }
+
+            for (String destination : consumerDestinations) {
+                JmsUtils.closeMessageConsumer(session.createConsumer(resolveDestinationName(session, destination)));
+            }
+        } finally {
+            JmsUtils.closeSession(session);
+            JmsUtils.closeConnection(connection);
+        }
+    }
+
+    // Kept separate so the pool classes are only loaded when they are present.
+    private static final class PooledConnectionFactoryCheck {
+
+        static boolean isPooled(ConnectionFactory connectionFactory) {
+            return connectionFactory instanceof JmsPoolConnectionFactory;
+        }
+    }
+}
@@ -0,0 +1,67 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.qpid.jms.spring.boot.autoconfigure;
+
+import javax.jms.ConnectionFactory;
+
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnMissingBean;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.boot.autoconfigure.jms.JmsProperties;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.jms.support.destination.DestinationResolver;
+
+/**
+ * Class that is responsible for creating the QpidJMSWarmup that opens connections
+ * from the configured ConnectionFactory while the application context starts.
+ */
+@Configuration
+@ConditionalOnProperty(prefix = "spring.qpidjms.warmup", name = "enabled", havingValue = "true")
+public class QpidJMSWarmupConfiguration {
+
+    @Bean
+    @ConditionalOnMissingBean
+    public QpidJMSWarmup qpidJMSWarmup(ConnectionFactory connectionFactory, QpidJMSProperties properties,
+                                       ObjectProvider<DestinationResolver> destinationResolver,
+                                       ObjectProvider<JmsProperties> jmsProperties,
+                                       ObjectProvider<QpidJMSWarmupMetrics> warmupMetrics) {
+        QpidJMSWarmup warmup = new QpidJMSWarmup(connectionFactory);
+
+        QpidJMSProperties.Warmup options = properties.getWarmup();
+
+        warmup.setConnections(options.getConnections());
+        warmup.setProducerDestinations(options.getProducerDestinations());
+        warmup.setConsumerDestinations(options.getConsumerDestinations());
+        warmup.setTimeout(options.getTimeout());
+        warmup.setFailFast(options.isFailFast());
+
+        DestinationResolver resolver = destinationResolver.getIfUnique();
+        if (resolver != null) {
+            warmup.setDestinationResolver(resolver);
+        }
+
+        JmsProperties jms = jmsProperties.getIfAvailable();
+        if (jms != null) {
+            warmup.setPubSubDomain(jms.isPubSubDomain());
+        }
+
+        warmup.setWarmupMetrics(warmupMetrics.getIfUnique());
+
+        return warmup;
+    }
+}
@@ -0,0 +1,37 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.qpid.jms.spring.boot.autoconfigure;
+
+/**
+ * Receives the outcome of the connection warm-up made during context startup.
+ * <p>
+ * Implementations are called once from the thread that starts the context.
+ */
+public interface QpidJMSWarmupMetrics {
+
+    /**
+     * Called once the warm-up has finished, failed or timed out.
+     *
+     * @param connections
+     *      The number of connections the warm-up was asked to open.
+     * @param warmed
+     *      The number of connections that were opened and had every link attached.
+     * @param durationNanos
+     *      The time in nanoseconds the warm-up took.
+     */
+    void warmupCompleted(int connections, int warmed, long durationNanos);
+}
@@ -0,0 +1,169 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.qpid.jms.spring.boot.autoconfigure;
+
+import java.io.InputStream;
+import java.security.KeyStore;
+import java.util.concurrent.atomic.AtomicLong;
+
+import javax.net.ssl.KeyManagerFactory;
+
+import org.apache.activemq.broker.Broker;
+import org.apache.activemq.broker.BrokerFilter;
+import org.apache.activemq.broker.BrokerPlugin;
+import org.apache.activemq.broker.BrokerService;
+import org.apache.activemq.broker.ConnectionContext;
+import org.apache.activemq.broker.SslContext;
+import org.apache.activemq.broker.TransportConnector;
+import org.apache.activemq.broker.region.Destination;
+import org.apache.activemq.command.ActiveMQQueue;
+import org.apache.activemq.command.ConnectionInfo;
+import org.apache.activemq.command.ProducerInfo;
+import org.apache.activemq.command.SessionInfo;
+
+/**
+ * In-process AMQP broker used by tests that need a real remote peer.
+ */
+public class AmqpTestBroker {
+
+    public static final String BROKER_KEYSTORE = "broker.jks";
+    public static final String CLIENT_TRUSTSTORE = "client-truststore.jks";
+    public static final String STORE_PASSWORD = "password";
+
+    private final String brokerName;
+    private final String connectorScheme;
+    private final AtomicLong connectionsOpened = new AtomicLong();
+    private final AtomicLong sessionsOpened = new AtomicLong();
+    private final AtomicLong producersOpened = new AtomicLong();
+
+    private BrokerService brokerService;
+    private TransportConnector connector;
+
+    public AmqpTestBroker() {
+        this("qpid-jms-spring-boot-test");
+    }
+
+    public AmqpTestBroker(String brokerName) {
+        this(brokerName, "amqp");
+    }
+
+    public AmqpTestBroker(String brokerName, String connectorScheme) {
+        this.brokerName = brokerName;
+        this.connectorScheme = connectorScheme;
+    }
+
+    public void start() throws Exception {
+        brokerService = new BrokerService();
+        brokerService.setBrokerName(brokerName);
+        brokerService.setPersistent(false);
+        brokerService.setUseJmx(false);
+        brokerService.setAdvisorySupport(false);
+        brokerService.setSchedulerSupport(false);
+        brokerService.setPlugins(new BrokerPlugin[] { new CountingPlugin() });
+
+        if (isSsl()) {
+            brokerService.setSslContext(createSslContext());
+        }
+
+        connector = brokerService.addConnector(connectorScheme + "://localhost:0");
+
+        brokerService.start();
+        brokerService.waitUntilStarted();
+    }
+
+    public void stop() throws Exception {
+        if (brokerService != null) {
+            brokerService.stop();
+            brokerService.waitUntilStopped();
+            brokerService = null;
+        }
+    }
+
+    public BrokerService getBrokerService() {
+        return brokerService;
+    }
+
+    public String getConnectionURI() throws Exception {
+        return (isSsl() ? "amqps" : "amqp") + "://localhost:" + connector.getConnectUri().getPort();
+    }
+
+    public long getQueueSize(String queueName) throws Exception {
+        Destination destination = brokerService.getRegionBroker().getDestinationMap().get(new ActiveMQQueue(queueName));
+        return destination != null ? destination.getDestinationStatistics().getMessages().getCount() : 0;
+    }
+
+    public int getQueueConsumerCount(String queueName) throws Exception {
+        Destination destination = brokerService.getRegionBroker().getDestinationMap().get(new ActiveMQQueue(queueName));
+        return destination != null ? destination.getConsumers().size() : 0;
+    }
+
+    public long getConnectionsOpened() {
+        return connectionsOpened.get();
+    }
+
+    public long getSessionsOpened() {
+        return sessionsOpened.get();
+    }
+
+    public long getProducersOpened() {
+        return producersOpened.get();
+    }
+
+    private boolean isSsl() {
+        return connectorScheme.endsWith("+ssl");
+    }
+
+    // The broker's certificate is issued to localhost and is in the client trust store.
+    private static SslContext createSslContext() throws Exception {
+        KeyStore keyStore = KeyStore.getInstance("JKS");
+        try (InputStream stream = AmqpTestBroker.class.getResourceAsStream("/" + BROKER_KEYSTORE)) {
+            keyStore.load(stream, STORE_PASSWORD.toCharArray());
+        }
+
+        KeyManagerFactory keyManagerFactory = KeyManagerFactory.getInstance(KeyManagerFactory.getDefaultAlgorithm());
+        keyManagerFactory.init(keyStore, STORE_PASSWORD.toCharArray());
+
+        return new SslContext(keyManagerFactory.getKeyManagers(), null, null);
+    }
+
+    private class CountingPlugin implements BrokerPlugin {
+
+        @Override
+        public Broker installPlugin(Broker broker) throws Exception {
+            return new BrokerFilter(broker) {
+
+                @Override
+                public void addConnection(ConnectionContext context, ConnectionInfo info) throws Exception {
+                    connectionsOpened.incrementAndGet();
+                    super.addConnection(context, info);
+                }
+
+                @Override
+                public void addSession(ConnectionContext context, SessionInfo info) throws Exception {
+                    sessionsOpened.incrementAndGet();
+                    super.addSession(context, info);
+                }
+
+                @Override
+                public void addProducer(ConnectionContext context, ProducerInfo info) throws Exception {
+                    producersOpened.incrementAndGet();
+                    super.addProducer(context, info);
+                }
+            };
+        }
+    }
+}
@@ -0,0 +1,267 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.qpid.jms.spring.boot.autoconfigure;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.net.ServerSocket;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import javax.jms.Connection;
+import javax.jms.ConnectionFactory;
+import javax.jms.MessageConsumer;
+import javax.jms.MessageProducer;
+import javax.jms.Queue;
+import javax.jms.Session;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.springframework.boot.actuate.autoconfigure.HealthIndicatorAutoConfiguration;
+import org.springframework.boot.actuate.health.Health;
+import org.springframework.boot.actuate.health.HealthAggregator;
+import org.springframework.boot.actuate.health.HealthIndicator;
+import org.springframework.boot.actuate.health.OrderedHealthAggregator;
+import org.springframework.boot.actuate.health.Status;
+import org.springframework.boot.autoconfigure.jms.JmsAutoConfiguration;
+import org.springframework.boot.test.util.EnvironmentTestUtils;
+import org.springframework.context.annotation.AnnotationConfigApplicationContext;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.context.annotation.Import;
+
+/**
+ * Test for the Qpid JMS health indicator and diagnostics endpoint.
+ */
+public class QpidJMSActuatorTest {
+
+    private final AmqpTestBroker broker = new AmqpTestBroker();
+
+    private AnnotationConfigApplicationContext context;
+
+    @Before
+    public void setUp() throws Exception {
+        broker.start();
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        if (this.context != null) {
+            this.context.close();
+        }
+
+        broker.stop();
+    }
+
+    @Test(timeout = 60000)
+    public void testHealthIndicatorReplacesActuatorJmsIndicator() throws Exception {
+        load(EmptyConfiguration.class, "spring.qpidjms.remoteURL=" + broker.getConnectionURI());
+
+        HealthIndicator indicator = this.context.getBean(
+            QpidJMSActuatorAutoConfiguration.HEALTH_INDICATOR_BEAN_NAME, HealthIndicator.class);
+        assertTrue(indicator instanceof QpidJMSHealthIndicator);
+        assertEquals(1, this.context.getBeansOfType(QpidJMSEndpoint.class).size());
+    }
+
+    @Test(timeout = 60000)
+    public void testHealthChecksReuseProbeConnection() throws Exception {
+        load(EmptyConfiguration.class, "spring.qpidjms.remoteURL=" + broker.getConnectionURI());
+
+        QpidJMSHealthIndicator indicator = this.context.getBean(QpidJMSHealthIndicator.class);
+
+        for (int i = 0; i < 5; ++i) {
+            Health health = indicator.health();
+            assertEquals(Status.UP, health.getStatus());
+            assertEquals(1, health.getDetails().get("connected"));
+        }
+
+        assertEquals(1, broker.getConnectionsOpened());
+    }
+
+    @Test(timeout = 60000)
+    public void testProbeConnectionLeavesClientIDToApplication() throws Exception {
+        load(EmptyConfiguration.class,
+             "spring.qpidjms.remoteURL=" + broker.getConnectionURI(),
+             "spring.qpidjms.clientId=application");
+
+        QpidJMSHealthIndicator indicator = this.context.getBean(QpidJMSHealthIndicator.class);
+        assertEquals(Status.UP, indicator.health().getStatus());
+
+        Connection connection = this.context.getBean(ConnectionFactory.class).createConnection();
+        try {
+            connection.start();
+
+            assertEquals("application", connection.getClientID());
+            assertEquals(Status.UP, indicator.health().getStatus());
+        } finally {
+            connection.close();
+        }
+    }
+
+    @Test(timeout = 60000)
+    public void testHealthChecksUseApplicationConnections() throws Exception {
+        load(EmptyConfiguration.class, "spring.qpidjms.remoteURL=" + broker.getConnectionURI());
+
+        Connection connection = this.context.getBean(ConnectionFactory.class).createConnection();
+        try {
+            connection.start();
+
+            QpidJMSHealthIndicator indicator = this.context.getBean(QpidJMSHealthIndicator.class);
+            assertEquals(Status.UP, indicator.health().getStatus());
+            assertEquals(Status.UP, indicator.health().getStatus());
+
+            assertEquals(1, broker.getConnectionsOpened());
+        } finally {
+            connection.close();
+        }
+    }
+
+    @Test(timeout = 60000)
+    public void testHealthDownWhenBrokerUnavailable() throws Exception {
+        int port;
+        try (ServerSocket socket = new ServerSocket(0)) {
+            port = socket.getLocalPort();
+        }
+
+        load(EmptyConfiguration.class, "spring.qpidjms.remoteURL=amqp://localhost:" + port);
+
+        QpidJMSHealthIndicator indicator = this.context.getBean(QpidJMSHealthIndicator.class);
+        assertEquals(Status.DOWN, indicator.health().getStatus());
+
+        // The failed probe is replaced rather than reported as down for good.
+        assertEquals(Status.DOWN, indicator.health().getStatus());
+    }
+
+    @Test(timeout = 60000)
+    @SuppressWarnings("unchecked")
+    public void testEndpointDescribesLinks() throws Exception {
+        load(EmptyConfiguration.class,
+             "spring.qpidjms.remoteURL=" + broker.getConnectionURI() + "?jms.prefetchPolicy.all=10");
+
+        Connection connection = this.context.getBean(ConnectionFactory.class).createConnection();
+        try {
+            connection.start();
+
+            Session session = connection.createSession(false, Session.CLIENT_ACKNOWLEDGE);
+            Queue queue = session.createQueue("diagnostics");
+            MessageProducer producer = session.createProducer(queue);
+            MessageConsumer consumer = session.createConsumer(queue);
+
+            for (int i = 0; i < 3; ++i) {
+                producer.send(session.createTextMessage("message-" + i));
+            }
+
+            QpidJMSEndpoint endpoint = this.context.getBean(QpidJMSEndpoint.class);
+            assertEquals("qpidjms", endpoint.getId());
+
+            Map<String, Object> description = null;
+            for (int i = 0; i < 100; ++i) {
+                description = consumerDescription(endpoint.invoke());
+                if (Integer.valueOf(3).equals(description.get("prefetched"))) {
+                    break;
+                }
+                TimeUnit.MILLISECONDS.sleep(50);
+            }
+
+            // Nothing was received yet, the prefetched messages are held locally
+            // and unsettled while the rest of the credit stays with the broker.
+            assertEquals("diagnostics", description.get("destination"));
+            assertEquals(10, description.get("prefetchSize"));
+            assertEquals(3, description.get("prefetched"));
+            assertEquals(7, description.get("credit"));
+            assertEquals(3, description.get("unsettled"));
+
+            consumer.receive(5000).acknowledge();
+
+            Map<String, Object> connectionDescription = connectionDescription(endpoint.invoke());
+            assertEquals(Boolean.TRUE, connectionDescription.get("connected"));
+            assertFalse(((String) connectionDescription.get("remoteURI")).contains("prefetchPolicy"));
+
+            Map<String, Object> sessionDescription =
+                ((List<Map<String, Object>>) connectionDescription.get("sessions")).get(0);
+            Map<String, Object> producerDescription =
+                ((List<Map<String, Object>>) sessionDescription.get("producers")).get(0);
+
+            assertEquals(Session.CLIENT_ACKNOWLEDGE, sessionDescription.get("acknowledgeMode"));
+            assertEquals("diagnostics", producerDescription.get("destination"));
+            assertEquals(0, producerDescription.get("unsettled"));
+            assertTrue((Integer) producerDescription.get("credit") > 0);
+        } finally {
+            connection.close();
+        }
+
+        List<?> connectionFactories = (List<?>) this.context.getBean(QpidJMSEndpoint.class).invoke().get("connectionFactories");
+        assertEquals(1, connectionFactories.size());
+        assertTrue(((List<?>) ((Map<?, ?>) connectionFactories.get(0)).get("connections")).isEmpty());
+    }
+
+    @Test
+    public void testEndpointDisabled() {
+        load(EmptyConfiguration.class,
+             "spring.qpidjms.remoteURL=" + "amqp://localhost:5672",
+             "endpoints.qpidjms.enabled=false",
+             "management.health.jms.enabled=false");
+
+        assertTrue(this.context.getBeansOfType(QpidJMSEndpoint.class).isEmpty());
+        assertTrue(this.context.getBeansOfType(QpidJMSHealthIndicator.class).isEmpty());
+    }
+
+    @SuppressWarnings("unchecked")
+    private static Map<String, Object> connectionDescription(Map<String, Object> endpoint) {
+        Map<String, Object> connectionFactory =
+            ((List<Map<String, Object>>) endpoint.get("connectionFactories")).get(0);
+        return ((List<Map<String, Object>>) connectionFactory.get("connections")).get(0);
+    }
+
+    @SuppressWarnings("unchecked")
+    private static Map<String, Object> consumerDescription(Map<String, Object> endpoint) {
+        Map<String, Object> session =
+            ((List<Map<String, Object>>) connectionDescription(endpoint).get("sessions")).get(0);
+        return ((List<Map<String, Object>>) session.get("consumers")).get(0);
+    }
+
+    @Configuration
+    static class EmptyConfiguration {}
+
+    /**
+     * The Actuator's own jms health indicator, without the rest of its health
+     * indicator auto configuration and the client libraries that refers to.
+     */
+    @Configuration
+    @Import(HealthIndicatorAutoConfiguration.JmsHealthIndicatorConfiguration.class)
+    static class ActuatorJmsHealthConfiguration {
+
+        @Bean
+        public HealthAggregator healthAggregator() {
+            return new OrderedHealthAggregator();
+        }
+    }
+
+    private void load(Class<?> config, String... environment) {
+        AnnotationConfigApplicationContext applicationContext = new AnnotationConfigApplicationContext();
+        applicationContext.register(config);
+        applicationContext.register(QpidJMSAutoConfiguration.class, JmsAutoConfiguration.class,
+                                    QpidJMSActuatorAutoConfiguration.class, ActuatorJmsHealthConfiguration.class);
+        EnvironmentTestUtils.addEnvironment(applicationContext, environment);
+        applicationContext.refresh();
+        this.context = applicationContext;
+    }
+}
@@ -20,9 +20,15 @@ import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertNull;
 import static org.junit.Assert.assertTrue;
 
+import javax.jms.Connection;
 import javax.jms.ConnectionFactory;
 
+import org.apache.qpid.jms.JmsConnection;
 import org.apache.qpid.jms.JmsConnectionFactory;
+import org.apache.qpid.jms.JmsQueue;
+import org.apache.qpid.jms.JmsTopic;
+import org.apache.qpid.jms.policy.JmsDefaultPrefetchPolicy;
+import org.apache.qpid.jms.policy.JmsDefaultPresettlePolicy;
 import org.junit.After;
 import org.junit.Test;
 import org.springframework.boot.autoconfigure.jms.JmsAutoConfiguration;
@@ -63,6 +69,35 @@ public class QpidJMSAutoConfigurationTest {
         assertNull(qpidJmsFactory.getPassword());
     }
 
+    @Test(timeout = 60000)
+    public void testAutoConfiguredFactoryCreatesConnection() throws Exception {
+        AmqpTestBroker broker = new AmqpTestBroker();
+        broker.start();
+        try {
+            // Every accessor of the factory is read when a connection is created,
+            // this covers the ones that hold lists and nested settings.
+            load(EmptyConfiguration.class,
+                 "spring.qpidjms.remoteURL=" + broker.getConnectionURI(),
+                 "spring.qpidjms.compression.enabled=true",
+                 "spring.qpidjms.selector.mode=client");
+
+            QpidJMSConnectionFactory connectionFactory = this.context.getBean(QpidJMSConnectionFactory.class);
+            assertTrue(connectionFactory.connectionListeners().isEmpty());
+            assertTrue(connectionFactory.openConnections().isEmpty());
+
+            Connection connection = connectionFactory.createConnection();
+            try {
+                connection.start();
+                assertTrue(((JmsConnection) connection).isConnected());
+                assertEquals(1, connectionFactory.openConnections().size());
+            } finally {
+                connection.close();
+            }
+        } finally {
+            broker.stop();
+        }
+    }
+
     @Test
     public void testCustomConnectionFactorySettings() {
         load(EmptyConfiguration.class,
@@ -114,6 +149,44 @@ public class QpidJMSAutoConfigurationTest {
         assertTrue(connectionFactory.isReceiveNoWaitLocalOnly());
     }
 
+    @Test
+    public void testPrefetchAndPresettleOptionsAppliedFromEnv() {
+        load(EmptyConfiguration.class,
+             "spring.qpidjms.forceAsyncSend=true",
+             "spring.qpidjms.sendTimeout=5000",
+             "spring.qpidjms.prefetchPolicy.queuePrefetch=2000",
+             "spring.qpidjms.prefetchPolicy.topicPrefetch=0",
+             "spring.qpidjms.presettlePolicy.presettleProducers=true");
+
+        JmsConnectionFactory connectionFactory =
+            this.context.getBean(JmsConnectionFactory.class);
+
+        JmsDefaultPrefetchPolicy prefetchPolicy = (JmsDefaultPrefetchPolicy) connectionFactory.getPrefetchPolicy();
+        JmsDefaultPresettlePolicy presettlePolicy = (JmsDefaultPresettlePolicy) connectionFactory.getPresettlePolicy();
+
+        assertTrue(connectionFactory.isForceAsyncSend());
+        assertEquals(5000, connectionFactory.getSendTimeout());
+        assertEquals(2000, prefetchPolicy.getQueuePrefetch());
+        assertEquals(0, prefetchPolicy.getTopicPrefetch());
+        assertTrue(presettlePolicy.isPresettleProducers());
+    }
+
+    @Test
+    public void testDestinationPoliciesAppliedFromEnv() {
+        load(EmptyConfiguration.class,
+             "spring.qpidjms.destinationPolicies[telemetry.*].prefetch=5000",
+             "spring.qpidjms.destinationPolicies[telemetry.*].presettleProducers=true",
+             "spring.qpidjms.destinationPolicies[commands].prefetch=1");
+
+        JmsConnectionFactory connectionFactory =
+            this.context.getBean(JmsConnectionFactory.class);
+
+        assertTrue(connectionFactory.getPrefetchPolicy() instanceof QpidJMSDestinationPrefetchPolicy);
+        assertEquals(5000, connectionFactory.getPrefetchPolicy().getConfiguredPrefetch(null, new JmsTopic("telemetry.eu"), false, false));
+        assertEquals(1, connectionFactory.getPrefetchPolicy().getConfiguredPrefetch(null, new JmsQueue("commands"), false, false));
+        assertTrue(connectionFactory.getPresettlePolicy().isProducerPresttled(null, new JmsTopic("telemetry.eu")));
+    }
+
     @Configuration
     static class EmptyConfiguration {}
 
@@ -0,0 +1,166 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.qpid.jms.spring.boot.autoconfigure;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.IntStream;
+
+import javax.jms.ConnectionFactory;
+import javax.jms.JMSException;
+import javax.jms.Message;
+import javax.jms.Session;
+
+import org.apache.activemq.command.ActiveMQQueue;
+import org.apache.qpid.jms.JmsQueue;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.springframework.boot.autoconfigure.jms.JmsAutoConfiguration;
+import org.springframework.boot.test.util.EnvironmentTestUtils;
+import org.springframework.context.annotation.AnnotationConfigApplicationContext;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.jms.support.converter.MessageConversionException;
+import org.springframework.jms.support.converter.SimpleMessageConverter;
+
+/**
+ * Test for the auto-configured QpidJMSBatchTemplate.
+ */
+public class QpidJMSBatchTemplateTest {
+
+    private final AmqpTestBroker broker = new AmqpTestBroker();
+
+    private AnnotationConfigApplicationContext context;
+
+    @Before
+    public void setUp() throws Exception {
+        broker.start();
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        if (this.context != null) {
+            this.context.close();
+        }
+
+        broker.stop();
+    }
+
+    @Test
+    public void testBatchTemplateConfiguredFromEnv() {
+        load(EmptyConfiguration.class, "spring.qpidjms.batch.maxInFlight=64");
+
+        QpidJMSBatchTemplate batchTemplate = this.context.getBean(QpidJMSBatchTemplate.class);
+
+        assertEquals(64, batchTemplate.getMaxInFlight());
+        assertEquals(this.context.getBean(ConnectionFactory.class), batchTemplate.getConnectionFactory());
+    }
+
+    @Test(timeout = 60000)
+    public void testSendBatchCompletesWhenAllSettled() throws Exception {
+        load(EmptyConfiguration.class,
+             "spring.qpidjms.remoteURL=" + broker.getConnectionURI(),
+             "spring.qpidjms.batch.maxInFlight=16");
+
+        QpidJMSBatchTemplate batchTemplate = this.context.getBean(QpidJMSBatchTemplate.class);
+
+        List<String> payloads = new ArrayList<>();
+        for (int i = 0; i < 500; ++i) {
+            payloads.add("message-" + i);
+        }
+
+        batchTemplate.send("batch", payloads).get(30, TimeUnit.SECONDS);
+
+        assertEquals(500, getQueueSize("batch"));
+    }
+
+    @Test(timeout = 60000)
+    public void testSessionIsReusedAcrossBatches() throws Exception {
+        load(EmptyConfiguration.class, "spring.qpidjms.remoteURL=" + broker.getConnectionURI());
+
+        QpidJMSBatchTemplate batchTemplate = this.context.getBean(QpidJMSBatchTemplate.class);
+
+        batchTemplate.send("batch", IntStream.range(0, 10).boxed()).get(30, TimeUnit.SECONDS);
+
+        long connections = broker.getConnectionsOpened();
+        long sessions = broker.getSessionsOpened();
+        long producers = broker.getProducersOpened();
+
+        batchTemplate.send("batch", IntStream.range(0, 10).boxed()).get(30, TimeUnit.SECONDS);
+        batchTemplate.send(new JmsQueue("batch"), Arrays.asList("a", "b", "c")).get(30, TimeUnit.SECONDS);
+
+        assertEquals(connections, broker.getConnectionsOpened());
+        assertEquals(sessions, broker.getSessionsOpened());
+        assertEquals(producers, broker.getProducersOpened());
+        assertEquals(23, getQueueSize("batch"));
+    }
+
+    @Test(timeout = 60000)
+    public void testConversionFailureFailsBatch() throws Exception {
+        load(EmptyConfiguration.class, "spring.qpidjms.remoteURL=" + broker.getConnectionURI());
+
+        QpidJMSBatchTemplate batchTemplate = this.context.getBean(QpidJMSBatchTemplate.class);
+        batchTemplate.setMessageConverter(new SimpleMessageConverter() {
+
+            @Override
+            public Message toMessage(Object object, Session session) throws JMSException, MessageConversionException {
+                if ("bad".equals(object)) {
+                    throw new MessageConversionException("Cannot convert");
+                }
+                return super.toMessage(object, session);
+            }
+        });
+
+        try {
+            batchTemplate.send("batch", Arrays.asList("good", "bad", "never")).get(30, TimeUnit.SECONDS);
+            fail("Batch should have failed");
+        } catch (ExecutionException ex) {
+            assertTrue(ex.getCause() instanceof MessageConversionException);
+        }
+
+        assertEquals(1, getQueueSize("batch"));
+
+        // The template remains usable after a failed batch.
+        batchTemplate.send("batch", Arrays.asList("next")).get(30, TimeUnit.SECONDS);
+
+        assertEquals(2, getQueueSize("batch"));
+    }
+
+    private long getQueueSize(String name) throws Exception {
+        return broker.getBrokerService().getDestination(new ActiveMQQueue(name))
+                     .getDestinationStatistics().getMessages().getCount();
+    }
+
+    @Configuration
+    static class EmptyConfiguration {}
+
+    private void load(Class<?> config, String... environment) {
+        AnnotationConfigApplicationContext applicationContext = new AnnotationConfigApplicationContext();
+        applicationContext.register(config);
+        applicationContext.register(QpidJMSAutoConfiguration.class, JmsAutoConfiguration.class);
+        EnvironmentTestUtils.addEnvironment(applicationContext, environment);
+        applicationContext.refresh();
+        this.context = applicationContext;
+    }
+}
@@ -0,0 +1,227 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.qpid.jms.spring.boot.autoconfigure;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.util.Random;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
+
+import javax.jms.BytesMessage;
+import javax.jms.Connection;
+import javax.jms.ConnectionFactory;
+import javax.jms.Session;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.springframework.boot.autoconfigure.jms.JmsAutoConfiguration;
+import org.springframework.boot.test.util.EnvironmentTestUtils;
+import org.springframework.context.annotation.AnnotationConfigApplicationContext;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.jms.annotation.EnableJms;
+import org.springframework.jms.annotation.JmsListener;
+import org.springframework.jms.core.JmsTemplate;
+
+/**
+ * Test for the zero copy bytes message converter and payload.
+ */
+public class QpidJMSBytesMessageConverterTest {
+
+    private static final int PAYLOAD_SIZE = 2 * 1024 * 1024;
+
+    private final AmqpTestBroker broker = new AmqpTestBroker();
+
+    private AnnotationConfigApplicationContext context;
+
+    @Before
+    public void setUp() throws Exception {
+        broker.start();
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        if (this.context != null) {
+            this.context.close();
+        }
+
+        broker.stop();
+    }
+
+    @Test
+    public void testConverterNotRegisteredByDefault() throws Exception {
+        load(EmptyConfiguration.class, "spring.qpidjms.remoteURL=" + broker.getConnectionURI());
+
+        assertTrue(this.context.getBeansOfType(QpidJMSBytesMessageConverter.class).isEmpty());
+    }
+
+    @Test
+    public void testConverterUsedByTemplatesWhenEnabled() throws Exception {
+        load(EmptyConfiguration.class,
+             "spring.qpidjms.remoteURL=" + broker.getConnectionURI(),
+             "spring.qpidjms.bytesMessage.zeroCopy=true");
+
+        QpidJMSBytesMessageConverter converter = this.context.getBean(QpidJMSBytesMessageConverter.class);
+
+        assertSame(converter, this.context.getBean(JmsTemplate.class).getMessageConverter());
+        assertSame(converter, this.context.getBean(QpidJMSBatchTemplate.class).getMessageConverter());
+    }
+
+    @Test(timeout = 60000)
+    public void testSentArrayBecomesBodyWithoutCopy() throws Exception {
+        load(EmptyConfiguration.class,
+             "spring.qpidjms.remoteURL=" + broker.getConnectionURI(),
+             "spring.qpidjms.bytesMessage.zeroCopy=true");
+
+        QpidJMSBytesMessageConverter converter = this.context.getBean(QpidJMSBytesMessageConverter.class);
+        Connection connection = this.context.getBean(ConnectionFactory.class).createConnection();
+        try {
+            Session session = connection.createSession(false, Session.AUTO_ACKNOWLEDGE);
+
+            byte[] bytes = payload();
+            BytesMessage message = (BytesMessage) converter.toMessage(ByteBuffer.wrap(bytes, 16, 1024), session);
+
+            QpidJMSBytesPayload payload = (QpidJMSBytesPayload) converter.fromMessage(message);
+            assertSame(bytes, payload.getArray());
+            assertEquals(16, payload.getOffset());
+            assertEquals(1024, payload.length());
+
+            message.reset();
+            assertEquals(1024, message.getBodyLength());
+
+            // Buffers without an accessible array are copied once.
+            ByteBuffer direct = ByteBuffer.allocateDirect(128);
+            message = (BytesMessage) converter.toMessage(direct, session);
+            message.reset();
+            assertEquals(128, message.getBodyLength());
+        } finally {
+            connection.close();
+        }
+    }
+
+    @Test(timeout = 60000)
+    public void testReceivedPayloadViewsAndRelease() throws Exception {
+        load(EmptyConfiguration.class,
+             "spring.qpidjms.remoteURL=" + broker.getConnectionURI(),
+             "spring.qpidjms.bytesMessage.zeroCopy=true");
+
+        JmsTemplate jmsTemplate = this.context.getBean(JmsTemplate.class);
+        jmsTemplate.setReceiveTimeout(10000);
+
+        byte[] bytes = payload();
+        jmsTemplate.convertAndSend("zero-copy", bytes);
+
+        QpidJMSBytesPayload payload = (QpidJMSBytesPayload) jmsTemplate.receiveAndConvert("zero-copy");
+
+        assertEquals(PAYLOAD_SIZE, payload.length());
+
+        ByteBuffer buffer = payload.asByteBuffer();
+        assertTrue(buffer.isReadOnly());
+        assertEquals(PAYLOAD_SIZE, buffer.remaining());
+        assertEquals(bytes[PAYLOAD_SIZE - 1], buffer.get(PAYLOAD_SIZE - 1));
+
+        byte[] streamed = new byte[PAYLOAD_SIZE];
+        InputStream stream = payload.getInputStream();
+        int read = 0;
+        while (read < streamed.length) {
+            read += stream.read(streamed, read, streamed.length - read);
+        }
+        assertEquals(-1, stream.read());
+        assertArrayEquals(bytes, streamed);
+        assertArrayEquals(bytes, payload.toByteArray());
+
+        assertFalse(payload.isReleased());
+        payload.close();
+        assertTrue(payload.isReleased());
+
+        payload.getMessage().reset();
+        assertEquals(0, payload.getMessage().getBodyLength());
+
+        try {
+            stream.read();
+            fail("Stream should fail once the payload is released");
+        } catch (IOException expected) {
+        }
+
+        try {
+            payload.asByteBuffer();
+            fail("Views should not be created once the payload is released");
+        } catch (IllegalStateException expected) {
+        }
+    }
+
+    @Test(timeout = 60000)
+    public void testListenerReceivesPayloadArgument() throws Exception {
+        load(ListenerConfiguration.class,
+             "spring.qpidjms.remoteURL=" + broker.getConnectionURI(),
+             "spring.qpidjms.bytesMessage.zeroCopy=true");
+
+        JmsTemplate jmsTemplate = this.context.getBean(JmsTemplate.class);
+        ListenerConfiguration listener = this.context.getBean(ListenerConfiguration.class);
+
+        byte[] bytes = payload();
+        jmsTemplate.convertAndSend("zero-copy-listener", bytes);
+
+        assertTrue(listener.received.await(30, TimeUnit.SECONDS));
+        assertArrayEquals(bytes, listener.bytes.get());
+    }
+
+    @Configuration
+    static class EmptyConfiguration {}
+
+    @Configuration
+    @EnableJms
+    static class ListenerConfiguration {
+
+        private final CountDownLatch received = new CountDownLatch(1);
+        private final AtomicReference<byte[]> bytes = new AtomicReference<>();
+
+        @JmsListener(destination = "zero-copy-listener", containerFactory = "qpidJmsListenerContainerFactory")
+        public void onMessage(QpidJMSBytesPayload payload) {
+            try (QpidJMSBytesPayload body = payload) {
+                bytes.set(body.toByteArray());
+            }
+
+            received.countDown();
+        }
+    }
+
+    private static byte[] payload() {
+        byte[] bytes = new byte[PAYLOAD_SIZE];
+        new Random(42).nextBytes(bytes);
+        return bytes;
+    }
+
+    private void load(Class<?> config, String... environment) {
+        AnnotationConfigApplicationContext applicationContext = new AnnotationConfigApplicationContext();
+        applicationContext.register(config);
+        applicationContext.register(QpidJMSAutoConfiguration.class, JmsAutoConfiguration.class);
+        EnvironmentTestUtils.addEnvironment(applicationContext, environment);
+        applicationContext.refresh();
+        this.context = applicationContext;
+    }
+}
@@ -0,0 +1,243 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.qpid.jms.spring.boot.autoconfigure;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.IOException;
+import java.util.Arrays;
+
+import javax.jms.BytesMessage;
+import javax.jms.Connection;
+import javax.jms.Message;
+import javax.jms.Session;
+import javax.jms.TextMessage;
+
+import org.apache.qpid.jms.JmsConnectionFactory;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.springframework.boot.autoconfigure.jms.JmsAutoConfiguration;
+import org.springframework.boot.test.util.EnvironmentTestUtils;
+import org.springframework.context.annotation.AnnotationConfigApplicationContext;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.jms.core.JmsTemplate;
+import org.springframework.util.StringUtils;
+
+/**
+ * Test for the compression of message bodies.
+ */
+public class QpidJMSCompressionTest {
+
+    private static final String LARGE_TEXT = StringUtils.collectionToDelimitedString(
+        Arrays.asList(new String[512]), "{\"symbol\":\"QPID\",\"price\":42.5}", "", "");
+
+    private final AmqpTestBroker broker = new AmqpTestBroker();
+
+    private AnnotationConfigApplicationContext context;
+
+    @Before
+    public void setUp() throws Exception {
+        broker.start();
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        if (this.context != null) {
+            this.context.close();
+        }
+
+        broker.stop();
+    }
+
+    @Test
+    public void testCompressionDisabledByDefault() throws Exception {
+        load(EmptyConfiguration.class, "spring.qpidjms.remoteURL=" + broker.getConnectionURI());
+
+        assertNull(this.context.getBean(QpidJMSConnectionFactory.class).compression());
+    }
+
+    @Test
+    public void testCodecsRoundTrip() throws Exception {
+        byte[] bytes = LARGE_TEXT.getBytes("UTF-8");
+
+        for (QpidJMSCompression.Algorithm algorithm : Arrays.asList(QpidJMSCompression.Algorithm.GZIP,
+                QpidJMSCompression.Algorithm.LZ4, QpidJMSCompression.Algorithm.ZSTD)) {
+            byte[] compressed = QpidJMSCompression.compress(algorithm, bytes, 16, bytes.length - 16);
+            assertTrue(algorithm + " did not compress", compressed.length < bytes.length / 5);
+
+            byte[] decompressed = QpidJMSCompression.decompress(algorithm, compressed, 0, compressed.length);
+            assertArrayEquals(Arrays.copyOfRange(bytes, 16, bytes.length), decompressed);
+        }
+    }
+
+    @Test
+    public void testDecompressionLimitedToMaxSize() throws Exception {
+        byte[] bytes = LARGE_TEXT.getBytes("UTF-8");
+
+        for (QpidJMSCompression.Algorithm algorithm : Arrays.asList(QpidJMSCompression.Algorithm.GZIP,
+                QpidJMSCompression.Algorithm.LZ4, QpidJMSCompression.Algorithm.ZSTD)) {
+            byte[] compressed = QpidJMSCompression.compress(algorithm, bytes, 0, bytes.length);
+
+            assertEquals(bytes.length, QpidJMSCompression.decompress(algorithm, compressed, 0, compressed.length, bytes.length).length);
+            try {
+                QpidJMSCompression.decompress(algorithm, compressed, 0, compressed.length, bytes.length - 1);
+                fail(algorithm + " decompressed past the limit");
+            } catch (IOException expected) {
+            }
+        }
+
+        // A length prefix close to 2GB is rejected before anything is allocated.
+        byte[] forged = new byte[] { 0x7F, (byte) 0xFF, (byte) 0xFF, (byte) 0xFF, 0, 0, 0, 0 };
+        for (QpidJMSCompression.Algorithm algorithm : Arrays.asList(QpidJMSCompression.Algorithm.LZ4,
+                QpidJMSCompression.Algorithm.ZSTD)) {
+            try {
+                QpidJMSCompression.decompress(algorithm, forged, 0, forged.length);
+                fail(algorithm + " accepted a forged length");
+            } catch (IOException expected) {
+            }
+        }
+    }
+
+    @Test(timeout = 60000)
+    public void testBodyAboveMaxDecompressedSizeDeliveredCompressed() throws Exception {
+        load(EmptyConfiguration.class,
+             "spring.qpidjms.remoteURL=" + broker.getConnectionURI(),
+             "spring.qpidjms.compression.enabled=true",
+             "spring.qpidjms.compression.maxDecompressedSize=4096");
+
+        assertEquals(4096, this.context.getBean(QpidJMSConnectionFactory.class).compression().getMaxDecompressedSize());
+
+        JmsTemplate jmsTemplate = template();
+        jmsTemplate.convertAndSend("limited", LARGE_TEXT);
+
+        Message message = jmsTemplate.receive("limited");
+        assertTrue(message instanceof BytesMessage);
+        assertEquals("gzip", message.getStringProperty(QpidJMSCompression.COMPRESSION_PROPERTY));
+    }
+
+    @Test(timeout = 60000)
+    public void testTextCompressedOnTheWireAndRestoredOnReceive() throws Exception {
+        load(EmptyConfiguration.class,
+             "spring.qpidjms.remoteURL=" + broker.getConnectionURI(),
+             "spring.qpidjms.compression.enabled=true");
+
+        assertEquals(QpidJMSCompression.Algorithm.GZIP,
+                     this.context.getBean(QpidJMSConnectionFactory.class).compression().getAlgorithm());
+
+        JmsTemplate jmsTemplate = template();
+        jmsTemplate.convertAndSend("compressed", LARGE_TEXT);
+
+        // A client without compression receives the compressed bytes and their marker.
+        Message raw = receiveUncompressed("compressed");
+        assertTrue(raw instanceof BytesMessage);
+        assertEquals("gzip", raw.getStringProperty(QpidJMSCompression.COMPRESSION_PROPERTY));
+        assertTrue(bodyLength(raw) < LARGE_TEXT.length() / 5);
+
+        jmsTemplate.convertAndSend("compressed", LARGE_TEXT);
+        Message message = jmsTemplate.receive("compressed");
+
+        assertTrue(message instanceof TextMessage);
+        assertEquals(LARGE_TEXT, ((TextMessage) message).getText());
+        assertFalse(message.propertyExists(QpidJMSCompression.COMPRESSION_PROPERTY));
+    }
+
+    @Test(timeout = 60000)
+    public void testBytesRoundTripWithLz4() throws Exception {
+        load(EmptyConfiguration.class,
+             "spring.qpidjms.remoteURL=" + broker.getConnectionURI(),
+             "spring.qpidjms.compression.enabled=true",
+             "spring.qpidjms.compression.algorithm=lz4");
+
+        byte[] payload = LARGE_TEXT.getBytes("UTF-8");
+
+        JmsTemplate jmsTemplate = template();
+        jmsTemplate.convertAndSend("compressed-bytes", payload);
+        assertEquals("lz4", receiveUncompressed("compressed-bytes").getStringProperty(QpidJMSCompression.COMPRESSION_PROPERTY));
+
+        jmsTemplate.convertAndSend("compressed-bytes", payload);
+        assertArrayEquals(payload, (byte[]) jmsTemplate.receiveAndConvert("compressed-bytes"));
+    }
+
+    @Test(timeout = 60000)
+    public void testMinSizeAndDestinationOverrides() throws Exception {
+        load(EmptyConfiguration.class,
+             "spring.qpidjms.remoteURL=" + broker.getConnectionURI(),
+             "spring.qpidjms.compression.enabled=true",
+             "spring.qpidjms.compression.algorithm=zstd",
+             "spring.qpidjms.destinationPolicies[plain.*].compression=none",
+             "spring.qpidjms.destinationPolicies[small].compressionMinSize=16",
+             "spring.qpidjms.destinationPolicies[small].compression=gzip");
+
+        String small = LARGE_TEXT.substring(0, 200);
+
+        JmsTemplate jmsTemplate = template();
+        jmsTemplate.convertAndSend("default", small);
+        jmsTemplate.convertAndSend("default", LARGE_TEXT);
+        jmsTemplate.convertAndSend("plain.text", LARGE_TEXT);
+        jmsTemplate.convertAndSend("small", small);
+
+        assertFalse(receiveUncompressed("default").propertyExists(QpidJMSCompression.COMPRESSION_PROPERTY));
+        assertEquals("zstd", receiveUncompressed("default").getStringProperty(QpidJMSCompression.COMPRESSION_PROPERTY));
+        assertFalse(receiveUncompressed("plain.text").propertyExists(QpidJMSCompression.COMPRESSION_PROPERTY));
+        assertEquals("gzip", receiveUncompressed("small").getStringProperty(QpidJMSCompression.COMPRESSION_PROPERTY));
+    }
+
+    @Configuration
+    static class EmptyConfiguration {}
+
+    private JmsTemplate template() {
+        JmsTemplate jmsTemplate = this.context.getBean(JmsTemplate.class);
+        jmsTemplate.setReceiveTimeout(10000);
+        return jmsTemplate;
+    }
+
+    private Message receiveUncompressed(String queue) throws Exception {
+        Connection connection = new JmsConnectionFactory(broker.getConnectionURI()).createConnection();
+        try {
+            connection.start();
+            Session session = connection.createSession(false, Session.AUTO_ACKNOWLEDGE);
+            Message message = session.createConsumer(session.createQueue(queue)).receive(10000);
+            assertTrue("No message received from " + queue, message != null);
+            return message;
+        } finally {
+            connection.close();
+        }
+    }
+
+    private static long bodyLength(Message message) throws Exception {
+        if (message instanceof BytesMessage) {
+            return ((BytesMessage) message).getBodyLength();
+        }
+
+        return ((TextMessage) message).getText().length();
+    }
+
+    private void load(Class<?> config, String... environment) {
+        AnnotationConfigApplicationContext applicationContext = new AnnotationConfigApplicationContext();
+        applicationContext.register(config);
+        applicationContext.register(QpidJMSAutoConfiguration.class, JmsAutoConfiguration.class);
+        EnvironmentTestUtils.addEnvironment(applicationContext, environment);
+        applicationContext.refresh();
+        this.context = applicationContext;
+    }
+}
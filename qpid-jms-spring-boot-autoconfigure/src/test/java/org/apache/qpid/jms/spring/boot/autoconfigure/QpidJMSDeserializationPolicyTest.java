@@ -0,0 +1,167 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.qpid.jms.spring.boot.autoconfigure;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+
+import org.apache.qpid.jms.JmsConnectionFactory;
+import org.apache.qpid.jms.policy.JmsDefaultDeserializationPolicy;
+import org.junit.After;
+import org.junit.Test;
+import org.springframework.boot.autoconfigure.jms.JmsAutoConfiguration;
+import org.springframework.boot.test.util.EnvironmentTestUtils;
+import org.springframework.context.annotation.AnnotationConfigApplicationContext;
+import org.springframework.context.annotation.Configuration;
+
+/**
+ * Test for the compiled deserialization policy.
+ */
+public class QpidJMSDeserializationPolicyTest {
+
+    private static final List<Class<?>> CLASSES = Arrays.<Class<?>>asList(
+        String.class, Integer.class, ArrayList.class, HashMap.class, Map.Entry.class,
+        UUID.class, File.class, QpidJMSProperties.class, QpidJMSProperties.DeserializationPolicy.class,
+        int[].class, Object.class);
+
+    private static final String[][] LISTS = {
+        { "*", null },
+        { "*", "java.util" },
+        { "java.lang,java.util", "java.util.HashMap" },
+        { "java", "*" },
+        { "java.util.Map", null },
+        { "org.apache.qpid.jms.spring.boot.autoconfigure.QpidJMSProperties", null },
+        { "java.lan,java.util.Array", null },
+        { "", "" },
+    };
+
+    private AnnotationConfigApplicationContext context;
+
+    @After
+    public void tearDown() {
+        if (this.context != null) {
+            this.context.close();
+        }
+    }
+
+    @Test
+    public void testDecisionsMatchDefaultPolicy() {
+        for (String[] lists : LISTS) {
+            JmsDefaultDeserializationPolicy expected = new JmsDefaultDeserializationPolicy();
+            QpidJMSDeserializationPolicy policy = new QpidJMSDeserializationPolicy();
+
+            expected.setWhiteList(lists[0]);
+            expected.setBlackList(lists[1]);
+            policy.setWhiteList(lists[0]);
+            policy.setBlackList(lists[1]);
+
+            for (Class<?> clazz : CLASSES) {
+                String message = clazz.getName() + " with " + Arrays.toString(lists);
+                assertEquals(message, expected.isTrustedType(null, clazz), policy.isTrustedType(null, clazz));
+                // Again from the cache.
+                assertEquals(message, expected.isTrustedType(null, clazz), policy.isTrustedType(null, clazz));
+            }
+
+            assertTrue(policy.isTrustedType(null, null));
+        }
+    }
+
+    @Test
+    public void testCopiesShareDecisionsUntilListsChange() {
+        QpidJMSDeserializationPolicy policy = new QpidJMSDeserializationPolicy();
+        policy.setWhiteList("java.lang");
+
+        assertTrue(policy.isTrustedType(null, String.class));
+        assertEquals(1, policy.getCacheSize());
+
+        QpidJMSDeserializationPolicy copy = (QpidJMSDeserializationPolicy) policy.copy();
+        assertEquals("java.lang", copy.getWhiteList());
+        assertEquals(1, copy.getCacheSize());
+
+        copy.setWhiteList("java.util");
+        assertEquals(0, copy.getCacheSize());
+        assertFalse(copy.isTrustedType(null, String.class));
+        assertTrue(policy.isTrustedType(null, String.class));
+    }
+
+    @Test
+    public void testDecisionCacheIsBounded() {
+        QpidJMSDeserializationPolicy.ClassMatcher matcher = new QpidJMSDeserializationPolicy.ClassMatcher("java", "", 4);
+
+        for (Class<?> clazz : CLASSES) {
+            matcher.isTrusted(clazz);
+            assertTrue(matcher.getCacheSize() <= 4);
+        }
+
+        assertTrue(matcher.isTrusted(String.class));
+        assertFalse(matcher.isTrusted(QpidJMSProperties.class));
+    }
+
+    @Test
+    public void testListPropertiesAreApplied() {
+        load(EmptyConfiguration.class,
+             "spring.qpidjms.deserializationPolicy.whiteList[0]=java.lang",
+             "spring.qpidjms.deserializationPolicy.whiteList[1]=java.util",
+             "spring.qpidjms.deserializationPolicy.blackList=java.util.HashMap, java.io");
+
+        JmsConnectionFactory factory = this.context.getBean(JmsConnectionFactory.class);
+        QpidJMSDeserializationPolicy policy = (QpidJMSDeserializationPolicy) factory.getDeserializationPolicy();
+
+        assertEquals("java.lang,java.util", policy.getWhiteList());
+        assertTrue(policy.isTrustedType(null, String.class));
+        assertTrue(policy.isTrustedType(null, ArrayList.class));
+        assertFalse(policy.isTrustedType(null, HashMap.class));
+        assertFalse(policy.isTrustedType(null, File.class));
+        assertFalse(policy.isTrustedType(null, QpidJMSProperties.class));
+    }
+
+    @Test
+    public void testURIOptionsAreKept() {
+        load(EmptyConfiguration.class,
+             "spring.qpidjms.remoteURL=amqp://localhost:5672?jms.deserializationPolicy.whiteList=java.util",
+             "spring.qpidjms.deserializationPolicy.blackList=java.util.HashMap");
+
+        JmsConnectionFactory factory = this.context.getBean(JmsConnectionFactory.class);
+        QpidJMSDeserializationPolicy policy = (QpidJMSDeserializationPolicy) factory.getDeserializationPolicy();
+
+        assertEquals("java.util", policy.getWhiteList());
+        assertEquals("java.util.HashMap", policy.getBlackList());
+        assertTrue(policy.isTrustedType(null, ArrayList.class));
+        assertFalse(policy.isTrustedType(null, String.class));
+    }
+
+    @Configuration
+    static class EmptyConfiguration {}
+
+    private void load(Class<?> config, String... environment) {
+        AnnotationConfigApplicationContext applicationContext = new AnnotationConfigApplicationContext();
+        applicationContext.register(config);
+        applicationContext.register(QpidJMSAutoConfiguration.class, JmsAutoConfiguration.class);
+        EnvironmentTestUtils.addEnvironment(applicationContext, environment);
+        applicationContext.refresh();
+        this.context = applicationContext;
+    }
+}
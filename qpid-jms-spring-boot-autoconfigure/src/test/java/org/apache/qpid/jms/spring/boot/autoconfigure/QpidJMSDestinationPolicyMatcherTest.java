@@ -0,0 +1,150 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.qpid.jms.spring.boot.autoconfigure;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import org.apache.qpid.jms.JmsConnectionFactory;
+import org.apache.qpid.jms.JmsQueue;
+import org.apache.qpid.jms.JmsSession;
+import org.apache.qpid.jms.JmsTopic;
+import org.apache.qpid.jms.policy.JmsDefaultPrefetchPolicy;
+import org.apache.qpid.jms.policy.JmsDefaultRedeliveryPolicy;
+import org.junit.Test;
+import org.mockito.Mockito;
+
+/**
+ * Test for the per-destination policy matching.
+ */
+public class QpidJMSDestinationPolicyMatcherTest {
+
+    private final Map<String, QpidJMSProperties.DestinationPolicy> policies = new LinkedHashMap<>();
+
+    @Test
+    public void testNoMatchReturnsUnsetValues() {
+        policy("telemetry.*").setPrefetch(5000);
+
+        QpidJMSDestinationPolicyMatcher matcher = new QpidJMSDestinationPolicyMatcher(policies);
+
+        QpidJMSDestinationPolicyMatcher.ResolvedPolicy resolved = matcher.getPolicy(new JmsQueue("commands"));
+
+        assertNull(resolved.getPrefetch());
+        assertNull(resolved.isPresettleConsumers());
+        assertNull(matcher.getPolicy(null).getPrefetch());
+    }
+
+    @Test
+    public void testExactMatchWinsOverWildcard() {
+        policy("orders.*").setPrefetch(100);
+        policy("orders.priority").setPrefetch(1);
+
+        QpidJMSDestinationPolicyMatcher matcher = new QpidJMSDestinationPolicyMatcher(policies);
+
+        assertEquals(Integer.valueOf(1), matcher.getPolicy(new JmsQueue("orders.priority")).getPrefetch());
+        assertEquals(Integer.valueOf(100), matcher.getPolicy(new JmsQueue("orders.bulk")).getPrefetch());
+    }
+
+    @Test
+    public void testMostSpecificWildcardWinsAndValuesMerge() {
+        policy("*").setPresettleConsumers(true);
+        policy("*").setPrefetch(10);
+        policy("telemetry.*.raw").setPrefetch(5000);
+
+        QpidJMSDestinationPolicyMatcher matcher = new QpidJMSDestinationPolicyMatcher(policies);
+
+        QpidJMSDestinationPolicyMatcher.ResolvedPolicy resolved = matcher.getPolicy(new JmsTopic("telemetry.eu.raw"));
+
+        assertEquals(Integer.valueOf(5000), resolved.getPrefetch());
+        assertTrue(resolved.isPresettleConsumers());
+        assertEquals(Integer.valueOf(10), matcher.getPolicy(new JmsTopic("telemetry.eu.rawx")).getPrefetch());
+    }
+
+    @Test
+    public void testResolvedPoliciesAreCachedAndBounded() {
+        policy("queue.*").setPrefetch(7);
+
+        QpidJMSDestinationPolicyMatcher matcher = new QpidJMSDestinationPolicyMatcher(policies, 16);
+
+        QpidJMSDestinationPolicyMatcher.ResolvedPolicy first = matcher.getPolicy(new JmsQueue("queue.1"));
+        assertSame(first, matcher.getPolicy(new JmsQueue("queue.1")));
+
+        for (int i = 0; i < 100; ++i) {
+            assertEquals(Integer.valueOf(7), matcher.getPolicy(new JmsQueue("queue." + i)).getPrefetch());
+        }
+
+        assertTrue(matcher.getCacheSize() <= 16);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testInvalidOutcomeIsRejected() {
+        policy("queue").setRedeliveryOutcome("NOT_AN_OUTCOME");
+
+        new QpidJMSDestinationPolicyMatcher(policies);
+    }
+
+    @Test
+    public void testPoliciesInstalledOnFactory() {
+        QpidJMSProperties properties = new QpidJMSProperties();
+        properties.getPrefetchPolicy().setAll(50);
+        properties.getDestinationPolicies().put("telemetry.*", policy("telemetry.*"));
+        properties.getDestinationPolicies().get("telemetry.*").setPrefetch(5000);
+        properties.getDestinationPolicies().get("telemetry.*").setPresettleProducers(true);
+        properties.getDestinationPolicies().put("commands", policy("commands"));
+        properties.getDestinationPolicies().get("commands").setMaxRedeliveries(3);
+        properties.getDestinationPolicies().get("commands").setRedeliveryOutcome("REJECTED");
+
+        JmsConnectionFactory factory = new QpidJMSConnectionFactoryFactory(properties).createConnectionFactory(JmsConnectionFactory.class);
+
+        assertTrue(factory.getPrefetchPolicy() instanceof QpidJMSDestinationPrefetchPolicy);
+        assertTrue(factory.getPresettlePolicy() instanceof QpidJMSDestinationPresettlePolicy);
+        assertTrue(factory.getRedeliveryPolicy() instanceof QpidJMSDestinationRedeliveryPolicy);
+
+        // Copies are what each connection uses, they must keep the overrides.
+        QpidJMSDestinationPrefetchPolicy prefetch = (QpidJMSDestinationPrefetchPolicy) factory.getPrefetchPolicy().copy();
+        QpidJMSDestinationRedeliveryPolicy redelivery = (QpidJMSDestinationRedeliveryPolicy) factory.getRedeliveryPolicy().copy();
+
+        assertEquals(5000, prefetch.getConfiguredPrefetch(null, new JmsTopic("telemetry.metrics"), false, false));
+        assertEquals(50, prefetch.getConfiguredPrefetch(null, new JmsQueue("commands"), false, false));
+        assertEquals(50, ((JmsDefaultPrefetchPolicy) prefetch.getDefaultPolicy()).getQueuePrefetch());
+
+        JmsSession session = Mockito.mock(JmsSession.class);
+
+        assertTrue(factory.getPresettlePolicy().isProducerPresttled(session, new JmsTopic("telemetry.metrics")));
+        assertFalse(factory.getPresettlePolicy().isProducerPresttled(session, new JmsQueue("commands")));
+        assertFalse(factory.getPresettlePolicy().isProducerPresttled(session, null));
+
+        assertEquals(3, redelivery.getMaxRedeliveries(new JmsQueue("commands")));
+        assertEquals(JmsDefaultRedeliveryPolicy.DEFAULT_MAX_REDELIVERIES, redelivery.getMaxRedeliveries(new JmsQueue("other")));
+    }
+
+    private QpidJMSProperties.DestinationPolicy policy(String pattern) {
+        QpidJMSProperties.DestinationPolicy policy = policies.get(pattern);
+        if (policy == null) {
+            policy = new QpidJMSProperties.DestinationPolicy();
+            policies.put(pattern, policy);
+        }
+
+        return policy;
+    }
+}
@@ -0,0 +1,242 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.qpid.jms.spring.boot.autoconfigure;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import javax.jms.ConnectionFactory;
+import javax.jms.Message;
+import javax.jms.MessageListener;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.messaginghub.pooled.jms.JmsPoolConnectionFactory;
+import org.springframework.boot.autoconfigure.jms.JmsAutoConfiguration;
+import org.springframework.boot.test.util.EnvironmentTestUtils;
+import org.springframework.context.annotation.AnnotationConfigApplicationContext;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.jms.annotation.EnableJms;
+import org.springframework.jms.annotation.JmsListener;
+import org.springframework.jms.config.SimpleJmsListenerEndpoint;
+import org.springframework.jms.core.JmsTemplate;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+
+/**
+ * Test for the connection factories named under spring.qpidjms.factories.
+ */
+public class QpidJMSFactoriesTest {
+
+    private final AmqpTestBroker broker = new AmqpTestBroker();
+
+    private AnnotationConfigApplicationContext context;
+
+    @Before
+    public void setUp() throws Exception {
+        broker.start();
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        if (this.context != null) {
+            this.context.close();
+        }
+
+        broker.stop();
+    }
+
+    @Test
+    public void testNoNamedFactoriesByDefault() throws Exception {
+        load(EmptyConfiguration.class, "spring.qpidjms.remoteURL=" + broker.getConnectionURI());
+
+        assertEquals(1, this.context.getBeansOfType(ConnectionFactory.class).size());
+        assertEquals(1, this.context.getBeansOfType(JmsTemplate.class).size());
+    }
+
+    @Test
+    public void testNamedFactoriesConfiguredFromEnv() throws Exception {
+        load(EmptyConfiguration.class,
+             "spring.qpidjms.remoteURL=" + broker.getConnectionURI(),
+             "spring.qpidjms.factories.bulk.remoteURL=" + broker.getConnectionURI(),
+             "spring.qpidjms.factories.bulk.clientId=bulk",
+             "spring.qpidjms.factories.control.remote-url=" + broker.getConnectionURI(),
+             "spring.qpidjms.factories.control.listener.concurrency=2");
+
+        QpidJMSConnectionFactory bulk = this.context.getBean("bulkConnectionFactory", QpidJMSConnectionFactory.class);
+        QpidJMSConnectionFactory control = this.context.getBean("controlConnectionFactory", QpidJMSConnectionFactory.class);
+
+        assertNotSame(bulk, control);
+        assertEquals("bulk", bulk.getClientID());
+        assertNull(control.getClientID());
+
+        JmsTemplate bulkTemplate = this.context.getBean("bulkJmsTemplate", JmsTemplate.class);
+        assertSame(bulk, bulkTemplate.getConnectionFactory());
+
+        SimpleJmsListenerEndpoint endpoint = new SimpleJmsListenerEndpoint();
+        endpoint.setDestination("control");
+        endpoint.setMessageListener(new MessageListener() {
+
+            @Override
+            public void onMessage(Message message) {
+            }
+        });
+
+        QpidJMSMessageListenerContainer container = this.context
+            .getBean("controlJmsListenerContainerFactory", QpidJMSListenerContainerFactory.class)
+            .createListenerContainer(endpoint);
+        assertSame(control, container.getConnectionFactory());
+        assertEquals(2, container.getConcurrentConsumers());
+
+        // The default beans are still the ones injected without a qualifier.
+        assertSame(this.context.getBean("jmsConnectionFactory"), this.context.getBean(ConnectionFactory.class));
+        assertSame(this.context.getBean("jmsTemplate"), this.context.getBean(JmsTemplate.class));
+        assertSame(this.context.getBean("jmsConnectionFactory"), this.context.getBean(JmsTemplate.class).getConnectionFactory());
+    }
+
+    @Test(timeout = 60000)
+    public void testNamedFactoryTrafficUsesItsOwnConnections() throws Exception {
+        load(BulkListenerConfiguration.class,
+             "spring.qpidjms.remoteURL=" + broker.getConnectionURI(),
+             "spring.qpidjms.factories.bulk.remoteURL=" + broker.getConnectionURI(),
+             "spring.qpidjms.factories.control.remoteURL=" + broker.getConnectionURI());
+
+        this.context.getBean("bulkJmsTemplate", JmsTemplate.class).convertAndSend("bulk", "hello");
+
+        assertTrue(this.context.getBean(BulkListener.class).received.await(30, TimeUnit.SECONDS));
+
+        assertFalse(this.context.getBean("bulkConnectionFactory", QpidJMSConnectionFactory.class).openConnections().isEmpty());
+        assertTrue(this.context.getBean("controlConnectionFactory", QpidJMSConnectionFactory.class).openConnections().isEmpty());
+        assertTrue(this.context.getBean("jmsConnectionFactory", QpidJMSConnectionFactory.class).openConnections().isEmpty());
+    }
+
+    @Test(timeout = 60000)
+    public void testNamedFactoryRecordsToMetricsOfItsOwn() throws Exception {
+        String defaultURI = broker.getConnectionURI();
+        String bulkURI = defaultURI.replace("localhost", "127.0.0.1");
+
+        load(MeterRegistryConfiguration.class,
+             "spring.qpidjms.remoteURL=failover:(" + defaultURI + ")",
+             "spring.qpidjms.failover.warmStandby=true",
+             "spring.qpidjms.factories.bulk.remoteURL=" + bulkURI);
+
+        QpidJMSConnectionFactory defaultFactory = this.context.getBean("jmsConnectionFactory", QpidJMSConnectionFactory.class);
+        QpidJMSConnectionFactory bulk = this.context.getBean("bulkConnectionFactory", QpidJMSConnectionFactory.class);
+        QpidJMSMetrics metrics = this.context.getBean(QpidJMSMetrics.class);
+
+        assertTrue(defaultFactory.connectionListeners().contains(metrics));
+        assertTrue(defaultFactory.connectionListeners().contains(this.context.getBean(QpidJMSFailoverStandby.class)));
+
+        // The bulk factory neither moves the standby nor records to the default metrics.
+        assertEquals(1, bulk.connectionListeners().size());
+        assertTrue(bulk.connectionListeners().get(0) instanceof QpidJMSMetrics);
+        assertNotSame(metrics, bulk.connectionListeners().get(0));
+        assertSame(bulk.connectionListeners().get(0), bulk.sendMetrics());
+
+        this.context.getBean("bulkJmsTemplate", JmsTemplate.class).convertAndSend("bulk", "hello");
+
+        MeterRegistry registry = this.context.getBean(MeterRegistry.class);
+        assertEquals(1, registry.get(QpidJMSMetrics.PRODUCER_SEND)
+            .tags(QpidJMSMetrics.REMOTE_TAG, bulkURI, "destination", "bulk").timer().count());
+        assertNull(registry.find(QpidJMSMetrics.PRODUCER_SEND)
+            .tags(QpidJMSMetrics.REMOTE_TAG, "failover:(" + defaultURI + ")").timer());
+    }
+
+    @Test
+    public void testNamedFactoryPooledWithoutOptionalBeans() throws Exception {
+        load(EmptyConfiguration.class,
+             "spring.qpidjms.remoteURL=" + broker.getConnectionURI(),
+             "spring.qpidjms.factories.bulk.remoteURL=" + broker.getConnectionURI(),
+             "spring.qpidjms.factories.bulk.pool.enabled=true",
+             "spring.qpidjms.factories.bulk.pool.maxConnections=4",
+             "spring.qpidjms.factories.bulk.jmsTemplate=false",
+             "spring.qpidjms.factories.bulk.listenerContainerFactory=false");
+
+        JmsPoolConnectionFactory bulk = this.context.getBean("bulkConnectionFactory", JmsPoolConnectionFactory.class);
+        assertEquals(4, bulk.getMaxConnections());
+
+        assertFalse(this.context.containsBean("bulkJmsTemplate"));
+        assertFalse(this.context.containsBean("bulkJmsListenerContainerFactory"));
+        assertTrue(this.context.getBean(ConnectionFactory.class) instanceof QpidJMSConnectionFactory);
+    }
+
+    @Test
+    public void testNamedFactoryCannotReplaceExistingBean() throws Exception {
+        try {
+            load(EmptyConfiguration.class,
+                 "spring.qpidjms.remoteURL=" + broker.getConnectionURI(),
+                 "spring.qpidjms.factories.jms.remoteURL=" + broker.getConnectionURI());
+            fail("Should have rejected the factory name");
+        } catch (IllegalStateException ex) {
+            assertTrue(ex.getMessage().contains("jmsConnectionFactory"));
+        }
+    }
+
+    @Configuration
+    static class EmptyConfiguration {}
+
+    @Configuration
+    static class MeterRegistryConfiguration {
+
+        @Bean
+        public MeterRegistry meterRegistry() {
+            return new SimpleMeterRegistry();
+        }
+    }
+
+    @Configuration
+    @EnableJms
+    static class BulkListenerConfiguration {
+
+        @Bean
+        public BulkListener bulkListener() {
+            return new BulkListener();
+        }
+    }
+
+    static class BulkListener {
+
+        private final CountDownLatch received = new CountDownLatch(1);
+
+        @JmsListener(destination = "bulk", containerFactory = "bulkJmsListenerContainerFactory")
+        public void onMessage(String message) {
+            assertEquals("hello", message);
+            received.countDown();
+        }
+    }
+
+    private void load(Class<?> config, String... environment) {
+        AnnotationConfigApplicationContext applicationContext = new AnnotationConfigApplicationContext();
+        applicationContext.register(config);
+        applicationContext.register(QpidJMSAutoConfiguration.class, QpidJMSMetricsAutoConfiguration.class,
+                                    JmsAutoConfiguration.class, QpidJMSFactoriesAutoConfiguration.class);
+        EnvironmentTestUtils.addEnvironment(applicationContext, environment);
+        applicationContext.refresh();
+        this.context = applicationContext;
+    }
+}
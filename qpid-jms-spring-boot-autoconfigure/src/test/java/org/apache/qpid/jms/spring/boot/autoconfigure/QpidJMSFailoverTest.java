@@ -0,0 +1,357 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.qpid.jms.spring.boot.autoconfigure;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.net.URI;
+import java.nio.ByteBuffer;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+
+import javax.jms.Connection;
+import javax.jms.JMSException;
+import javax.jms.MessageProducer;
+import javax.jms.Session;
+import javax.net.ssl.SSLContext;
+
+import org.apache.qpid.jms.JmsConnectionFactory;
+import org.apache.qpid.jms.util.URISupport;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.springframework.boot.autoconfigure.jms.JmsAutoConfiguration;
+import org.springframework.boot.test.util.EnvironmentTestUtils;
+import org.springframework.context.annotation.AnnotationConfigApplicationContext;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.jms.support.JmsUtils;
+import org.springframework.test.util.ReflectionTestUtils;
+
+/**
+ * Test for the typed failover options and the warm standby connection.
+ */
+public class QpidJMSFailoverTest {
+
+    // ActiveMQ shares one transport factory per scheme, so the second broker in
+    // this JVM listens on the NIO variant to keep the two AMQP connectors apart.
+    private final AmqpTestBroker broker1 = new AmqpTestBroker("qpid-jms-spring-boot-test-1");
+    private final AmqpTestBroker broker2 = new AmqpTestBroker("qpid-jms-spring-boot-test-2", "amqp+nio");
+
+    private AnnotationConfigApplicationContext context;
+
+    @Before
+    public void setUp() throws Exception {
+        broker1.start();
+        broker2.start();
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        if (this.context != null) {
+            this.context.close();
+        }
+
+        broker1.stop();
+        broker2.stop();
+    }
+
+    @Test
+    public void testFailoverOptionsAppliedToRemoteURL() throws Exception {
+        load(EmptyConfiguration.class,
+             "spring.qpidjms.remoteURL=failover:(amqp://host1:5672,amqp://host2:5672)?failover.maxReconnectAttempts=3",
+             "spring.qpidjms.failover.initialReconnectDelay=0",
+             "spring.qpidjms.failover.reconnectDelay=10",
+             "spring.qpidjms.failover.maxReconnectDelay=500",
+             "spring.qpidjms.failover.reconnectBackOffMultiplier=1.5",
+             "spring.qpidjms.failover.maxReconnectAttempts=20");
+
+        JmsConnectionFactory connectionFactory = this.context.getBean(JmsConnectionFactory.class);
+
+        URISupport.CompositeData composite = URISupport.parseComposite(new URI(connectionFactory.getRemoteURI()));
+        Map<String, String> options = composite.getParameters();
+
+        assertEquals(2, composite.getComponents().size());
+        assertEquals("0", options.get("failover.initialReconnectDelay"));
+        assertEquals("10", options.get("failover.reconnectDelay"));
+        assertEquals("500", options.get("failover.maxReconnectDelay"));
+        assertEquals("1.5", options.get("failover.reconnectBackOffMultiplier"));
+        assertEquals("20", options.get("failover.maxReconnectAttempts"));
+        assertTrue(this.context.getBeansOfType(QpidJMSFailoverStandby.class).isEmpty());
+    }
+
+    @Test
+    public void testFailoverOptionsNotAppliedToPlainRemoteURL() {
+        load(EmptyConfiguration.class,
+             "spring.qpidjms.remoteURL=amqp://host1:5672",
+             "spring.qpidjms.failover.reconnectDelay=10",
+             "spring.qpidjms.failover.warmStandby=true");
+
+        JmsConnectionFactory connectionFactory = this.context.getBean(JmsConnectionFactory.class);
+        QpidJMSFailoverStandby standby = this.context.getBean(QpidJMSFailoverStandby.class);
+
+        assertEquals("amqp://host1:5672", connectionFactory.getRemoteURI());
+        assertTrue(standby.getPeers().isEmpty());
+        assertNull(standby.getStandbyURI());
+    }
+
+    @Test
+    public void testStandbyPeersCarrySharedOptionsButNoClientId() throws Exception {
+        QpidJMSFailoverStandby standby = new QpidJMSFailoverStandby(
+            "failover:(amqp://host1:5672?amqp.idleTimeout=5000,amqp://host2:5672)" +
+            "?jms.clientID=app&jms.connectTimeout=2000&failover.nested.amqp.vhost=test", null, null);
+
+        try {
+            assertEquals(2, standby.getPeers().size());
+
+            Map<String, String> first = URISupport.parseParameters(standby.getPeers().get(0));
+            assertEquals("5000", first.get("amqp.idleTimeout"));
+            assertEquals("test", first.get("amqp.vhost"));
+            assertEquals("2000", first.get("jms.connectTimeout"));
+            assertFalse(first.containsKey("jms.clientID"));
+
+            Map<String, String> second = URISupport.parseParameters(standby.getPeers().get(1));
+            assertEquals("test", second.get("amqp.vhost"));
+            assertFalse(second.containsKey("amqp.idleTimeout"));
+        } finally {
+            standby.destroy();
+        }
+    }
+
+    @Test(timeout = 60000)
+    public void testRecoversWithinOneSecondWhenPeerStopsMidStream() throws Exception {
+        load(EmptyConfiguration.class,
+             "spring.qpidjms.remoteURL=failover:(" + broker1.getConnectionURI() + "," + broker2.getConnectionURI() + ")",
+             "spring.qpidjms.clientId=failover-test",
+             "spring.qpidjms.failover.initialReconnectDelay=0",
+             "spring.qpidjms.failover.reconnectDelay=10",
+             "spring.qpidjms.failover.maxReconnectDelay=100",
+             "spring.qpidjms.failover.warmStandby=true");
+
+        JmsConnectionFactory connectionFactory = this.context.getBean(JmsConnectionFactory.class);
+        QpidJMSFailoverStandby standby = this.context.getBean(QpidJMSFailoverStandby.class);
+
+        assertNull(standby.getStandbyURI());
+
+        final Connection connection = connectionFactory.createConnection();
+        try {
+            connection.start();
+
+            // The standby follows the established connection to the next peer.
+            for (int i = 0; i < 100 && standby.getStandbyURI() == null; ++i) {
+                TimeUnit.MILLISECONDS.sleep(50);
+            }
+
+            assertEquals(new URI(broker2.getConnectionURI()).getPort(), standby.getStandbyURI().getPort());
+            assertEquals(1, broker2.getConnectionsOpened());
+
+            // The quick recovery comes from the reconnect delays, what the standby adds
+            // to a failover is checked by testFailoverResumesTlsSessionOfSecureStandby.
+            final AtomicLong lastSend = new AtomicLong();
+            final AtomicReference<Throwable> failure = new AtomicReference<>();
+            final CountDownLatch streaming = new CountDownLatch(10);
+            final CountDownLatch done = new CountDownLatch(1);
+
+            Thread sender = new Thread(new Runnable() {
+
+                @Override
+                public void run() {
+                    Session session = null;
+                    MessageProducer producer = null;
+
+                    while (done.getCount() > 0) {
+                        try {
+                            if (producer == null) {
+                                session = connection.createSession(false, Session.AUTO_ACKNOWLEDGE);
+                                producer = session.createProducer(session.createQueue("failover"));
+                            }
+
+                            producer.send(session.createTextMessage("message"));
+                            lastSend.set(System.nanoTime());
+                            streaming.countDown();
+                        } catch (JMSException ex) {
+                            // A stopping broker may fail the send that was in flight
+                            // on its side, the application retries on a new session.
+                            JmsUtils.closeSession(session);
+                            producer = null;
+                        } catch (Throwable error) {
+                            failure.set(error);
+                            return;
+                        }
+                    }
+                }
+            });
+            sender.start();
+
+            assertTrue(streaming.await(10, TimeUnit.SECONDS));
+
+            broker1.stop();
+            long stopped = System.nanoTime();
+
+            while (lastSend.get() < stopped && failure.get() == null &&
+                   System.nanoTime() - stopped < TimeUnit.SECONDS.toNanos(10)) {
+                TimeUnit.MILLISECONDS.sleep(5);
+            }
+
+            done.countDown();
+            sender.join(10000);
+
+            assertNull(failure.get());
+            assertTrue("Sends did not resume on the standby peer", lastSend.get() > stopped);
+            assertTrue("Sends took " + TimeUnit.NANOSECONDS.toMillis(lastSend.get() - stopped) + " ms to resume",
+                       lastSend.get() - stopped < TimeUnit.SECONDS.toNanos(1));
+            assertTrue(broker2.getQueueSize("failover") > 0);
+        } finally {
+            connection.close();
+        }
+    }
+
+    @Test(timeout = 60000)
+    public void testSecureStandbySharesSslContextOfConnections() throws Exception {
+        AmqpTestBroker sslBroker1 = new AmqpTestBroker("qpid-jms-spring-boot-test-ssl-1", "amqp+ssl");
+        AmqpTestBroker sslBroker2 = new AmqpTestBroker("qpid-jms-spring-boot-test-ssl-2", "amqp+nio+ssl");
+        sslBroker1.start();
+        sslBroker2.start();
+        try {
+            // The test broker predates TLS 1.3 and fails some of its handshakes.
+            load(EmptyConfiguration.class,
+                 "spring.qpidjms.remoteURL=failover:(" + sslBroker1.getConnectionURI() + "," + sslBroker2.getConnectionURI() +
+                     ")?failover.nested.transport.enabledProtocols=TLSv1.2",
+                 "spring.qpidjms.ssl.enabled=true",
+                 "spring.qpidjms.ssl.trustStoreLocation=classpath:" + AmqpTestBroker.CLIENT_TRUSTSTORE,
+                 "spring.qpidjms.ssl.trustStorePassword=" + AmqpTestBroker.STORE_PASSWORD,
+                 "spring.qpidjms.failover.warmStandby=true");
+
+            JmsConnectionFactory connectionFactory = this.context.getBean(JmsConnectionFactory.class);
+            QpidJMSFailoverStandby standby = this.context.getBean(QpidJMSFailoverStandby.class);
+
+            SSLContext sslContext = standby.getSslContext();
+            assertNotNull(sslContext);
+            assertSame(sslContext, ReflectionTestUtils.getField(connectionFactory, "sslContext"));
+
+            Connection connection = connectionFactory.createConnection();
+            try {
+                connection.start();
+
+                // The standby only trusts the broker through the shared context's trust store.
+                for (int i = 0; i < 100 && standby.getStandbyURI() == null; ++i) {
+                    TimeUnit.MILLISECONDS.sleep(50);
+                }
+
+                assertEquals(new URI(sslBroker2.getConnectionURI()).getPort(), standby.getStandbyURI().getPort());
+                assertEquals(1, sslBroker2.getConnectionsOpened());
+                assertEquals(2, Collections.list(sslContext.getClientSessionContext().getIds()).size());
+            } finally {
+                connection.close();
+            }
+        } finally {
+            sslBroker1.stop();
+            sslBroker2.stop();
+        }
+    }
+
+    @Test(timeout = 60000)
+    public void testFailoverResumesTlsSessionOfSecureStandby() throws Exception {
+        assertTrue("Failover with a standby did a full TLS handshake", failoverResumesTlsSession(true));
+        assertFalse("Failover without a standby resumed a TLS session", failoverResumesTlsSession(false));
+    }
+
+    @Configuration
+    static class EmptyConfiguration {}
+
+    private boolean failoverResumesTlsSession(boolean warmStandby) throws Exception {
+        AmqpTestBroker sslBroker1 = new AmqpTestBroker("qpid-jms-spring-boot-test-ssl-1", "amqp+ssl");
+        AmqpTestBroker sslBroker2 = new AmqpTestBroker("qpid-jms-spring-boot-test-ssl-2", "amqp+nio+ssl");
+        sslBroker1.start();
+        sslBroker2.start();
+        try {
+            load(EmptyConfiguration.class,
+                 "spring.qpidjms.remoteURL=failover:(" + sslBroker1.getConnectionURI() + "," + sslBroker2.getConnectionURI() +
+                     ")?failover.nested.transport.enabledProtocols=TLSv1.2",
+                 "spring.qpidjms.ssl.enabled=true",
+                 "spring.qpidjms.ssl.trustStoreLocation=classpath:" + AmqpTestBroker.CLIENT_TRUSTSTORE,
+                 "spring.qpidjms.ssl.trustStorePassword=" + AmqpTestBroker.STORE_PASSWORD,
+                 "spring.qpidjms.failover.initialReconnectDelay=0",
+                 "spring.qpidjms.failover.reconnectDelay=10",
+                 "spring.qpidjms.failover.warmStandby=" + warmStandby);
+
+            JmsConnectionFactory connectionFactory = this.context.getBean(JmsConnectionFactory.class);
+            SSLContext sslContext = (SSLContext) ReflectionTestUtils.getField(connectionFactory, "sslContext");
+
+            Connection connection = connectionFactory.createConnection();
+            try {
+                connection.start();
+
+                if (warmStandby) {
+                    QpidJMSFailoverStandby standby = this.context.getBean(QpidJMSFailoverStandby.class);
+                    for (int i = 0; i < 100 && standby.getStandbyURI() == null; ++i) {
+                        TimeUnit.MILLISECONDS.sleep(50);
+                    }
+                    assertNotNull(standby.getStandbyURI());
+                }
+
+                Set<ByteBuffer> sessions = getSessionIds(sslContext);
+
+                sslBroker1.stop();
+
+                // The session is only created once the connection failed over.
+                Session session = connection.createSession(false, Session.AUTO_ACKNOWLEDGE);
+                session.createProducer(session.createQueue("failover")).send(session.createTextMessage("message"));
+                assertEquals(1, sslBroker2.getQueueSize("failover"));
+
+                // A resumed session reuses the ID cached from the standby, while the
+                // session of the stopped broker may be dropped from the cache.
+                return sessions.containsAll(getSessionIds(sslContext));
+            } finally {
+                connection.close();
+            }
+        } finally {
+            this.context.close();
+            this.context = null;
+
+            sslBroker1.stop();
+            sslBroker2.stop();
+        }
+    }
+
+    private static Set<ByteBuffer> getSessionIds(SSLContext sslContext) {
+        Set<ByteBuffer> ids = new HashSet<>();
+        for (byte[] id : Collections.list(sslContext.getClientSessionContext().getIds())) {
+            ids.add(ByteBuffer.wrap(id));
+        }
+        return ids;
+    }
+
+    private void load(Class<?> config, String... environment) {
+        AnnotationConfigApplicationContext applicationContext = new AnnotationConfigApplicationContext();
+        applicationContext.register(config);
+        applicationContext.register(QpidJMSAutoConfiguration.class, JmsAutoConfiguration.class);
+        EnvironmentTestUtils.addEnvironment(applicationContext, environment);
+        applicationContext.refresh();
+        this.context = applicationContext;
+    }
+}
@@ -0,0 +1,408 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.qpid.jms.spring.boot.autoconfigure;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import javax.jms.ConnectionFactory;
+import javax.jms.JMSException;
+import javax.jms.Message;
+import javax.jms.MessageListener;
+import javax.jms.Session;
+import javax.jms.TextMessage;
+
+import org.apache.qpid.jms.JmsConnectionFactory;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.autoconfigure.jms.JmsAutoConfiguration;
+import org.springframework.boot.test.util.EnvironmentTestUtils;
+import org.springframework.context.annotation.AnnotationConfigApplicationContext;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.jms.annotation.EnableJms;
+import org.springframework.jms.annotation.JmsListener;
+import org.springframework.jms.config.JmsListenerEndpointRegistry;
+import org.springframework.jms.config.SimpleJmsListenerEndpoint;
+import org.springframework.jms.connection.SingleConnectionFactory;
+import org.springframework.jms.core.JmsTemplate;
+
+/**
+ * Test for the coalesced client acknowledgements of the Qpid JMS listener container.
+ */
+public class QpidJMSListenerAckTest {
+
+    private static final int MESSAGE_COUNT = 25;
+
+    private final AmqpTestBroker broker = new AmqpTestBroker();
+
+    private AnnotationConfigApplicationContext context;
+
+    @Before
+    public void setUp() throws Exception {
+        broker.start();
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        if (this.context != null) {
+            this.context.close();
+        }
+
+        broker.stop();
+    }
+
+    @Test
+    public void testAckConfiguredFromEnv() {
+        load(EmptyConfiguration.class,
+             "spring.qpidjms.ack.enabled=true",
+             "spring.qpidjms.ack.maxPending=50",
+             "spring.qpidjms.ack.flushInterval=250");
+
+        QpidJMSListenerContainerFactory factory = this.context.getBean(
+            QpidJMSListenerContainerConfiguration.LISTENER_CONTAINER_FACTORY_BEAN_NAME, QpidJMSListenerContainerFactory.class);
+
+        SimpleJmsListenerEndpoint endpoint = new SimpleJmsListenerEndpoint();
+        endpoint.setId("configured");
+        endpoint.setDestination("configured");
+        endpoint.setMessageListener(new MessageListener() {
+
+            @Override
+            public void onMessage(Message message) {
+            }
+        });
+
+        QpidJMSMessageListenerContainer container = factory.createListenerContainer(endpoint);
+
+        assertEquals(Session.CLIENT_ACKNOWLEDGE, container.getSessionAcknowledgeMode());
+        assertEquals(50, container.getMaxPendingAcknowledgements());
+        assertEquals(250, container.getAcknowledgeFlushInterval());
+    }
+
+    @Test
+    public void testAckDisabledByDefault() {
+        load(EmptyConfiguration.class);
+
+        QpidJMSListenerContainerFactory factory = this.context.getBean(
+            QpidJMSListenerContainerConfiguration.LISTENER_CONTAINER_FACTORY_BEAN_NAME, QpidJMSListenerContainerFactory.class);
+
+        SimpleJmsListenerEndpoint endpoint = new SimpleJmsListenerEndpoint();
+        endpoint.setId("default");
+        endpoint.setDestination("default");
+        endpoint.setMessageListener(new MessageListener() {
+
+            @Override
+            public void onMessage(Message message) {
+            }
+        });
+
+        QpidJMSMessageListenerContainer container = factory.createListenerContainer(endpoint);
+
+        assertEquals(Session.AUTO_ACKNOWLEDGE, container.getSessionAcknowledgeMode());
+        assertEquals(1, container.getMaxPendingAcknowledgements());
+    }
+
+    @Test(timeout = 60000)
+    public void testAcknowledgedWhenMaxPendingReached() throws Exception {
+        load(AckListenerConfiguration.class,
+             "spring.qpidjms.remoteURL=" + broker.getConnectionURI(),
+             "spring.qpidjms.ack.enabled=true",
+             "spring.qpidjms.ack.maxPending=10",
+             "spring.qpidjms.ack.flushInterval=60000",
+             "spring.qpidjms.listener.autoStartup=false");
+
+        AckListener listener = this.context.getBean(AckListener.class);
+
+        sendMessages();
+        startListener();
+
+        assertTrue("Not all messages were handled", listener.received.await(30, TimeUnit.SECONDS));
+
+        // Two acknowledgements of ten messages each, the remainder stays pending
+        // until the flush interval passes.
+        awaitQueueSize(MESSAGE_COUNT % 10);
+        TimeUnit.MILLISECONDS.sleep(200);
+        assertEquals(MESSAGE_COUNT % 10, broker.getQueueSize("ack"));
+    }
+
+    @Test(timeout = 60000)
+    public void testPendingAcknowledgedAfterFlushInterval() throws Exception {
+        load(AckListenerConfiguration.class,
+             "spring.qpidjms.remoteURL=" + broker.getConnectionURI(),
+             "spring.qpidjms.ack.enabled=true",
+             "spring.qpidjms.ack.maxPending=1000",
+             "spring.qpidjms.ack.flushInterval=2000",
+             "spring.qpidjms.listener.autoStartup=false");
+
+        AckListener listener = this.context.getBean(AckListener.class);
+
+        sendMessages();
+        startListener();
+
+        assertTrue("Not all messages were handled", listener.received.await(30, TimeUnit.SECONDS));
+        assertEquals(MESSAGE_COUNT, broker.getQueueSize("ack"));
+
+        awaitQueueSize(0);
+    }
+
+    @Test(timeout = 60000)
+    public void testPendingAcknowledgedAfterFlushIntervalWithRoutingConnectionFactory() throws Exception {
+        load(AckListenerConfiguration.class,
+             "spring.qpidjms.brokers[0].remoteURL=" + broker.getConnectionURI(),
+             "spring.qpidjms.ack.enabled=true",
+             "spring.qpidjms.ack.maxPending=1000",
+             "spring.qpidjms.ack.flushInterval=500",
+             "spring.qpidjms.listener.autoStartup=false");
+
+        assertTrue(this.context.getBean(ConnectionFactory.class) instanceof QpidJMSRoutingConnectionFactory);
+
+        AckListener listener = this.context.getBean(AckListener.class);
+
+        sendMessages();
+        startListener();
+
+        assertTrue("Not all messages were handled", listener.received.await(30, TimeUnit.SECONDS));
+
+        awaitQueueSize(0);
+    }
+
+    @Test(timeout = 60000)
+    public void testPendingAcknowledgedOnShutdown() throws Exception {
+        load(AckListenerConfiguration.class,
+             "spring.qpidjms.remoteURL=" + broker.getConnectionURI(),
+             "spring.qpidjms.ack.enabled=true",
+             "spring.qpidjms.ack.maxPending=1000",
+             "spring.qpidjms.ack.flushInterval=60000",
+             "spring.qpidjms.listener.autoStartup=false");
+
+        AckListener listener = this.context.getBean(AckListener.class);
+
+        sendMessages();
+        startListener();
+
+        assertTrue("Not all messages were handled", listener.received.await(30, TimeUnit.SECONDS));
+        assertEquals(MESSAGE_COUNT, broker.getQueueSize("ack"));
+
+        this.context.close();
+        this.context = null;
+
+        assertEquals(0, broker.getQueueSize("ack"));
+    }
+
+    @Test(timeout = 60000)
+    public void testPendingAcknowledgedWhenScaledConsumerRemoved() throws Exception {
+        final int messageCount = 200;
+
+        load(ScalingAckListenerConfiguration.class,
+             "spring.qpidjms.remoteURL=" + broker.getConnectionURI(),
+             "spring.qpidjms.prefetchPolicy.all=5",
+             "spring.qpidjms.ack.enabled=true",
+             "spring.qpidjms.ack.maxPending=1000",
+             "spring.qpidjms.ack.flushInterval=60000",
+             "spring.qpidjms.listener.concurrency=1",
+             "spring.qpidjms.listener.maxConcurrency=2",
+             "spring.qpidjms.listener.backlogThreshold=2",
+             "spring.qpidjms.listener.monitorInterval=20",
+             "spring.qpidjms.listener.idleChecksBeforeScaleDown=5",
+             "spring.qpidjms.listener.autoStartup=false");
+
+        ScalingAckListener listener = this.context.getBean(ScalingAckListener.class);
+        QpidJMSMessageListenerContainer container = (QpidJMSMessageListenerContainer)
+            this.context.getBean(JmsListenerEndpointRegistry.class).getListenerContainer("ack");
+
+        JmsTemplate jmsTemplate = this.context.getBean(JmsTemplate.class);
+        for (int i = 0; i < messageCount; ++i) {
+            jmsTemplate.convertAndSend("ack", "message-" + i);
+        }
+
+        startListener();
+
+        while (listener.received.get() < messageCount || container.getActiveConsumerCount() > 1) {
+            TimeUnit.MILLISECONDS.sleep(20);
+        }
+
+        assertTrue("Container did not scale up", listener.maxConsumers > 1);
+
+        // The processed messages of the removed consumer were acknowledged when its
+        // session closed, so none of them reach the remaining consumer again.
+        TimeUnit.MILLISECONDS.sleep(500);
+        assertEquals(0, listener.redelivered.get());
+        assertEquals(messageCount, listener.received.get());
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testAckRequiresQpidConnectionFactory() throws Exception {
+        QpidJMSMessageListenerContainer container = new QpidJMSMessageListenerContainer();
+        container.setConnectionFactory(new SingleConnectionFactory(new JmsConnectionFactory(broker.getConnectionURI())));
+        container.setDestinationName("unsupported");
+        container.setSessionAcknowledgeMode(Session.CLIENT_ACKNOWLEDGE);
+        container.setMaxPendingAcknowledgements(10);
+        container.setMessageListener(new MessageListener() {
+
+            @Override
+            public void onMessage(Message message) {
+            }
+        });
+
+        container.afterPropertiesSet();
+    }
+
+    @Test(timeout = 60000)
+    public void testFailedMessageRedeliversPendingMessages() throws Exception {
+        load(FailingListenerConfiguration.class,
+             "spring.qpidjms.remoteURL=" + broker.getConnectionURI(),
+             "spring.qpidjms.ack.enabled=true",
+             "spring.qpidjms.ack.maxPending=100",
+             "spring.qpidjms.ack.flushInterval=200",
+             "spring.qpidjms.listener.autoStartup=false");
+
+        FailingListener listener = this.context.getBean(FailingListener.class);
+
+        sendMessages();
+        startListener();
+
+        assertTrue("Messages were not redelivered", listener.redelivered.await(30, TimeUnit.SECONDS));
+
+        awaitQueueSize(0);
+    }
+
+    private void sendMessages() {
+        JmsTemplate jmsTemplate = this.context.getBean(JmsTemplate.class);
+        for (int i = 0; i < MESSAGE_COUNT; ++i) {
+            jmsTemplate.convertAndSend("ack", "message-" + i);
+        }
+    }
+
+    private void startListener() {
+        this.context.getBean(JmsListenerEndpointRegistry.class).getListenerContainer("ack").start();
+    }
+
+    private void awaitQueueSize(long size) throws Exception {
+        while (broker.getQueueSize("ack") != size) {
+            TimeUnit.MILLISECONDS.sleep(20);
+        }
+    }
+
+    @Configuration
+    static class EmptyConfiguration {}
+
+    @Configuration
+    @EnableJms
+    static class AckListenerConfiguration {
+
+        @Bean
+        public AckListener ackListener() {
+            return new AckListener();
+        }
+    }
+
+    static class AckListener {
+
+        private final CountDownLatch received = new CountDownLatch(MESSAGE_COUNT);
+
+        @JmsListener(id = "ack", destination = "ack", containerFactory = "qpidJmsListenerContainerFactory")
+        public void onMessage(String message) {
+            received.countDown();
+        }
+    }
+
+    @Configuration
+    @EnableJms
+    static class ScalingAckListenerConfiguration {
+
+        @Bean
+        public ScalingAckListener scalingAckListener() {
+            return new ScalingAckListener();
+        }
+    }
+
+    static class ScalingAckListener {
+
+        private final AtomicInteger received = new AtomicInteger();
+        private final AtomicInteger redelivered = new AtomicInteger();
+        private volatile int maxConsumers;
+
+        private JmsListenerEndpointRegistry registry;
+
+        @Autowired
+        public void setRegistry(JmsListenerEndpointRegistry registry) {
+            this.registry = registry;
+        }
+
+        @JmsListener(id = "ack", destination = "ack", containerFactory = "qpidJmsListenerContainerFactory")
+        public void onMessage(Message message) throws Exception {
+            QpidJMSMessageListenerContainer container =
+                (QpidJMSMessageListenerContainer) registry.getListenerContainer("ack");
+            maxConsumers = Math.max(maxConsumers, container.getActiveConsumerCount());
+
+            if (message.getJMSRedelivered()) {
+                redelivered.incrementAndGet();
+            }
+
+            Thread.sleep(2);
+            received.incrementAndGet();
+        }
+    }
+
+    @Configuration
+    @EnableJms
+    static class FailingListenerConfiguration {
+
+        @Bean
+        public FailingListener failingListener() {
+            return new FailingListener();
+        }
+    }
+
+    static class FailingListener {
+
+        private final CountDownLatch redelivered = new CountDownLatch(1);
+
+        private volatile boolean failed;
+
+        @JmsListener(id = "ack", destination = "ack", containerFactory = "qpidJmsListenerContainerFactory")
+        public void onMessage(Message message) throws JMSException {
+            String text = ((TextMessage) message).getText();
+            if (!failed && text.equals("message-5")) {
+                failed = true;
+                throw new IllegalStateException("Database unavailable");
+            }
+
+            // The messages processed before the failure were still pending and
+            // are delivered again after the session recovers.
+            if (failed && text.equals("message-0")) {
+                assertTrue(message.getJMSRedelivered());
+                redelivered.countDown();
+            }
+        }
+    }
+
+    private void load(Class<?> config, String... environment) {
+        AnnotationConfigApplicationContext applicationContext = new AnnotationConfigApplicationContext();
+        applicationContext.register(config);
+        applicationContext.register(QpidJMSAutoConfiguration.class, JmsAutoConfiguration.class);
+        EnvironmentTestUtils.addEnvironment(applicationContext, environment);
+        applicationContext.refresh();
+        this.context = applicationContext;
+    }
+}
@@ -0,0 +1,341 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.qpid.jms.spring.boot.autoconfigure;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import javax.jms.ConnectionFactory;
+import javax.jms.JMSException;
+import javax.jms.Message;
+import javax.jms.MessageListener;
+import javax.jms.TextMessage;
+
+import org.apache.qpid.jms.JmsConnectionFactory;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.springframework.boot.autoconfigure.jms.JmsAutoConfiguration;
+import org.springframework.boot.test.util.EnvironmentTestUtils;
+import org.springframework.context.annotation.AnnotationConfigApplicationContext;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.jms.annotation.EnableJms;
+import org.springframework.jms.annotation.JmsListener;
+import org.springframework.jms.config.JmsListenerEndpointRegistry;
+import org.springframework.jms.config.SimpleJmsListenerEndpoint;
+import org.springframework.jms.connection.SingleConnectionFactory;
+import org.springframework.jms.core.JmsTemplate;
+
+/**
+ * Test for the transaction batching of the Qpid JMS listener container.
+ */
+public class QpidJMSListenerBatchTest {
+
+    private static final int MESSAGE_COUNT = 25;
+
+    private final AmqpTestBroker broker = new AmqpTestBroker();
+
+    private AnnotationConfigApplicationContext context;
+
+    @Before
+    public void setUp() throws Exception {
+        broker.start();
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        if (this.context != null) {
+            this.context.close();
+        }
+
+        broker.stop();
+    }
+
+    @Test
+    public void testBatchingConfiguredFromEnv() {
+        load(EmptyConfiguration.class,
+             "spring.qpidjms.listener.batchSize=50",
+             "spring.qpidjms.listener.batchTimeout=250");
+
+        QpidJMSListenerContainerFactory factory = this.context.getBean(
+            QpidJMSListenerContainerConfiguration.LISTENER_CONTAINER_FACTORY_BEAN_NAME, QpidJMSListenerContainerFactory.class);
+
+        SimpleJmsListenerEndpoint endpoint = new SimpleJmsListenerEndpoint();
+        endpoint.setId("configured");
+        endpoint.setDestination("configured");
+        endpoint.setMessageListener(new MessageListener() {
+
+            @Override
+            public void onMessage(Message message) {
+            }
+        });
+
+        QpidJMSMessageListenerContainer container = factory.createListenerContainer(endpoint);
+
+        assertEquals(50, container.getBatchSize());
+        assertEquals(250, container.getBatchTimeout());
+        assertTrue(container.isSessionTransacted());
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testBatchingRequiresTransactedSession() throws Exception {
+        QpidJMSMessageListenerContainer container = new QpidJMSMessageListenerContainer();
+        container.setConnectionFactory(new JmsConnectionFactory(broker.getConnectionURI()));
+        container.setDestinationName("untransacted");
+        container.setBatchSize(10);
+        container.setMessageListener(new MessageListener() {
+
+            @Override
+            public void onMessage(Message message) {
+            }
+        });
+
+        container.afterPropertiesSet();
+    }
+
+    @Test(timeout = 60000)
+    public void testListMethodReceivesBatchesBySizeAndTimeout() throws Exception {
+        load(BatchListenerConfiguration.class,
+             "spring.qpidjms.remoteURL=" + broker.getConnectionURI(),
+             "spring.qpidjms.listener.batchSize=10",
+             "spring.qpidjms.listener.batchTimeout=200",
+             "spring.qpidjms.listener.autoStartup=false");
+
+        BatchListener listener = this.context.getBean(BatchListener.class);
+
+        sendMessages("batch");
+        startListener("batch");
+
+        assertTrue("Not all messages were handled", listener.received.await(30, TimeUnit.SECONDS));
+
+        // Two full batches, the remainder is completed by the timeout.
+        assertEquals(MESSAGE_COUNT, sum(listener.batchSizes));
+        assertEquals(Arrays.asList(10, 10, 5), listener.batchSizes);
+
+        awaitEmpty("batch");
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testBatchingRequiresQpidConnectionFactory() throws Exception {
+        QpidJMSMessageListenerContainer container = new QpidJMSMessageListenerContainer();
+        container.setConnectionFactory(new SingleConnectionFactory(new JmsConnectionFactory(broker.getConnectionURI())));
+        container.setDestinationName("unsupported");
+        container.setSessionTransacted(true);
+        container.setBatchSize(10);
+        container.setMessageListener(new MessageListener() {
+
+            @Override
+            public void onMessage(Message message) {
+            }
+        });
+
+        container.afterPropertiesSet();
+    }
+
+    @Test(timeout = 60000)
+    public void testBatchTimeoutWithRoutingConnectionFactory() throws Exception {
+        load(BatchListenerConfiguration.class,
+             "spring.qpidjms.brokers[0].remoteURL=" + broker.getConnectionURI(),
+             "spring.qpidjms.listener.batchSize=10",
+             "spring.qpidjms.listener.batchTimeout=200",
+             "spring.qpidjms.listener.autoStartup=false");
+
+        assertTrue(this.context.getBean(ConnectionFactory.class) instanceof QpidJMSRoutingConnectionFactory);
+
+        BatchListener listener = this.context.getBean(BatchListener.class);
+
+        sendMessages("batch");
+        startListener("batch");
+
+        assertTrue("Not all messages were handled", listener.received.await(30, TimeUnit.SECONDS));
+        assertEquals(Arrays.asList(10, 10, 5), listener.batchSizes);
+
+        awaitEmpty("batch");
+    }
+
+    @Test(timeout = 60000)
+    public void testFailedBatchRolledBackAndRedelivered() throws Exception {
+        load(FailingListenerConfiguration.class,
+             "spring.qpidjms.remoteURL=" + broker.getConnectionURI(),
+             "spring.qpidjms.listener.batchSize=" + MESSAGE_COUNT,
+             "spring.qpidjms.listener.batchTimeout=5000",
+             "spring.qpidjms.listener.autoStartup=false");
+
+        FailingBatchListener listener = this.context.getBean(FailingBatchListener.class);
+
+        sendMessages("failing");
+        startListener("failing");
+
+        assertTrue("Batch was not redelivered", listener.redelivered.await(30, TimeUnit.SECONDS));
+        assertEquals(listener.first, listener.second);
+        assertEquals(MESSAGE_COUNT, listener.second.size());
+        assertTrue(listener.secondRedelivered);
+
+        awaitEmpty("failing");
+    }
+
+    @Test(timeout = 60000)
+    public void testSingleMessageListenerCommitsPerBatch() throws Exception {
+        load(SingleListenerConfiguration.class,
+             "spring.qpidjms.remoteURL=" + broker.getConnectionURI(),
+             "spring.qpidjms.listener.batchSize=10",
+             "spring.qpidjms.listener.batchTimeout=100");
+
+        SingleListener listener = this.context.getBean(SingleListener.class);
+
+        QpidJMSMessageListenerContainer container = (QpidJMSMessageListenerContainer)
+            this.context.getBean(JmsListenerEndpointRegistry.class).getListenerContainer("single");
+        assertEquals(10, container.getBatchSize());
+
+        sendMessages("single");
+
+        assertTrue("Not all messages were handled", listener.received.await(30, TimeUnit.SECONDS));
+        awaitEmpty("single");
+    }
+
+    private void sendMessages(String destination) {
+        JmsTemplate jmsTemplate = this.context.getBean(JmsTemplate.class);
+        for (int i = 0; i < MESSAGE_COUNT; ++i) {
+            jmsTemplate.convertAndSend(destination, "message-" + i);
+        }
+    }
+
+    private void startListener(String id) {
+        this.context.getBean(JmsListenerEndpointRegistry.class).getListenerContainer(id).start();
+    }
+
+    private void awaitEmpty(String destination) throws Exception {
+        while (broker.getQueueSize(destination) > 0) {
+            TimeUnit.MILLISECONDS.sleep(20);
+        }
+    }
+
+    private static int sum(List<Integer> values) {
+        int total = 0;
+        for (int value : values) {
+            total += value;
+        }
+
+        return total;
+    }
+
+    private static List<String> texts(List<Message> messages) throws JMSException {
+        List<String> texts = new ArrayList<>();
+        for (Message message : messages) {
+            texts.add(((TextMessage) message).getText());
+        }
+
+        return texts;
+    }
+
+    @Configuration
+    static class EmptyConfiguration {}
+
+    @Configuration
+    @EnableJms
+    static class BatchListenerConfiguration {
+
+        @Bean
+        public BatchListener batchListener() {
+            return new BatchListener();
+        }
+    }
+
+    static class BatchListener {
+
+        private final CountDownLatch received = new CountDownLatch(MESSAGE_COUNT);
+        private final List<Integer> batchSizes = Collections.synchronizedList(new ArrayList<Integer>());
+
+        @JmsListener(id = "batch", destination = "batch", containerFactory = "qpidJmsListenerContainerFactory")
+        public void onMessages(List<Message> messages) {
+            batchSizes.add(messages.size());
+            for (int i = 0; i < messages.size(); ++i) {
+                received.countDown();
+            }
+        }
+    }
+
+    @Configuration
+    @EnableJms
+    static class FailingListenerConfiguration {
+
+        @Bean
+        public FailingBatchListener failingBatchListener() {
+            return new FailingBatchListener();
+        }
+    }
+
+    static class FailingBatchListener {
+
+        private final CountDownLatch redelivered = new CountDownLatch(1);
+
+        private volatile List<String> first;
+        private volatile List<String> second;
+        private volatile boolean secondRedelivered;
+
+        @JmsListener(id = "failing", destination = "failing", containerFactory = "qpidJmsListenerContainerFactory")
+        public void onMessages(List<Message> messages) throws JMSException {
+            if (first == null) {
+                first = texts(messages);
+                throw new IllegalStateException("Database unavailable");
+            }
+
+            if (second == null) {
+                second = texts(messages);
+                secondRedelivered = messages.get(0).getJMSRedelivered();
+                redelivered.countDown();
+            }
+        }
+    }
+
+    @Configuration
+    @EnableJms
+    static class SingleListenerConfiguration {
+
+        @Bean
+        public SingleListener singleListener() {
+            return new SingleListener();
+        }
+    }
+
+    static class SingleListener {
+
+        private final CountDownLatch received = new CountDownLatch(MESSAGE_COUNT);
+
+        @JmsListener(id = "single", destination = "single", containerFactory = "qpidJmsListenerContainerFactory")
+        public void onMessage(String message) {
+            received.countDown();
+        }
+    }
+
+    private void load(Class<?> config, String... environment) {
+        AnnotationConfigApplicationContext applicationContext = new AnnotationConfigApplicationContext();
+        applicationContext.register(config);
+        applicationContext.register(QpidJMSAutoConfiguration.class, JmsAutoConfiguration.class);
+        EnvironmentTestUtils.addEnvironment(applicationContext, environment);
+        applicationContext.refresh();
+        this.context = applicationContext;
+    }
+}
@@ -0,0 +1,369 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.qpid.jms.spring.boot.autoconfigure;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+import static org.junit.Assume.assumeFalse;
+import static org.junit.Assume.assumeTrue;
+
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import javax.jms.Connection;
+import javax.jms.ConnectionFactory;
+import javax.jms.Message;
+import javax.jms.MessageListener;
+import javax.jms.MessageProducer;
+import javax.jms.Session;
+
+import org.apache.qpid.jms.JmsConnectionFactory;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.autoconfigure.jms.JmsAutoConfiguration;
+import org.springframework.boot.test.util.EnvironmentTestUtils;
+import org.springframework.context.annotation.AnnotationConfigApplicationContext;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.jms.annotation.EnableJms;
+import org.springframework.jms.annotation.JmsListener;
+import org.springframework.jms.config.JmsListenerEndpointRegistry;
+import org.springframework.jms.connection.SingleConnectionFactory;
+import org.springframework.jms.core.JmsTemplate;
+
+/**
+ * Test for the Qpid JMS listener container factory and its consumer scaling.
+ */
+public class QpidJMSListenerContainerTest {
+
+    private static final int MESSAGE_COUNT = 1000;
+
+    private final AmqpTestBroker broker = new AmqpTestBroker();
+
+    private AnnotationConfigApplicationContext context;
+
+    @Before
+    public void setUp() throws Exception {
+        broker.start();
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        if (this.context != null) {
+            this.context.close();
+        }
+
+        broker.stop();
+    }
+
+    @Test
+    public void testListenerContainerFactoryConfiguredFromEnv() {
+        load(EmptyConfiguration.class,
+             "spring.qpidjms.listener.concurrency=2",
+             "spring.qpidjms.listener.maxConcurrency=8",
+             "spring.qpidjms.listener.backlogThreshold=25",
+             "spring.qpidjms.listener.monitorInterval=250",
+             "spring.qpidjms.listener.virtualThreads=true",
+             "spring.qpidjms.listener.autoStartup=false");
+
+        QpidJMSListenerContainerFactory factory = this.context.getBean(
+            QpidJMSListenerContainerConfiguration.LISTENER_CONTAINER_FACTORY_BEAN_NAME, QpidJMSListenerContainerFactory.class);
+
+        QpidJMSMessageListenerContainer container = factory.createContainerInstance();
+
+        assertEquals(2, container.getConcurrentConsumers());
+        assertEquals(8, container.getMaxConcurrentConsumers());
+        assertEquals(25, container.getBacklogThreshold());
+        assertEquals(250, container.getMonitorInterval());
+        assertTrue(container.isVirtualThreads());
+    }
+
+    @Test(timeout = 60000)
+    public void testContainerScalesWithPrefetchBacklog() throws Exception {
+        load(ScalingListenerConfiguration.class,
+             "spring.qpidjms.remoteURL=" + broker.getConnectionURI(),
+             "spring.qpidjms.prefetchPolicy.all=20",
+             "spring.qpidjms.listener.concurrency=1",
+             "spring.qpidjms.listener.maxConcurrency=4",
+             "spring.qpidjms.listener.backlogThreshold=10",
+             "spring.qpidjms.listener.monitorInterval=50");
+
+        QpidJMSBatchTemplate batchTemplate = this.context.getBean(QpidJMSBatchTemplate.class);
+        SlowListener listener = this.context.getBean(SlowListener.class);
+
+        QpidJMSMessageListenerContainer container = (QpidJMSMessageListenerContainer)
+            this.context.getBean(JmsListenerEndpointRegistry.class).getListenerContainer("scaling");
+
+        assertEquals(1, container.getActiveConsumerCount());
+
+        List<String> payloads = new ArrayList<>();
+        for (int i = 0; i < MESSAGE_COUNT; ++i) {
+            payloads.add("message-" + i);
+        }
+
+        batchTemplate.send("scaling", payloads).get(30, TimeUnit.SECONDS);
+
+        assertTrue("Not all messages were handled", listener.received.await(45, TimeUnit.SECONDS));
+        assertTrue("Container did not scale up", listener.maxConsumers > 1);
+    }
+
+    @Test(timeout = 60000)
+    public void testListenerReceivesWithEndpointConcurrency() throws Exception {
+        load(FixedListenerConfiguration.class,
+             "spring.qpidjms.remoteURL=" + broker.getConnectionURI());
+
+        this.context.getBean(JmsTemplate.class).convertAndSend("fixed", "hello");
+
+        FixedListener listener = this.context.getBean(FixedListener.class);
+        QpidJMSMessageListenerContainer container = (QpidJMSMessageListenerContainer)
+            this.context.getBean(JmsListenerEndpointRegistry.class).getListenerContainer("fixed");
+
+        assertTrue(listener.received.await(30, TimeUnit.SECONDS));
+        assertEquals(3, container.getConcurrentConsumers());
+        assertEquals(3, container.getActiveConsumerCount());
+    }
+
+    @Test(timeout = 60000)
+    public void testVirtualThreadsFallBackToPlatformThreads() throws Exception {
+        assumeFalse(QpidJMSVirtualThreadSupport.isAvailable());
+
+        final CountDownLatch received = new CountDownLatch(1);
+
+        QpidJMSMessageListenerContainer container = createContainer("fallback", 1, new MessageListener() {
+
+            @Override
+            public void onMessage(Message message) {
+                received.countDown();
+            }
+        });
+
+        try {
+            sendMessages("fallback", 1);
+
+            assertTrue(received.await(30, TimeUnit.SECONDS));
+            assertFalse(container.isUsingVirtualThreads());
+        } finally {
+            container.destroy();
+        }
+    }
+
+    @Test
+    public void testVirtualThreadsRefusedWhenDeliveryExecutorCannotBeInstalled() throws Exception {
+        assumeTrue(QpidJMSVirtualThreadSupport.isSupportedByJvm());
+
+        QpidJMSMessageListenerContainer container = new QpidJMSMessageListenerContainer();
+        container.setConnectionFactory(new SingleConnectionFactory(new JmsConnectionFactory(broker.getConnectionURI())));
+        container.setDestinationName("refused");
+        container.setMessageListener((MessageListener) message -> { });
+        container.setVirtualThreads(true);
+
+        try {
+            container.afterPropertiesSet();
+            fail("Virtual threads should be refused for sessions that are not Qpid JMS sessions");
+        } catch (IllegalArgumentException ex) {
+        }
+    }
+
+    @Test(timeout = 120000)
+    public void testThousandsOfSlowHandlersOnVirtualThreads() throws Exception {
+        assumeTrue(QpidJMSVirtualThreadSupport.isAvailable());
+
+        final int handlers = 2000;
+        final CountDownLatch started = new CountDownLatch(handlers);
+        final CountDownLatch release = new CountDownLatch(1);
+        final CountDownLatch completed = new CountDownLatch(handlers);
+        final AtomicInteger inFlight = new AtomicInteger();
+        final AtomicInteger peakInFlight = new AtomicInteger();
+
+        ThreadMXBean threads = ManagementFactory.getThreadMXBean();
+        int platformThreadsBefore = threads.getThreadCount();
+
+        QpidJMSMessageListenerContainer container = createContainer("virtual", handlers, new MessageListener() {
+
+            @Override
+            public void onMessage(Message message) {
+                int current = inFlight.incrementAndGet();
+                peakInFlight.accumulateAndGet(current, Math::max);
+                started.countDown();
+                try {
+                    // Stands in for a slow blocking call such as a database query.
+                    release.await(60, TimeUnit.SECONDS);
+                } catch (InterruptedException ex) {
+                    Thread.currentThread().interrupt();
+                } finally {
+                    inFlight.decrementAndGet();
+                    completed.countDown();
+                }
+            }
+        });
+
+        try {
+            assertTrue(container.isUsingVirtualThreads());
+
+            sendMessages("virtual", handlers);
+
+            assertTrue("Not all handlers started", started.await(60, TimeUnit.SECONDS));
+
+            int platformThreadsAdded = threads.getThreadCount() - platformThreadsBefore;
+
+            release.countDown();
+
+            assertTrue("Not all handlers completed", completed.await(30, TimeUnit.SECONDS));
+            assertEquals(handlers, peakInFlight.get());
+            assertTrue("Too many platform threads added: " + platformThreadsAdded, platformThreadsAdded < 50);
+        } finally {
+            release.countDown();
+            container.destroy();
+        }
+    }
+
+    @Test(timeout = 60000)
+    public void testVirtualThreadsAfterRestart() throws Exception {
+        assumeTrue(QpidJMSVirtualThreadSupport.isAvailable());
+
+        final BlockingQueue<String> threadNames = new LinkedBlockingQueue<>();
+
+        QpidJMSMessageListenerContainer container = createContainer("restarted", 1, new MessageListener() {
+
+            @Override
+            public void onMessage(Message message) {
+                threadNames.add(Thread.currentThread().getName());
+            }
+        });
+
+        try {
+            sendMessages("restarted", 1);
+            assertTrue(threadNames.poll(30, TimeUnit.SECONDS).startsWith("QpidJMS Listener: restarted-"));
+
+            container.stop();
+            container.start();
+
+            sendMessages("restarted", 1);
+            assertTrue(threadNames.poll(30, TimeUnit.SECONDS).startsWith("QpidJMS Listener: restarted-"));
+        } finally {
+            container.destroy();
+        }
+    }
+
+    private QpidJMSMessageListenerContainer createContainer(String destination, int concurrency, MessageListener listener) throws Exception {
+        // A prefetch of one spreads the messages over every session.
+        load(EmptyConfiguration.class,
+             "spring.qpidjms.remoteURL=" + broker.getConnectionURI(),
+             "spring.qpidjms.prefetchPolicy.all=1");
+
+        QpidJMSMessageListenerContainer container = new QpidJMSMessageListenerContainer();
+        container.setConnectionFactory(this.context.getBean(ConnectionFactory.class));
+        container.setBeanName(destination);
+        container.setDestinationName(destination);
+        container.setConcurrentConsumers(concurrency);
+        container.setMessageListener(listener);
+        container.setVirtualThreads(true);
+        container.afterPropertiesSet();
+        container.start();
+
+        return container;
+    }
+
+    private void sendMessages(String destination, int count) throws Exception {
+        Connection connection = new JmsConnectionFactory(broker.getConnectionURI()).createConnection();
+        try {
+            Session session = connection.createSession(false, Session.AUTO_ACKNOWLEDGE);
+            MessageProducer producer = session.createProducer(session.createQueue(destination));
+            for (int i = 0; i < count; ++i) {
+                producer.send(session.createTextMessage("message-" + i));
+            }
+        } finally {
+            connection.close();
+        }
+    }
+
+    @Configuration
+    static class EmptyConfiguration {}
+
+    @Configuration
+    @EnableJms
+    static class ScalingListenerConfiguration {
+
+        @Bean
+        public SlowListener slowListener() {
+            return new SlowListener();
+        }
+    }
+
+    static class SlowListener {
+
+        private final CountDownLatch received = new CountDownLatch(MESSAGE_COUNT);
+        private volatile int maxConsumers;
+
+        private JmsListenerEndpointRegistry registry;
+
+        @Autowired
+        public void setRegistry(JmsListenerEndpointRegistry registry) {
+            this.registry = registry;
+        }
+
+        @JmsListener(id = "scaling", destination = "scaling", containerFactory = "qpidJmsListenerContainerFactory")
+        public void onMessage(String message) throws InterruptedException {
+            QpidJMSMessageListenerContainer container =
+                (QpidJMSMessageListenerContainer) registry.getListenerContainer("scaling");
+            maxConsumers = Math.max(maxConsumers, container.getActiveConsumerCount());
+
+            Thread.sleep(2);
+            received.countDown();
+        }
+    }
+
+    @Configuration
+    @EnableJms
+    static class FixedListenerConfiguration {
+
+        @Bean
+        public FixedListener fixedListener() {
+            return new FixedListener();
+        }
+    }
+
+    static class FixedListener {
+
+        private final CountDownLatch received = new CountDownLatch(1);
+
+        @JmsListener(id = "fixed", destination = "fixed", concurrency = "3", containerFactory = "qpidJmsListenerContainerFactory")
+        public void onMessage(String message) {
+            received.countDown();
+        }
+    }
+
+    private void load(Class<?> config, String... environment) {
+        AnnotationConfigApplicationContext applicationContext = new AnnotationConfigApplicationContext();
+        applicationContext.register(config);
+        applicationContext.register(QpidJMSAutoConfiguration.class, JmsAutoConfiguration.class);
+        EnvironmentTestUtils.addEnvironment(applicationContext, environment);
+        applicationContext.refresh();
+        this.context = applicationContext;
+    }
+}
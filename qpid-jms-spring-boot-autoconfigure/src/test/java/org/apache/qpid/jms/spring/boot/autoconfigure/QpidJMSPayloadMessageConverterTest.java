@@ -0,0 +1,335 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.qpid.jms.spring.boot.autoconfigure;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+
+import javax.jms.BytesMessage;
+import javax.jms.Connection;
+import javax.jms.ConnectionFactory;
+import javax.jms.Message;
+import javax.jms.Session;
+
+import org.apache.avro.Schema;
+import org.apache.avro.specific.SpecificRecordBase;
+import org.apache.qpid.jms.message.JmsMessage;
+import org.apache.qpid.jms.provider.amqp.message.AmqpJmsMessageFacade;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.springframework.boot.autoconfigure.jms.JmsAutoConfiguration;
+import org.springframework.boot.test.util.EnvironmentTestUtils;
+import org.springframework.context.annotation.AnnotationConfigApplicationContext;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.jms.core.JmsTemplate;
+import org.springframework.jms.support.converter.MessageConversionException;
+import org.springframework.jms.support.converter.MessageConverter;
+
+import com.google.protobuf.Timestamp;
+
+/**
+ * Test for the JSON, Avro and Protocol Buffers message converters.
+ */
+public class QpidJMSPayloadMessageConverterTest {
+
+    private static volatile boolean untrustedInitialized;
+
+    private final AmqpTestBroker broker = new AmqpTestBroker();
+
+    private AnnotationConfigApplicationContext context;
+
+    @Before
+    public void setUp() throws Exception {
+        broker.start();
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        if (this.context != null) {
+            this.context.close();
+        }
+
+        broker.stop();
+    }
+
+    @Test
+    public void testNoConverterByDefault() throws Exception {
+        load(EmptyConfiguration.class, "spring.qpidjms.remoteURL=" + broker.getConnectionURI());
+
+        assertTrue(this.context.getBeansOfType(MessageConverter.class).isEmpty());
+    }
+
+    @Test(timeout = 60000)
+    public void testJsonRoundTrip() throws Exception {
+        load(EmptyConfiguration.class,
+             "spring.qpidjms.remoteURL=" + broker.getConnectionURI(),
+             "spring.qpidjms.converter=json",
+             "spring.qpidjms.converterTrustedPackages=org.apache.qpid.jms.spring.boot.autoconfigure");
+
+        JmsTemplate jmsTemplate = template();
+        assertTrue(jmsTemplate.getMessageConverter() instanceof QpidJMSJsonMessageConverter);
+
+        Order order = new Order("order-1", Arrays.asList("a", "b"));
+
+        Message created = toMessage(order);
+        assertTrue(created instanceof BytesMessage);
+        assertEquals(QpidJMSJsonMessageConverter.CONTENT_TYPE, contentType(created));
+
+        jmsTemplate.convertAndSend("json", order);
+        Message message = jmsTemplate.receive("json");
+
+        assertTrue(message instanceof BytesMessage);
+        assertEquals(Order.class.getName(), message.getStringProperty(QpidJMSPayloadMessageConverter.DEFAULT_TYPE_ID_PROPERTY));
+
+        Order received = (Order) jmsTemplate.getMessageConverter().fromMessage(message);
+        assertEquals(order.getId(), received.getId());
+        assertEquals(order.getItems(), received.getItems());
+
+        // Text is still sent as text, other content types are left to the delegate.
+        jmsTemplate.convertAndSend("json", "text");
+        assertEquals("text", jmsTemplate.receiveAndConvert("json"));
+    }
+
+    @Test(timeout = 60000)
+    @SuppressWarnings("unchecked")
+    public void testJsonWithoutTypeIdDecodedAsMap() throws Exception {
+        load(EmptyConfiguration.class,
+             "spring.qpidjms.remoteURL=" + broker.getConnectionURI(),
+             "spring.qpidjms.converter=json",
+             "spring.qpidjms.converterTrustedPackages=org.apache.qpid.jms.spring.boot.autoconfigure");
+
+        QpidJMSJsonMessageConverter converter = this.context.getBean(QpidJMSJsonMessageConverter.class);
+
+        Message message = toMessage(new Order("order-2", Arrays.asList("c")));
+        message.clearProperties();
+
+        Map<String, Object> received = (Map<String, Object>) converter.fromMessage(message);
+
+        assertEquals("order-2", received.get("id"));
+        assertEquals(Arrays.asList("c"), received.get("items"));
+    }
+
+    @Test(timeout = 60000)
+    public void testAvroRoundTrip() throws Exception {
+        load(EmptyConfiguration.class,
+             "spring.qpidjms.remoteURL=" + broker.getConnectionURI(),
+             "spring.qpidjms.converter=avro",
+             "spring.qpidjms.converterTrustedPackages=org.apache.qpid.jms.spring.boot.autoconfigure");
+
+        JmsTemplate jmsTemplate = template();
+        assertTrue(jmsTemplate.getMessageConverter() instanceof QpidJMSAvroMessageConverter);
+        assertEquals(QpidJMSAvroMessageConverter.CONTENT_TYPE, contentType(toMessage(new Reading("sensor-0", 0))));
+
+        jmsTemplate.convertAndSend("avro", new Reading("sensor-1", 42));
+        jmsTemplate.convertAndSend("avro", new Reading("sensor-2", 43));
+
+        Reading first = (Reading) jmsTemplate.receiveAndConvert("avro");
+        Reading second = (Reading) jmsTemplate.receiveAndConvert("avro");
+
+        assertEquals("sensor-1", first.name);
+        assertEquals(42, first.value);
+        assertEquals("sensor-2", second.name);
+        assertEquals(43, second.value);
+    }
+
+    @Test(timeout = 60000)
+    public void testProtobufRoundTrip() throws Exception {
+        load(EmptyConfiguration.class,
+             "spring.qpidjms.remoteURL=" + broker.getConnectionURI(),
+             "spring.qpidjms.converter=protobuf",
+             "spring.qpidjms.converterTrustedPackages=com.google.protobuf");
+
+        JmsTemplate jmsTemplate = template();
+        assertTrue(jmsTemplate.getMessageConverter() instanceof QpidJMSProtobufMessageConverter);
+
+        Timestamp timestamp = Timestamp.newBuilder().setSeconds(1500000000L).setNanos(1000).build();
+        assertEquals(QpidJMSProtobufMessageConverter.CONTENT_TYPE, contentType(toMessage(timestamp)));
+
+        jmsTemplate.convertAndSend("protobuf", timestamp);
+        assertEquals(timestamp, jmsTemplate.receiveAndConvert("protobuf"));
+    }
+
+    @Test(timeout = 60000)
+    public void testZeroCopyConverterHandlesBinaryPayloads() throws Exception {
+        load(EmptyConfiguration.class,
+             "spring.qpidjms.remoteURL=" + broker.getConnectionURI(),
+             "spring.qpidjms.converter=json",
+             "spring.qpidjms.bytesMessage.zeroCopy=true");
+
+        QpidJMSJsonMessageConverter converter = this.context.getBean(QpidJMSJsonMessageConverter.class);
+        assertSame(converter, template().getMessageConverter());
+        assertTrue(converter.getDelegate() instanceof QpidJMSBytesMessageConverter);
+
+        byte[] bytes = new byte[] { 1, 2, 3 };
+        template().convertAndSend("json-binary", bytes);
+
+        try (QpidJMSBytesPayload payload = (QpidJMSBytesPayload) template().receiveAndConvert("json-binary")) {
+            assertArrayEquals(bytes, payload.toByteArray());
+        }
+    }
+
+    @Test(timeout = 60000)
+    public void testUntrustedTypeIdRejectedBeforeLoading() throws Exception {
+        load(EmptyConfiguration.class,
+             "spring.qpidjms.remoteURL=" + broker.getConnectionURI(),
+             "spring.qpidjms.converter=json",
+             "spring.qpidjms.converterTrustedPackages=" + Order.class.getName());
+
+        QpidJMSJsonMessageConverter converter = this.context.getBean(QpidJMSJsonMessageConverter.class);
+
+        Message message = toMessage(new Order("order-3", Arrays.asList("d")));
+        message.setStringProperty(QpidJMSPayloadMessageConverter.DEFAULT_TYPE_ID_PROPERTY, Untrusted.class.getName());
+        try {
+            converter.fromMessage(message);
+            fail("Decoded a payload of an untrusted type");
+        } catch (MessageConversionException expected) {
+            assertTrue(expected.getMessage().contains("trusted"));
+        }
+
+        assertFalse("Untrusted type was initialized", untrustedInitialized);
+
+        // Every type is trusted once the catch all is listed.
+        converter.setTrustedPackages("*");
+        message.setStringProperty(QpidJMSPayloadMessageConverter.DEFAULT_TYPE_ID_PROPERTY, Order.class.getName());
+        assertEquals("order-3", ((Order) converter.fromMessage(message)).getId());
+
+        // Nothing is trusted by default.
+        try {
+            new QpidJMSJsonMessageConverter().fromMessage(message);
+            fail("Decoded a payload without trusted packages");
+        } catch (MessageConversionException expected) {
+        }
+    }
+
+    @Configuration
+    static class EmptyConfiguration {}
+
+    public static class Order {
+
+        private String id;
+        private List<String> items;
+
+        public Order() {
+        }
+
+        public Order(String id, List<String> items) {
+            this.id = id;
+            this.items = items;
+        }
+
+        public String getId() {
+            return id;
+        }
+
+        public void setId(String id) {
+            this.id = id;
+        }
+
+        public List<String> getItems() {
+            return items;
+        }
+
+        public void setItems(List<String> items) {
+            this.items = items;
+        }
+    }
+
+    public static class Untrusted {
+
+        static {
+            untrustedInitialized = true;
+        }
+    }
+
+    public static class Reading extends SpecificRecordBase {
+
+        // Avro resolves a nested record class from a namespace that ends with a $.
+        public static final Schema SCHEMA$ = new Schema.Parser().parse(
+            "{\"type\":\"record\",\"name\":\"Reading\"," +
+            "\"namespace\":\"org.apache.qpid.jms.spring.boot.autoconfigure.QpidJMSPayloadMessageConverterTest$\"," +
+            "\"fields\":[{\"name\":\"name\",\"type\":{\"type\":\"string\",\"avro.java.string\":\"String\"}}," +
+            "{\"name\":\"value\",\"type\":\"int\"}]}");
+
+        private String name;
+        private int value;
+
+        public Reading() {
+        }
+
+        public Reading(String name, int value) {
+            this.name = name;
+            this.value = value;
+        }
+
+        @Override
+        public Schema getSchema() {
+            return SCHEMA$;
+        }
+
+        @Override
+        public Object get(int field) {
+            return field == 0 ? name : value;
+        }
+
+        @Override
+        public void put(int field, Object fieldValue) {
+            if (field == 0) {
+                name = (String) fieldValue;
+            } else {
+                value = (Integer) fieldValue;
+            }
+        }
+    }
+
+    private JmsTemplate template() {
+        JmsTemplate jmsTemplate = this.context.getBean(JmsTemplate.class);
+        jmsTemplate.setReceiveTimeout(10000);
+        return jmsTemplate;
+    }
+
+    private Message toMessage(Object payload) throws Exception {
+        MessageConverter converter = template().getMessageConverter();
+        Connection connection = this.context.getBean(ConnectionFactory.class).createConnection();
+        try {
+            return converter.toMessage(payload, connection.createSession(false, Session.AUTO_ACKNOWLEDGE));
+        } finally {
+            connection.close();
+        }
+    }
+
+    private static String contentType(Message message) {
+        return ((AmqpJmsMessageFacade) ((JmsMessage) message).getFacade()).getContentType();
+    }
+
+    private void load(Class<?> config, String... environment) {
+        AnnotationConfigApplicationContext applicationContext = new AnnotationConfigApplicationContext();
+        applicationContext.register(config);
+        applicationContext.register(QpidJMSAutoConfiguration.class, JmsAutoConfiguration.class);
+        EnvironmentTestUtils.addEnvironment(applicationContext, environment);
+        applicationContext.refresh();
+        this.context = applicationContext;
+    }
+}
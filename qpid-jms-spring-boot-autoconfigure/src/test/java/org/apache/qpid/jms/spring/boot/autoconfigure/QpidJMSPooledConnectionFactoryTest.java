@@ -0,0 +1,163 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.qpid.jms.spring.boot.autoconfigure;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import javax.jms.ConnectionFactory;
+
+import org.apache.qpid.jms.JmsConnectionFactory;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.messaginghub.pooled.jms.JmsPoolConnectionFactory;
+import org.springframework.beans.factory.BeanCreationException;
+import org.springframework.boot.autoconfigure.jms.JmsAutoConfiguration;
+import org.springframework.boot.test.util.EnvironmentTestUtils;
+import org.springframework.context.annotation.AnnotationConfigApplicationContext;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.jms.core.JmsTemplate;
+
+/**
+ * Test that the pooled Qpid JMS ConnectionFactory is configured and reuses resources.
+ */
+public class QpidJMSPooledConnectionFactoryTest {
+
+    private final AmqpTestBroker broker = new AmqpTestBroker();
+
+    private AnnotationConfigApplicationContext context;
+
+    @Before
+    public void setUp() throws Exception {
+        broker.start();
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        if (this.context != null) {
+            this.context.close();
+        }
+
+        broker.stop();
+    }
+
+    @Test
+    public void testPoolDisabledByDefault() {
+        load(EmptyConfiguration.class);
+
+        ConnectionFactory connectionFactory = this.context.getBean(ConnectionFactory.class);
+
+        assertTrue(connectionFactory instanceof JmsConnectionFactory);
+        assertTrue(this.context.getBeansOfType(JmsPoolConnectionFactory.class).isEmpty());
+    }
+
+    @Test
+    public void testPoolOptionsAppliedFromEnv() {
+        load(EmptyConfiguration.class,
+             "spring.qpidjms.pool.enabled=true",
+             "spring.qpidjms.pool.blockIfFull=false",
+             "spring.qpidjms.pool.blockIfFullTimeout=64",
+             "spring.qpidjms.pool.idleTimeout=512",
+             "spring.qpidjms.pool.timeBetweenExpirationCheck=2048",
+             "spring.qpidjms.pool.maxConnections=256",
+             "spring.qpidjms.pool.maxSessionsPerConnection=1024",
+             "spring.qpidjms.pool.useAnonymousProducers=false");
+
+        JmsTemplate jmsTemplate = this.context.getBean(JmsTemplate.class);
+        JmsPoolConnectionFactory connectionFactory = this.context.getBean(JmsPoolConnectionFactory.class);
+
+        assertEquals(jmsTemplate.getConnectionFactory(), connectionFactory);
+        assertTrue(connectionFactory.getConnectionFactory() instanceof JmsConnectionFactory);
+        assertFalse(connectionFactory.isBlockIfSessionPoolIsFull());
+        assertEquals(64, connectionFactory.getBlockIfSessionPoolIsFullTimeout());
+        assertEquals(512, connectionFactory.getConnectionIdleTimeout());
+        assertEquals(2048, connectionFactory.getConnectionCheckInterval());
+        assertEquals(256, connectionFactory.getMaxConnections());
+        assertEquals(1024, connectionFactory.getMaxSessionsPerConnection());
+        assertFalse(connectionFactory.isUseAnonymousProducers());
+    }
+
+    @Test(timeout = 60000)
+    public void testSteadyStateSendsOpenNoNewLinks() throws Exception {
+        load(EmptyConfiguration.class,
+             "spring.qpidjms.remoteURL=" + broker.getConnectionURI(),
+             "spring.qpidjms.pool.enabled=true");
+
+        JmsTemplate jmsTemplate = this.context.getBean(JmsTemplate.class);
+
+        // Warm the pool so the connection, session and producer exist.
+        jmsTemplate.convertAndSend("pooled", "warm-up");
+
+        long connections = broker.getConnectionsOpened();
+        long sessions = broker.getSessionsOpened();
+        long producers = broker.getProducersOpened();
+
+        assertEquals(1, connections);
+
+        for (int i = 0; i < 100; ++i) {
+            jmsTemplate.convertAndSend(i % 2 == 0 ? "pooled" : "pooled-other", "message-" + i);
+        }
+
+        assertEquals(connections, broker.getConnectionsOpened());
+        assertEquals(sessions, broker.getSessionsOpened());
+        assertEquals(producers, broker.getProducersOpened());
+        assertEquals(1, this.context.getBean(JmsPoolConnectionFactory.class).getNumConnections());
+    }
+
+    @Test
+    public void testPoolEnabledWithoutPoolLibraryFails() {
+        AnnotationConfigApplicationContext applicationContext = new AnnotationConfigApplicationContext();
+        applicationContext.setClassLoader(new ClassLoader(getClass().getClassLoader()) {
+
+            @Override
+            protected Class<?> loadClass(String name, boolean resolve) throws ClassNotFoundException {
+                if (name.startsWith("org.messaginghub.pooled.jms.")) {
+                    throw new ClassNotFoundException(name);
+                }
+                return super.loadClass(name, resolve);
+            }
+        });
+        applicationContext.register(EmptyConfiguration.class, QpidJMSAutoConfiguration.class, JmsAutoConfiguration.class);
+        EnvironmentTestUtils.addEnvironment(applicationContext, "spring.qpidjms.pool.enabled=true");
+
+        try {
+            applicationContext.refresh();
+            fail("Context should not start without the pool library");
+        } catch (BeanCreationException ex) {
+            Throwable cause = ex.getMostSpecificCause();
+            assertTrue(cause instanceof IllegalStateException);
+            assertEquals(QpidJMSPooledConnectionFactoryConfiguration.POOL_MISSING_MESSAGE, cause.getMessage());
+        } finally {
+            applicationContext.close();
+        }
+    }
+
+    @Configuration
+    static class EmptyConfiguration {}
+
+    private void load(Class<?> config, String... environment) {
+        AnnotationConfigApplicationContext applicationContext = new AnnotationConfigApplicationContext();
+        applicationContext.register(config);
+        applicationContext.register(QpidJMSAutoConfiguration.class, JmsAutoConfiguration.class);
+        EnvironmentTestUtils.addEnvironment(applicationContext, environment);
+        applicationContext.refresh();
+        this.context = applicationContext;
+    }
+}
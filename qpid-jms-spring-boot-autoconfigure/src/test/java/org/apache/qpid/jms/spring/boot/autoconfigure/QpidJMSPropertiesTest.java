@@ -17,10 +17,15 @@
 package org.apache.qpid.jms.spring.boot.autoconfigure;
 
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
 import static org.junit.Assert.assertTrue;
 
+import java.util.Collections;
+
 import org.apache.qpid.jms.JmsConnectionFactory;
 import org.apache.qpid.jms.policy.JmsDefaultDeserializationPolicy;
+import org.apache.qpid.jms.policy.JmsDefaultPrefetchPolicy;
+import org.apache.qpid.jms.policy.JmsDefaultPresettlePolicy;
 import org.junit.Test;
 
 /**
@@ -68,8 +73,8 @@ public class QpidJMSPropertiesTest {
 
     @Test
     public void testDeserializationPolicyValuesAreApplied() {
-        this.properties.getDeserializationPolicy().setWhiteList("org.apache.qpid.proton.*");
-        this.properties.getDeserializationPolicy().setBlackList("org.apache.activemq..*");
+        this.properties.getDeserializationPolicy().setWhiteList(Collections.singletonList("org.apache.qpid.proton.*"));
+        this.properties.getDeserializationPolicy().setBlackList(Collections.singletonList("org.apache.activemq..*"));
 
         JmsConnectionFactory factory = new QpidJMSConnectionFactoryFactory(this.properties).createConnectionFactory(JmsConnectionFactory.class);
 
@@ -78,4 +83,73 @@ public class QpidJMSPropertiesTest {
         assertEquals("org.apache.qpid.proton.*", policy.getWhiteList());
         assertEquals("org.apache.activemq..*", policy.getBlackList());
     }
+
+    @Test
+    public void testFlowControlOptionsAreApplied() {
+        this.properties.setForceAsyncSend(true);
+        this.properties.setLocalMessagePriority(true);
+        this.properties.setCloseTimeout(1000L);
+        this.properties.setConnectTimeout(2000L);
+        this.properties.setSendTimeout(3000L);
+        this.properties.setRequestTimeout(4000L);
+
+        JmsConnectionFactory factory = new QpidJMSConnectionFactoryFactory(this.properties).createConnectionFactory(JmsConnectionFactory.class);
+
+        assertTrue(factory.isForceAsyncSend());
+        assertFalse(factory.isForceSyncSend());
+        assertTrue(factory.isLocalMessagePriority());
+        assertEquals(1000, factory.getCloseTimeout());
+        assertEquals(2000, factory.getConnectTimeout());
+        assertEquals(3000, factory.getSendTimeout());
+        assertEquals(4000, factory.getRequestTimeout());
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testForceSyncAndForceAsyncSendAreExclusive() {
+        this.properties.setForceAsyncSend(true);
+        this.properties.setForceSyncSend(true);
+
+        new QpidJMSConnectionFactoryFactory(this.properties).createConnectionFactory(JmsConnectionFactory.class);
+    }
+
+    @Test
+    public void testPrefetchPolicyValuesAreApplied() {
+        this.properties.getPrefetchPolicy().setAll(10);
+        this.properties.getPrefetchPolicy().setQueuePrefetch(1000);
+        this.properties.getPrefetchPolicy().setDurableTopicPrefetch(0);
+
+        JmsConnectionFactory factory = new QpidJMSConnectionFactoryFactory(this.properties).createConnectionFactory(JmsConnectionFactory.class);
+
+        JmsDefaultPrefetchPolicy policy = (JmsDefaultPrefetchPolicy) factory.getPrefetchPolicy();
+
+        assertEquals(1000, policy.getQueuePrefetch());
+        assertEquals(10, policy.getQueueBrowserPrefetch());
+        assertEquals(10, policy.getTopicPrefetch());
+        assertEquals(0, policy.getDurableTopicPrefetch());
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testNegativePrefetchIsRejected() {
+        this.properties.getPrefetchPolicy().setTopicPrefetch(-1);
+
+        new QpidJMSConnectionFactoryFactory(this.properties).createConnectionFactory(JmsConnectionFactory.class);
+    }
+
+    @Test
+    public void testPresettlePolicyValuesAreApplied() {
+        this.properties.getPresettlePolicy().setPresettleTopicProducers(true);
+        this.properties.getPresettlePolicy().setPresettleQueueConsumers(true);
+
+        JmsConnectionFactory factory = new QpidJMSConnectionFactoryFactory(this.properties).createConnectionFactory(JmsConnectionFactory.class);
+
+        JmsDefaultPresettlePolicy policy = (JmsDefaultPresettlePolicy) factory.getPresettlePolicy();
+
+        assertFalse(policy.isPresettleAll());
+        assertFalse(policy.isPresettleProducers());
+        assertTrue(policy.isPresettleTopicProducers());
+        assertFalse(policy.isPresettleQueueProducers());
+        assertFalse(policy.isPresettleConsumers());
+        assertTrue(policy.isPresettleQueueConsumers());
+        assertFalse(policy.isPresettleTopicConsumers());
+    }
 }
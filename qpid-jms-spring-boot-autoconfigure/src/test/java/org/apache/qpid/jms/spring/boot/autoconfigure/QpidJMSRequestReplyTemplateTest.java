@@ -0,0 +1,154 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.qpid.jms.spring.boot.autoconfigure;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+import javax.jms.ConnectionFactory;
+
+import org.apache.activemq.broker.region.RegionBroker;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.springframework.boot.autoconfigure.jms.JmsAutoConfiguration;
+import org.springframework.boot.test.util.EnvironmentTestUtils;
+import org.springframework.context.annotation.AnnotationConfigApplicationContext;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.jms.annotation.EnableJms;
+import org.springframework.jms.annotation.JmsListener;
+
+/**
+ * Test for the auto-configured QpidJMSRequestReplyTemplate.
+ */
+public class QpidJMSRequestReplyTemplateTest {
+
+    private final AmqpTestBroker broker = new AmqpTestBroker();
+
+    private AnnotationConfigApplicationContext context;
+
+    @Before
+    public void setUp() throws Exception {
+        broker.start();
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        if (this.context != null) {
+            this.context.close();
+        }
+
+        broker.stop();
+    }
+
+    @Test
+    public void testRequestReplyTemplateConfiguredFromEnv() {
+        load(EmptyConfiguration.class, "spring.qpidjms.requestReply.replyTimeout=1500");
+
+        QpidJMSRequestReplyTemplate requestReplyTemplate = this.context.getBean(QpidJMSRequestReplyTemplate.class);
+
+        assertEquals(1500, requestReplyTemplate.getReplyTimeout());
+        assertEquals(this.context.getBean(ConnectionFactory.class), requestReplyTemplate.getConnectionFactory());
+    }
+
+    @Test(timeout = 60000)
+    public void testConcurrentRequestsShareOneReplyReceiver() throws Exception {
+        // The pool lets the reply service reuse one producer for all of its replies.
+        load(ReplyServiceConfiguration.class,
+             "spring.qpidjms.remoteURL=" + broker.getConnectionURI(),
+             "spring.qpidjms.pool.enabled=true");
+
+        QpidJMSRequestReplyTemplate requestReplyTemplate = this.context.getBean(QpidJMSRequestReplyTemplate.class);
+
+        // The first request creates the connection, reply receiver and request session.
+        assertEquals("WARM-UP", requestReplyTemplate.convertSendAndReceive("requests", "warm-up").get(30, TimeUnit.SECONDS));
+
+        long sessions = broker.getSessionsOpened();
+
+        List<CompletableFuture<Object>> replies = new ArrayList<>();
+        for (int i = 0; i < 2000; ++i) {
+            replies.add(requestReplyTemplate.convertSendAndReceive("requests", "request-" + i));
+        }
+
+        for (int i = 0; i < replies.size(); ++i) {
+            assertEquals("REQUEST-" + i, replies.get(i).get(30, TimeUnit.SECONDS));
+        }
+
+        assertEquals(0, requestReplyTemplate.getPendingRequestCount());
+        assertEquals(sessions, broker.getSessionsOpened());
+        assertEquals(1, ((RegionBroker) broker.getBrokerService().getRegionBroker()).getTempQueueRegion().getDestinationMap().size());
+    }
+
+    @Test(timeout = 60000)
+    public void testRequestWithoutReplyTimesOutAndIsEvicted() throws Exception {
+        load(EmptyConfiguration.class,
+             "spring.qpidjms.remoteURL=" + broker.getConnectionURI(),
+             "spring.qpidjms.requestReply.replyTimeout=200");
+
+        QpidJMSRequestReplyTemplate requestReplyTemplate = this.context.getBean(QpidJMSRequestReplyTemplate.class);
+
+        CompletableFuture<Object> reply = requestReplyTemplate.convertSendAndReceive("unanswered", "hello");
+
+        try {
+            reply.get(30, TimeUnit.SECONDS);
+            fail("Request should have timed out");
+        } catch (ExecutionException ex) {
+            assertTrue(ex.getCause() instanceof TimeoutException);
+        }
+
+        assertEquals(0, requestReplyTemplate.getPendingRequestCount());
+    }
+
+    @Configuration
+    static class EmptyConfiguration {}
+
+    @Configuration
+    @EnableJms
+    static class ReplyServiceConfiguration {
+
+        @Bean
+        public ReplyService replyService() {
+            return new ReplyService();
+        }
+    }
+
+    static class ReplyService {
+
+        @JmsListener(destination = "requests", concurrency = "4", containerFactory = "qpidJmsListenerContainerFactory")
+        public String onRequest(String request) {
+            return request.toUpperCase();
+        }
+    }
+
+    private void load(Class<?> config, String... environment) {
+        AnnotationConfigApplicationContext applicationContext = new AnnotationConfigApplicationContext();
+        applicationContext.register(config);
+        applicationContext.register(QpidJMSAutoConfiguration.class, JmsAutoConfiguration.class);
+        EnvironmentTestUtils.addEnvironment(applicationContext, environment);
+        applicationContext.refresh();
+        this.context = applicationContext;
+    }
+}
@@ -0,0 +1,410 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.qpid.jms.spring.boot.autoconfigure;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import javax.jms.Connection;
+import javax.jms.ConnectionFactory;
+import javax.jms.Message;
+import javax.jms.MessageConsumer;
+import javax.jms.MessageListener;
+import javax.jms.MessageProducer;
+import javax.jms.Session;
+import javax.jms.TransactionRolledBackException;
+
+import org.apache.qpid.jms.JmsConnectionFactory;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.messaginghub.pooled.jms.JmsPoolConnectionFactory;
+import org.springframework.boot.autoconfigure.jms.JmsAutoConfiguration;
+import org.springframework.boot.test.util.EnvironmentTestUtils;
+import org.springframework.context.annotation.AnnotationConfigApplicationContext;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.jms.core.JmsTemplate;
+
+/**
+ * Test for the routing ConnectionFactory created when several brokers are configured.
+ */
+public class QpidJMSRoutingConnectionFactoryTest {
+
+    private final AmqpTestBroker broker1 = new AmqpTestBroker("qpid-jms-spring-boot-test-1");
+    // ActiveMQ shares one transport factory per scheme, so the second broker in
+    // this JVM listens on the NIO variant to keep the two AMQP connectors apart.
+    private final AmqpTestBroker broker2 = new AmqpTestBroker("qpid-jms-spring-boot-test-2", "amqp+nio");
+
+    private AnnotationConfigApplicationContext context;
+
+    @Before
+    public void setUp() throws Exception {
+        broker1.start();
+        broker2.start();
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        if (this.context != null) {
+            this.context.close();
+        }
+
+        broker1.stop();
+    }
+
+    @Test
+    public void testSingleFactoryWithoutBrokers() {
+        load(EmptyConfiguration.class);
+
+        assertTrue(this.context.getBean(ConnectionFactory.class) instanceof QpidJMSConnectionFactory);
+        assertTrue(this.context.getBeansOfType(QpidJMSRoutingConnectionFactory.class).isEmpty());
+    }
+
+    @Test
+    public void testRoutingFactoryConfiguredFromEnv() throws Exception {
+        load(EmptyConfiguration.class,
+             "spring.qpidjms.username=user",
+             "spring.qpidjms.brokers[0].remoteURL=" + broker1.getConnectionURI(),
+             "spring.qpidjms.brokers[1].remoteURL=" + broker2.getConnectionURI(),
+             "spring.qpidjms.brokers[1].username=other",
+             "spring.qpidjms.routing.strategy=destination-hash",
+             "spring.qpidjms.routing.retryInterval=250");
+
+        QpidJMSRoutingConnectionFactory connectionFactory = this.context.getBean(QpidJMSRoutingConnectionFactory.class);
+
+        assertEquals(QpidJMSRoutingConnectionFactory.Strategy.DESTINATION_HASH, connectionFactory.getStrategy());
+        assertEquals(250, connectionFactory.getRetryInterval());
+
+        List<ConnectionFactory> brokerFactories = connectionFactory.getConnectionFactories();
+        assertEquals(2, brokerFactories.size());
+        assertEquals(broker1.getConnectionURI(), ((JmsConnectionFactory) brokerFactories.get(0)).getRemoteURI());
+        assertEquals(broker2.getConnectionURI(), ((JmsConnectionFactory) brokerFactories.get(1)).getRemoteURI());
+        assertEquals("user", ((JmsConnectionFactory) brokerFactories.get(0)).getUsername());
+        assertEquals("other", ((JmsConnectionFactory) brokerFactories.get(1)).getUsername());
+    }
+
+    @Test(timeout = 60000)
+    public void testRoundRobinSpreadsPooledSends() throws Exception {
+        load(EmptyConfiguration.class,
+             "spring.qpidjms.pool.enabled=true",
+             "spring.qpidjms.brokers[0].remoteURL=" + broker1.getConnectionURI(),
+             "spring.qpidjms.brokers[1].remoteURL=" + broker2.getConnectionURI());
+
+        JmsPoolConnectionFactory pool = this.context.getBean(JmsPoolConnectionFactory.class);
+        assertTrue(pool.getConnectionFactory() instanceof QpidJMSRoutingConnectionFactory);
+
+        JmsTemplate jmsTemplate = this.context.getBean(JmsTemplate.class);
+        for (int i = 0; i < 100; ++i) {
+            jmsTemplate.convertAndSend("routed", "message-" + i);
+        }
+
+        assertEquals(50, broker1.getQueueSize("routed"));
+        assertEquals(50, broker2.getQueueSize("routed"));
+        assertEquals(1, broker1.getConnectionsOpened());
+        assertEquals(1, broker2.getConnectionsOpened());
+    }
+
+    @Test(timeout = 60000)
+    public void testRoundRobinSpreadsSendsWithoutPool() throws Exception {
+        load(EmptyConfiguration.class,
+             "spring.qpidjms.brokers[0].remoteURL=" + broker1.getConnectionURI(),
+             "spring.qpidjms.brokers[1].remoteURL=" + broker2.getConnectionURI());
+
+        JmsTemplate jmsTemplate = this.context.getBean(JmsTemplate.class);
+        for (int i = 0; i < 20; ++i) {
+            jmsTemplate.convertAndSend("routed", "message-" + i);
+        }
+
+        // Creating the message must not advance the rotation used by the send.
+        assertEquals(10, broker1.getQueueSize("routed"));
+        assertEquals(10, broker2.getQueueSize("routed"));
+        assertEquals(10, broker1.getConnectionsOpened());
+        assertEquals(10, broker2.getConnectionsOpened());
+    }
+
+    @Test(timeout = 60000)
+    public void testDestinationHashKeepsEachDestinationOnOneBroker() throws Exception {
+        load(EmptyConfiguration.class,
+             "spring.qpidjms.pool.enabled=true",
+             "spring.qpidjms.brokers[0].remoteURL=" + broker1.getConnectionURI(),
+             "spring.qpidjms.brokers[1].remoteURL=" + broker2.getConnectionURI(),
+             "spring.qpidjms.routing.strategy=DESTINATION_HASH");
+
+        JmsTemplate jmsTemplate = this.context.getBean(JmsTemplate.class);
+        for (int i = 0; i < 80; ++i) {
+            jmsTemplate.convertAndSend("hashed-" + (i % 8), "message-" + i);
+        }
+
+        long total1 = 0;
+        for (int i = 0; i < 8; ++i) {
+            long size1 = broker1.getQueueSize("hashed-" + i);
+            long size2 = broker2.getQueueSize("hashed-" + i);
+
+            assertEquals(10, size1 + size2);
+            assertTrue(size1 == 0 || size2 == 0);
+
+            total1 += size1;
+        }
+
+        // Eight destinations should not all hash to the same broker.
+        assertTrue(total1 > 0 && total1 < 80);
+    }
+
+    @Test(timeout = 60000)
+    public void testUnreachableBrokerTakenOutOfRotation() throws Exception {
+        String unreachable = broker2.getConnectionURI();
+        broker2.stop();
+
+        load(EmptyConfiguration.class,
+             "spring.qpidjms.brokers[0].remoteURL=" + broker1.getConnectionURI(),
+             "spring.qpidjms.brokers[1].remoteURL=" + unreachable,
+             "spring.qpidjms.routing.retryInterval=60000");
+
+        QpidJMSRoutingConnectionFactory connectionFactory = this.context.getBean(QpidJMSRoutingConnectionFactory.class);
+        JmsTemplate jmsTemplate = this.context.getBean(JmsTemplate.class);
+
+        for (int i = 0; i < 20; ++i) {
+            jmsTemplate.convertAndSend("available", "message-" + i);
+        }
+
+        assertEquals(20, broker1.getQueueSize("available"));
+        assertTrue(connectionFactory.isAvailable(0));
+        assertFalse(connectionFactory.isAvailable(1));
+    }
+
+    @Test(timeout = 60000)
+    public void testListenerConsumersAttachToEveryBroker() throws Exception {
+        load(EmptyConfiguration.class,
+             "spring.qpidjms.brokers[0].remoteURL=" + broker1.getConnectionURI(),
+             "spring.qpidjms.brokers[1].remoteURL=" + broker2.getConnectionURI());
+
+        ConnectionFactory connectionFactory = this.context.getBean(ConnectionFactory.class);
+        final CountDownLatch received = new CountDownLatch(100);
+
+        QpidJMSMessageListenerContainer container = new QpidJMSMessageListenerContainer();
+        container.setConnectionFactory(connectionFactory);
+        container.setDestinationName("spread");
+        container.setConcurrentConsumers(2);
+        container.setMessageListener((MessageListener) message -> received.countDown());
+        container.afterPropertiesSet();
+        container.start();
+
+        try {
+            JmsTemplate jmsTemplate = this.context.getBean(JmsTemplate.class);
+            for (int i = 0; i < 100; ++i) {
+                jmsTemplate.convertAndSend("spread", "message-" + i);
+            }
+
+            assertTrue(received.await(30, TimeUnit.SECONDS));
+            assertEquals(2, broker1.getQueueConsumerCount("spread"));
+            assertEquals(2, broker2.getQueueConsumerCount("spread"));
+        } finally {
+            container.destroy();
+        }
+    }
+
+    @Test(timeout = 60000)
+    public void testSingleListenerConsumerReceivesFromEveryBroker() throws Exception {
+        load(EmptyConfiguration.class,
+             "spring.qpidjms.brokers[0].remoteURL=" + broker1.getConnectionURI(),
+             "spring.qpidjms.brokers[1].remoteURL=" + broker2.getConnectionURI());
+
+        ConnectionFactory connectionFactory = this.context.getBean(ConnectionFactory.class);
+        final CountDownLatch received = new CountDownLatch(100);
+        final AtomicInteger active = new AtomicInteger();
+        final AtomicBoolean overlapped = new AtomicBoolean();
+        final Set<Thread> deliveryThreads = ConcurrentHashMap.newKeySet();
+
+        QpidJMSMessageListenerContainer container = new QpidJMSMessageListenerContainer();
+        container.setConnectionFactory(connectionFactory);
+        container.setDestinationName("single");
+        container.setConcurrentConsumers(1);
+        container.setMessageListener((MessageListener) message -> {
+            // The brokers of the one session must not deliver concurrently.
+            if (active.incrementAndGet() > 1) {
+                overlapped.set(true);
+            }
+            deliveryThreads.add(Thread.currentThread());
+            received.countDown();
+            active.decrementAndGet();
+        });
+        container.afterPropertiesSet();
+        container.start();
+
+        try {
+            JmsTemplate jmsTemplate = this.context.getBean(JmsTemplate.class);
+            for (int i = 0; i < 100; ++i) {
+                jmsTemplate.convertAndSend("single", "message-" + i);
+            }
+
+            assertTrue(received.await(30, TimeUnit.SECONDS));
+            assertFalse(overlapped.get());
+            assertEquals(1, deliveryThreads.size());
+            assertEquals(1, broker1.getQueueConsumerCount("single"));
+            assertEquals(1, broker2.getQueueConsumerCount("single"));
+
+            // Messages are acknowledged after the listener returns.
+            while (broker1.getQueueSize("single") + broker2.getQueueSize("single") > 0) {
+                TimeUnit.MILLISECONDS.sleep(20);
+            }
+        } finally {
+            container.destroy();
+        }
+    }
+
+    @Test(timeout = 60000)
+    public void testCoalescedAcknowledgementCoversEveryBroker() throws Exception {
+        load(EmptyConfiguration.class,
+             "spring.qpidjms.brokers[0].remoteURL=" + broker1.getConnectionURI(),
+             "spring.qpidjms.brokers[1].remoteURL=" + broker2.getConnectionURI());
+
+        ConnectionFactory connectionFactory = this.context.getBean(ConnectionFactory.class);
+        final CountDownLatch received = new CountDownLatch(20);
+
+        QpidJMSMessageListenerContainer container = new QpidJMSMessageListenerContainer();
+        container.setConnectionFactory(connectionFactory);
+        container.setDestinationName("acknowledged");
+        container.setConcurrentConsumers(1);
+        container.setSessionAcknowledgeMode(Session.CLIENT_ACKNOWLEDGE);
+        container.setMaxPendingAcknowledgements(1000);
+        container.setAcknowledgeFlushInterval(200);
+        container.setMessageListener((MessageListener) message -> received.countDown());
+        container.afterPropertiesSet();
+        container.start();
+
+        try {
+            JmsTemplate jmsTemplate = this.context.getBean(JmsTemplate.class);
+            for (int i = 0; i < 20; ++i) {
+                jmsTemplate.convertAndSend("acknowledged", "message-" + i);
+            }
+
+            assertTrue(received.await(30, TimeUnit.SECONDS));
+
+            // The flush acknowledges the messages of both brokers at once.
+            while (broker1.getQueueSize("acknowledged") + broker2.getQueueSize("acknowledged") > 0) {
+                TimeUnit.MILLISECONDS.sleep(20);
+            }
+        } finally {
+            container.destroy();
+        }
+    }
+
+    @Test(timeout = 60000)
+    public void testReceiveTakesMessagesFromEveryBroker() throws Exception {
+        load(EmptyConfiguration.class,
+             "spring.qpidjms.pool.enabled=true",
+             "spring.qpidjms.brokers[0].remoteURL=" + broker1.getConnectionURI(),
+             "spring.qpidjms.brokers[1].remoteURL=" + broker2.getConnectionURI());
+
+        JmsTemplate jmsTemplate = this.context.getBean(JmsTemplate.class);
+        for (int i = 0; i < 10; ++i) {
+            jmsTemplate.convertAndSend("received", "message-" + i);
+        }
+
+        assertEquals(5, broker1.getQueueSize("received"));
+        assertEquals(5, broker2.getQueueSize("received"));
+
+        ConnectionFactory connectionFactory = this.context.getBean(ConnectionFactory.class);
+        try (Connection connection = connectionFactory.createConnection()) {
+            connection.start();
+
+            Session session = connection.createSession(false, Session.AUTO_ACKNOWLEDGE);
+            MessageConsumer consumer = session.createConsumer(session.createQueue("received"));
+
+            for (int i = 0; i < 10; ++i) {
+                assertNotNull(consumer.receive(5000));
+            }
+            assertNull(consumer.receiveNoWait());
+        }
+
+        assertEquals(0, broker1.getQueueSize("received"));
+        assertEquals(0, broker2.getQueueSize("received"));
+    }
+
+    @Test(timeout = 60000)
+    public void testFailedCommitRollsBackRemainingBrokers() throws Exception {
+        load(EmptyConfiguration.class,
+             "spring.qpidjms.brokers[0].remoteURL=" + broker1.getConnectionURI(),
+             "spring.qpidjms.brokers[1].remoteURL=" + broker2.getConnectionURI());
+
+        try (Connection connection = new JmsConnectionFactory(broker2.getConnectionURI()).createConnection()) {
+            Session session = connection.createSession(false, Session.AUTO_ACKNOWLEDGE);
+            session.createProducer(session.createQueue("transacted")).send(session.createTextMessage("message"));
+        }
+
+        ConnectionFactory connectionFactory = this.context.getBean(ConnectionFactory.class);
+        try (Connection connection = connectionFactory.createConnection()) {
+            connection.start();
+
+            Session session = connection.createSession(true, Session.SESSION_TRANSACTED);
+            MessageProducer producer = session.createProducer(session.createQueue("sent"));
+            producer.send(session.createTextMessage("message-1"));
+            producer.send(session.createTextMessage("message-2"));
+
+            // A consumer of the failed broker cannot receive, the listener of the other broker still delivers.
+            final BlockingQueue<Message> received = new LinkedBlockingQueue<>();
+            MessageConsumer consumer = session.createConsumer(session.createQueue("transacted"));
+            consumer.setMessageListener(received::add);
+
+            Message message = received.poll(5, TimeUnit.SECONDS);
+            assertNotNull(message);
+            assertFalse(message.getJMSRedelivered());
+
+            broker1.stop();
+
+            try {
+                session.commit();
+                fail("Commit should fail when the first broker is gone");
+            } catch (TransactionRolledBackException ex) {
+                assertNotNull(ex.getLinkedException());
+            }
+
+            // The second broker was rolled back rather than left with an open transaction.
+            message = received.poll(5, TimeUnit.SECONDS);
+            assertNotNull(message);
+            assertTrue(message.getJMSRedelivered());
+        }
+
+        assertEquals(0, broker2.getQueueSize("sent"));
+    }
+
+    @Configuration
+    static class EmptyConfiguration {}
+
+    private void load(Class<?> config, String... environment) {
+        AnnotationConfigApplicationContext applicationContext = new AnnotationConfigApplicationContext();
+        applicationContext.register(config);
+        applicationContext.register(QpidJMSAutoConfiguration.class, JmsAutoConfiguration.class);
+        EnvironmentTestUtils.addEnvironment(applicationContext, environment);
+        applicationContext.refresh();
+        this.context = applicationContext;
+    }
+}
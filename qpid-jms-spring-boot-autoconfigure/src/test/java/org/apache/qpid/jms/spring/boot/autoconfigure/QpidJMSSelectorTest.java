@@ -0,0 +1,361 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.qpid.jms.spring.boot.autoconfigure;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import javax.jms.Connection;
+import javax.jms.ConnectionFactory;
+import javax.jms.Destination;
+import javax.jms.InvalidSelectorException;
+import javax.jms.Message;
+import javax.jms.MessageConsumer;
+import javax.jms.MessageProducer;
+import javax.jms.Session;
+import javax.jms.Topic;
+
+import org.apache.qpid.jms.JmsConnection;
+import org.apache.qpid.jms.message.JmsMessage;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.springframework.boot.autoconfigure.jms.JmsAutoConfiguration;
+import org.springframework.boot.test.util.EnvironmentTestUtils;
+import org.springframework.context.annotation.AnnotationConfigApplicationContext;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.jms.annotation.EnableJms;
+import org.springframework.jms.annotation.JmsListener;
+import org.springframework.jms.config.JmsListenerEndpointRegistry;
+
+/**
+ * Test for the selector cache and client-side selector filtering.
+ */
+public class QpidJMSSelectorTest {
+
+    private final AmqpTestBroker broker = new AmqpTestBroker();
+
+    private AnnotationConfigApplicationContext context;
+
+    @Before
+    public void setUp() throws Exception {
+        broker.start();
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        if (this.context != null) {
+            this.context.close();
+        }
+
+        broker.stop();
+    }
+
+    @Test
+    public void testSelectorConfiguredFromEnv() throws Exception {
+        load(EmptyConfiguration.class,
+             "spring.qpidjms.remoteURL=" + broker.getConnectionURI(),
+             "spring.qpidjms.selector.mode=client",
+             "spring.qpidjms.selector.cacheSize=16");
+
+        QpidJMSSelectorFilter selectorFilter = getConnectionFactory().selectorFilter();
+        assertNotNull(selectorFilter);
+        assertEquals(QpidJMSSelectorFilter.Mode.CLIENT, selectorFilter.getMode());
+        assertEquals(16, selectorFilter.getMaxCacheSize());
+    }
+
+    @Test
+    public void testBrokerModeLeavesSelectorsToBroker() throws Exception {
+        load(EmptyConfiguration.class,
+             "spring.qpidjms.remoteURL=" + broker.getConnectionURI(),
+             "spring.qpidjms.selector.mode=broker");
+
+        assertNull(getConnectionFactory().selectorFilter());
+    }
+
+    @Test
+    public void testCompiledSelectorsAreCachedAndBounded() throws Exception {
+        QpidJMSSelectorFilter selectorFilter = new QpidJMSSelectorFilter(QpidJMSSelectorFilter.Mode.AUTO);
+        selectorFilter.setMaxCacheSize(2);
+
+        assertTrue(selectorFilter.compile("color = 'red'") == selectorFilter.compile("color = 'red'"));
+        selectorFilter.compile("color = 'blue'");
+        assertEquals(2, selectorFilter.getCacheSize());
+        selectorFilter.compile("color = 'green'");
+        assertEquals(1, selectorFilter.getCacheSize());
+
+        try {
+            selectorFilter.compile("color = ");
+            fail("Should have rejected the selector");
+        } catch (InvalidSelectorException ex) {
+            assertTrue(ex.getMessage().contains("color = "));
+        }
+    }
+
+    @Test
+    public void testSelectorEvaluatedAgainstHeadersAndProperties() throws Exception {
+        load(EmptyConfiguration.class, "spring.qpidjms.remoteURL=" + broker.getConnectionURI());
+
+        Connection connection = this.context.getBean(ConnectionFactory.class).createConnection();
+        try {
+            Session session = connection.createSession(false, Session.AUTO_ACKNOWLEDGE);
+            Message message = session.createTextMessage("body");
+            message.setStringProperty("color", "red");
+            message.setJMSPriority(7);
+
+            assertTrue(QpidJMSSelectorFilter.matches(
+                QpidJMSSelectorFilter.parse("color = 'red' AND JMSPriority > 4"), (JmsMessage) message));
+            assertFalse(QpidJMSSelectorFilter.matches(
+                QpidJMSSelectorFilter.parse("color = 'blue'"), (JmsMessage) message));
+            assertFalse(QpidJMSSelectorFilter.matches(
+                QpidJMSSelectorFilter.parse("size > 10"), (JmsMessage) message));
+        } finally {
+            connection.close();
+        }
+    }
+
+    @Test(timeout = 60000)
+    public void testAutoModeTrustsBrokerThatAppliesSelector() throws Exception {
+        load(EmptyConfiguration.class, "spring.qpidjms.remoteURL=" + broker.getConnectionURI());
+
+        Connection connection = this.context.getBean(ConnectionFactory.class).createConnection();
+        try {
+            connection.start();
+
+            Session session = connection.createSession(false, Session.AUTO_ACKNOWLEDGE);
+            Destination topic = session.createTopic("selected");
+            MessageConsumer consumer = session.createConsumer(topic, "color = 'red'");
+
+            sendColors(session, topic, 5);
+
+            assertReceivedRed(consumer, 5);
+
+            // The broker attached the link with the selector, nothing is evaluated locally.
+            assertEquals(-1, QpidJMSConsumerSupport.getDiscardedMessageCount(consumer));
+            assertEquals(1, getConnectionFactory().selectorFilter().getCacheSize());
+        } finally {
+            connection.close();
+        }
+    }
+
+    @Test(timeout = 60000)
+    @SuppressWarnings("unchecked")
+    public void testClientModeDiscardsUnselectedTopicMessages() throws Exception {
+        load(EmptyConfiguration.class,
+             "spring.qpidjms.remoteURL=" + broker.getConnectionURI() + "?jms.prefetchPolicy.all=10",
+             "spring.qpidjms.selector.mode=client");
+
+        Connection connection = this.context.getBean(ConnectionFactory.class).createConnection();
+        Connection other = this.context.getBean(ConnectionFactory.class).createConnection();
+        try {
+            connection.start();
+            other.start();
+
+            Session session = connection.createSession(false, Session.AUTO_ACKNOWLEDGE);
+            Destination topic = session.createTopic("selected");
+            MessageConsumer consumer = session.createConsumer(topic, "color = 'red'");
+            MessageConsumer otherConsumer = other.createSession(false, Session.AUTO_ACKNOWLEDGE)
+                .createConsumer(topic, "color = 'red'");
+
+            assertEquals("color = 'red'", consumer.getMessageSelector());
+
+            // More messages than the prefetch holds, the discarded ones give their credit back.
+            sendColors(session, topic, 15);
+
+            assertReceivedRed(consumer, 15);
+            assertReceivedRed(otherConsumer, 15);
+
+            assertEquals(15, QpidJMSConsumerSupport.getDiscardedMessageCount(consumer));
+            assertEquals(15, QpidJMSConsumerSupport.getDiscardedMessageCount(otherConsumer));
+            assertEquals(1, getConnectionFactory().selectorFilter().getCacheSize());
+
+            Map<String, Object> description = QpidJMSConnectionDiagnostics.describe((JmsConnection) connection);
+            Map<String, Object> sessionDescription = ((List<Map<String, Object>>) description.get("sessions")).get(0);
+            Map<String, Object> consumerDescription =
+                ((List<Map<String, Object>>) sessionDescription.get("consumers")).get(0);
+            assertEquals("color = 'red'", consumerDescription.get("selector"));
+            assertEquals(15L, consumerDescription.get("discarded"));
+        } finally {
+            connection.close();
+            other.close();
+        }
+    }
+
+    @Test(timeout = 60000)
+    public void testClientModeSendsSelectorOfDurableSubscription() throws Exception {
+        load(EmptyConfiguration.class,
+             "spring.qpidjms.remoteURL=" + broker.getConnectionURI() + "?jms.prefetchPolicy.all=10",
+             "spring.qpidjms.selector.mode=client");
+
+        Connection connection = this.context.getBean(ConnectionFactory.class).createConnection();
+        try {
+            connection.setClientID("selected-durable");
+            connection.start();
+
+            Session session = connection.createSession(false, Session.AUTO_ACKNOWLEDGE);
+            Topic topic = session.createTopic("selected-durable");
+            MessageConsumer consumer = session.createDurableSubscriber(topic, "red", "color = 'red'", false);
+
+            sendColors(session, topic, 15);
+
+            // The broker keeps the selector with the subscription and filters itself.
+            assertReceivedRed(consumer, 15);
+            assertEquals(-1, QpidJMSConsumerSupport.getDiscardedMessageCount(consumer));
+
+            consumer.close();
+            session.unsubscribe("red");
+        } finally {
+            connection.close();
+        }
+    }
+
+    @Test(timeout = 60000)
+    public void testListenerContainerReportsDiscardedMessages() throws Exception {
+        load(SelectorListenerConfiguration.class,
+             "spring.qpidjms.remoteURL=" + broker.getConnectionURI(),
+             "spring.qpidjms.selector.mode=client",
+             "spring.jms.pub-sub-domain=true");
+
+        QpidJMSMessageListenerContainer container = (QpidJMSMessageListenerContainer)
+            this.context.getBean(JmsListenerEndpointRegistry.class).getListenerContainer("selected");
+
+        Connection connection = this.context.getBean(ConnectionFactory.class).createConnection();
+        try {
+            Session session = connection.createSession(false, Session.AUTO_ACKNOWLEDGE);
+            sendColors(session, session.createTopic("selected"), 5);
+        } finally {
+            connection.close();
+        }
+
+        SelectorListener listener = this.context.getBean(SelectorListener.class);
+        assertTrue(listener.received.await(10, TimeUnit.SECONDS));
+
+        for (int i = 0; i < 100 && container.getDiscardedMessageCount() < 5; ++i) {
+            TimeUnit.MILLISECONDS.sleep(50);
+        }
+        assertEquals(5, container.getDiscardedMessageCount());
+
+        // The count of a stopped container's consumers is kept.
+        container.stop();
+        assertEquals(5, container.getDiscardedMessageCount());
+    }
+
+    @Test
+    public void testInvalidListenerSelectorFailsOnStartup() throws Exception {
+        try {
+            load(InvalidSelectorListenerConfiguration.class,
+                 "spring.qpidjms.remoteURL=" + broker.getConnectionURI());
+            fail("Should have rejected the listener selector");
+        } catch (RuntimeException ex) {
+            Throwable cause = ex;
+            while (!(cause instanceof IllegalArgumentException) && cause.getCause() != null) {
+                cause = cause.getCause();
+            }
+
+            assertTrue(cause.getMessage().contains("Invalid message selector"));
+            assertTrue(cause.getCause() instanceof InvalidSelectorException);
+        }
+    }
+
+    private static void sendColors(Session session, Destination destination, int count) throws Exception {
+        MessageProducer producer = session.createProducer(destination);
+        for (int i = 0; i < count; ++i) {
+            for (String color : new String[] { "red", "blue" }) {
+                Message message = session.createTextMessage(color + "-" + i);
+                message.setStringProperty("color", color);
+                producer.send(message);
+            }
+        }
+        producer.close();
+    }
+
+    private static void assertReceivedRed(MessageConsumer consumer, int count) throws Exception {
+        for (int i = 0; i < count; ++i) {
+            Message message = consumer.receive(5000);
+            assertNotNull(message);
+            assertEquals("red", message.getStringProperty("color"));
+        }
+
+        assertNull(consumer.receive(100));
+    }
+
+    private QpidJMSConnectionFactory getConnectionFactory() {
+        return QpidJMSConnectionDiagnostics.getConnectionFactories(this.context.getBean(ConnectionFactory.class)).get(0);
+    }
+
+    @Configuration
+    static class EmptyConfiguration {}
+
+    @Configuration
+    @EnableJms
+    static class SelectorListenerConfiguration {
+
+        @Bean
+        public SelectorListener selectorListener() {
+            return new SelectorListener();
+        }
+    }
+
+    static class SelectorListener {
+
+        private final CountDownLatch received = new CountDownLatch(5);
+
+        @JmsListener(id = "selected", destination = "selected", selector = "color = 'red'",
+                     containerFactory = "qpidJmsListenerContainerFactory")
+        public void onMessage(Message message) throws Exception {
+            assertEquals("red", message.getStringProperty("color"));
+            received.countDown();
+        }
+    }
+
+    @Configuration
+    @EnableJms
+    static class InvalidSelectorListenerConfiguration {
+
+        @Bean
+        public InvalidSelectorListener invalidSelectorListener() {
+            return new InvalidSelectorListener();
+        }
+    }
+
+    static class InvalidSelectorListener {
+
+        @JmsListener(destination = "selected", selector = "color = ",
+                     containerFactory = "qpidJmsListenerContainerFactory")
+        public void onMessage(String message) {
+        }
+    }
+
+    private void load(Class<?> config, String... environment) {
+        AnnotationConfigApplicationContext applicationContext = new AnnotationConfigApplicationContext();
+        applicationContext.register(config);
+        applicationContext.register(QpidJMSAutoConfiguration.class, JmsAutoConfiguration.class);
+        EnvironmentTestUtils.addEnvironment(applicationContext, environment);
+        applicationContext.refresh();
+        this.context = applicationContext;
+    }
+}
@@ -0,0 +1,164 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.qpid.jms.spring.boot.autoconfigure;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.util.List;
+
+import javax.jms.Connection;
+import javax.jms.ConnectionFactory;
+import javax.jms.MessageConsumer;
+import javax.jms.MessageProducer;
+import javax.jms.Queue;
+import javax.jms.Session;
+import javax.net.ssl.SSLContext;
+
+import org.apache.qpid.jms.JmsConnectionFactory;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.springframework.boot.autoconfigure.jms.JmsAutoConfiguration;
+import org.springframework.boot.test.util.EnvironmentTestUtils;
+import org.springframework.context.annotation.AnnotationConfigApplicationContext;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.test.util.ReflectionTestUtils;
+
+/**
+ * Test for the SSLContext shared by the connections of a connection factory.
+ */
+public class QpidJMSSslTest {
+
+    private final AmqpTestBroker broker = new AmqpTestBroker("qpid-jms-spring-boot-test-ssl", "amqp+ssl");
+
+    private AnnotationConfigApplicationContext context;
+
+    @Before
+    public void setUp() throws Exception {
+        broker.start();
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        if (this.context != null) {
+            this.context.close();
+        }
+
+        broker.stop();
+    }
+
+    @Test
+    public void testNoSharedSslContextByDefault() throws Exception {
+        load(EmptyConfiguration.class, "spring.qpidjms.remoteURL=" + broker.getConnectionURI());
+
+        assertNull(getSslContext(this.context.getBean(JmsConnectionFactory.class)));
+    }
+
+    @Test(timeout = 60000)
+    public void testConnectionsResumeSessionsOfSharedSslContext() throws Exception {
+        // The test broker predates TLS 1.3 and fails some of its handshakes.
+        load(EmptyConfiguration.class,
+             "spring.qpidjms.remoteURL=" + broker.getConnectionURI() + "?transport.enabledProtocols=TLSv1.2",
+             "spring.qpidjms.ssl.enabled=true",
+             "spring.qpidjms.ssl.trustStoreLocation=classpath:" + AmqpTestBroker.CLIENT_TRUSTSTORE,
+             "spring.qpidjms.ssl.trustStorePassword=" + AmqpTestBroker.STORE_PASSWORD,
+             "spring.qpidjms.ssl.sessionCacheSize=100",
+             "spring.qpidjms.ssl.sessionTimeout=3600");
+
+        JmsConnectionFactory connectionFactory = this.context.getBean(JmsConnectionFactory.class);
+        SSLContext sslContext = getSslContext(connectionFactory);
+
+        assertNotNull(sslContext);
+        assertEquals(100, sslContext.getClientSessionContext().getSessionCacheSize());
+        assertEquals(3600, sslContext.getClientSessionContext().getSessionTimeout());
+
+        for (int i = 0; i < 2; ++i) {
+            Connection connection = connectionFactory.createConnection();
+            try {
+                connection.start();
+
+                Session session = connection.createSession(false, Session.AUTO_ACKNOWLEDGE);
+                Queue queue = session.createQueue("ssl");
+                MessageConsumer consumer = session.createConsumer(queue);
+                MessageProducer producer = session.createProducer(queue);
+
+                producer.send(session.createTextMessage("secure"));
+                assertNotNull(consumer.receive(10000));
+            } finally {
+                connection.close();
+            }
+
+            assertTrue("No session cached for resumption",
+                sslContext.getClientSessionContext().getIds().hasMoreElements());
+        }
+    }
+
+    @Test
+    public void testBrokersShareOneSslContext() throws Exception {
+        load(EmptyConfiguration.class,
+             "spring.qpidjms.brokers[0].remoteURL=" + broker.getConnectionURI(),
+             "spring.qpidjms.brokers[1].remoteURL=" + broker.getConnectionURI(),
+             "spring.qpidjms.ssl.enabled=true",
+             "spring.qpidjms.ssl.trustStoreLocation=classpath:" + AmqpTestBroker.CLIENT_TRUSTSTORE,
+             "spring.qpidjms.ssl.trustStorePassword=" + AmqpTestBroker.STORE_PASSWORD);
+
+        List<QpidJMSConnectionFactory> connectionFactories =
+            QpidJMSConnectionDiagnostics.getConnectionFactories(this.context.getBean(ConnectionFactory.class));
+
+        assertNotNull(getSslContext(connectionFactories.get(0)));
+        assertSame(getSslContext(connectionFactories.get(0)), getSslContext(connectionFactories.get(1)));
+    }
+
+    @Test
+    public void testMissingTrustStoreRejected() throws Exception {
+        try {
+            load(EmptyConfiguration.class,
+                 "spring.qpidjms.remoteURL=" + broker.getConnectionURI(),
+                 "spring.qpidjms.ssl.enabled=true",
+                 "spring.qpidjms.ssl.trustStoreLocation=classpath:missing.jks");
+            fail("Should have rejected the trust store");
+        } catch (RuntimeException ex) {
+            Throwable cause = ex;
+            while (!(cause instanceof IllegalArgumentException) && cause.getCause() != null) {
+                cause = cause.getCause();
+            }
+
+            assertTrue(cause.getMessage().contains("SSLContext"));
+        }
+    }
+
+    private static SSLContext getSslContext(JmsConnectionFactory connectionFactory) {
+        return (SSLContext) ReflectionTestUtils.getField(connectionFactory, "sslContext");
+    }
+
+    @Configuration
+    static class EmptyConfiguration {}
+
+    private void load(Class<?> config, String... environment) {
+        AnnotationConfigApplicationContext applicationContext = new AnnotationConfigApplicationContext();
+        applicationContext.register(config);
+        applicationContext.register(QpidJMSAutoConfiguration.class, JmsAutoConfiguration.class);
+        EnvironmentTestUtils.addEnvironment(applicationContext, environment);
+        applicationContext.refresh();
+        this.context = applicationContext;
+    }
+}
@@ -0,0 +1,329 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.qpid.jms.spring.boot.autoconfigure;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import javax.jms.Connection;
+import javax.jms.ConnectionFactory;
+import javax.jms.Message;
+import javax.jms.MessageListener;
+import javax.jms.MessageProducer;
+import javax.jms.Session;
+
+import org.apache.qpid.jms.JmsConnectionFactory;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.springframework.boot.autoconfigure.jms.JmsAutoConfiguration;
+import org.springframework.boot.test.util.EnvironmentTestUtils;
+import org.springframework.context.annotation.AnnotationConfigApplicationContext;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.jms.config.MethodJmsListenerEndpoint;
+import org.springframework.jms.config.SimpleJmsListenerEndpoint;
+import org.springframework.messaging.handler.annotation.support.DefaultMessageHandlerMethodFactory;
+
+/**
+ * Test for client IDs and subscriptions of scaled out applications.
+ */
+public class QpidJMSSubscriptionTest {
+
+    private final AmqpTestBroker broker = new AmqpTestBroker();
+
+    private AnnotationConfigApplicationContext context;
+
+    @Before
+    public void setUp() throws Exception {
+        broker.start();
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        if (this.context != null) {
+            this.context.close();
+        }
+
+        broker.stop();
+    }
+
+    @Test
+    public void testFixedClientIdIsSetOnConnections() throws Exception {
+        load(EmptyConfiguration.class,
+             "spring.qpidjms.remoteURL=" + broker.getConnectionURI(),
+             "spring.qpidjms.clientId=orders");
+
+        Connection connection = getConnectionFactory().createConnection();
+        try {
+            assertEquals("orders", connection.getClientID());
+        } finally {
+            connection.close();
+        }
+    }
+
+    @Test
+    public void testInstanceClientIdsAreUniquePerConnection() throws Exception {
+        load(EmptyConfiguration.class,
+             "spring.qpidjms.remoteURL=" + broker.getConnectionURI(),
+             "spring.qpidjms.clientId=orders",
+             "spring.qpidjms.clientIdStrategy=instance",
+             "spring.qpidjms.instanceId=pod-1");
+
+        Connection first = getConnectionFactory().createConnection();
+        Connection second = getConnectionFactory().createConnection();
+        try {
+            first.start();
+            second.start();
+
+            assertTrue(first.getClientID().startsWith("orders-pod-1-"));
+            assertTrue(second.getClientID().startsWith("orders-pod-1-"));
+            assertNotEquals(first.getClientID(), second.getClientID());
+        } finally {
+            first.close();
+            second.close();
+        }
+    }
+
+    @Test
+    public void testInstanceClientIdDefaultsToHostName() throws Exception {
+        load(EmptyConfiguration.class,
+             "spring.qpidjms.remoteURL=" + broker.getConnectionURI(),
+             "spring.qpidjms.clientIdStrategy=instance");
+
+        Connection connection = getConnectionFactory().createConnection();
+        try {
+            connection.start();
+
+            assertTrue(connection.getClientID().startsWith("qpid-jms-"));
+        } finally {
+            connection.close();
+        }
+    }
+
+    @Test
+    public void testSharedSubscriptionsConfiguredFromEnv() throws Exception {
+        // The test broker does not support shared subscriptions, so the containers
+        // are created from the factory without being initialized.
+        load(EmptyConfiguration.class,
+             "spring.qpidjms.remoteURL=" + broker.getConnectionURI(),
+             "spring.application.name=orders",
+             "spring.jms.pubSubDomain=true",
+             "spring.qpidjms.subscription.shared=true",
+             "spring.qpidjms.subscription.durable=true",
+             "spring.qpidjms.subscription.nameTemplate={application}.{listener}.{destination}");
+
+        QpidJMSListenerContainerFactory factory = getListenerContainerFactory();
+
+        QpidJMSMessageListenerContainer audit = factory.createListenerContainer(createEndpoint("audit", null));
+        assertTrue(audit.isPubSubDomain());
+        assertTrue(audit.isSubscriptionShared());
+        assertTrue(audit.isSubscriptionDurable());
+        assertEquals("orders.audit.events", audit.getSubscriptionName());
+
+        QpidJMSMessageListenerContainer named = factory.createListenerContainer(createEndpoint("named", "billing"));
+        assertEquals("billing", named.getSubscriptionName());
+
+        MethodJmsListenerEndpoint endpoint = new MethodJmsListenerEndpoint();
+        endpoint.setId("org.springframework.jms.JmsListenerEndpointContainer#0");
+        endpoint.setDestination("events");
+        endpoint.setBean(new SubscriptionListener());
+        endpoint.setMethod(SubscriptionListener.class.getMethod("onEvent", String.class));
+        endpoint.setMessageHandlerMethodFactory(createMessageHandlerMethodFactory());
+
+        QpidJMSMessageListenerContainer unnamed = factory.createListenerContainer(endpoint);
+        assertEquals("orders.SubscriptionListener.onEvent.events", unnamed.getSubscriptionName());
+    }
+
+    @Test
+    public void testDefaultSubscriptionNameIsListenerId() throws Exception {
+        load(EmptyConfiguration.class,
+             "spring.qpidjms.remoteURL=" + broker.getConnectionURI(),
+             "spring.jms.pubSubDomain=true",
+             "spring.qpidjms.subscription.shared=true");
+
+        QpidJMSMessageListenerContainer audit =
+            getListenerContainerFactory().createListenerContainer(createEndpoint("audit", null));
+
+        assertTrue(audit.isSubscriptionShared());
+        assertFalse(audit.isSubscriptionDurable());
+        assertEquals("audit", audit.getSubscriptionName());
+    }
+
+    @Test
+    public void testQueueListenersAreNotGivenSubscriptions() throws Exception {
+        load(EmptyConfiguration.class,
+             "spring.qpidjms.remoteURL=" + broker.getConnectionURI());
+
+        QpidJMSMessageListenerContainer audit =
+            getListenerContainerFactory().createListenerContainer(createEndpoint("audit", null));
+
+        assertFalse(audit.isPubSubDomain());
+        assertFalse(audit.isSubscriptionShared());
+        assertFalse(audit.isSubscriptionDurable());
+    }
+
+    @Test(timeout = 60000)
+    public void testQueueListenerKeepsQueueWithSubscriptionsEnabled() throws Exception {
+        load(EmptyConfiguration.class,
+             "spring.qpidjms.remoteURL=" + broker.getConnectionURI(),
+             "spring.qpidjms.subscription.shared=true",
+             "spring.qpidjms.subscription.durable=true");
+
+        QpidJMSListenerContainerFactory factory = getListenerContainerFactory();
+
+        // A listener that names its subscription consumes from the topic.
+        QpidJMSMessageListenerContainer audit = factory.createListenerContainer(createEndpoint("audit", "billing"));
+        assertTrue(audit.isPubSubDomain());
+        assertTrue(audit.isSubscriptionShared());
+        assertTrue(audit.isSubscriptionDurable());
+        assertEquals("billing", audit.getSubscriptionName());
+
+        final CountDownLatch received = new CountDownLatch(1);
+        SimpleJmsListenerEndpoint endpoint = createEndpoint("orders", null);
+        endpoint.setMessageListener(new MessageListener() {
+
+            @Override
+            public void onMessage(Message message) {
+                received.countDown();
+            }
+        });
+
+        QpidJMSMessageListenerContainer orders = factory.createListenerContainer(endpoint);
+        assertFalse(orders.isPubSubDomain());
+        assertFalse(orders.isSubscriptionShared());
+        assertFalse(orders.isSubscriptionDurable());
+
+        orders.afterPropertiesSet();
+        orders.start();
+        try {
+            Connection connection = new JmsConnectionFactory(broker.getConnectionURI()).createConnection();
+            try {
+                Session session = connection.createSession(false, Session.AUTO_ACKNOWLEDGE);
+                MessageProducer producer = session.createProducer(session.createQueue("events"));
+                producer.send(session.createTextMessage("order"));
+            } finally {
+                connection.close();
+            }
+
+            assertTrue("Queue message was not handled", received.await(30, TimeUnit.SECONDS));
+        } finally {
+            orders.destroy();
+        }
+    }
+
+    @Test(timeout = 60000)
+    public void testUnsharedTopicListenerDoesNotScale() throws Exception {
+        final int count = 50;
+        final CountDownLatch received = new CountDownLatch(count);
+        final AtomicInteger maxConsumers = new AtomicInteger();
+
+        final QpidJMSMessageListenerContainer container = new QpidJMSMessageListenerContainer();
+        container.setConnectionFactory(new JmsConnectionFactory(broker.getConnectionURI()));
+        container.setDestinationName("unshared");
+        container.setPubSubDomain(true);
+        container.setConcurrency("1-4");
+        container.setBacklogThreshold(1);
+        container.setMonitorInterval(50);
+        container.setMessageListener(new MessageListener() {
+
+            @Override
+            public void onMessage(Message message) {
+                maxConsumers.accumulateAndGet(container.getActiveConsumerCount(), Math::max);
+                try {
+                    Thread.sleep(10);
+                } catch (InterruptedException ex) {
+                    Thread.currentThread().interrupt();
+                }
+                received.countDown();
+            }
+        });
+        container.afterPropertiesSet();
+        container.start();
+
+        try {
+            Connection connection = new JmsConnectionFactory(broker.getConnectionURI()).createConnection();
+            try {
+                Session session = connection.createSession(false, Session.AUTO_ACKNOWLEDGE);
+                MessageProducer producer = session.createProducer(session.createTopic("unshared"));
+                for (int i = 0; i < count; ++i) {
+                    producer.send(session.createTextMessage("message-" + i));
+                }
+            } finally {
+                connection.close();
+            }
+
+            assertTrue("Not all messages were handled", received.await(30, TimeUnit.SECONDS));
+            assertEquals(1, maxConsumers.get());
+            assertEquals(1, container.getActiveConsumerCount());
+        } finally {
+            container.destroy();
+        }
+    }
+
+    private SimpleJmsListenerEndpoint createEndpoint(String id, String subscription) {
+        SimpleJmsListenerEndpoint endpoint = new SimpleJmsListenerEndpoint();
+        endpoint.setId(id);
+        endpoint.setDestination("events");
+        endpoint.setSubscription(subscription);
+        endpoint.setMessageListener(new MessageListener() {
+
+            @Override
+            public void onMessage(Message message) {
+            }
+        });
+
+        return endpoint;
+    }
+
+    private DefaultMessageHandlerMethodFactory createMessageHandlerMethodFactory() {
+        DefaultMessageHandlerMethodFactory messageHandlerMethodFactory = new DefaultMessageHandlerMethodFactory();
+        messageHandlerMethodFactory.afterPropertiesSet();
+        return messageHandlerMethodFactory;
+    }
+
+    private QpidJMSListenerContainerFactory getListenerContainerFactory() {
+        return this.context.getBean("qpidJmsListenerContainerFactory", QpidJMSListenerContainerFactory.class);
+    }
+
+    private QpidJMSConnectionFactory getConnectionFactory() {
+        return QpidJMSConnectionDiagnostics.getConnectionFactories(this.context.getBean(ConnectionFactory.class)).get(0);
+    }
+
+    @Configuration
+    static class EmptyConfiguration {}
+
+    static class SubscriptionListener {
+
+        public void onEvent(String message) {
+        }
+    }
+
+    private void load(Class<?> config, String... environment) {
+        AnnotationConfigApplicationContext applicationContext = new AnnotationConfigApplicationContext();
+        applicationContext.register(config);
+        applicationContext.register(QpidJMSAutoConfiguration.class, JmsAutoConfiguration.class);
+        EnvironmentTestUtils.addEnvironment(applicationContext, environment);
+        applicationContext.refresh();
+        this.context = applicationContext;
+    }
+}
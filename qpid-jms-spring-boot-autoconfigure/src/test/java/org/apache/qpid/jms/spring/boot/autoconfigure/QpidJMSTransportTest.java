@@ -0,0 +1,175 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.qpid.jms.spring.boot.autoconfigure;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.net.URI;
+import java.util.Map;
+
+import javax.jms.Connection;
+import javax.jms.MessageConsumer;
+import javax.jms.MessageProducer;
+import javax.jms.Queue;
+import javax.jms.Session;
+
+import org.apache.qpid.jms.JmsConnectionFactory;
+import org.apache.qpid.jms.util.URISupport;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.springframework.boot.autoconfigure.jms.JmsAutoConfiguration;
+import org.springframework.boot.test.util.EnvironmentTestUtils;
+import org.springframework.context.annotation.AnnotationConfigApplicationContext;
+import org.springframework.context.annotation.Configuration;
+
+/**
+ * Test for the typed transport options.
+ */
+public class QpidJMSTransportTest {
+
+    private final AmqpTestBroker broker = new AmqpTestBroker();
+
+    private AnnotationConfigApplicationContext context;
+
+    @Before
+    public void setUp() throws Exception {
+        broker.start();
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        if (this.context != null) {
+            this.context.close();
+        }
+
+        broker.stop();
+    }
+
+    @Test
+    public void testTransportOptionsAppliedToRemoteURL() throws Exception {
+        load(EmptyConfiguration.class,
+             "spring.qpidjms.remoteURL=amqp://host1:5672?transport.tcpNoDelay=false&amqp.idleTimeout=5000",
+             "spring.qpidjms.transport.useEpoll=false",
+             "spring.qpidjms.transport.tcpNoDelay=true",
+             "spring.qpidjms.transport.tcpKeepAlive=true",
+             "spring.qpidjms.transport.sendBufferSize=131072",
+             "spring.qpidjms.transport.receiveBufferSize=262144",
+             "spring.qpidjms.transport.connectTimeout=2000",
+             "spring.qpidjms.transport.trafficClass=16");
+
+        JmsConnectionFactory connectionFactory = this.context.getBean(JmsConnectionFactory.class);
+
+        URI remoteURI = new URI(connectionFactory.getRemoteURI());
+        Map<String, String> options = URISupport.parseParameters(remoteURI);
+
+        assertEquals("host1", remoteURI.getHost());
+        assertEquals("5000", options.get("amqp.idleTimeout"));
+        assertEquals("false", options.get("transport.useEpoll"));
+        assertEquals("true", options.get("transport.tcpNoDelay"));
+        assertEquals("true", options.get("transport.tcpKeepAlive"));
+        assertEquals("131072", options.get("transport.sendBufferSize"));
+        assertEquals("262144", options.get("transport.receiveBufferSize"));
+        assertEquals("2000", options.get("transport.connectTimeout"));
+        assertEquals("16", options.get("transport.trafficClass"));
+    }
+
+    @Test
+    public void testTransportOptionsAppliedToEachFailoverPeer() throws Exception {
+        load(EmptyConfiguration.class,
+             "spring.qpidjms.remoteURL=failover:(amqp://host1:5672?transport.tcpNoDelay=false,amqp://host2:5672)" +
+                 "?failover.maxReconnectAttempts=3",
+             "spring.qpidjms.transport.tcpNoDelay=true",
+             "spring.qpidjms.failover.reconnectDelay=10");
+
+        JmsConnectionFactory connectionFactory = this.context.getBean(JmsConnectionFactory.class);
+
+        URISupport.CompositeData composite = URISupport.parseComposite(new URI(connectionFactory.getRemoteURI()));
+
+        assertEquals(2, composite.getComponents().size());
+        for (URI peer : composite.getComponents()) {
+            assertEquals("true", URISupport.parseParameters(peer).get("transport.tcpNoDelay"));
+        }
+
+        assertEquals("3", composite.getParameters().get("failover.maxReconnectAttempts"));
+        assertEquals("10", composite.getParameters().get("failover.reconnectDelay"));
+        assertFalse(composite.getParameters().containsKey("transport.tcpNoDelay"));
+    }
+
+    @Test
+    public void testInvalidTransportOptionRejected() throws Exception {
+        try {
+            load(EmptyConfiguration.class,
+                 "spring.qpidjms.remoteURL=" + broker.getConnectionURI(),
+                 "spring.qpidjms.transport.trafficClass=256");
+            fail("Should have rejected the traffic class");
+        } catch (RuntimeException ex) {
+            Throwable cause = ex;
+            while (!(cause instanceof IllegalArgumentException) && cause.getCause() != null) {
+                cause = cause.getCause();
+            }
+
+            assertTrue(cause.getMessage().contains("trafficClass"));
+        }
+    }
+
+    @Test(timeout = 60000)
+    public void testConnectsWithNioAndEpollTransports() throws Exception {
+        for (String useEpoll : new String[] { "false", "true" }) {
+            load(EmptyConfiguration.class,
+                 "spring.qpidjms.remoteURL=" + broker.getConnectionURI(),
+                 "spring.qpidjms.transport.useEpoll=" + useEpoll,
+                 "spring.qpidjms.transport.tcpNoDelay=true",
+                 "spring.qpidjms.transport.sendBufferSize=65536",
+                 "spring.qpidjms.transport.receiveBufferSize=65536");
+
+            Connection connection = this.context.getBean(JmsConnectionFactory.class).createConnection();
+            try {
+                connection.start();
+
+                Session session = connection.createSession(false, Session.AUTO_ACKNOWLEDGE);
+                Queue queue = session.createQueue("transport");
+                MessageConsumer consumer = session.createConsumer(queue);
+                MessageProducer producer = session.createProducer(queue);
+
+                producer.send(session.createTextMessage(useEpoll));
+                assertNotNull(consumer.receive(10000));
+            } finally {
+                connection.close();
+            }
+
+            this.context.close();
+            this.context = null;
+        }
+    }
+
+    @Configuration
+    static class EmptyConfiguration {}
+
+    private void load(Class<?> config, String... environment) {
+        AnnotationConfigApplicationContext applicationContext = new AnnotationConfigApplicationContext();
+        applicationContext.register(config);
+        applicationContext.register(QpidJMSAutoConfiguration.class, JmsAutoConfiguration.class);
+        EnvironmentTestUtils.addEnvironment(applicationContext, environment);
+        applicationContext.refresh();
+        this.context = applicationContext;
+    }
+}
@@ -0,0 +1,182 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.qpid.jms.spring.boot.autoconfigure;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.springframework.beans.BeansException;
+import org.springframework.boot.autoconfigure.jms.JmsAutoConfiguration;
+import org.springframework.boot.test.util.EnvironmentTestUtils;
+import org.springframework.context.annotation.AnnotationConfigApplicationContext;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.jms.core.JmsTemplate;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+
+/**
+ * Test for the connection warm-up made during context startup.
+ */
+public class QpidJMSWarmupTest {
+
+    private final AmqpTestBroker broker = new AmqpTestBroker();
+
+    private AnnotationConfigApplicationContext context;
+
+    @Before
+    public void setUp() throws Exception {
+        broker.start();
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        if (this.context != null) {
+            this.context.close();
+        }
+
+        broker.stop();
+    }
+
+    @Test
+    public void testNoWarmupByDefault() throws Exception {
+        load(EmptyConfiguration.class, "spring.qpidjms.remoteURL=" + broker.getConnectionURI());
+
+        assertTrue(this.context.getBeansOfType(QpidJMSWarmup.class).isEmpty());
+        assertEquals(0, broker.getConnectionsOpened());
+    }
+
+    @Test(timeout = 60000)
+    public void testPooledConnectionsWarmedAndReused() throws Exception {
+        load(EmptyConfiguration.class,
+             "spring.qpidjms.remoteURL=" + broker.getConnectionURI(),
+             "spring.qpidjms.pool.enabled=true",
+             "spring.qpidjms.pool.maxConnections=3",
+             "spring.qpidjms.warmup.enabled=true",
+             "spring.qpidjms.warmup.connections=3",
+             "spring.qpidjms.warmup.producerDestinations=warmup-out",
+             "spring.qpidjms.warmup.consumerDestinations=warmup-in");
+
+        QpidJMSWarmup warmup = this.context.getBean(QpidJMSWarmup.class);
+
+        assertTrue(warmup.isPooled());
+        assertEquals(3, warmup.getWarmedConnections());
+        assertTrue(warmup.getDuration() >= 0);
+        assertEquals(3, broker.getConnectionsOpened());
+        assertEquals(0, broker.getQueueConsumerCount("warmup-in"));
+
+        JmsTemplate jmsTemplate = this.context.getBean(JmsTemplate.class);
+        for (int i = 0; i < 6; ++i) {
+            jmsTemplate.convertAndSend("warmup-out", "message");
+        }
+
+        assertEquals(6, broker.getQueueSize("warmup-out"));
+        assertEquals(3, broker.getConnectionsOpened());
+    }
+
+    @Test(timeout = 60000)
+    public void testUnpooledConnectionsOnlyValidated() throws Exception {
+        load(EmptyConfiguration.class,
+             "spring.qpidjms.remoteURL=" + broker.getConnectionURI(),
+             "spring.qpidjms.warmup.enabled=true",
+             "spring.qpidjms.warmup.connections=2");
+
+        QpidJMSWarmup warmup = this.context.getBean(QpidJMSWarmup.class);
+
+        assertFalse(warmup.isPooled());
+        assertEquals(2, warmup.getWarmedConnections());
+        assertEquals(2, broker.getConnectionsOpened());
+
+        // Nothing warmed is kept, the first send opens a connection of its own.
+        this.context.getBean(JmsTemplate.class).convertAndSend("warmup-out", "message");
+        assertEquals(3, broker.getConnectionsOpened());
+    }
+
+    @Test(timeout = 60000)
+    public void testWarmupRecordedInMetrics() throws Exception {
+        load(MeterRegistryConfiguration.class,
+             "spring.qpidjms.remoteURL=" + broker.getConnectionURI(),
+             "spring.qpidjms.warmup.enabled=true",
+             "spring.qpidjms.warmup.connections=2");
+
+        MeterRegistry registry = this.context.getBean(MeterRegistry.class);
+
+        assertEquals(this.context.getBean(QpidJMSMetrics.class), this.context.getBean(QpidJMSWarmup.class).getWarmupMetrics());
+        assertEquals(1, registry.get(QpidJMSMetrics.WARMUP).tags("outcome", "success").timer().count());
+        assertEquals(2, registry.get(QpidJMSMetrics.WARMUP_CONNECTIONS).gauge().value(), 0);
+        assertEquals(2, broker.getConnectionsOpened());
+    }
+
+    @Test(timeout = 60000)
+    public void testUnreachablePeerDoesNotFailStartup() throws Exception {
+        String remoteURL = broker.getConnectionURI();
+        broker.stop();
+
+        load(EmptyConfiguration.class,
+             "spring.qpidjms.remoteURL=" + remoteURL,
+             "spring.qpidjms.warmup.enabled=true",
+             "spring.qpidjms.warmup.connections=2",
+             "spring.qpidjms.warmup.timeout=5000");
+
+        assertEquals(0, this.context.getBean(QpidJMSWarmup.class).getWarmedConnections());
+    }
+
+    @Test(timeout = 60000)
+    public void testUnreachablePeerFailsStartupWhenFailFast() throws Exception {
+        String remoteURL = broker.getConnectionURI();
+        broker.stop();
+
+        try {
+            load(EmptyConfiguration.class,
+                 "spring.qpidjms.remoteURL=" + remoteURL,
+                 "spring.qpidjms.warmup.enabled=true",
+                 "spring.qpidjms.warmup.timeout=5000",
+                 "spring.qpidjms.warmup.failFast=true");
+            fail("Startup should fail when the warm-up fails");
+        } catch (BeansException ex) {
+            assertTrue(ex.getMessage(), ex.getMessage().contains("0 of 1"));
+        }
+    }
+
+    @Configuration
+    static class EmptyConfiguration {}
+
+    @Configuration
+    static class MeterRegistryConfiguration {
+
+        @Bean
+        public MeterRegistry meterRegistry() {
+            return new SimpleMeterRegistry();
+        }
+    }
+
+    private void load(Class<?> config, String... environment) {
+        AnnotationConfigApplicationContext applicationContext = new AnnotationConfigApplicationContext();
+        applicationContext.register(config);
+        applicationContext.register(QpidJMSAutoConfiguration.class, QpidJMSMetricsAutoConfiguration.class,
+                                    JmsAutoConfiguration.class);
+        EnvironmentTestUtils.addEnvironment(applicationContext, environment);
+        applicationContext.refresh();
+        this.context = applicationContext;
+    }
+}
@@ -0,0 +1,115 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.qpid.jms.spring.boot.benchmarks;
+
+import java.io.InputStream;
+import java.security.KeyStore;
+
+import javax.net.ssl.KeyManagerFactory;
+
+import org.apache.activemq.broker.BrokerService;
+import org.apache.activemq.broker.SslContext;
+import org.apache.activemq.broker.TransportConnector;
+
+/**
+ * In-process AMQP broker that the benchmarks run against so that results
+ * include the real client and transport path.
+ */
+public class BenchmarkBroker {
+
+    public static final String BROKER_KEYSTORE = "broker.jks";
+    public static final String CLIENT_TRUSTSTORE = "client-truststore.jks";
+    public static final String STORE_PASSWORD = "password";
+
+    private final String connectorScheme;
+    private final String connectorOptions;
+
+    private BrokerService brokerService;
+    private TransportConnector connector;
+
+    public BenchmarkBroker() {
+        this("");
+    }
+
+    /**
+     * @param connectorOptions
+     *      Query options of the broker's AMQP connector URI, such as transport
+     *      settings of the broker side of the connections.
+     */
+    public BenchmarkBroker(String connectorOptions) {
+        this("amqp", connectorOptions);
+    }
+
+    /**
+     * @param connectorScheme
+     *      Scheme of the broker's connector, amqp+ssl accepts TLS connections
+     *      with the certificate of the broker key store.
+     * @param connectorOptions
+     *      Query options of the broker's connector URI.
+     */
+    public BenchmarkBroker(String connectorScheme, String connectorOptions) {
+        this.connectorScheme = connectorScheme;
+        this.connectorOptions = connectorOptions;
+    }
+
+    public void start() throws Exception {
+        brokerService = new BrokerService();
+        brokerService.setBrokerName("qpid-jms-spring-boot-benchmarks");
+        brokerService.setPersistent(false);
+        brokerService.setUseJmx(false);
+        brokerService.setAdvisorySupport(false);
+        brokerService.setSchedulerSupport(false);
+
+        if (isSsl()) {
+            brokerService.setSslContext(createSslContext());
+        }
+
+        connector = brokerService.addConnector(connectorScheme + "://localhost:0" + connectorOptions);
+
+        brokerService.start();
+        brokerService.waitUntilStarted();
+    }
+
+    public void stop() throws Exception {
+        if (brokerService != null) {
+            brokerService.stop();
+            brokerService.waitUntilStopped();
+            brokerService = null;
+        }
+    }
+
+    public String getConnectionURI() throws Exception {
+        return (isSsl() ? "amqps" : "amqp") + "://localhost:" + connector.getConnectUri().getPort();
+    }
+
+    private boolean isSsl() {
+        return connectorScheme.endsWith("+ssl");
+    }
+
+    // The broker's certificate is issued to localhost and is in the client trust store.
+    private static SslContext createSslContext() throws Exception {
+        KeyStore keyStore = KeyStore.getInstance("JKS");
+        try (InputStream stream = BenchmarkBroker.class.getResourceAsStream("/" + BROKER_KEYSTORE)) {
+            keyStore.load(stream, STORE_PASSWORD.toCharArray());
+        }
+
+        KeyManagerFactory keyManagerFactory = KeyManagerFactory.getInstance(KeyManagerFactory.getDefaultAlgorithm());
+        keyManagerFactory.init(keyStore, STORE_PASSWORD.toCharArray());
+
+        return new SslContext(keyManagerFactory.getKeyManagers(), null, null);
+    }
+}
@@ -0,0 +1,61 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.qpid.jms.spring.boot.benchmarks;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import org.apache.qpid.jms.spring.boot.autoconfigure.QpidJMSAutoConfiguration;
+import org.springframework.boot.autoconfigure.jms.JmsAutoConfiguration;
+import org.springframework.context.annotation.AnnotationConfigApplicationContext;
+import org.springframework.core.env.MapPropertySource;
+
+/**
+ * Creates application contexts that apply the Qpid JMS auto-configuration the
+ * same way a Spring Boot application would, so the benchmarks measure the beans
+ * the starter actually creates.
+ */
+public final class BenchmarkContext {
+
+    private BenchmarkContext() {
+    }
+
+    /**
+     * Creates and refreshes a context for the given configuration.
+     *
+     * @param config
+     *      The benchmark specific configuration class.
+     * @param properties
+     *      Environment entries in key=value form.
+     *
+     * @return the refreshed application context.
+     */
+    public static AnnotationConfigApplicationContext start(Class<?> config, String... properties) {
+        Map<String, Object> values = new LinkedHashMap<>();
+        for (String property : properties) {
+            int separator = property.indexOf('=');
+            values.put(property.substring(0, separator), property.substring(separator + 1));
+        }
+
+        AnnotationConfigApplicationContext context = new AnnotationConfigApplicationContext();
+        context.getEnvironment().getPropertySources().addFirst(new MapPropertySource("benchmark", values));
+        context.register(config, QpidJMSAutoConfiguration.class, JmsAutoConfiguration.class);
+        context.refresh();
+
+        return context;
+    }
+}
@@ -0,0 +1,152 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.qpid.jms.spring.boot.benchmarks;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import javax.jms.BytesMessage;
+import javax.jms.Connection;
+import javax.jms.DeliveryMode;
+import javax.jms.MessageConsumer;
+import javax.jms.MessageProducer;
+import javax.jms.Session;
+
+import org.apache.qpid.jms.JmsConnectionFactory;
+import org.apache.qpid.jms.message.JmsMessage;
+import org.apache.qpid.jms.provider.amqp.message.AmqpCodec;
+import org.apache.qpid.jms.provider.amqp.message.AmqpJmsMessageFacade;
+import org.apache.qpid.jms.spring.boot.autoconfigure.QpidJMSBytesMessageConverter;
+import org.apache.qpid.jms.spring.boot.autoconfigure.QpidJMSBytesPayload;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.jms.support.converter.MessageConverter;
+import org.springframework.jms.support.converter.SimpleMessageConverter;
+
+import io.netty.buffer.ByteBuf;
+
+/**
+ * Compares the allocation and time of moving large binary payloads through the
+ * SimpleMessageConverter against the zero copy QpidJMSBytesMessageConverter.
+ * <p>
+ * Run with the JMH GC profiler (-prof gc) and compare gc.alloc.rate.norm, the
+ * bytes allocated per operation, between the two converters.  The toMessage
+ * benchmark converts a payload and encodes the message as a send would, the
+ * fromMessage benchmark converts a message whose body was decoded as a received
+ * message's is, and the roundTrip benchmark sends and receives each payload
+ * through the embedded broker.
+ */
+@Fork(1)
+@Warmup(iterations = 5, time = 2)
+@Measurement(iterations = 10, time = 2)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@State(Scope.Benchmark)
+public class BytesPayloadBenchmark {
+
+    @Param({ "simple", "zeroCopy" })
+    private String converter;
+
+    @Param({ "65536", "4194304" })
+    private int payloadSize;
+
+    private BenchmarkBroker broker;
+    private Connection connection;
+    private Session session;
+    private MessageProducer producer;
+    private MessageConsumer consumer;
+
+    private MessageConverter messageConverter;
+    private byte[] payload;
+    private BytesMessage received;
+
+    @Setup(Level.Trial)
+    public void setUp() throws Exception {
+        broker = new BenchmarkBroker();
+        broker.start();
+
+        connection = new JmsConnectionFactory(broker.getConnectionURI()).createConnection();
+        session = connection.createSession(false, Session.AUTO_ACKNOWLEDGE);
+        producer = session.createProducer(session.createQueue("bytes-benchmark"));
+        producer.setDeliveryMode(DeliveryMode.NON_PERSISTENT);
+        consumer = session.createConsumer(session.createQueue("bytes-benchmark"));
+        connection.start();
+
+        messageConverter = "zeroCopy".equals(converter) ? new QpidJMSBytesMessageConverter() : new SimpleMessageConverter();
+
+        payload = new byte[payloadSize];
+        new Random(42).nextBytes(payload);
+
+        // Stands in for a received message, whose body is a decoded binary section.
+        received = (BytesMessage) new SimpleMessageConverter().toMessage(payload, session);
+        ((JmsMessage) received).onSend(0);
+        ((JmsMessage) received).onDispatch();
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws Exception {
+        if (connection != null) {
+            connection.close();
+        }
+        if (broker != null) {
+            broker.stop();
+        }
+    }
+
+    @Benchmark
+    public int toMessage() throws Exception {
+        JmsMessage message = (JmsMessage) messageConverter.toMessage(payload, session);
+        message.onSend(0);
+
+        ByteBuf encoded = AmqpCodec.encodeMessage((AmqpJmsMessageFacade) message.getFacade());
+        try {
+            return encoded.readableBytes();
+        } finally {
+            encoded.release();
+        }
+    }
+
+    @Benchmark
+    public Object fromMessage() throws Exception {
+        // The payload is not released, that would clear the body each invocation reads.
+        received.reset();
+        return messageConverter.fromMessage(received);
+    }
+
+    @Benchmark
+    public Object roundTrip() throws Exception {
+        producer.send(messageConverter.toMessage(payload, session));
+
+        Object converted = messageConverter.fromMessage(consumer.receive());
+        if (converted instanceof QpidJMSBytesPayload) {
+            ((QpidJMSBytesPayload) converted).release();
+        }
+
+        return converted;
+    }
+}
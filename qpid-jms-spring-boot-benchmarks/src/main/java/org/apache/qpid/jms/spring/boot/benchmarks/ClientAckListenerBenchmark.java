@@ -0,0 +1,116 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.qpid.jms.spring.boot.benchmarks;
+
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+
+import javax.jms.Connection;
+import javax.jms.MessageListener;
+import javax.jms.MessageProducer;
+import javax.jms.Queue;
+import javax.jms.Session;
+
+import org.apache.qpid.jms.JmsConnectionFactory;
+import org.apache.qpid.jms.spring.boot.autoconfigure.QpidJMSMessageListenerContainer;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Measures the throughput of a client acknowledged QpidJMSMessageListenerContainer
+ * consumer that acknowledges every message (-p maxPendingAcknowledgements=1)
+ * against one that coalesces the acknowledgements of several messages.
+ */
+@State(Scope.Benchmark)
+@Fork(1)
+@Warmup(iterations = 5, time = 2)
+@Measurement(iterations = 10, time = 2)
+public class ClientAckListenerBenchmark {
+
+    private static final int MESSAGE_COUNT = 1000;
+
+    @Param({ "1", "10", "100" })
+    private int maxPendingAcknowledgements;
+
+    private final Semaphore received = new Semaphore(0);
+
+    private BenchmarkBroker broker;
+    private Connection connection;
+    private Session session;
+    private MessageProducer producer;
+    private QpidJMSMessageListenerContainer listenerContainer;
+
+    @Setup(Level.Trial)
+    public void setUp() throws Exception {
+        broker = new BenchmarkBroker();
+        broker.start();
+
+        JmsConnectionFactory connectionFactory = new JmsConnectionFactory(broker.getConnectionURI());
+
+        connection = connectionFactory.createConnection();
+        connection.start();
+        session = connection.createSession(false, Session.AUTO_ACKNOWLEDGE);
+        Queue queue = session.createQueue("client-ack-listener-benchmark");
+        producer = session.createProducer(queue);
+
+        listenerContainer = new QpidJMSMessageListenerContainer();
+        listenerContainer.setConnectionFactory(connectionFactory);
+        listenerContainer.setDestination(queue);
+        listenerContainer.setSessionAcknowledgeMode(Session.CLIENT_ACKNOWLEDGE);
+        listenerContainer.setMaxPendingAcknowledgements(maxPendingAcknowledgements);
+        listenerContainer.setMessageListener((MessageListener) message -> received.release());
+        listenerContainer.afterPropertiesSet();
+        listenerContainer.start();
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws Exception {
+        if (listenerContainer != null) {
+            listenerContainer.destroy();
+        }
+        if (connection != null) {
+            connection.close();
+        }
+        if (broker != null) {
+            broker.stop();
+        }
+    }
+
+    @Benchmark
+    @BenchmarkMode(Mode.Throughput)
+    @OutputTimeUnit(TimeUnit.SECONDS)
+    @OperationsPerInvocation(MESSAGE_COUNT)
+    public void throughput() throws Exception {
+        for (int i = 0; i < MESSAGE_COUNT; ++i) {
+            producer.send(session.createTextMessage("message-" + i));
+        }
+
+        received.acquire(MESSAGE_COUNT);
+    }
+}
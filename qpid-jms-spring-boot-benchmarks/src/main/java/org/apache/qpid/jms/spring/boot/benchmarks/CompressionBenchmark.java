@@ -0,0 +1,163 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.qpid.jms.spring.boot.benchmarks;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import javax.jms.Connection;
+import javax.jms.DeliveryMode;
+import javax.jms.MessageConsumer;
+import javax.jms.MessageProducer;
+import javax.jms.Session;
+import javax.jms.TextMessage;
+
+import org.apache.qpid.jms.spring.boot.autoconfigure.QpidJMSCompression;
+import org.apache.qpid.jms.spring.boot.autoconfigure.QpidJMSConnectionFactory;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Measures the cost and benefit of compressing message bodies with each
+ * algorithm for small, medium and large JSON like text payloads.
+ * <p>
+ * The compress and decompress benchmarks time the codec alone, the CPU each
+ * algorithm spends per message, and the roundTrip benchmark sends and receives
+ * each payload through the embedded broker with the connection compressing as
+ * spring.qpidjms.compression does, against the uncompressed baseline
+ * (-p algorithm=none).  The compressed size of each payload is logged when the
+ * trial starts.
+ */
+@Fork(1)
+@Warmup(iterations = 5, time = 2)
+@Measurement(iterations = 10, time = 2)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@State(Scope.Benchmark)
+public class CompressionBenchmark {
+
+    private static final Logger LOG = LoggerFactory.getLogger(CompressionBenchmark.class);
+
+    @Param({ "none", "gzip", "lz4", "zstd" })
+    private String algorithm;
+
+    @Param({ "1024", "65536", "1048576" })
+    private int payloadSize;
+
+    private BenchmarkBroker broker;
+    private Connection connection;
+    private Session session;
+    private MessageProducer producer;
+    private MessageConsumer consumer;
+
+    private QpidJMSCompression.Algorithm selected;
+    private String text;
+    private byte[] payload;
+    private byte[] compressed;
+
+    @Setup(Level.Trial)
+    public void setUp() throws Exception {
+        selected = QpidJMSCompression.Algorithm.valueOf(algorithm.toUpperCase());
+        text = createPayload(payloadSize);
+        payload = text.getBytes(StandardCharsets.UTF_8);
+
+        if (selected != QpidJMSCompression.Algorithm.NONE) {
+            compressed = QpidJMSCompression.compress(selected, payload, 0, payload.length);
+            LOG.info("{} compresses {} bytes to {}", algorithm, payload.length, compressed.length);
+        }
+
+        broker = new BenchmarkBroker();
+        broker.start();
+
+        QpidJMSConnectionFactory factory = new QpidJMSConnectionFactory(broker.getConnectionURI());
+        if (selected != QpidJMSCompression.Algorithm.NONE) {
+            QpidJMSCompression compression = new QpidJMSCompression(selected);
+            compression.setMinSize(0);
+            factory.setCompression(compression);
+        }
+
+        connection = factory.createConnection();
+        session = connection.createSession(false, Session.AUTO_ACKNOWLEDGE);
+        producer = session.createProducer(session.createQueue("compression-benchmark"));
+        producer.setDeliveryMode(DeliveryMode.NON_PERSISTENT);
+        consumer = session.createConsumer(session.createQueue("compression-benchmark"));
+        connection.start();
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws Exception {
+        if (connection != null) {
+            connection.close();
+        }
+        if (broker != null) {
+            broker.stop();
+        }
+    }
+
+    @Benchmark
+    public int compress() throws Exception {
+        if (selected == QpidJMSCompression.Algorithm.NONE) {
+            return payload.length;
+        }
+
+        return QpidJMSCompression.compress(selected, payload, 0, payload.length).length;
+    }
+
+    @Benchmark
+    public int decompress() throws Exception {
+        if (selected == QpidJMSCompression.Algorithm.NONE) {
+            return payload.length;
+        }
+
+        return QpidJMSCompression.decompress(selected, compressed, 0, compressed.length).length;
+    }
+
+    @Benchmark
+    public String roundTrip() throws Exception {
+        producer.send(session.createTextMessage(text));
+        return ((TextMessage) consumer.receive()).getText();
+    }
+
+    private static String createPayload(int size) {
+        Random random = new Random(42);
+        StringBuilder builder = new StringBuilder(size + 128);
+        builder.append('[');
+        while (builder.length() < size) {
+            builder.append("{\"id\":").append(random.nextInt(1000000))
+                   .append(",\"symbol\":\"SYM").append(random.nextInt(50))
+                   .append("\",\"price\":").append(random.nextInt(100000) / 100.0)
+                   .append(",\"quantity\":").append(random.nextInt(1000))
+                   .append(",\"side\":\"").append(random.nextBoolean() ? "BUY" : "SELL").append("\"},");
+        }
+        builder.setLength(size - 1);
+        return builder.append(']').toString();
+    }
+}
@@ -0,0 +1,85 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.qpid.jms.spring.boot.benchmarks;
+
+import java.util.Arrays;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.qpid.jms.JmsConnectionFactory;
+import org.apache.qpid.jms.spring.boot.autoconfigure.QpidJMSConnectionFactoryFactory;
+import org.apache.qpid.jms.spring.boot.autoconfigure.QpidJMSProperties;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Measures QpidJMSConnectionFactoryFactory creating a configured factory, either
+ * from the defaults or from properties that set every policy.
+ */
+@State(Scope.Benchmark)
+@Fork(1)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 10, time = 1)
+public class ConnectionFactoryCreationBenchmark {
+
+    @Param({ "defaults", "policies" })
+    private String configuration;
+
+    private QpidJMSConnectionFactoryFactory factoryFactory;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        QpidJMSProperties properties = new QpidJMSProperties();
+        properties.setRemoteURL("amqp://localhost:5672?amqp.idleTimeout=60000");
+
+        if ("policies".equals(configuration)) {
+            properties.setUsername("benchmark");
+            properties.setPassword("benchmark");
+            properties.setForceAsyncSend(true);
+            properties.setSendTimeout(10000L);
+            properties.getDeserializationPolicy().setWhiteList(Arrays.asList("org.apache.qpid", "java.util"));
+            properties.getPrefetchPolicy().setAll(100);
+            properties.getPrefetchPolicy().setTopicPrefetch(1000);
+            properties.getPresettlePolicy().setPresettleProducers(true);
+
+            for (int i = 0; i < 10; ++i) {
+                QpidJMSProperties.DestinationPolicy policy = new QpidJMSProperties.DestinationPolicy();
+                policy.setPrefetch(10 * i);
+                policy.setMaxRedeliveries(i);
+                properties.getDestinationPolicies().put("orders." + i + ".*", policy);
+            }
+        }
+
+        factoryFactory = new QpidJMSConnectionFactoryFactory(properties);
+    }
+
+    @Benchmark
+    @BenchmarkMode(Mode.AverageTime)
+    @OutputTimeUnit(TimeUnit.MICROSECONDS)
+    public JmsConnectionFactory createConnectionFactory() {
+        return factoryFactory.createConnectionFactory(JmsConnectionFactory.class);
+    }
+}
@@ -0,0 +1,94 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.qpid.jms.spring.boot.benchmarks;
+
+import java.util.concurrent.TimeUnit;
+
+import org.apache.qpid.jms.policy.JmsDefaultDeserializationPolicy;
+import org.apache.qpid.jms.policy.JmsDeserializationPolicy;
+import org.apache.qpid.jms.spring.boot.autoconfigure.QpidJMSDeserializationPolicy;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Compares the class checks of the client's default deserialization policy
+ * against the compiled QpidJMSDeserializationPolicy.
+ * <p>
+ * Each operation checks the classes an ObjectMessage holding a small object
+ * graph resolves, against white and black lists of a typical application.
+ */
+@Fork(1)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 10, time = 1)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@State(Scope.Benchmark)
+public class DeserializationPolicyBenchmark {
+
+    private static final String WHITE_LIST =
+        "java.lang,java.math,java.time,java.util.ArrayList,java.util.HashMap,java.util.LinkedHashMap," +
+        "java.util.Date,java.util.UUID,com.example.orders.model,com.example.orders.events," +
+        "com.example.customers.model,com.example.shared.money,com.example.shared.address";
+
+    private static final String BLACK_LIST =
+        "java.lang.Runtime,java.lang.ProcessBuilder,java.lang.reflect,java.lang.invoke," +
+        "org.apache.commons.collections.functors,org.codehaus.groovy.runtime";
+
+    private static final Class<?>[] CLASSES = {
+        java.util.ArrayList.class, java.util.HashMap.class, java.util.Map.Entry.class, java.lang.String.class,
+        java.lang.Long.class, java.math.BigDecimal.class, java.time.Instant.class, java.util.UUID.class,
+        java.util.Date.class, java.util.LinkedHashMap.class, java.lang.Integer.class, java.lang.Enum.class
+    };
+
+    @Param({ "default", "compiled" })
+    private String policy;
+
+    private JmsDeserializationPolicy deserializationPolicy;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        JmsDefaultDeserializationPolicy selected =
+            "compiled".equals(policy) ? new QpidJMSDeserializationPolicy() : new JmsDefaultDeserializationPolicy();
+
+        selected.setWhiteList(WHITE_LIST);
+        selected.setBlackList(BLACK_LIST);
+
+        deserializationPolicy = selected;
+    }
+
+    @Benchmark
+    public int isTrustedType() {
+        int trusted = 0;
+        for (Class<?> clazz : CLASSES) {
+            if (deserializationPolicy.isTrustedType(null, clazz)) {
+                trusted++;
+            }
+        }
+
+        return trusted;
+    }
+}
@@ -0,0 +1,139 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.qpid.jms.spring.boot.benchmarks;
+
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+
+import javax.jms.BytesMessage;
+import javax.jms.Connection;
+import javax.jms.MessageProducer;
+import javax.jms.Session;
+
+import org.apache.qpid.jms.JmsConnectionFactory;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.context.annotation.AnnotationConfigApplicationContext;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.jms.annotation.EnableJms;
+import org.springframework.jms.annotation.JmsListener;
+
+/**
+ * Measures delivery to an annotated {@link JmsListener} method through the
+ * auto-configured listener container factories.
+ * <p>
+ * Runs across prefetch sizes and with presettled and acknowledged consumers,
+ * with either the standard Spring Boot factory or the Qpid JMS factory.  The
+ * messages are sent by a separate presettled asynchronous producer so that the
+ * send side costs as little as possible.
+ */
+@State(Scope.Benchmark)
+@Fork(1)
+@Warmup(iterations = 5, time = 2)
+@Measurement(iterations = 10, time = 2)
+public class JmsListenerReceiveBenchmark {
+
+    private static final int BATCH_SIZE = 1000;
+    private static final String QUEUE = "receive-benchmark";
+
+    @Param({ "jmsListenerContainerFactory", "qpidJmsListenerContainerFactory" })
+    private String containerFactory;
+
+    @Param({ "10", "1000" })
+    private int prefetch;
+
+    @Param({ "false", "true" })
+    private boolean presettle;
+
+    private BenchmarkBroker broker;
+    private Connection connection;
+    private Session session;
+    private MessageProducer producer;
+    private AnnotationConfigApplicationContext context;
+    private Semaphore received;
+
+    @Setup(Level.Trial)
+    public void setUp() throws Exception {
+        broker = new BenchmarkBroker();
+        broker.start();
+
+        context = BenchmarkContext.start(ListenerConfiguration.class,
+            "benchmark.containerFactory=" + containerFactory,
+            "spring.qpidjms.remoteURL=" + broker.getConnectionURI(),
+            "spring.qpidjms.prefetchPolicy.all=" + prefetch,
+            "spring.qpidjms.presettlePolicy.presettleConsumers=" + presettle);
+
+        received = context.getBean(ListenerConfiguration.class).received;
+
+        JmsConnectionFactory producerFactory = new JmsConnectionFactory(broker.getConnectionURI() +
+            "?jms.forceAsyncSend=true&jms.presettlePolicy.presettleProducers=true");
+        connection = producerFactory.createConnection();
+        session = connection.createSession(false, Session.AUTO_ACKNOWLEDGE);
+        producer = session.createProducer(session.createQueue(QUEUE));
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws Exception {
+        if (context != null) {
+            context.close();
+        }
+        if (connection != null) {
+            connection.close();
+        }
+        if (broker != null) {
+            broker.stop();
+        }
+    }
+
+    @Benchmark
+    @BenchmarkMode(Mode.Throughput)
+    @OutputTimeUnit(TimeUnit.SECONDS)
+    @OperationsPerInvocation(BATCH_SIZE)
+    public void receive() throws Exception {
+        for (int i = 0; i < BATCH_SIZE; ++i) {
+            BytesMessage message = session.createBytesMessage();
+            message.writeInt(i);
+            producer.send(message);
+        }
+
+        received.acquire(BATCH_SIZE);
+    }
+
+    @Configuration
+    @EnableJms
+    static class ListenerConfiguration {
+
+        private final Semaphore received = new Semaphore(0);
+
+        @JmsListener(destination = QUEUE, containerFactory = "${benchmark.containerFactory}")
+        public void onMessage(byte[] payload) {
+            received.release();
+        }
+    }
+}
@@ -0,0 +1,113 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.qpid.jms.spring.boot.benchmarks;
+
+import java.util.concurrent.TimeUnit;
+
+import javax.jms.Connection;
+import javax.jms.Session;
+
+import org.apache.qpid.jms.JmsConnectionFactory;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.context.annotation.AnnotationConfigApplicationContext;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.jms.core.JmsTemplate;
+
+/**
+ * Measures sends through the auto-configured JmsTemplate backed by the pooled
+ * Qpid JMS ConnectionFactory.
+ * <p>
+ * Runs with presettled and unsettled producers and with sends forced to be
+ * synchronous or asynchronous, a presettled consumer drains the queue so that
+ * broker flow control does not limit the producer.
+ */
+@State(Scope.Benchmark)
+@Fork(1)
+@Warmup(iterations = 5, time = 2)
+@Measurement(iterations = 10, time = 2)
+public class JmsTemplateSendBenchmark {
+
+    private static final String QUEUE = "send-benchmark";
+    private static final String PAYLOAD = "benchmark-payload";
+
+    @Param({ "false", "true" })
+    private boolean presettle;
+
+    @Param({ "sync", "async" })
+    private String sendMode;
+
+    private BenchmarkBroker broker;
+    private Connection drainConnection;
+    private AnnotationConfigApplicationContext context;
+    private JmsTemplate jmsTemplate;
+
+    @Setup(Level.Trial)
+    public void setUp() throws Exception {
+        broker = new BenchmarkBroker();
+        broker.start();
+
+        JmsConnectionFactory drainFactory = new JmsConnectionFactory(
+            broker.getConnectionURI() + "?jms.presettlePolicy.presettleConsumers=true");
+        drainConnection = drainFactory.createConnection();
+        Session session = drainConnection.createSession(false, Session.AUTO_ACKNOWLEDGE);
+        session.createConsumer(session.createQueue(QUEUE)).setMessageListener(message -> { });
+        drainConnection.start();
+
+        context = BenchmarkContext.start(SendConfiguration.class,
+            "spring.qpidjms.remoteURL=" + broker.getConnectionURI(),
+            "spring.qpidjms.pool.enabled=true",
+            "spring.qpidjms.presettlePolicy.presettleProducers=" + presettle,
+            "async".equals(sendMode) ? "spring.qpidjms.forceAsyncSend=true" : "spring.qpidjms.forceSyncSend=true");
+
+        jmsTemplate = context.getBean(JmsTemplate.class);
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws Exception {
+        if (context != null) {
+            context.close();
+        }
+        if (drainConnection != null) {
+            drainConnection.close();
+        }
+        if (broker != null) {
+            broker.stop();
+        }
+    }
+
+    @Benchmark
+    @BenchmarkMode({ Mode.Throughput, Mode.SampleTime })
+    @OutputTimeUnit(TimeUnit.MICROSECONDS)
+    public void send() {
+        jmsTemplate.convertAndSend(QUEUE, PAYLOAD);
+    }
+
+    @Configuration
+    static class SendConfiguration {}
+}
@@ -0,0 +1,144 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.qpid.jms.spring.boot.benchmarks;
+
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+
+import javax.jms.Connection;
+import javax.jms.JMSException;
+import javax.jms.MessageListener;
+import javax.jms.MessageProducer;
+import javax.jms.Queue;
+import javax.jms.Session;
+
+import org.apache.qpid.jms.JmsConnectionFactory;
+import org.apache.qpid.jms.spring.boot.autoconfigure.QpidJMSMessageListenerContainer;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.jms.listener.AbstractMessageListenerContainer;
+import org.springframework.jms.listener.DefaultMessageListenerContainer;
+
+/**
+ * Compares the polling DefaultMessageListenerContainer against the push based
+ * QpidJMSMessageListenerContainer when draining a queue from the embedded broker.
+ * <p>
+ * The throughput benchmark sends a batch and waits until the listener has seen
+ * every message, the latency benchmark sends one message at a time so the
+ * sample distribution gives the per message delivery latency percentiles.
+ */
+@State(Scope.Benchmark)
+@Fork(1)
+@Warmup(iterations = 5, time = 2)
+@Measurement(iterations = 10, time = 2)
+public class ListenerContainerBenchmark {
+
+    private static final int BATCH_SIZE = 1000;
+
+    @Param({ "default", "qpid" })
+    private String container;
+
+    @Param({ "1", "4" })
+    private int concurrency;
+
+    private final Semaphore received = new Semaphore(0);
+
+    private BenchmarkBroker broker;
+    private Connection connection;
+    private Session session;
+    private MessageProducer producer;
+    private AbstractMessageListenerContainer listenerContainer;
+
+    @Setup(Level.Trial)
+    public void setUp() throws Exception {
+        broker = new BenchmarkBroker();
+        broker.start();
+
+        JmsConnectionFactory connectionFactory = new JmsConnectionFactory(broker.getConnectionURI());
+
+        connection = connectionFactory.createConnection();
+        connection.start();
+        session = connection.createSession(false, Session.AUTO_ACKNOWLEDGE);
+        Queue queue = session.createQueue("listener-benchmark");
+        producer = session.createProducer(queue);
+
+        if ("qpid".equals(container)) {
+            QpidJMSMessageListenerContainer qpidContainer = new QpidJMSMessageListenerContainer();
+            qpidContainer.setConcurrentConsumers(concurrency);
+            listenerContainer = qpidContainer;
+        } else {
+            DefaultMessageListenerContainer defaultContainer = new DefaultMessageListenerContainer();
+            defaultContainer.setConcurrentConsumers(concurrency);
+            listenerContainer = defaultContainer;
+        }
+
+        listenerContainer.setConnectionFactory(connectionFactory);
+        listenerContainer.setDestination(queue);
+        listenerContainer.setMessageListener((MessageListener) message -> received.release());
+        listenerContainer.afterPropertiesSet();
+        listenerContainer.start();
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws Exception {
+        if (listenerContainer != null) {
+            listenerContainer.destroy();
+        }
+        if (connection != null) {
+            connection.close();
+        }
+        if (broker != null) {
+            broker.stop();
+        }
+    }
+
+    @Benchmark
+    @BenchmarkMode(Mode.Throughput)
+    @OutputTimeUnit(TimeUnit.SECONDS)
+    @OperationsPerInvocation(BATCH_SIZE)
+    public void throughput() throws Exception {
+        for (int i = 0; i < BATCH_SIZE; ++i) {
+            send(i);
+        }
+
+        received.acquire(BATCH_SIZE);
+    }
+
+    @Benchmark
+    @BenchmarkMode(Mode.SampleTime)
+    @OutputTimeUnit(TimeUnit.MICROSECONDS)
+    public void latency() throws Exception {
+        send(0);
+        received.acquire();
+    }
+
+    private void send(int sequence) throws JMSException {
+        producer.send(session.createTextMessage("message-" + sequence));
+    }
+}
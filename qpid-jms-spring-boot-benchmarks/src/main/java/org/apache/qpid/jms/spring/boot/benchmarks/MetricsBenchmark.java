@@ -0,0 +1,169 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.qpid.jms.spring.boot.benchmarks;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+
+import javax.jms.Connection;
+import javax.jms.MessageConsumer;
+import javax.jms.Session;
+
+import org.apache.qpid.jms.JmsDestination;
+import org.apache.qpid.jms.JmsQueue;
+import org.apache.qpid.jms.message.JmsInboundMessageDispatch;
+import org.apache.qpid.jms.message.JmsTextMessage;
+import org.apache.qpid.jms.provider.amqp.message.AmqpJmsTextMessageFacade;
+import org.apache.qpid.jms.spring.boot.autoconfigure.QpidJMSBatchTemplate;
+import org.apache.qpid.jms.spring.boot.autoconfigure.QpidJMSConnectionFactory;
+import org.apache.qpid.jms.spring.boot.autoconfigure.QpidJMSMetrics;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+
+/**
+ * Measures the cost the Micrometer metrics add to the messaging hot paths.
+ * <p>
+ * The recording benchmarks time the calls made for each inbound message and
+ * each send in isolation, the round trip benchmark sends batches through the
+ * QpidJMSBatchTemplate to a consumer on the same factory with the metrics
+ * registered and without, so the two results can be compared directly.
+ */
+@Fork(1)
+@Warmup(iterations = 5, time = 2)
+@Measurement(iterations = 10, time = 2)
+public class MetricsBenchmark {
+
+    private static final int BATCH_SIZE = 1000;
+
+    @State(Scope.Benchmark)
+    public static class Recording {
+
+        private QpidJMSMetrics metrics;
+        private JmsQueue destination;
+        private JmsInboundMessageDispatch envelope;
+
+        @Setup(Level.Trial)
+        public void setUp() {
+            metrics = new QpidJMSMetrics(new SimpleMeterRegistry(), "amqp://localhost:5672");
+            destination = new JmsQueue("metrics-benchmark");
+
+            // Stands in for a received message, whose destination is set from the delivery.
+            AmqpJmsTextMessageFacade facade = new AmqpJmsTextMessageFacade() {
+
+                @Override
+                public JmsDestination getDestination() {
+                    return destination;
+                }
+            };
+
+            envelope = new JmsInboundMessageDispatch(1);
+            envelope.setMessage(new JmsTextMessage(facade));
+        }
+    }
+
+    @State(Scope.Benchmark)
+    public static class RoundTrip {
+
+        @Param({ "false", "true" })
+        private boolean metricsEnabled;
+
+        private final Semaphore received = new Semaphore(0);
+        private final List<String> payloads = new ArrayList<>(BATCH_SIZE);
+
+        private BenchmarkBroker broker;
+        private Connection connection;
+        private QpidJMSBatchTemplate batchTemplate;
+
+        @Setup(Level.Trial)
+        public void setUp() throws Exception {
+            broker = new BenchmarkBroker();
+            broker.start();
+
+            QpidJMSConnectionFactory connectionFactory = new QpidJMSConnectionFactory(broker.getConnectionURI());
+            batchTemplate = new QpidJMSBatchTemplate(connectionFactory);
+
+            if (metricsEnabled) {
+                QpidJMSMetrics metrics = new QpidJMSMetrics(new SimpleMeterRegistry(), broker.getConnectionURI());
+                connectionFactory.addConnectionListener(metrics);
+                batchTemplate.setSendMetrics(metrics);
+            }
+
+            connection = connectionFactory.createConnection();
+            Session session = connection.createSession(false, Session.AUTO_ACKNOWLEDGE);
+            MessageConsumer consumer = session.createConsumer(session.createQueue("metrics-benchmark"));
+            consumer.setMessageListener(message -> received.release());
+            connection.start();
+
+            for (int i = 0; i < BATCH_SIZE; ++i) {
+                payloads.add("message-" + i);
+            }
+        }
+
+        @TearDown(Level.Trial)
+        public void tearDown() throws Exception {
+            if (batchTemplate != null) {
+                batchTemplate.destroy();
+            }
+            if (connection != null) {
+                connection.close();
+            }
+            if (broker != null) {
+                broker.stop();
+            }
+        }
+    }
+
+    @Benchmark
+    @BenchmarkMode(Mode.AverageTime)
+    @OutputTimeUnit(TimeUnit.NANOSECONDS)
+    public void recordInbound(Recording state) {
+        state.metrics.onInboundMessage(state.envelope);
+    }
+
+    @Benchmark
+    @BenchmarkMode(Mode.AverageTime)
+    @OutputTimeUnit(TimeUnit.NANOSECONDS)
+    public void recordSend(Recording state) {
+        state.metrics.sendCompleted(state.destination, 1000);
+        state.metrics.sendSettled(state.destination, 2000, false);
+    }
+
+    @Benchmark
+    @BenchmarkMode(Mode.Throughput)
+    @OutputTimeUnit(TimeUnit.SECONDS)
+    @OperationsPerInvocation(BATCH_SIZE)
+    public void roundTrip(RoundTrip state) throws Exception {
+        state.batchTemplate.send("metrics-benchmark", state.payloads).get();
+        state.received.acquire(BATCH_SIZE);
+    }
+}
@@ -0,0 +1,273 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.qpid.jms.spring.boot.benchmarks;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import javax.jms.BytesMessage;
+import javax.jms.Connection;
+import javax.jms.Message;
+import javax.jms.Session;
+
+import org.apache.avro.Schema;
+import org.apache.avro.specific.SpecificRecordBase;
+import org.apache.qpid.jms.JmsConnectionFactory;
+import org.apache.qpid.jms.message.JmsMessage;
+import org.apache.qpid.jms.provider.amqp.message.AmqpCodec;
+import org.apache.qpid.jms.provider.amqp.message.AmqpJmsMessageFacade;
+import org.apache.qpid.jms.spring.boot.autoconfigure.QpidJMSAvroMessageConverter;
+import org.apache.qpid.jms.spring.boot.autoconfigure.QpidJMSJsonMessageConverter;
+import org.apache.qpid.jms.spring.boot.autoconfigure.QpidJMSPayloadMessageConverter;
+import org.apache.qpid.jms.spring.boot.autoconfigure.QpidJMSProtobufMessageConverter;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.jms.support.converter.MappingJackson2MessageConverter;
+import org.springframework.jms.support.converter.MessageConverter;
+import org.springframework.jms.support.converter.SimpleMessageConverter;
+import org.springframework.util.ClassUtils;
+
+import com.google.protobuf.Struct;
+import com.google.protobuf.Value;
+
+import io.netty.buffer.ByteBuf;
+
+/**
+ * Compares the time and allocation of converting a small structured payload with
+ * the format converters selected by spring.qpidjms.converter against the Spring
+ * converters an application would otherwise use.
+ * <p>
+ * The simple converter sends the payload as a MapMessage and the jackson
+ * converter is the Spring MappingJackson2MessageConverter, which sends JSON as a
+ * TextMessage.  The json, avro and protobuf converters encode the same order into
+ * a BytesMessage.  The toMessage benchmark converts an order and encodes the
+ * message as a send would, the fromMessage benchmark converts a message whose
+ * body was decoded as a received message's is.  Run with the JMH GC profiler
+ * (-prof gc) to compare the bytes allocated per operation.
+ */
+@Fork(1)
+@Warmup(iterations = 5, time = 2)
+@Measurement(iterations = 10, time = 2)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@State(Scope.Benchmark)
+public class PayloadConverterBenchmark {
+
+    @Param({ "simple", "jackson", "json", "avro", "protobuf" })
+    private String converter;
+
+    private BenchmarkBroker broker;
+    private Connection connection;
+    private Session session;
+
+    private MessageConverter messageConverter;
+    private Object payload;
+    private Message received;
+
+    @Setup(Level.Trial)
+    public void setUp() throws Exception {
+        broker = new BenchmarkBroker();
+        broker.start();
+
+        connection = new JmsConnectionFactory(broker.getConnectionURI()).createConnection();
+        session = connection.createSession(false, Session.AUTO_ACKNOWLEDGE);
+
+        switch (converter) {
+            case "simple":
+                messageConverter = new SimpleMessageConverter();
+                payload = orderMap();
+                break;
+            case "jackson":
+                MappingJackson2MessageConverter jackson = new MappingJackson2MessageConverter();
+                jackson.setTypeIdPropertyName("_type");
+                messageConverter = jackson;
+                payload = new Order();
+                break;
+            case "json":
+                messageConverter = new QpidJMSJsonMessageConverter();
+                payload = new Order();
+                break;
+            case "avro":
+                messageConverter = new QpidJMSAvroMessageConverter();
+                payload = new AvroOrder();
+                break;
+            case "protobuf":
+                messageConverter = new QpidJMSProtobufMessageConverter();
+                payload = orderStruct();
+                break;
+            default:
+                throw new IllegalArgumentException("Unknown converter: " + converter);
+        }
+
+        if (messageConverter instanceof QpidJMSPayloadMessageConverter) {
+            ((QpidJMSPayloadMessageConverter) messageConverter).setTrustedPackages(ClassUtils.getPackageName(payload.getClass()));
+        }
+
+        // Stands in for a received message, whose body has been decoded.
+        received = messageConverter.toMessage(payload, session);
+        ((JmsMessage) received).onSend(0);
+        ((JmsMessage) received).onDispatch();
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws Exception {
+        if (connection != null) {
+            connection.close();
+        }
+        if (broker != null) {
+            broker.stop();
+        }
+    }
+
+    @Benchmark
+    public int toMessage() throws Exception {
+        JmsMessage message = (JmsMessage) messageConverter.toMessage(payload, session);
+        message.onSend(0);
+
+        ByteBuf encoded = AmqpCodec.encodeMessage((AmqpJmsMessageFacade) message.getFacade());
+        try {
+            return encoded.readableBytes();
+        } finally {
+            encoded.release();
+        }
+    }
+
+    @Benchmark
+    public Object fromMessage() throws Exception {
+        if (received instanceof BytesMessage) {
+            ((BytesMessage) received).reset();
+        }
+
+        return messageConverter.fromMessage(received);
+    }
+
+    private static Map<String, Object> orderMap() {
+        Map<String, Object> order = new HashMap<>();
+        order.put("id", Order.ID);
+        order.put("customer", Order.CUSTOMER);
+        order.put("quantity", Order.QUANTITY);
+        order.put("price", Order.PRICE);
+        return order;
+    }
+
+    private static Struct orderStruct() {
+        return Struct.newBuilder()
+            .putFields("id", Value.newBuilder().setStringValue(Order.ID).build())
+            .putFields("customer", Value.newBuilder().setStringValue(Order.CUSTOMER).build())
+            .putFields("quantity", Value.newBuilder().setNumberValue(Order.QUANTITY).build())
+            .putFields("price", Value.newBuilder().setNumberValue(Order.PRICE).build())
+            .build();
+    }
+
+    public static class Order {
+
+        static final String ID = "order-0001";
+        static final String CUSTOMER = "customer-0042";
+        static final int QUANTITY = 12;
+        static final double PRICE = 99.95;
+
+        private String id = ID;
+        private String customer = CUSTOMER;
+        private int quantity = QUANTITY;
+        private double price = PRICE;
+
+        public String getId() {
+            return id;
+        }
+
+        public void setId(String id) {
+            this.id = id;
+        }
+
+        public String getCustomer() {
+            return customer;
+        }
+
+        public void setCustomer(String customer) {
+            this.customer = customer;
+        }
+
+        public int getQuantity() {
+            return quantity;
+        }
+
+        public void setQuantity(int quantity) {
+            this.quantity = quantity;
+        }
+
+        public double getPrice() {
+            return price;
+        }
+
+        public void setPrice(double price) {
+            this.price = price;
+        }
+    }
+
+    public static class AvroOrder extends SpecificRecordBase {
+
+        // Avro resolves a nested record class from a namespace that ends with a $.
+        public static final Schema SCHEMA$ = new Schema.Parser().parse(
+            "{\"type\":\"record\",\"name\":\"AvroOrder\"," +
+            "\"namespace\":\"org.apache.qpid.jms.spring.boot.benchmarks.PayloadConverterBenchmark$\"," +
+            "\"fields\":[{\"name\":\"id\",\"type\":{\"type\":\"string\",\"avro.java.string\":\"String\"}}," +
+            "{\"name\":\"customer\",\"type\":{\"type\":\"string\",\"avro.java.string\":\"String\"}}," +
+            "{\"name\":\"quantity\",\"type\":\"int\"},{\"name\":\"price\",\"type\":\"double\"}]}");
+
+        private String id = Order.ID;
+        private String customer = Order.CUSTOMER;
+        private int quantity = Order.QUANTITY;
+        private double price = Order.PRICE;
+
+        @Override
+        public Schema getSchema() {
+            return SCHEMA$;
+        }
+
+        @Override
+        public Object get(int field) {
+            switch (field) {
+                case 0: return id;
+                case 1: return customer;
+                case 2: return quantity;
+                default: return price;
+            }
+        }
+
+        @Override
+        public void put(int field, Object value) {
+            switch (field) {
+                case 0: id = (String) value; break;
+                case 1: customer = (String) value; break;
+                case 2: quantity = (Integer) value; break;
+                default: price = (Double) value;
+            }
+        }
+    }
+}
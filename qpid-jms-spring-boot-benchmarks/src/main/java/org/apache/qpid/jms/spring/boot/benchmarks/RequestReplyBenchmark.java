@@ -0,0 +1,119 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.qpid.jms.spring.boot.benchmarks;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.qpid.jms.spring.boot.autoconfigure.QpidJMSRequestReplyTemplate;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.context.annotation.AnnotationConfigApplicationContext;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.jms.annotation.EnableJms;
+import org.springframework.jms.annotation.JmsListener;
+
+/**
+ * Measures request/reply round trips through the auto-configured
+ * QpidJMSRequestReplyTemplate to an annotated listener that echoes each request.
+ * <p>
+ * The latency benchmark has a single request outstanding at a time, the
+ * throughput benchmark keeps a window of concurrent requests in flight on the
+ * shared reply queue.
+ */
+@State(Scope.Benchmark)
+@Fork(1)
+@Warmup(iterations = 5, time = 2)
+@Measurement(iterations = 10, time = 2)
+public class RequestReplyBenchmark {
+
+    private static final int WINDOW_SIZE = 100;
+    private static final String QUEUE = "request-benchmark";
+
+    @Param({ "false", "true" })
+    private boolean presettle;
+
+    private final CompletableFuture<?>[] window = new CompletableFuture<?>[WINDOW_SIZE];
+
+    private BenchmarkBroker broker;
+    private AnnotationConfigApplicationContext context;
+    private QpidJMSRequestReplyTemplate requestReplyTemplate;
+
+    @Setup(Level.Trial)
+    public void setUp() throws Exception {
+        broker = new BenchmarkBroker();
+        broker.start();
+
+        context = BenchmarkContext.start(ReplyConfiguration.class,
+            "spring.qpidjms.remoteURL=" + broker.getConnectionURI(),
+            "spring.qpidjms.pool.enabled=true",
+            "spring.qpidjms.presettlePolicy.presettleAll=" + presettle);
+
+        requestReplyTemplate = context.getBean(QpidJMSRequestReplyTemplate.class);
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws Exception {
+        if (context != null) {
+            context.close();
+        }
+        if (broker != null) {
+            broker.stop();
+        }
+    }
+
+    @Benchmark
+    @BenchmarkMode(Mode.SampleTime)
+    @OutputTimeUnit(TimeUnit.MICROSECONDS)
+    public Object latency() throws Exception {
+        return requestReplyTemplate.convertSendAndReceive(QUEUE, "request").get();
+    }
+
+    @Benchmark
+    @BenchmarkMode(Mode.Throughput)
+    @OutputTimeUnit(TimeUnit.SECONDS)
+    @OperationsPerInvocation(WINDOW_SIZE)
+    public void throughput() throws Exception {
+        for (int i = 0; i < WINDOW_SIZE; ++i) {
+            window[i] = requestReplyTemplate.convertSendAndReceive(QUEUE, "request");
+        }
+
+        CompletableFuture.allOf(window).get();
+    }
+
+    @Configuration
+    @EnableJms
+    static class ReplyConfiguration {
+
+        @JmsListener(destination = QUEUE, containerFactory = "qpidJmsListenerContainerFactory")
+        public String onRequest(String request) {
+            return request;
+        }
+    }
+}
@@ -0,0 +1,104 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.qpid.jms.spring.boot.benchmarks;
+
+import java.util.concurrent.TimeUnit;
+
+import javax.jms.JMSException;
+
+import org.apache.qpid.jms.message.JmsMessage;
+import org.apache.qpid.jms.message.JmsTextMessage;
+import org.apache.qpid.jms.provider.amqp.message.AmqpJmsTextMessageFacade;
+import org.apache.qpid.jms.selector.filter.BooleanExpression;
+import org.apache.qpid.jms.spring.boot.autoconfigure.QpidJMSSelectorFilter;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Measures the selector work of a consumer on a heavily filtered topic.
+ * <p>
+ * The compile benchmark obtains the expression for the selector of a new
+ * consumer, parsed again each time (-p compile=parse) or taken from the cache
+ * the QpidJMSSelectorFilter of a connection factory shares across consumers
+ * (-p compile=cached).  The evaluate benchmark applies the selector to a batch
+ * of messages of which one in ten matches, the work the client does for each
+ * message a broker delivers without filtering it.
+ */
+@Fork(1)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 10, time = 1)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@State(Scope.Benchmark)
+public class SelectorBenchmark {
+
+    private static final String SELECTOR =
+        "region = 'emea' AND (priority > 5 OR customer LIKE 'gold-%') AND JMSPriority >= 4";
+
+    private static final int MESSAGES = 10;
+
+    @Param({ "parse", "cached" })
+    private String compile;
+
+    private QpidJMSSelectorFilter selectorFilter;
+    private BooleanExpression expression;
+    private JmsMessage[] messages;
+
+    @Setup(Level.Trial)
+    public void setUp() throws JMSException {
+        selectorFilter = new QpidJMSSelectorFilter(QpidJMSSelectorFilter.Mode.AUTO);
+        expression = selectorFilter.compile(SELECTOR);
+
+        messages = new JmsMessage[MESSAGES];
+        for (int i = 0; i < MESSAGES; ++i) {
+            AmqpJmsTextMessageFacade facade = new AmqpJmsTextMessageFacade();
+            JmsTextMessage message = new JmsTextMessage(facade);
+            message.setStringProperty("region", i == 0 ? "emea" : "apac");
+            message.setIntProperty("priority", i % 8);
+            message.setStringProperty("customer", "gold-" + i);
+            message.setJMSPriority(4);
+            messages[i] = message;
+        }
+    }
+
+    @Benchmark
+    public BooleanExpression compile() throws JMSException {
+        return "cached".equals(compile) ? selectorFilter.compile(SELECTOR) : QpidJMSSelectorFilter.parse(SELECTOR);
+    }
+
+    @Benchmark
+    public int evaluate() {
+        int matched = 0;
+        for (JmsMessage message : messages) {
+            if (QpidJMSSelectorFilter.matches(expression, message)) {
+                matched++;
+            }
+        }
+
+        return matched;
+    }
+}
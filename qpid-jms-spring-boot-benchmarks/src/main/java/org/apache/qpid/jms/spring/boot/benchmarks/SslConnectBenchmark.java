@@ -0,0 +1,122 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.qpid.jms.spring.boot.benchmarks;
+
+import java.io.File;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.concurrent.TimeUnit;
+
+import javax.jms.Connection;
+import javax.jms.ConnectionFactory;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.context.annotation.AnnotationConfigApplicationContext;
+import org.springframework.context.annotation.Configuration;
+
+/**
+ * Measures opening and closing a TLS connection to the embedded broker when the
+ * client builds a new SSLContext for each connection from the trust store given
+ * on the URI (-p sslContext=perConnection) and when the connection factory
+ * shares one SSLContext, as spring.qpidjms.ssl.enabled configures, whose cached
+ * sessions later connections resume (-p sslContext=shared).
+ */
+@State(Scope.Benchmark)
+@Fork(1)
+@Warmup(iterations = 5, time = 2)
+@Measurement(iterations = 10, time = 2)
+public class SslConnectBenchmark {
+
+    @Param({ "perConnection", "shared" })
+    private String sslContext;
+
+    private BenchmarkBroker broker;
+    private AnnotationConfigApplicationContext context;
+    private ConnectionFactory connectionFactory;
+    private File trustStore;
+
+    @Setup(Level.Trial)
+    public void setUp() throws Exception {
+        broker = new BenchmarkBroker("amqp+ssl", "");
+        broker.start();
+
+        // The client reads the trust store given on the URI from a file.
+        trustStore = File.createTempFile("benchmark-truststore", ".jks");
+        try (InputStream stream = getClass().getResourceAsStream("/" + BenchmarkBroker.CLIENT_TRUSTSTORE)) {
+            Files.copy(stream, trustStore.toPath(), StandardCopyOption.REPLACE_EXISTING);
+        }
+
+        // The embedded broker predates TLS 1.3 and fails some of its handshakes.
+        String remoteURL = broker.getConnectionURI() + "?transport.enabledProtocols=TLSv1.2";
+
+        if ("shared".equals(sslContext)) {
+            context = BenchmarkContext.start(EmptyConfiguration.class,
+                "spring.qpidjms.remoteURL=" + remoteURL,
+                "spring.qpidjms.ssl.enabled=true",
+                "spring.qpidjms.ssl.trustStoreLocation=" + trustStore.getAbsolutePath(),
+                "spring.qpidjms.ssl.trustStorePassword=" + BenchmarkBroker.STORE_PASSWORD);
+        } else {
+            context = BenchmarkContext.start(EmptyConfiguration.class,
+                "spring.qpidjms.remoteURL=" + remoteURL +
+                    "&transport.trustStoreLocation=" + trustStore.getAbsolutePath() +
+                    "&transport.trustStorePassword=" + BenchmarkBroker.STORE_PASSWORD);
+        }
+
+        connectionFactory = context.getBean(ConnectionFactory.class);
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws Exception {
+        if (context != null) {
+            context.close();
+        }
+        if (broker != null) {
+            broker.stop();
+        }
+        if (trustStore != null) {
+            trustStore.delete();
+        }
+    }
+
+    @Benchmark
+    @BenchmarkMode(Mode.SampleTime)
+    @OutputTimeUnit(TimeUnit.MICROSECONDS)
+    public void connect() throws Exception {
+        Connection connection = connectionFactory.createConnection();
+        try {
+            connection.start();
+        } finally {
+            connection.close();
+        }
+    }
+
+    @Configuration
+    static class EmptyConfiguration {}
+}
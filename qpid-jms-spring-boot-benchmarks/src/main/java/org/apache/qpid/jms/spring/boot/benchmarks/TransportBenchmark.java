@@ -0,0 +1,127 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.qpid.jms.spring.boot.benchmarks;
+
+import java.util.concurrent.TimeUnit;
+
+import javax.jms.Connection;
+import javax.jms.ConnectionFactory;
+import javax.jms.MessageConsumer;
+import javax.jms.MessageProducer;
+import javax.jms.Queue;
+import javax.jms.Session;
+import javax.jms.TextMessage;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.context.annotation.AnnotationConfigApplicationContext;
+import org.springframework.context.annotation.Configuration;
+
+import io.netty.channel.epoll.Epoll;
+
+/**
+ * Measures the round trip of a small message sent to and received back from
+ * the embedded broker over connections that use the NIO transport
+ * (-p useEpoll=false) and the native epoll transport (-p useEpoll=true), as
+ * configured through spring.qpidjms.transport.useEpoll with tcpNoDelay enabled
+ * on both ends of the connection.
+ */
+@State(Scope.Benchmark)
+@Fork(1)
+@Warmup(iterations = 5, time = 2)
+@Measurement(iterations = 10, time = 2)
+public class TransportBenchmark {
+
+    private static final Logger LOG = LoggerFactory.getLogger(TransportBenchmark.class);
+
+    private static final String QUEUE = "transport-benchmark";
+
+    @Param({ "false", "true" })
+    private boolean useEpoll;
+
+    private BenchmarkBroker broker;
+    private AnnotationConfigApplicationContext context;
+    private Connection connection;
+    private Session session;
+    private MessageProducer producer;
+    private MessageConsumer consumer;
+    private TextMessage message;
+
+    @Setup(Level.Trial)
+    public void setUp() throws Exception {
+        if (useEpoll && !Epoll.isAvailable()) {
+            LOG.warn("Native epoll is not available, the connections fall back to NIO: {}",
+                     String.valueOf(Epoll.unavailabilityCause()));
+        }
+
+        // Without it the broker's replies wait on delayed acknowledgements of the
+        // client, which hides any difference between the client transports.
+        broker = new BenchmarkBroker("?transport.tcpNoDelay=true");
+        broker.start();
+
+        context = BenchmarkContext.start(EmptyConfiguration.class,
+            "spring.qpidjms.remoteURL=" + broker.getConnectionURI(),
+            "spring.qpidjms.transport.useEpoll=" + useEpoll,
+            "spring.qpidjms.transport.tcpNoDelay=true");
+
+        connection = context.getBean(ConnectionFactory.class).createConnection();
+        connection.start();
+
+        session = connection.createSession(false, Session.AUTO_ACKNOWLEDGE);
+        Queue queue = session.createQueue(QUEUE);
+        producer = session.createProducer(queue);
+        consumer = session.createConsumer(queue);
+        message = session.createTextMessage("transport");
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws Exception {
+        if (connection != null) {
+            connection.close();
+        }
+        if (context != null) {
+            context.close();
+        }
+        if (broker != null) {
+            broker.stop();
+        }
+    }
+
+    @Benchmark
+    @BenchmarkMode(Mode.SampleTime)
+    @OutputTimeUnit(TimeUnit.MICROSECONDS)
+    public Object roundTrip() throws Exception {
+        producer.send(message);
+        return consumer.receive();
+    }
+
+    @Configuration
+    static class EmptyConfiguration {}
+}
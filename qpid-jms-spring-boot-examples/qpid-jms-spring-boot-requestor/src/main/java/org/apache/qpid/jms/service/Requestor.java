@@ -16,31 +16,21 @@
  */
 package org.apache.qpid.jms.service;
 
-import java.util.UUID;
-
-import javax.jms.JMSException;
-import javax.jms.Message;
-import javax.jms.Queue;
-import javax.jms.Session;
-import javax.jms.TextMessage;
+import java.util.concurrent.TimeUnit;
 
+import org.apache.qpid.jms.spring.boot.autoconfigure.QpidJMSRequestReplyTemplate;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.boot.CommandLineRunner;
 import org.springframework.boot.SpringApplication;
 import org.springframework.boot.autoconfigure.SpringBootApplication;
-import org.springframework.jms.annotation.EnableJms;
-import org.springframework.jms.annotation.JmsListener;
-import org.springframework.jms.core.JmsTemplate;
-import org.springframework.jms.core.MessageCreator;
 import org.springframework.stereotype.Component;
 
 /**
- * Simple Hello World example that sends and receives a message
+ * Simple Request example that sends a request and waits for the correlated reply
  */
 @SpringBootApplication
-@EnableJms
 public class Requestor {
 
     public static void main(String[] args) {
@@ -52,40 +42,18 @@ public class Requestor {
 
         private static final Logger LOG = LoggerFactory.getLogger(MessageProducer.class);
 
-        private final UUID correlationID = UUID.randomUUID();
-
         @Autowired
-        private JmsTemplate jmsTemplate;
+        private QpidJMSRequestReplyTemplate requestReplyTemplate;
 
         @Override
         public void run(String... strings) throws Exception {
             final String messageText = "Hello World";
             LOG.info("============= Sending " + messageText);
-            this.jmsTemplate.send("example", new MessageCreator() {
-
-                @Override
-                public Message createMessage(Session session) throws JMSException {
-                    Queue replyQueue = session.createQueue("reply-queue");
-
-                    TextMessage message = session.createTextMessage(messageText);
-
-                    message.setJMSCorrelationID(correlationID.toString());
-                    message.setJMSReplyTo(replyQueue);
-
-                    return message;
-                }
-            });
-        }
-    }
-
-    @Component
-    static class MessageHandler {
 
-        private static final Logger LOG = LoggerFactory.getLogger(MessageHandler.class);
+            // The reply-to queue and correlation ID are set by the template.
+            Object reply = this.requestReplyTemplate.convertSendAndReceive("example", messageText).get(30, TimeUnit.SECONDS);
 
-        @JmsListener(destination = "reply-queue")
-        public void processMsg(String message) {
-            LOG.info("============= Received: " + message);
+            LOG.info("============= Received: " + reply);
         }
     }
 }
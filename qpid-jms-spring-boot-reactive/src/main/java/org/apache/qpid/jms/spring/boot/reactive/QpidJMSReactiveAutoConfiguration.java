@@ -0,0 +1,62 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.qpid.jms.spring.boot.reactive;
+
+import javax.jms.ConnectionFactory;
+
+import org.apache.qpid.jms.spring.boot.autoconfigure.QpidJMSAutoConfiguration;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.boot.autoconfigure.AutoConfigureAfter;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnBean;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnClass;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnMissingBean;
+import org.springframework.boot.autoconfigure.jms.JmsAutoConfiguration;
+import org.springframework.boot.context.properties.EnableConfigurationProperties;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.jms.support.converter.MessageConverter;
+
+import reactor.core.publisher.Flux;
+
+/**
+ * Auto Configuration class for reactive messaging over the Qpid JMS ConnectionFactory
+ */
+@Configuration
+@AutoConfigureAfter({QpidJMSAutoConfiguration.class, JmsAutoConfiguration.class})
+@ConditionalOnClass({ConnectionFactory.class, Flux.class})
+@ConditionalOnBean(ConnectionFactory.class)
+@EnableConfigurationProperties(QpidJMSReactiveProperties.class)
+public class QpidJMSReactiveAutoConfiguration {
+
+    @Bean
+    @ConditionalOnMissingBean
+    public QpidJMSReactiveTemplate qpidJMSReactiveTemplate(ConnectionFactory connectionFactory,
+                                                           QpidJMSReactiveProperties properties,
+                                                           ObjectProvider<MessageConverter> messageConverter) {
+        QpidJMSReactiveTemplate reactiveTemplate = new QpidJMSReactiveTemplate();
+        reactiveTemplate.setConnectionFactory(connectionFactory);
+        reactiveTemplate.setMaxInFlight(properties.getMaxInFlight());
+        reactiveTemplate.setWorkers(properties.getWorkers());
+
+        MessageConverter converter = messageConverter.getIfUnique();
+        if (converter != null) {
+            reactiveTemplate.setMessageConverter(converter);
+        }
+
+        return reactiveTemplate;
+    }
+}
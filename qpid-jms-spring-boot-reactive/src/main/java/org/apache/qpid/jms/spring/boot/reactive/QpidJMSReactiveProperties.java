@@ -0,0 +1,53 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.qpid.jms.spring.boot.reactive;
+
+import org.springframework.boot.context.properties.ConfigurationProperties;
+
+/**
+ * Configuration properties for the reactive Qpid JMS template.
+ */
+@ConfigurationProperties(prefix = "spring.qpidjms.reactive")
+public class QpidJMSReactiveProperties {
+
+    /**
+     * Maximum number of unsettled asynchronous sends for each Publisher being sent.
+     */
+    private int maxInFlight = QpidJMSReactiveTemplate.DEFAULT_MAX_IN_FLIGHT;
+
+    /**
+     * Number of threads sessions are set up, sent from and closed on, each
+     * Publisher being sent uses one of them.  Defaults to the number of processors.
+     */
+    private int workers = QpidJMSReactiveTemplate.DEFAULT_WORKERS;
+
+    public int getMaxInFlight() {
+        return maxInFlight;
+    }
+
+    public void setMaxInFlight(int maxInFlight) {
+        this.maxInFlight = maxInFlight;
+    }
+
+    public int getWorkers() {
+        return workers;
+    }
+
+    public void setWorkers(int workers) {
+        this.workers = workers;
+    }
+}
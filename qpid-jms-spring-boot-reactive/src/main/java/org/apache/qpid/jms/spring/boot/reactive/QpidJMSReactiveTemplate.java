@@ -0,0 +1,628 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.qpid.jms.spring.boot.reactive;
+
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.Function;
+
+import javax.jms.CompletionListener;
+import javax.jms.Connection;
+import javax.jms.ConnectionFactory;
+import javax.jms.Destination;
+import javax.jms.ExceptionListener;
+import javax.jms.JMSException;
+import javax.jms.Message;
+import javax.jms.MessageConsumer;
+import javax.jms.MessageListener;
+import javax.jms.MessageProducer;
+import javax.jms.Session;
+
+import org.apache.qpid.jms.spring.boot.autoconfigure.QpidJMSBatchTemplate;
+import org.reactivestreams.Publisher;
+import org.reactivestreams.Subscription;
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.jms.support.JmsUtils;
+import org.springframework.jms.support.converter.MessageConverter;
+import org.springframework.jms.support.converter.SimpleMessageConverter;
+import org.springframework.jms.support.destination.JmsDestinationAccessor;
+import org.springframework.util.Assert;
+
+import reactor.core.publisher.BaseSubscriber;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.FluxSink;
+import reactor.core.publisher.Mono;
+import reactor.core.publisher.MonoSink;
+import reactor.core.publisher.SignalType;
+import reactor.core.scheduler.Scheduler;
+import reactor.core.scheduler.Schedulers;
+
+/**
+ * Reactive messaging over a JMS ConnectionFactory without a thread per operation.
+ * <p>
+ * Received messages are pushed by the client on the session's delivery thread and
+ * handed to the subscriber only while it has outstanding demand.  Demand is not
+ * passed to the broker as link credit, the client buffers up to the prefetch
+ * configured for the destination ahead of demand and grants no more credit while
+ * the delivery thread waits, so a small prefetch keeps few messages buffered.
+ * <p>
+ * {@link #receive(String)} acknowledges each message as soon as it has been
+ * emitted, which is at-most-once delivery: a message emitted to a subscriber that
+ * processes it asynchronously is lost if processing then fails.
+ * {@link #receive(String, Function)} is at-least-once: each message is handed to
+ * a handler, acknowledged only once the handler's Publisher completes and then
+ * emitted, and the next message is not handed to the handler until then.  With either, messages not acknowledged
+ * when the subscription ends are redelivered.
+ * <p>
+ * Sends request payloads from the Publisher only while fewer than the configured
+ * maximum number of asynchronous sends are unsettled, each settlement requests
+ * the next payload.  Session setup, sends and teardown run on the workers of a
+ * parallel scheduler, or of the scheduler given to the template, so that callers
+ * on an event loop are never blocked.  Each Publisher being sent is set up and
+ * sent from one worker of its own, so a slow send only holds up the sends that
+ * share its worker.  All sessions share one connection created on first use.
+ */
+public class QpidJMSReactiveTemplate extends JmsDestinationAccessor implements DisposableBean {
+
+    public static final int DEFAULT_MAX_IN_FLIGHT = QpidJMSBatchTemplate.DEFAULT_MAX_IN_FLIGHT;
+    public static final int DEFAULT_WORKERS = Runtime.getRuntime().availableProcessors();
+
+    private final Set<Receiver> receivers = ConcurrentHashMap.newKeySet();
+    private final Object connectionLock = new Object();
+
+    private MessageConverter messageConverter = new SimpleMessageConverter();
+    private int maxInFlight = DEFAULT_MAX_IN_FLIGHT;
+    private int workers = DEFAULT_WORKERS;
+
+    private Scheduler scheduler;
+    private boolean ownScheduler;
+    private Connection connection;
+    private volatile boolean closed;
+
+    /**
+     * Creates a new QpidJMSReactiveTemplate for bean style configuration.
+     */
+    public QpidJMSReactiveTemplate() {
+    }
+
+    /**
+     * Creates a new QpidJMSReactiveTemplate that uses the given ConnectionFactory.
+     *
+     * @param connectionFactory
+     *      The ConnectionFactory used to create the shared connection.
+     */
+    public QpidJMSReactiveTemplate(ConnectionFactory connectionFactory) {
+        setConnectionFactory(connectionFactory);
+        afterPropertiesSet();
+    }
+
+    public MessageConverter getMessageConverter() {
+        return messageConverter;
+    }
+
+    public void setMessageConverter(MessageConverter messageConverter) {
+        Assert.notNull(messageConverter, "MessageConverter must not be null");
+        this.messageConverter = messageConverter;
+    }
+
+    public int getMaxInFlight() {
+        return maxInFlight;
+    }
+
+    public void setMaxInFlight(int maxInFlight) {
+        Assert.isTrue(maxInFlight > 0, "Max in-flight sends must be greater than zero");
+        this.maxInFlight = maxInFlight;
+    }
+
+    public int getWorkers() {
+        return workers;
+    }
+
+    /**
+     * Sets the number of threads of the scheduler the template creates when it is
+     * not given one.
+     *
+     * @param workers
+     *      The number of worker threads.
+     */
+    public void setWorkers(int workers) {
+        Assert.isTrue(workers > 0, "Workers must be greater than zero");
+        this.workers = workers;
+    }
+
+    public Scheduler getScheduler() {
+        return scheduler;
+    }
+
+    /**
+     * Sets the scheduler sessions are set up, sent from and closed on, which the
+     * template does not dispose.
+     *
+     * @param scheduler
+     *      The scheduler to use, or null to create one with the configured workers.
+     */
+    public void setScheduler(Scheduler scheduler) {
+        synchronized (connectionLock) {
+            if (this.scheduler != null && ownScheduler) {
+                this.scheduler.dispose();
+            }
+
+            this.scheduler = scheduler;
+            this.ownScheduler = false;
+        }
+    }
+
+    @Override
+    public void afterPropertiesSet() {
+        super.afterPropertiesSet();
+
+        synchronized (connectionLock) {
+            if (scheduler == null) {
+                scheduler = Schedulers.newParallel("QpidJMS Reactive", workers, true);
+                ownScheduler = true;
+            }
+        }
+    }
+
+    /**
+     * Receives messages from the named destination as demanded by the subscriber,
+     * acknowledging each message once it has been emitted.
+     *
+     * @param destinationName
+     *      The name of the destination, resolved using the configured DestinationResolver.
+     *
+     * @return a Flux of the received messages that consumes only on demand.
+     */
+    public Flux<Message> receive(String destinationName) {
+        Assert.notNull(destinationName, "Destination name must not be null");
+        return doReceive(null, destinationName);
+    }
+
+    /**
+     * Receives messages from the given destination as demanded by the subscriber,
+     * acknowledging each message once it has been emitted.
+     *
+     * @param destination
+     *      The destination to receive from.
+     *
+     * @return a Flux of the received messages that consumes only on demand.
+     */
+    public Flux<Message> receive(Destination destination) {
+        Assert.notNull(destination, "Destination must not be null");
+        return doReceive(destination, null);
+    }
+
+    /**
+     * Receives messages from the named destination one at a time, acknowledging
+     * each message once the Publisher the handler returned for it completes.  A
+     * handler that fails ends the subscription and its message is redelivered.
+     *
+     * @param destinationName
+     *      The name of the destination, resolved using the configured DestinationResolver.
+     * @param handler
+     *      Processes a received message, the Publisher it returns completes once
+     *      the message has been processed.
+     *
+     * @return a Flux of the received messages, each emitted once it has been
+     *         handled and acknowledged.
+     */
+    public Flux<Message> receive(String destinationName, Function<Message, ? extends Publisher<?>> handler) {
+        Assert.notNull(destinationName, "Destination name must not be null");
+        Assert.notNull(handler, "Handler must not be null");
+        return doReceive(null, destinationName, handler);
+    }
+
+    /**
+     * Receives messages from the given destination one at a time, acknowledging
+     * each message once the Publisher the handler returned for it completes.  A
+     * handler that fails ends the subscription and its message is redelivered.
+     *
+     * @param destination
+     *      The destination to receive from.
+     * @param handler
+     *      Processes a received message, the Publisher it returns completes once
+     *      the message has been processed.
+     *
+     * @return a Flux of the received messages, each emitted once it has been
+     *         handled and acknowledged.
+     */
+    public Flux<Message> receive(Destination destination, Function<Message, ? extends Publisher<?>> handler) {
+        Assert.notNull(destination, "Destination must not be null");
+        Assert.notNull(handler, "Handler must not be null");
+        return doReceive(destination, null, handler);
+    }
+
+    /**
+     * Sends each payload of the Publisher to the named destination.
+     *
+     * @param destinationName
+     *      The name of the destination, resolved using the configured DestinationResolver.
+     * @param payloads
+     *      The payloads to convert and send, in order.
+     *
+     * @return a Mono that completes once every send has been settled.
+     */
+    public Mono<Void> send(String destinationName, Publisher<?> payloads) {
+        Assert.notNull(destinationName, "Destination name must not be null");
+        Assert.notNull(payloads, "Payloads must not be null");
+        return doSend(null, destinationName, payloads);
+    }
+
+    /**
+     * Sends each payload of the Publisher to the given destination.
+     *
+     * @param destination
+     *      The destination to send to.
+     * @param payloads
+     *      The payloads to convert and send, in order.
+     *
+     * @return a Mono that completes once every send has been settled.
+     */
+    public Mono<Void> send(Destination destination, Publisher<?> payloads) {
+        Assert.notNull(destination, "Destination must not be null");
+        Assert.notNull(payloads, "Payloads must not be null");
+        return doSend(destination, null, payloads);
+    }
+
+    @Override
+    public void destroy() {
+        closed = true;
+
+        for (Receiver receiver : receivers) {
+            receiver.cancel();
+        }
+
+        synchronized (connectionLock) {
+            JmsUtils.closeConnection(connection);
+            connection = null;
+
+            if (scheduler != null && ownScheduler) {
+                scheduler.dispose();
+            }
+        }
+    }
+
+    private Flux<Message> doReceive(final Destination destination, final String destinationName) {
+        return Flux.create(sink -> new Receiver(true).subscribe(sink, destination, destinationName));
+    }
+
+    private Flux<Message> doReceive(final Destination destination, final String destinationName,
+                                    final Function<Message, ? extends Publisher<?>> handler) {
+        return Flux.defer(() -> {
+            final Receiver receiver = new Receiver(false);
+            return Flux.<Message>create(sink -> receiver.subscribe(sink, destination, destinationName))
+                .concatMap(message -> Flux.from(handler.apply(message))
+                    .then(Mono.fromCallable(() -> receiver.acknowledge(message))));
+        });
+    }
+
+    private Mono<Void> doSend(final Destination destination, final String destinationName, final Publisher<?> payloads) {
+        return Mono.create(sink -> {
+            final Sender sender = new Sender(sink, Schedulers.single(scheduler));
+            sink.onCancel(sender::dispose);
+            sender.worker.schedule(() -> sender.start(destination, destinationName, payloads));
+        });
+    }
+
+    private Session createSession(int acknowledgeMode) throws JMSException {
+        Assert.state(!closed, "The reactive template has been closed");
+        return getSharedConnection().createSession(false, acknowledgeMode);
+    }
+
+    private Connection getSharedConnection() throws JMSException {
+        synchronized (connectionLock) {
+            if (connection == null) {
+                final Connection created = createConnection();
+                try {
+                    created.setExceptionListener(new ExceptionListener() {
+
+                        @Override
+                        public void onException(JMSException exception) {
+                            resetConnection(created, exception);
+                        }
+                    });
+                    created.start();
+                } catch (JMSException ex) {
+                    JmsUtils.closeConnection(created);
+                    throw ex;
+                }
+
+                connection = created;
+            }
+
+            return connection;
+        }
+    }
+
+    private void resetConnection(Connection failed, JMSException cause) {
+        synchronized (connectionLock) {
+            if (connection != failed) {
+                return;
+            }
+
+            connection = null;
+        }
+
+        // Pending sends are failed by the client itself, receivers are failed here.
+        for (Receiver receiver : receivers) {
+            receiver.failed(convertJmsAccessException(cause));
+        }
+
+        JmsUtils.closeConnection(failed);
+    }
+
+    private void closeLater(final MessageConsumer consumer, final MessageProducer producer, final Session session) {
+        // Never closed on a delivery or completion thread, the client rejects that.
+        scheduler.schedule(() -> {
+            JmsUtils.closeMessageConsumer(consumer);
+            JmsUtils.closeMessageProducer(producer);
+            JmsUtils.closeSession(session);
+        });
+    }
+
+    private final class Receiver implements MessageListener {
+
+        private final boolean acknowledgeOnEmit;
+
+        private FluxSink<Message> sink;
+        private Session session;
+        private MessageConsumer consumer;
+        private boolean awaitingAcknowledgement;
+        private boolean cancelled;
+
+        Receiver(boolean acknowledgeOnEmit) {
+            this.acknowledgeOnEmit = acknowledgeOnEmit;
+        }
+
+        void subscribe(FluxSink<Message> sink, Destination destination, String destinationName) {
+            this.sink = sink;
+            sink.onRequest(requested -> demandChanged());
+            sink.onDispose(this::cancel);
+            scheduler.schedule(() -> start(destination, destinationName));
+        }
+
+        void start(Destination destination, String destinationName) {
+            if (isCancelled()) {
+                return;
+            }
+
+            receivers.add(this);
+
+            Session session = null;
+            try {
+                session = createSession(Session.CLIENT_ACKNOWLEDGE);
+                Destination source = destination != null ? destination : resolveDestinationName(session, destinationName);
+                MessageConsumer consumer = session.createConsumer(source);
+
+                synchronized (this) {
+                    this.session = session;
+                    this.consumer = consumer;
+                }
+
+                consumer.setMessageListener(this);
+            } catch (JMSException ex) {
+                closeLater(null, null, session);
+                sink.error(convertJmsAccessException(ex));
+            } catch (RuntimeException ex) {
+                closeLater(null, null, session);
+                sink.error(ex);
+            }
+
+            // Cancelled while the consumer was being created.
+            if (isCancelled()) {
+                close();
+            }
+        }
+
+        @Override
+        public void onMessage(Message message) {
+            // A client acknowledgement covers every message delivered so far, so the
+            // next message waits until the one being handled has been acknowledged.
+            synchronized (this) {
+                while (!cancelled && (sink.requestedFromDownstream() == 0 || awaitingAcknowledgement)) {
+                    try {
+                        wait();
+                    } catch (InterruptedException ex) {
+                        Thread.currentThread().interrupt();
+                        return;
+                    }
+                }
+
+                if (cancelled) {
+                    return;
+                }
+
+                awaitingAcknowledgement = !acknowledgeOnEmit;
+            }
+
+            sink.next(message);
+
+            if (acknowledgeOnEmit) {
+                try {
+                    message.acknowledge();
+                } catch (JMSException ex) {
+                    sink.error(convertJmsAccessException(ex));
+                }
+            }
+        }
+
+        Message acknowledge(Message message) {
+            try {
+                message.acknowledge();
+                return message;
+            } catch (JMSException ex) {
+                throw convertJmsAccessException(ex);
+            } finally {
+                synchronized (this) {
+                    awaitingAcknowledgement = false;
+                    notifyAll();
+                }
+            }
+        }
+
+        synchronized void demandChanged() {
+            notifyAll();
+        }
+
+        void failed(Throwable cause) {
+            sink.error(cause);
+        }
+
+        void cancel() {
+            synchronized (this) {
+                if (cancelled) {
+                    return;
+                }
+
+                cancelled = true;
+                notifyAll();
+            }
+
+            close();
+        }
+
+        private synchronized boolean isCancelled() {
+            return cancelled;
+        }
+
+        private void close() {
+            receivers.remove(this);
+
+            MessageConsumer consumer;
+            Session session;
+
+            synchronized (this) {
+                consumer = this.consumer;
+                session = this.session;
+                this.consumer = null;
+                this.session = null;
+            }
+
+            if (session != null) {
+                closeLater(consumer, null, session);
+            }
+        }
+    }
+
+    private final class Sender extends BaseSubscriber<Object> implements CompletionListener {
+
+        private final MonoSink<Void> sink;
+        private final Scheduler worker;
+        private final AtomicReference<Throwable> failure = new AtomicReference<>();
+
+        // Starts at one on behalf of the upstream Publisher so that the send cannot
+        // complete until every payload has been submitted.
+        private final AtomicInteger outstanding = new AtomicInteger(1);
+
+        private Session session;
+        private MessageProducer producer;
+        private Destination target;
+
+        Sender(MonoSink<Void> sink, Scheduler worker) {
+            this.sink = sink;
+            this.worker = worker;
+        }
+
+        void start(Destination destination, String destinationName, Publisher<?> payloads) {
+            if (isDisposed()) {
+                return;
+            }
+
+            try {
+                session = createSession(Session.AUTO_ACKNOWLEDGE);
+                producer = session.createProducer(null);
+                target = destination != null ? destination : resolveDestinationName(session, destinationName);
+            } catch (JMSException ex) {
+                closeLater(null, producer, session);
+                worker.dispose();
+                sink.error(convertJmsAccessException(ex));
+                return;
+            } catch (RuntimeException ex) {
+                closeLater(null, producer, session);
+                worker.dispose();
+                sink.error(ex);
+                return;
+            }
+
+            Flux.from(payloads).publishOn(worker, maxInFlight).subscribe(this);
+        }
+
+        @Override
+        protected void hookOnSubscribe(Subscription subscription) {
+            request(maxInFlight);
+        }
+
+        @Override
+        protected void hookOnNext(Object payload) {
+            outstanding.incrementAndGet();
+            try {
+                Message message = messageConverter.toMessage(payload, session);
+                producer.send(target, message, this);
+            } catch (JMSException ex) {
+                sendFailed(convertJmsAccessException(ex));
+            } catch (RuntimeException ex) {
+                sendFailed(ex);
+            }
+        }
+
+        @Override
+        protected void hookOnError(Throwable throwable) {
+            failure.compareAndSet(null, throwable);
+        }
+
+        @Override
+        protected void hookFinally(SignalType type) {
+            // Called once whether the upstream completed, failed or was cancelled.
+            settled();
+        }
+
+        @Override
+        public void onCompletion(Message message) {
+            request(1);
+            settled();
+        }
+
+        @Override
+        public void onException(Message message, Exception exception) {
+            sendFailed(exception instanceof JMSException ? convertJmsAccessException((JMSException) exception) : exception);
+        }
+
+        private void sendFailed(Throwable cause) {
+            failure.compareAndSet(null, cause);
+
+            // Stops the upstream, the payloads already sent still settle.
+            dispose();
+            settled();
+        }
+
+        private void settled() {
+            if (outstanding.decrementAndGet() == 0) {
+                closeLater(null, producer, session);
+                worker.dispose();
+
+                Throwable error = failure.get();
+                if (error != null) {
+                    sink.error(error);
+                } else {
+                    sink.success();
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,64 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.qpid.jms.spring.boot.reactive;
+
+import org.apache.activemq.broker.BrokerService;
+import org.apache.activemq.broker.TransportConnector;
+import org.apache.activemq.command.ActiveMQQueue;
+
+/**
+ * In-process AMQP broker used by tests that need a real remote peer.
+ */
+public class AmqpTestBroker {
+
+    private BrokerService brokerService;
+    private TransportConnector connector;
+
+    public void start() throws Exception {
+        brokerService = new BrokerService();
+        brokerService.setBrokerName("qpid-jms-spring-boot-reactive-test");
+        brokerService.setPersistent(false);
+        brokerService.setUseJmx(false);
+        brokerService.setAdvisorySupport(false);
+        brokerService.setSchedulerSupport(false);
+
+        connector = brokerService.addConnector("amqp://localhost:0");
+
+        brokerService.start();
+        brokerService.waitUntilStarted();
+    }
+
+    public void stop() throws Exception {
+        if (brokerService != null) {
+            brokerService.stop();
+            brokerService.waitUntilStopped();
+            brokerService = null;
+        }
+    }
+
+    public String getConnectionURI() throws Exception {
+        return "amqp://localhost:" + connector.getConnectUri().getPort();
+    }
+
+    public long getDispatchedCount(String queueName) throws Exception {
+        return brokerService.getDestination(new ActiveMQQueue(queueName)).getDestinationStatistics().getDispatched().getCount();
+    }
+
+    public long getQueueSize(String queueName) throws Exception {
+        return brokerService.getDestination(new ActiveMQQueue(queueName)).getDestinationStatistics().getMessages().getCount();
+    }
+}
@@ -0,0 +1,268 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.qpid.jms.spring.boot.reactive;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.time.Duration;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import javax.jms.ConnectionFactory;
+import javax.jms.JMSException;
+import javax.jms.Message;
+import javax.jms.TextMessage;
+
+import org.apache.qpid.jms.spring.boot.autoconfigure.QpidJMSAutoConfiguration;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.reactivestreams.Subscription;
+import org.springframework.boot.autoconfigure.jms.JmsAutoConfiguration;
+import org.springframework.boot.test.util.EnvironmentTestUtils;
+import org.springframework.context.annotation.AnnotationConfigApplicationContext;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.jms.support.converter.MessageConversionException;
+
+import reactor.core.publisher.BaseSubscriber;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+import reactor.core.publisher.MonoProcessor;
+
+/**
+ * Test for the auto-configured QpidJMSReactiveTemplate.
+ */
+public class QpidJMSReactiveTemplateTest {
+
+    private static final Duration TIMEOUT = Duration.ofSeconds(30);
+
+    private final AmqpTestBroker broker = new AmqpTestBroker();
+
+    private AnnotationConfigApplicationContext context;
+
+    @Before
+    public void setUp() throws Exception {
+        broker.start();
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        if (this.context != null) {
+            this.context.close();
+        }
+
+        broker.stop();
+    }
+
+    @Test
+    public void testReactiveTemplateConfiguredFromEnv() {
+        load(EmptyConfiguration.class,
+             "spring.qpidjms.reactive.maxInFlight=32",
+             "spring.qpidjms.reactive.workers=3");
+
+        QpidJMSReactiveTemplate reactiveTemplate = this.context.getBean(QpidJMSReactiveTemplate.class);
+
+        assertEquals(32, reactiveTemplate.getMaxInFlight());
+        assertEquals(3, reactiveTemplate.getWorkers());
+        assertEquals(this.context.getBean(ConnectionFactory.class), reactiveTemplate.getConnectionFactory());
+    }
+
+    @Test(timeout = 60000)
+    public void testSendPublisherThenReceiveInOrder() throws Exception {
+        load(EmptyConfiguration.class,
+             "spring.qpidjms.remoteURL=" + broker.getConnectionURI(),
+             "spring.qpidjms.reactive.maxInFlight=16");
+
+        QpidJMSReactiveTemplate reactiveTemplate = this.context.getBean(QpidJMSReactiveTemplate.class);
+
+        reactiveTemplate.send("reactive", Flux.range(0, 500).map(i -> "message-" + i)).block(TIMEOUT);
+
+        List<Message> received = reactiveTemplate.receive("reactive").take(500).collectList().block(TIMEOUT);
+
+        assertEquals(500, received.size());
+        for (int i = 0; i < received.size(); ++i) {
+            assertEquals("message-" + i, ((TextMessage) received.get(i)).getText());
+        }
+    }
+
+    @Test(timeout = 60000)
+    public void testReceiveConsumesOnlyOnDemand() throws Exception {
+        load(EmptyConfiguration.class,
+             "spring.qpidjms.remoteURL=" + broker.getConnectionURI(),
+             "spring.qpidjms.prefetchPolicy.all=5");
+
+        QpidJMSReactiveTemplate reactiveTemplate = this.context.getBean(QpidJMSReactiveTemplate.class);
+        reactiveTemplate.send("demand", Flux.range(0, 100).map(i -> "message-" + i)).block(TIMEOUT);
+
+        final AtomicInteger received = new AtomicInteger();
+        final CountDownLatch requested = new CountDownLatch(10);
+
+        BaseSubscriber<Message> subscriber = new BaseSubscriber<Message>() {
+
+            @Override
+            protected void hookOnSubscribe(Subscription subscription) {
+                request(10);
+            }
+
+            @Override
+            protected void hookOnNext(Message message) {
+                received.incrementAndGet();
+                requested.countDown();
+            }
+        };
+
+        reactiveTemplate.receive("demand").subscribe(subscriber);
+
+        assertTrue(requested.await(30, TimeUnit.SECONDS));
+
+        // Without further demand no more messages are emitted and the broker is
+        // only granted credit for the demand plus the prefetch window.
+        Thread.sleep(500);
+
+        assertEquals(10, received.get());
+        assertTrue("Too many messages dispatched", broker.getDispatchedCount("demand") <= 10 + 5 + 1);
+
+        subscriber.dispose();
+
+        // Messages prefetched but never emitted are redelivered to the next subscriber.
+        List<Message> remaining = reactiveTemplate.receive("demand").take(90).collectList().block(TIMEOUT);
+        assertEquals(90, remaining.size());
+    }
+
+    @Test(timeout = 60000)
+    public void testHandledReceiveAcknowledgesAfterHandlerCompletes() throws Exception {
+        load(EmptyConfiguration.class, "spring.qpidjms.remoteURL=" + broker.getConnectionURI());
+
+        QpidJMSReactiveTemplate reactiveTemplate = this.context.getBean(QpidJMSReactiveTemplate.class);
+        reactiveTemplate.send("handled", Flux.range(0, 10).map(i -> "message-" + i)).block(TIMEOUT);
+
+        final MonoProcessor<String> firstHandled = MonoProcessor.create();
+        final AtomicInteger handling = new AtomicInteger();
+
+        CompletableFuture<List<Message>> handled = reactiveTemplate.receive("handled", message -> {
+            handling.incrementAndGet();
+            return "message-0".equals(textOf(message)) ? firstHandled : Mono.empty();
+        }).take(10).collectList().toFuture();
+
+        // Nothing is acknowledged, and nothing else handled, until the first handler completes.
+        Thread.sleep(500);
+        assertEquals(1, handling.get());
+        assertEquals(10, broker.getQueueSize("handled"));
+
+        firstHandled.onNext("done");
+
+        List<Message> messages = handled.get(30, TimeUnit.SECONDS);
+        assertEquals(10, messages.size());
+        for (int i = 0; i < messages.size(); ++i) {
+            assertEquals("message-" + i, textOf(messages.get(i)));
+        }
+
+        // Each message was acknowledged before it was emitted, the last one too.
+        while (broker.getQueueSize("handled") > 0) {
+            TimeUnit.MILLISECONDS.sleep(20);
+        }
+    }
+
+    @Test(timeout = 60000)
+    public void testHandledReceiveRedeliversWhenHandlerFails() throws Exception {
+        load(EmptyConfiguration.class, "spring.qpidjms.remoteURL=" + broker.getConnectionURI());
+
+        QpidJMSReactiveTemplate reactiveTemplate = this.context.getBean(QpidJMSReactiveTemplate.class);
+        reactiveTemplate.send("failed", Flux.just("message")).block(TIMEOUT);
+
+        try {
+            reactiveTemplate.receive("failed", message -> Mono.error(new IllegalStateException("Handler failed")))
+                .blockFirst(TIMEOUT);
+            fail("Should have failed in the handler");
+        } catch (IllegalStateException ex) {
+        }
+
+        Message redelivered = reactiveTemplate.receive("failed").blockFirst(TIMEOUT);
+        assertEquals("message", ((TextMessage) redelivered).getText());
+        assertTrue(redelivered.getJMSRedelivered());
+    }
+
+    @Test(timeout = 60000)
+    public void testSendProceedsWhileAnotherSendIsBlocked() throws Exception {
+        load(EmptyConfiguration.class,
+             "spring.qpidjms.remoteURL=" + broker.getConnectionURI(),
+             "spring.qpidjms.reactive.workers=2");
+
+        QpidJMSReactiveTemplate reactiveTemplate = this.context.getBean(QpidJMSReactiveTemplate.class);
+
+        // The payload of the first send is produced on its worker, which it holds.
+        final CountDownLatch release = new CountDownLatch(1);
+        CompletableFuture<Void> blocked = reactiveTemplate.send("blocked", Flux.just("held").map(payload -> {
+            try {
+                release.await();
+            } catch (InterruptedException ex) {
+                Thread.currentThread().interrupt();
+            }
+            return payload;
+        })).toFuture();
+
+        try {
+            reactiveTemplate.send("free", Flux.range(0, 10).map(i -> "message-" + i)).block(TIMEOUT);
+            assertFalse(blocked.isDone());
+        } finally {
+            release.countDown();
+        }
+
+        blocked.get(30, TimeUnit.SECONDS);
+        assertEquals("held", ((TextMessage) reactiveTemplate.receive("blocked").blockFirst(TIMEOUT)).getText());
+    }
+
+    @Test(timeout = 60000)
+    public void testSendFailsWhenPayloadCannotBeConverted() throws Exception {
+        load(EmptyConfiguration.class, "spring.qpidjms.remoteURL=" + broker.getConnectionURI());
+
+        QpidJMSReactiveTemplate reactiveTemplate = this.context.getBean(QpidJMSReactiveTemplate.class);
+
+        try {
+            reactiveTemplate.send("reactive", Flux.just("first", new Object(), "last")).block(TIMEOUT);
+            fail("Should have failed to convert the payload");
+        } catch (MessageConversionException ex) {
+        }
+    }
+
+    private static String textOf(Message message) {
+        try {
+            return ((TextMessage) message).getText();
+        } catch (JMSException ex) {
+            throw new IllegalStateException(ex);
+        }
+    }
+
+    @Configuration
+    static class EmptyConfiguration {}
+
+    private void load(Class<?> config, String... environment) {
+        AnnotationConfigApplicationContext applicationContext = new AnnotationConfigApplicationContext();
+        applicationContext.register(config);
+        applicationContext.register(QpidJMSAutoConfiguration.class, JmsAutoConfiguration.class,
+                                    QpidJMSReactiveAutoConfiguration.class);
+        EnvironmentTestUtils.addEnvironment(applicationContext, environment);
+        applicationContext.refresh();
+        this.context = applicationContext;
+    }
+}